@@ -5,16 +5,33 @@ import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import lv.lumii.obis.schema.constants.SchemaConstants;
 import lv.lumii.obis.schema.model.v2.Schema;
+import lv.lumii.obis.schema.services.common.SparqlQueryTemplate;
 import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorRequestDto;
 import lv.lumii.obis.schema.services.extractor.v2.SchemaExtractor;
+import lv.lumii.obis.schema.services.extractor.v2.SchemaExtractorJobService;
+import lv.lumii.obis.schema.services.extractor.v2.SchemaExtractorProgressEvents;
+import lv.lumii.obis.schema.services.extractor.v2.SchemaExtractorQueries;
+import lv.lumii.obis.schema.services.extractor.v2.dto.SchemaExtractorJobStatus;
+import lv.lumii.obis.schema.services.extractor.v2.dto.SchemaExtractorProgressEvent;
+import lv.lumii.obis.schema.services.extractor.v2.dto.SchemaExtractorSchedulerStatus;
 import lv.lumii.obis.schema.services.*;
 import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.EnumUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.server.ResponseStatusException;
 
 import javax.annotation.Nonnull;
@@ -24,11 +41,13 @@ import javax.ws.rs.core.MediaType;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.stream.Collectors;
@@ -64,7 +83,13 @@ public class SchemaExtractorControllerV2 {
 
     private static final String SCHEMA_EXTRACT_EXCEPTION_INTERNAL_ERROR = "Internal server error, stopping the schema extractor for this execution. Please check logs for more details";
     private static final String SCHEMA_EXTRACT_EXCEPTION_NO_CONFIG_FILE = "Valid configuration file is not provided";
+    private static final String SCHEMA_JOB_NOT_FOUND = "The extraction job %s is not found";
+    private static final String SCHEMA_JOB_PRIORITY_DESCRIPTION = "Priority of the job in the queue, jobs with a higher priority are started first (default = 0)";
 
+    private static final String SCHEMA_MEDIA_TYPE_SMILE = "application/x-jackson-smile";
+    private static final String SCHEMA_MEDIA_TYPE_CBOR = "application/cbor";
+
+    private static final int SCHEMA_FILE_BUFFER_SIZE = 1 << 16;
     private static final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
 
     @Autowired
@@ -73,9 +98,13 @@ public class SchemaExtractorControllerV2 {
     private ObjectConversionService objectConversionService;
     @Autowired
     private SchemaExtractorRequestBuilder requestBuilder;
+    @Autowired
+    private SchemaExtractorJobService jobService;
+    @Autowired
+    private SchemaExtractorProgressEvents progressEvents;
 
 
-    @RequestMapping(value = "/endpoint/buildFullSchema", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON)
+    @RequestMapping(value = "/endpoint/buildFullSchema", method = RequestMethod.POST, produces = {MediaType.APPLICATION_JSON, SCHEMA_MEDIA_TYPE_SMILE, SCHEMA_MEDIA_TYPE_CBOR})
     @ApiOperation(
             value = "Extract and analyze data from SPARQL endpoint and build full schema model (version 2)",
             consumes = MediaType.APPLICATION_JSON,
@@ -83,20 +112,219 @@ public class SchemaExtractorControllerV2 {
             response = lv.lumii.obis.schema.model.v2.Schema.class
     )
     @SuppressWarnings("unused")
-    public String buildFullSchemaFromEndpointV2(@Validated @ModelAttribute @Nonnull SchemaExtractorRequestNew request,
-                                                @RequestParam(value = "includedClassesFile", required = false)
-                                                @ApiParam(access = "240", value = "Valid CSV file with the list of included classes. To be used, if the created schema is to be restricted to the explicitly listed classes. " +
-                                                        "If not specified, all classes will be analyzed.") MultipartFile includedClassesCsvFile,
-                                                @RequestParam(value = "includedPropertiesFile", required = false)
-                                                @ApiParam(access = "250", value = "Valid CSV file with the list of included properties. To be used, if the created schema is to be restricted to the explicitly listed properties. " +
-                                                        "If not specified, all properties will be analyzed.") MultipartFile includedPropertiesCsvFile,
-                                                @RequestParam(value = "namespacePrefixFile", required = false)
-                                                @ApiParam(hidden = true, access = "260", value = "Valid JSON file with predefined namespaces") MultipartFile namespacePrefixFile,
-                                                @RequestParam(value = "enableLogging", required = false, defaultValue = "true")
-                                                @ApiParam(access = "270", value = "Enable SPARQL query logging to file on the server") Boolean enableLogging,
-                                                @RequestParam(value = "saveThisConfig", required = false, defaultValue = "true")
-                                                @ApiParam(access = "280", value = "Save this configuration to a file on the server") Boolean saveConfig) {
+    public ResponseEntity<Resource> buildFullSchemaFromEndpointV2(@Validated @ModelAttribute @Nonnull SchemaExtractorRequestNew request,
+                                                                               @RequestParam(value = "includedClassesFile", required = false)
+                                                                               @ApiParam(access = "240", value = "Valid CSV file with the list of included classes. To be used, if the created schema is to be restricted to the explicitly listed classes. " +
+                                                                                       "If not specified, all classes will be analyzed.") MultipartFile includedClassesCsvFile,
+                                                                               @RequestParam(value = "includedPropertiesFile", required = false)
+                                                                               @ApiParam(access = "250", value = "Valid CSV file with the list of included properties. To be used, if the created schema is to be restricted to the explicitly listed properties. " +
+                                                                                       "If not specified, all properties will be analyzed.") MultipartFile includedPropertiesCsvFile,
+                                                                               @RequestParam(value = "namespacePrefixFile", required = false)
+                                                                               @ApiParam(hidden = true, access = "260", value = "Valid JSON file with predefined namespaces") MultipartFile namespacePrefixFile,
+                                                                               @RequestParam(value = "enableLogging", required = false, defaultValue = "true")
+                                                                               @ApiParam(access = "270", value = "Enable SPARQL query logging to file on the server") Boolean enableLogging,
+                                                                               @RequestParam(value = "saveThisConfig", required = false, defaultValue = "true")
+                                                                               @ApiParam(access = "280", value = "Save this configuration to a file on the server") Boolean saveConfig,
+                                                                               @RequestHeader(value = HttpHeaders.ACCEPT, required = false)
+                                                                               @ApiParam(hidden = true) String accept) {
+
+        // 1-5. Create the request object with the included classes, properties, prefixes and SPARQL queries
+        SchemaExtractorRequestDto requestDto = buildRequest(request, includedClassesCsvFile, includedPropertiesCsvFile, namespacePrefixFile, enableLogging);
+        requestDto.setSchemaFormat(negotiateSchemaFormat(requestDto.getSchemaFormat(), accept));
+
+        try {
+            // 6. Save this specific configuration to file
+            saveConfig(requestDto, saveConfig);
+
+            // 7. Build the schema from the endpoint
+            Schema schema = extractSchema(requestDto);
+
+            // 8. Save the result schema in file and return it
+            return buildSchemaResponse(requestDto, schema);
+
+        } catch (SparqlEndpointException e) {
+            log.error(e.getMessage());
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e);
+        } catch (Exception e) {
+            log.error(SCHEMA_EXTRACT_EXCEPTION_INTERNAL_ERROR, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, SCHEMA_EXTRACT_EXCEPTION_INTERNAL_ERROR, e);
+        }
+    }
+
+    @RequestMapping(value = "/endpoint/buildFullSchemaFromConfigFile", method = RequestMethod.POST, produces = {MediaType.APPLICATION_JSON, SCHEMA_MEDIA_TYPE_SMILE, SCHEMA_MEDIA_TYPE_CBOR})
+    @ApiOperation(
+            value = "Extract and analyze data from SPARQL endpoint and build full schema model (version 2) using configuration file",
+            consumes = MediaType.MULTIPART_FORM_DATA,
+            produces = MediaType.APPLICATION_JSON,
+            response = lv.lumii.obis.schema.model.v2.Schema.class
+    )
+    @SuppressWarnings("unused")
+    public ResponseEntity<Resource> buildFullSchemaFromEndpointV2FromConfigFile(
+            @RequestParam(value = "configurationFile")
+            @ApiParam(access = "1", value = "Configuration YAML file") MultipartFile configurationFile,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false)
+            @ApiParam(hidden = true) String accept) {
+
+        // 1-3. Read the request parameters from the configuration YAML file and load SPARQL queries
+        SchemaExtractorRequestDto requestDto = readRequestFromConfigFile(configurationFile);
+        requestDto.setSchemaFormat(negotiateSchemaFormat(requestDto.getSchemaFormat(), accept));
+
+        try {
+            // 4. Build the schema from the endpoint
+            Schema schema = extractSchema(requestDto);
+            // 5. Save the result schema in file and return it
+            return buildSchemaResponse(requestDto, schema);
+        } catch (SparqlEndpointException e) {
+            log.error(e.getMessage());
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e);
+        } catch (Exception e) {
+            log.error(SCHEMA_EXTRACT_EXCEPTION_INTERNAL_ERROR, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, SCHEMA_EXTRACT_EXCEPTION_INTERNAL_ERROR, e);
+        }
+    }
+
+    @RequestMapping(value = "/endpoint/jobs", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            value = "Start the schema extraction (version 2) in the background, the returned job id is used to follow the job and to download the schema",
+            consumes = MediaType.APPLICATION_JSON,
+            produces = MediaType.APPLICATION_JSON,
+            response = SchemaExtractorJobStatus.class
+    )
+    @SuppressWarnings("unused")
+    public SchemaExtractorJobStatus submitExtractionJob(@Validated @ModelAttribute @Nonnull SchemaExtractorRequestNew request,
+                                                        @RequestParam(value = "includedClassesFile", required = false)
+                                                        @ApiParam(access = "240", value = "Valid CSV file with the list of included classes. To be used, if the created schema is to be restricted to the explicitly listed classes. " +
+                                                                "If not specified, all classes will be analyzed.") MultipartFile includedClassesCsvFile,
+                                                        @RequestParam(value = "includedPropertiesFile", required = false)
+                                                        @ApiParam(access = "250", value = "Valid CSV file with the list of included properties. To be used, if the created schema is to be restricted to the explicitly listed properties. " +
+                                                                "If not specified, all properties will be analyzed.") MultipartFile includedPropertiesCsvFile,
+                                                        @RequestParam(value = "namespacePrefixFile", required = false)
+                                                        @ApiParam(hidden = true, access = "260", value = "Valid JSON file with predefined namespaces") MultipartFile namespacePrefixFile,
+                                                        @RequestParam(value = "enableLogging", required = false, defaultValue = "true")
+                                                        @ApiParam(access = "270", value = "Enable SPARQL query logging to file on the server") Boolean enableLogging,
+                                                        @RequestParam(value = "saveThisConfig", required = false, defaultValue = "true")
+                                                        @ApiParam(access = "280", value = "Save this configuration to a file on the server") Boolean saveConfig,
+                                                        @RequestParam(value = "priority", required = false, defaultValue = "0")
+                                                        @ApiParam(access = "290", value = SCHEMA_JOB_PRIORITY_DESCRIPTION) Integer priority) {
+        SchemaExtractorRequestDto requestDto = buildRequest(request, includedClassesCsvFile, includedPropertiesCsvFile, namespacePrefixFile, enableLogging);
+        saveConfig(requestDto, saveConfig);
+        return jobService.submit(requestDto, priority != null ? priority : 0, this::extractSchemaToFile);
+    }
+
+    @RequestMapping(value = "/endpoint/jobsFromConfigFile", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            value = "Start the schema extraction (version 2) using configuration file in the background, the returned job id is used to follow the job and to download the schema",
+            consumes = MediaType.MULTIPART_FORM_DATA,
+            produces = MediaType.APPLICATION_JSON,
+            response = SchemaExtractorJobStatus.class
+    )
+    @SuppressWarnings("unused")
+    public SchemaExtractorJobStatus submitExtractionJobFromConfigFile(
+            @RequestParam(value = "configurationFile")
+            @ApiParam(access = "1", value = "Configuration YAML file") MultipartFile configurationFile,
+            @RequestParam(value = "priority", required = false, defaultValue = "0")
+            @ApiParam(access = "2", value = SCHEMA_JOB_PRIORITY_DESCRIPTION) Integer priority) {
+        SchemaExtractorRequestDto requestDto = readRequestFromConfigFile(configurationFile);
+        return jobService.submit(requestDto, priority != null ? priority : 0, this::extractSchemaToFile);
+    }
+
+    @RequestMapping(value = "/jobs", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            value = "Running and queued extraction jobs and the SPARQL queries running against each endpoint",
+            produces = MediaType.APPLICATION_JSON,
+            response = SchemaExtractorSchedulerStatus.class
+    )
+    @SuppressWarnings("unused")
+    public SchemaExtractorSchedulerStatus getExtractionJobs() {
+        return jobService.getSchedulerStatus();
+    }
+
+    @RequestMapping(value = "/jobs/{jobId}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            value = "Status of the extraction job: phase, processed property, number of sent queries and the estimated remaining time of the phase",
+            produces = MediaType.APPLICATION_JSON,
+            response = SchemaExtractorJobStatus.class
+    )
+    @SuppressWarnings("unused")
+    public SchemaExtractorJobStatus getExtractionJobStatus(@PathVariable("jobId") @ApiParam(value = "Job id") String jobId) {
+        SchemaExtractorJobStatus status = jobService.getStatus(jobId);
+        if (status == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(SCHEMA_JOB_NOT_FOUND, jobId));
+        }
+        return status;
+    }
+
+    @RequestMapping(value = "/jobs/{jobId}/result", method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON, SCHEMA_MEDIA_TYPE_SMILE, SCHEMA_MEDIA_TYPE_CBOR})
+    @ApiOperation(
+            value = "Schema extracted by the completed extraction job",
+            produces = MediaType.APPLICATION_JSON,
+            response = lv.lumii.obis.schema.model.v2.Schema.class
+    )
+    @SuppressWarnings("unused")
+    public ResponseEntity<Resource> getExtractionJobResult(@PathVariable("jobId") @ApiParam(value = "Job id") String jobId,
+                                                           @RequestHeader(value = HttpHeaders.ACCEPT, required = false)
+                                                           @ApiParam(hidden = true) String accept) {
+        SchemaExtractorJobStatus status = getExtractionJobStatus(jobId);
+        if (!SchemaExtractorJobStatus.State.completed.equals(status.getState())) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, String.format("The extraction job %s is %s", jobId, status.getState()));
+        }
+        Path resultFile = jobService.getResultFile(jobId);
+        if (resultFile == null || !Files.isRegularFile(resultFile)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, String.format("The schema of the extraction job %s is not available", jobId));
+        }
+        SchemaExtractorRequestDto.SchemaFormat format = getSchemaFormat(resultFile);
+        if (negotiateSchemaFormat(format, accept) != format) {
+            throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, String.format("The schema of the extraction job %s is available only as %s", jobId, getSchemaMediaType(format)));
+        }
+        return ResponseEntity.ok().contentType(getSchemaMediaType(format)).body(new FileSystemResource(resultFile));
+    }
+
+    @RequestMapping(value = "/jobs/{jobId}/events", method = RequestMethod.GET, produces = org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ApiOperation(
+            value = "Progress of the extraction job as Server-Sent Events: phase, property (with its query count and timings), message and end",
+            produces = org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE,
+            response = SchemaExtractorProgressEvent.class
+    )
+    @SuppressWarnings("unused")
+    public SseEmitter getExtractionJobEvents(@PathVariable("jobId") @ApiParam(value = "Job id") String jobId) {
+        checkJobNotEnded(getExtractionJobStatus(jobId));
+        SseEmitter emitter = progressEvents.subscribe(jobId);
+        // the job can end before the subscription, then no end event would close the stream
+        if (isJobEnded(getExtractionJobStatus(jobId))) {
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    @RequestMapping(value = "/jobs/{jobId}", method = RequestMethod.DELETE, produces = MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            value = "Cancel the extraction job, the SPARQL queries in flight are aborted",
+            produces = MediaType.APPLICATION_JSON,
+            response = SchemaExtractorJobStatus.class
+    )
+    @SuppressWarnings("unused")
+    public SchemaExtractorJobStatus cancelExtractionJob(@PathVariable("jobId") @ApiParam(value = "Job id") String jobId) {
+        SchemaExtractorJobStatus status = jobService.cancel(jobId);
+        if (status == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(SCHEMA_JOB_NOT_FOUND, jobId));
+        }
+        return status;
+    }
+
+    private void checkJobNotEnded(@Nonnull SchemaExtractorJobStatus status) {
+        if (isJobEnded(status)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, String.format("The extraction job %s is %s", status.getJobId(), status.getState()));
+        }
+    }
 
+    private boolean isJobEnded(@Nonnull SchemaExtractorJobStatus status) {
+        return !SchemaExtractorJobStatus.State.queued.equals(status.getState()) && !SchemaExtractorJobStatus.State.running.equals(status.getState());
+    }
+
+    @Nonnull
+    private SchemaExtractorRequestDto buildRequest(@Nonnull SchemaExtractorRequestNew request, @Nullable MultipartFile includedClassesCsvFile,
+                                                   @Nullable MultipartFile includedPropertiesCsvFile, @Nullable MultipartFile namespacePrefixFile,
+                                                   @Nullable Boolean enableLogging) {
         // 1. Create the request object
         SchemaExtractorRequestDto requestDto = requestBuilder.buildRequest(request);
         requestDto.setEnableLogging(enableLogging);
@@ -138,39 +366,11 @@ public class SchemaExtractorControllerV2 {
         // 5. Load SPARQL queries defined in the system file
         requestDto.setQueries(initializeSparqlQueries());
 
-        try {
-            // 6. Save this specific configuration to file
-            if (BooleanUtils.isTrue(saveConfig)) {
-                writeDataToFile(requestDto.getCorrelationId() + "-config.yml", objectConversionService.getYamlFromObject(requestDto));
-            }
-
-            // 7. Build the schema from the endpoint and Save the result JSON schema in file
-            String resultSchema = extractSchema(requestDto);
-
-            // 8. Return the result JSON schema
-            return resultSchema;
-
-        } catch (SparqlEndpointException e) {
-            log.error(e.getMessage());
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e);
-        } catch (Exception e) {
-            log.error(SCHEMA_EXTRACT_EXCEPTION_INTERNAL_ERROR, e);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, SCHEMA_EXTRACT_EXCEPTION_INTERNAL_ERROR, e);
-        }
+        return requestDto;
     }
 
-    @RequestMapping(value = "/endpoint/buildFullSchemaFromConfigFile", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON)
-    @ApiOperation(
-            value = "Extract and analyze data from SPARQL endpoint and build full schema model (version 2) using configuration file",
-            consumes = MediaType.MULTIPART_FORM_DATA,
-            produces = MediaType.APPLICATION_JSON,
-            response = lv.lumii.obis.schema.model.v2.Schema.class
-    )
-    @SuppressWarnings("unused")
-    public String buildFullSchemaFromEndpointV2FromConfigFile(
-            @RequestParam(value = "configurationFile")
-            @ApiParam(access = "1", value = "Configuration YAML file") MultipartFile configurationFile) {
-
+    @Nonnull
+    private SchemaExtractorRequestDto readRequestFromConfigFile(@Nullable MultipartFile configurationFile) {
         // 1. Read request parameters from the configuration YAML file
         String correlationId = SchemaExtractorRequestBuilder.generateCorrelationId();
         log.info(String.format(SCHEMA_BUILD_PARAMETERS, correlationId));
@@ -200,21 +400,27 @@ public class SchemaExtractorControllerV2 {
         // 3. Load SPARQL queries defined in the system file
         requestDto.setQueries(initializeSparqlQueries());
 
+        return requestDto;
+    }
+
+    private void saveConfig(@Nonnull SchemaExtractorRequestDto requestDto, @Nullable Boolean saveConfig) {
+        if (BooleanUtils.isTrue(saveConfig)) {
+            writeDataToFile(requestDto.getCorrelationId() + "-config.yml", objectConversionService.getYamlFromObject(requestDto));
+        }
+    }
+
+    @Nonnull
+    private Path extractSchemaToFile(@Nonnull SchemaExtractorRequestDto requestDto) {
+        Schema schema = extractSchema(requestDto);
         try {
-            // 4. Build the schema from the endpoint and Save the result JSON schema in file
-            String resultSchema = extractSchema(requestDto);
-            // 8. Return the result JSON schema
-            return resultSchema;
-        } catch (SparqlEndpointException e) {
-            log.error(e.getMessage());
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e);
-        } catch (Exception e) {
-            log.error(SCHEMA_EXTRACT_EXCEPTION_INTERNAL_ERROR, e);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, SCHEMA_EXTRACT_EXCEPTION_INTERNAL_ERROR, e);
+            return writeSchema(requestDto, schema);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Cannot write the schema to the file %s", getSchemaFileName(requestDto)), e);
         }
     }
 
-    private String extractSchema(@Nonnull SchemaExtractorRequestDto requestDto) {
+    @Nonnull
+    private Schema extractSchema(@Nonnull SchemaExtractorRequestDto requestDto) {
         log.info(String.format(SCHEMA_EXTRACT_MESSAGE_START, requestDto.printMainParameters()));
         LocalDateTime startTime = LocalDateTime.now();
 
@@ -230,19 +436,105 @@ public class SchemaExtractorControllerV2 {
         schema.setStartTime(dateTimeFormatter.format(startTime));
         schema.setEndTime(dateTimeFormatter.format(endTime));
 
-        String resultSchema = objectConversionService.getJsonFromObject(schema);
-        if (resultSchema != null) {
-            String fileName = requestDto.getCorrelationId() + ".json";
-            writeDataToFile(fileName, resultSchema);
-            log.info(String.format(SCHEMA_EXTRACT_MESSAGE_SAVED_FILE, fileName));
-        }
-
         if (!schema.getMessages().isEmpty()) {
             String messages = objectConversionService.getJsonFromObject(schema.getMessages());
             writeDataToFile(requestDto.getCorrelationId() + "-messages.json", messages);
         }
 
-        return resultSchema;
+        return schema;
+    }
+
+    /**
+     * The schema is written to the file first and the response is sent from the file, so a serialization error is reported
+     * with an error status instead of a truncated response. If the file cannot be written, the response is serialized in memory.
+     */
+    @Nonnull
+    private ResponseEntity<Resource> buildSchemaResponse(@Nonnull SchemaExtractorRequestDto requestDto, @Nonnull Schema schema) throws IOException {
+        Resource body;
+        try {
+            body = new FileSystemResource(writeSchema(requestDto, schema));
+        } catch (IOException e) {
+            log.error("Cannot write the data to the file " + getSchemaFileName(requestDto), e);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            objectConversionService.writeToStream(schema, outputStream, requestDto.getSchemaFormat(), BooleanUtils.isTrue(requestDto.getPrettyPrintSchema()));
+            body = new ByteArrayResource(outputStream.toByteArray());
+        }
+        return ResponseEntity.ok()
+                .contentType(getSchemaMediaType(requestDto.getSchemaFormat()))
+                .body(body);
+    }
+
+    /**
+     * Serializes the schema directly into the schema file, the serialized schema is not held in memory. An incomplete file is deleted.
+     */
+    @Nonnull
+    private Path writeSchema(@Nonnull SchemaExtractorRequestDto requestDto, @Nonnull Schema schema) throws IOException {
+        Path schemaFile = Paths.get(getSchemaFileName(requestDto));
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(schemaFile), SCHEMA_FILE_BUFFER_SIZE)) {
+            objectConversionService.writeToStream(schema, outputStream, requestDto.getSchemaFormat(), BooleanUtils.isTrue(requestDto.getPrettyPrintSchema()));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(schemaFile);
+            throw e;
+        }
+        log.info(String.format(SCHEMA_EXTRACT_MESSAGE_SAVED_FILE, schemaFile));
+        return schemaFile;
+    }
+
+    @Nonnull
+    private String getSchemaFileName(@Nonnull SchemaExtractorRequestDto requestDto) {
+        return requestDto.getCorrelationId() + "." + requestDto.getSchemaFormat().name();
+    }
+
+    @Nonnull
+    private SchemaExtractorRequestDto.SchemaFormat getSchemaFormat(@Nonnull Path schemaFile) {
+        for (SchemaExtractorRequestDto.SchemaFormat format : SchemaExtractorRequestDto.SchemaFormat.values()) {
+            if (schemaFile.getFileName().toString().endsWith("." + format.name())) {
+                return format;
+            }
+        }
+        return SchemaExtractorRequestDto.SchemaFormat.json;
+    }
+
+    /**
+     * The schema format from the request parameters is used if the Accept header allows it, otherwise the schema format
+     * that the client prefers. Without the Accept header the requested format is used.
+     */
+    @Nonnull
+    private SchemaExtractorRequestDto.SchemaFormat negotiateSchemaFormat(@Nonnull SchemaExtractorRequestDto.SchemaFormat requestedFormat, @Nullable String accept) {
+        if (StringUtils.isBlank(accept)) {
+            return requestedFormat;
+        }
+        List<org.springframework.http.MediaType> acceptedTypes;
+        try {
+            acceptedTypes = org.springframework.http.MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return requestedFormat;
+        }
+        acceptedTypes.removeIf(acceptedType -> acceptedType.getQualityValue() <= 0);
+        org.springframework.http.MediaType.sortBySpecificityAndQuality(acceptedTypes);
+        if (acceptedTypes.stream().anyMatch(acceptedType -> acceptedType.isCompatibleWith(getSchemaMediaType(requestedFormat)))) {
+            return requestedFormat;
+        }
+        for (org.springframework.http.MediaType acceptedType : acceptedTypes) {
+            for (SchemaExtractorRequestDto.SchemaFormat format : SchemaExtractorRequestDto.SchemaFormat.values()) {
+                if (acceptedType.isCompatibleWith(getSchemaMediaType(format))) {
+                    return format;
+                }
+            }
+        }
+        return requestedFormat;
+    }
+
+    @Nonnull
+    private org.springframework.http.MediaType getSchemaMediaType(@Nonnull SchemaExtractorRequestDto.SchemaFormat format) {
+        switch (format) {
+            case smile:
+                return org.springframework.http.MediaType.parseMediaType(SCHEMA_MEDIA_TYPE_SMILE);
+            case cbor:
+                return org.springframework.http.MediaType.parseMediaType(SCHEMA_MEDIA_TYPE_CBOR);
+            default:
+                return org.springframework.http.MediaType.APPLICATION_JSON_UTF8;
+        }
     }
 
     private String calculateExecutionTime(@Nonnull LocalDateTime startLocalDateTime, @Nonnull LocalDateTime endLocalDateTime) {
@@ -262,6 +554,25 @@ public class SchemaExtractorControllerV2 {
         }
     }
 
+    /**
+     * Checks the queries from the config file once at the startup, the invalid queries are then replaced with the built-in queries without reporting them again.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void validateSparqlQueries() {
+        int invalidQueries = 0;
+        for (Map.Entry<String, String> query : initializeSparqlQueries().entrySet()) {
+            if (!EnumUtils.isValidEnum(SchemaExtractorQueries.class, query.getKey())) {
+                log.error(String.format("Unknown SPARQL query %s in the config file %s will not be used", query.getKey(), GLOBAL_SPARQL_QUERIES_PATH));
+                invalidQueries++;
+            } else if (StringUtils.isNotEmpty(query.getValue()) && !SparqlQueryTemplate.of(query.getValue(), query.getKey()).isValid()) {
+                invalidQueries++;
+            }
+        }
+        if (invalidQueries > 0) {
+            log.error(String.format("%d SPARQL queries in the config file %s are not valid, the built-in queries will be used instead", invalidQueries, GLOBAL_SPARQL_QUERIES_PATH));
+        }
+    }
+
     @Nonnull
     protected Map<String, String> initializeSparqlQueries() {
         FileInputStream inputStream = null;
@@ -41,6 +41,7 @@ public class SchemaExtractorRequestBuilder {
     public SchemaExtractorRequestDto buildRequest(@Nonnull SchemaExtractorRequestNew request) {
         SchemaExtractorRequestDto requestDto = new SchemaExtractorRequestDto(generateCorrelationId());
         requestDto.setEndpointUrl(request.getEndpointUrl());
+        requestDto.setReplicaEndpointUrls(request.getReplicaEndpointUrls());
         requestDto.setGraphName(request.getGraphName());
         requestDto.setCalculateSubClassRelations(request.getCalculateSubClassRelations());
         requestDto.setCalculateMultipleInheritanceSuperclasses(request.getCalculateMultipleInheritanceSuperclasses());
@@ -62,6 +63,7 @@ public class SchemaExtractorRequestBuilder {
         requestDto.setSampleLimitForPropertyToPropertyRelationCalculation(null);
         requestDto.setCalculateInstanceNamespaces(Enums.getIfPresent(SchemaExtractorRequestDto.InstanceNamespacesMode.class, request.getCalculateInstanceNamespaces().name()).orNull());
         requestDto.setSampleLimitForInstanceNamespacesCalculation(request.getSampleLimitForInstanceNamespacesCalculation());
+        requestDto.setInstanceNamespacesQueryMode(Enums.getIfPresent(SchemaExtractorRequestDto.InstanceNamespacesQueryMode.class, request.getInstanceNamespacesQueryMode().name()).orNull());
         requestDto.setIncludedLabels(applyLabels(request.getAddedLabels()));
         requestDto.setMinimalAnalyzedClassSize(request.getMinimalAnalyzedClassSize());
         requestDto.setAddIntersectionClasses(Enums.getIfPresent(SchemaExtractorRequestDto.ShowIntersectionClassesMode.class, request.getAddIntersectionClasses().name()).orNull());
@@ -76,6 +78,26 @@ public class SchemaExtractorRequestBuilder {
         requestDto.setSmallQueryTimeout(request.getSmallQueryTimeout());
         requestDto.setDelayOnFailure(request.getDelayOnFailure());
         requestDto.setWaitingTimeForEndpoint(request.getWaitingTimeForEndpoint());
+        requestDto.setMaxConcurrentQueries(request.getMaxConcurrentQueries());
+        requestDto.setUseResponseCache(request.getUseResponseCache());
+        requestDto.setResponseCacheTtl(request.getResponseCacheTtl());
+        requestDto.setResponseCacheMaxSize(request.getResponseCacheMaxSize());
+        requestDto.setSaveCheckpoints(request.getSaveCheckpoints());
+        requestDto.setResumeFromCorrelationId(request.getResumeFromCorrelationId());
+        requestDto.setUseHttp2(request.getUseHttp2());
+        requestDto.setUseHttpCompression(request.getUseHttpCompression());
+        requestDto.setMaxConnectionsPerEndpoint(request.getMaxConnectionsPerEndpoint());
+        requestDto.setUseAdaptiveLimits(request.getUseAdaptiveLimits());
+        requestDto.setSaveQueryTrace(request.getSaveQueryTrace());
+        requestDto.setResultsParser(Enums.getIfPresent(SchemaExtractorRequestDto.ResultsParserMode.class, request.getResultsParser().name()).orNull());
+        requestDto.setUseVirtualThreads(request.getUseVirtualThreads());
+        requestDto.setUseQueryMemo(request.getUseQueryMemo());
+        requestDto.setCalculatePropertyTypesInBulk(request.getCalculatePropertyTypesInBulk());
+        requestDto.setCheckSuperclassesInBatch(request.getCheckSuperclassesInBatch());
+        requestDto.setReplicaBalancing(Enums.getIfPresent(SchemaExtractorRequestDto.ReplicaBalancingMode.class, request.getReplicaBalancing().name()).orNull());
+        requestDto.setPropertyShards(request.getPropertyShards());
+        requestDto.setPrettyPrintSchema(request.getPrettyPrintSchema());
+        requestDto.setSchemaFormat(Enums.getIfPresent(SchemaExtractorRequestDto.SchemaFormat.class, request.getSchemaFormat().name()).orNull());
         requestDto.setLogNoClassesForProperty(Enums.getIfPresent(SchemaExtractorRequestDto.NoClassesLoggingOptions.class, request.getLogNoClassesForProperty().name()).orNull());
         requestDto.setCrossCheckTargetClassesOnNonLiteralPropertyObjectCheckFailure(request.getCrossCheckTargetClassesOnNonLiteralPropertyObjectCheckFailure());
         return requestDto;
@@ -23,6 +23,8 @@ public class SchemaExtractorRequestNew {
 
     public enum InstanceNamespacesMode {no, detailed, overview}
 
+    public enum InstanceNamespacesQueryMode {perElement, bulk, sample}
+
     public enum DistinctSubjectsAndObjectsMode {no, propertyLevel, yes}
 
     public enum BlankNodeMode {no, targetsOnly, full}
@@ -31,9 +33,19 @@ public class SchemaExtractorRequestNew {
 
     public enum NoClassesLoggingOptions {yes, no, sourcesOnly}
 
+    public enum ResultsParserMode {jena, json, tsv}
+
+    public enum ReplicaBalancingMode {leastOutstanding, latencyWeighted}
+
+    public enum SchemaFormat {json, smile, cbor}
+
     @ApiParam(access = "10", value = "SPARQL Endpoint URL, for example, http://localhost:8890/sparql", required = true)
     private String endpointUrl;
 
+    @ApiParam(access = "11", value = "URLs of the read replicas of the SPARQL endpoint (optional). The replicas must return the same data as the endpoint, " +
+            "the queries are distributed among the endpoint and its replicas", allowEmptyValue = true)
+    private List<String> replicaEndpointUrls;
+
     @ApiParam(access = "20", value = "Named Graph (optional). If no graph name provided, the search will involve all graphs from the endpoint", allowEmptyValue = true)
     private String graphName;
 
@@ -105,6 +117,11 @@ public class SchemaExtractorRequestNew {
     @ApiParam(hidden = true, access = "141", value = "Limit of instances to use in namespace calculation (no value or 0 means all data will be used)", defaultValue = "1000", required = false)
     private Long sampleLimitForInstanceNamespacesCalculation;
 
+    @ApiParam(hidden = true, access = "142", value = "How instance namespaces are calculated: 'perElement' - one query per class and two per property, " +
+            "'bulk' - grouped queries for batches of classes and properties, 'sample' - instances sampled once per class and property (sampleLimitForInstanceNamespacesCalculation) " +
+            "and namespaces derived locally; in overview mode 'bulk' also uses samples (default = perElement)", defaultValue = "perElement", required = false)
+    private InstanceNamespacesQueryMode instanceNamespacesQueryMode;
+
     @ApiParam(access = "150", value = "Properties for class and property labels. rdfs:label and skos:prefLabel assumed by default. For labels in specific languages use @{en,de} notation after the label property iri or short form. To exclude a default labeling property, use property@{-} notation.", allowEmptyValue = true)
     private List<String> addedLabels;
 
@@ -150,6 +167,55 @@ public class SchemaExtractorRequestNew {
     @ApiParam(hidden = true, access = "239", value = "Controls logging when a property has no source or target (for properties with non-literal objects) classes (default = no)", defaultValue = "no", required = true)
     private NoClassesLoggingOptions logNoClassesForProperty;
 
+    @ApiParam(hidden = true, access = "240", value = "Maximum number of properties processed in parallel (each with its own SPARQL queries). 1 or null means sequential processing (default = 1)", defaultValue = "1", required = false)
+    private Integer maxConcurrentQueries;
+
+    @ApiParam(hidden = true, access = "241", value = "Read SPARQL responses from the local response cache and store new responses in it (default = false)", defaultValue = "false", required = false)
+    private Boolean useResponseCache;
+    @ApiParam(hidden = true, access = "242", value = "Time to live for the cached SPARQL responses, in hours. 0 means the cached responses do not expire (default = 168)", defaultValue = "168", required = false)
+    private Long responseCacheTtl;
+    @ApiParam(hidden = true, access = "243", value = "Maximum size of the local response cache, in megabytes. Least recently used responses are removed when the size is exceeded (default = 1024)", defaultValue = "1024", required = false)
+    private Long responseCacheMaxSize;
+    @ApiParam(hidden = true, access = "244", value = "Save the extraction state to ./checkpoints/{correlationId} after each phase and each processed property, so that an interrupted extraction can be resumed (default = false)", defaultValue = "false", required = false)
+    private Boolean saveCheckpoints;
+    @ApiParam(hidden = true, access = "245", value = "Correlation ID of an interrupted extraction. Its checkpoints are reloaded and only the unfinished work is done", required = false)
+    private String resumeFromCorrelationId;
+    @ApiParam(hidden = true, access = "246", value = "Use HTTP/2 for the SPARQL requests if the endpoint supports it, otherwise HTTP/1.1 is used (default = true)", defaultValue = "true", required = false)
+    private Boolean useHttp2;
+    @ApiParam(hidden = true, access = "247", value = "Request gzip compressed SPARQL responses (default = true)", defaultValue = "true", required = false)
+    private Boolean useHttpCompression;
+    @ApiParam(hidden = true, access = "248", value = "Maximum number of simultaneous connections to the SPARQL endpoint, shared by all running extractions with the same value; 0 means no limit (default = 0)", defaultValue = "0", required = false)
+    private Integer maxConnectionsPerEndpoint;
+    @ApiParam(hidden = true, access = "249", value = "Start the fallback LIMIT queries from the largest limit that is expected to finish within the query timeout, based on the earlier queries to the same endpoint (default = false)", defaultValue = "false", required = false)
+    private Boolean useAdaptiveLimits;
+    @ApiParam(hidden = true, access = "251", value = "Write every SPARQL request of the extraction to the file {correlationId}-trace.jsonl (default = false)", defaultValue = "false", required = false)
+    private Boolean saveQueryTrace;
+    @ApiParam(hidden = true, access = "252", value = "Parser of the SPARQL query results: 'jena' (Jena result sets), 'json' or 'tsv' (results read directly from the response; " +
+            "if the endpoint does not return this format, Jena is used) (default = jena)", defaultValue = "jena", required = false)
+    private ResultsParserMode resultsParser;
+    @ApiParam(hidden = true, access = "253", value = "Send the independent probe queries (superclass, class intersection and minimal cardinality checks) ahead of their use, " +
+            "on virtual threads if the Java version supports them; the queries sent at the same time are limited by maxConnectionsPerEndpoint (default = false)", defaultValue = "false", required = false)
+    private Boolean useVirtualThreads;
+    @ApiParam(hidden = true, access = "254", value = "Send every distinct query only once per extraction, the repeated queries reuse the response of the first one (default = false)", defaultValue = "false", required = false)
+    private Boolean useQueryMemo;
+    @ApiParam(hidden = true, access = "255", value = "Count the URL and literal values of all properties with one grouped query; the properties missing from its results " +
+            "(or all properties, if the query fails) are counted one by one (default = false)", defaultValue = "false", required = false)
+    private Boolean calculatePropertyTypesInBulk;
+    @ApiParam(hidden = true, access = "256", value = "Check all superclass candidates of a class with one query (per classification property of the candidates); " +
+            "the candidates are checked one by one only if this query fails (default = false)", defaultValue = "false", required = false)
+    private Boolean checkSuperclassesInBatch;
+    @ApiParam(hidden = true, access = "257", value = "Choice of the replica endpoint for each query: 'leastOutstanding' (the replica with the fewest unfinished queries) " +
+            "or 'latencyWeighted' (unfinished queries weighted with the average response time of the replica) (default = leastOutstanding)", defaultValue = "leastOutstanding", required = false)
+    private ReplicaBalancingMode replicaBalancing;
+    @ApiParam(hidden = true, access = "258", value = "Number of shards of the property enrichment processed by this instance and the worker instances " +
+            "that share its shards directory; 1 - the properties are processed by this instance only (default = 1)", defaultValue = "1", required = false)
+    private Integer propertyShards;
+    @ApiParam(hidden = true, access = "259", value = "Indent the JSON of the extracted schema; false gives a smaller file and response (default = true)", defaultValue = "true", required = false)
+    private Boolean prettyPrintSchema;
+    @ApiParam(hidden = true, access = "261", value = "Format of the extracted schema: 'json', or the binary 'smile' or 'cbor' with the same structure, " +
+            "smaller and faster to load than JSON (default = json). If the Accept header does not allow this format, the accepted format is returned", defaultValue = "json", required = false)
+    private SchemaFormat schemaFormat;
+
     public Boolean getCalculateSubClassRelations() {
         if (calculateSubClassRelations == null) {
             calculateSubClassRelations = Boolean.TRUE;
@@ -221,6 +287,28 @@ public class SchemaExtractorRequestNew {
         return logNoClassesForProperty;
     }
 
+    @Nonnull
+    public ResultsParserMode getResultsParser() {
+        if (resultsParser == null) {
+            resultsParser = ResultsParserMode.jena;
+        }
+        return resultsParser;
+    }
+
+    public ReplicaBalancingMode getReplicaBalancing() {
+        if (replicaBalancing == null) {
+            replicaBalancing = ReplicaBalancingMode.leastOutstanding;
+        }
+        return replicaBalancing;
+    }
+
+    public SchemaFormat getSchemaFormat() {
+        if (schemaFormat == null) {
+            schemaFormat = SchemaFormat.json;
+        }
+        return schemaFormat;
+    }
+
     public CalculatePropertyFeatureMode getCalculateDataTypes() {
         if (calculateDataTypes == null) {
             calculateDataTypes = CalculatePropertyFeatureMode.propertyLevelAndClassContext;
@@ -242,6 +330,14 @@ public class SchemaExtractorRequestNew {
         return calculateInstanceNamespaces;
     }
 
+    @Nonnull
+    public InstanceNamespacesQueryMode getInstanceNamespacesQueryMode() {
+        if (instanceNamespacesQueryMode == null) {
+            instanceNamespacesQueryMode = InstanceNamespacesQueryMode.perElement;
+        }
+        return instanceNamespacesQueryMode;
+    }
+
     @Nonnull
     public List<String> getPrincipalClassificationProperties() {
         if (principalClassificationProperties == null) {
@@ -266,6 +362,14 @@ public class SchemaExtractorRequestNew {
         return simpleClassificationProperties;
     }
 
+    @Nonnull
+    public List<String> getReplicaEndpointUrls() {
+        if (replicaEndpointUrls == null) {
+            replicaEndpointUrls = new ArrayList<>();
+        }
+        return replicaEndpointUrls;
+    }
+
     @Nonnull
     public List<String> getExcludedNamespaces() {
         if (excludedNamespaces == null) {
@@ -28,6 +28,9 @@ public class SchemaConstants {
     public static final String GLOBAL_NAMESPACE_PATH = "./namespaces.json";
 
     public static final String GLOBAL_SPARQL_QUERIES_PATH = "./queries.properties";
+    public static final String GLOBAL_RESPONSE_CACHE_PATH = "./response-cache";
+    public static final String GLOBAL_CHECKPOINT_PATH = "./checkpoints";
+    public static final String GLOBAL_SHARDS_PATH = "./shards";
     public static final String DEFAULT_NAMESPACE_PREFIX = ":";
     public static final String DEFAULT_NAMESPACE_PREFIX_AUTO = "n";
     public static final String XSD_NAMESPACE = "http://www.w3.org/2001/XMLSchema#";
@@ -85,6 +88,8 @@ public class SchemaConstants {
     public static final String SPARQL_QUERY_BINDING_NAME_CLASS_TARGET = "targetClass";
     public static final String SPARQL_QUERY_BINDING_NAME_CLASS_TARGET_FULL = "<targetClass>";
     public static final String SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT = "instances";
+    public static final String SPARQL_QUERY_BINDING_NAME_OBJECT_TRIPLE_COUNT = "objectTriples";
+    public static final String SPARQL_QUERY_BINDING_NAME_DATA_TRIPLE_COUNT = "dataTriples";
     public static final String SPARQL_QUERY_BINDING_NAME_NAMESPACE = "nspace";
     public static final String SPARQL_QUERY_BINDING_NAME_NAMESPACE_COUNT = "nsCount";
     public static final String SPARQL_QUERY_BINDING_NAME_PROPERTY = "property";
@@ -98,6 +103,8 @@ public class SchemaConstants {
     public static final String SPARQL_QUERY_BINDING_NAME_LIMIT = "<limit>";
     public static final String SPARQL_QUERY_BINDING_NAME_X = "x";
     public static final String SPARQL_QUERY_BINDING_NAME_Y = "y";
+    public static final String SPARQL_QUERY_BINDING_NAME_SUBJECT = "subject";
+    public static final String SPARQL_QUERY_BINDING_NAME_OBJECT = "object";
     public static final String SPARQL_QUERY_BINDING_NAME_PROPERTY_OTHER = "p2";
     public static final String SPARQL_QUERY_BINDING_NAME_CUSTOM_FILTER = "customFilter";
     public static final String SPARQL_QUERY_BINDING_NAME_VALUES = "<valuesClause>";
@@ -1,6 +1,8 @@
 package lv.lumii.obis.schema.model.v2;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorMessage;
@@ -54,6 +56,10 @@ public class Schema {
     @JsonProperty("Messages")
     private List<SchemaExtractorMessage> messages;
 
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    private final transient ThreadLocal<List<SchemaExtractorMessage>> bufferedMessages = new ThreadLocal<>();
+
     @Nonnull
     public List<SchemaClass> getClasses() {
         if (classes == null) {
@@ -80,10 +86,31 @@ public class Schema {
 
     @Nonnull
     public List<SchemaExtractorMessage> getMessages() {
-        if (messages == null) {
-            messages = new ArrayList<>();
+        List<SchemaExtractorMessage> threadMessages = bufferedMessages.get();
+        if (threadMessages != null) {
+            return threadMessages;
+        }
+        synchronized (this) {
+            if (messages == null) {
+                messages = new ArrayList<>();
+            }
+            return messages;
         }
-        return messages;
+    }
+
+    /**
+     * Redirects messages added by the current thread to a separate buffer until {@link #stopMessageBuffering()} is called.
+     * Used for parallel processing, so that the buffered messages can be appended to the schema in a deterministic order.
+     */
+    public void startMessageBuffering() {
+        bufferedMessages.set(new ArrayList<>());
+    }
+
+    @Nonnull
+    public List<SchemaExtractorMessage> stopMessageBuffering() {
+        List<SchemaExtractorMessage> threadMessages = bufferedMessages.get();
+        bufferedMessages.remove();
+        return threadMessages != null ? threadMessages : new ArrayList<>();
     }
 
     @Nonnull
@@ -6,7 +6,9 @@ import lombok.Getter;
 import lombok.Setter;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Setter
 @Getter
@@ -43,12 +45,12 @@ public class SchemaClass extends SchemaElement {
     @JsonIgnore
     private Map<String, TripleCount> outgoingProperties;
     @JsonIgnore
-    private Boolean outgoingPropertiesFullList;
+    private volatile Boolean outgoingPropertiesFullList;
 
     @JsonIgnore
     private Map<String, TripleCount> incomingProperties;
     @JsonIgnore
-    private Boolean incomingPropertiesFullList;
+    private volatile Boolean incomingPropertiesFullList;
 
     @JsonProperty("InstanceNamespaces")
     private List<InstanceNamespace> instanceNamespaces;
@@ -86,18 +88,70 @@ public class SchemaClass extends SchemaElement {
     }
 
     @Nonnull
-    public Map<String, TripleCount> getOutgoingProperties() {
+    public synchronized Map<String, TripleCount> getOutgoingProperties() {
         if (outgoingProperties == null) {
-            outgoingProperties = new HashMap<>();
+            outgoingProperties = new ConcurrentHashMap<>();
         }
         return outgoingProperties;
     }
 
     @Nonnull
-    public Map<String, TripleCount> getIncomingProperties() {
+    public synchronized Map<String, TripleCount> getIncomingProperties() {
         if (incomingProperties == null) {
-            incomingProperties = new HashMap<>();
+            incomingProperties = new ConcurrentHashMap<>();
         }
         return incomingProperties;
     }
+
+    public synchronized Integer getOutgoingPropertiesOK() {
+        return outgoingPropertiesOK;
+    }
+
+    public synchronized void setOutgoingPropertiesOK(Integer outgoingPropertiesOK) {
+        this.outgoingPropertiesOK = outgoingPropertiesOK;
+    }
+
+    /**
+     * Sets the outgoing properties quality flag only if it is not set yet (properties may be processed in parallel).
+     */
+    public synchronized void initOutgoingPropertiesOK(@Nonnull Integer outgoingPropertiesOK) {
+        if (this.outgoingPropertiesOK == null) {
+            this.outgoingPropertiesOK = outgoingPropertiesOK;
+        }
+    }
+
+    /**
+     * Takes the lower of the current and the given flag, the flag set by the properties processed elsewhere (shards, checkpoints).
+     */
+    public synchronized void mergeOutgoingPropertiesOK(@Nullable Integer outgoingPropertiesOK) {
+        if (outgoingPropertiesOK != null && (this.outgoingPropertiesOK == null || outgoingPropertiesOK < this.outgoingPropertiesOK)) {
+            this.outgoingPropertiesOK = outgoingPropertiesOK;
+        }
+    }
+
+    public synchronized Integer getIncomingPropertiesOK() {
+        return incomingPropertiesOK;
+    }
+
+    public synchronized void setIncomingPropertiesOK(Integer incomingPropertiesOK) {
+        this.incomingPropertiesOK = incomingPropertiesOK;
+    }
+
+    /**
+     * Sets the incoming properties quality flag only if it is not set yet (properties may be processed in parallel).
+     */
+    public synchronized void initIncomingPropertiesOK(@Nonnull Integer incomingPropertiesOK) {
+        if (this.incomingPropertiesOK == null) {
+            this.incomingPropertiesOK = incomingPropertiesOK;
+        }
+    }
+
+    /**
+     * Takes the lower of the current and the given flag, the flag set by the properties processed elsewhere (shards, checkpoints).
+     */
+    public synchronized void mergeIncomingPropertiesOK(@Nullable Integer incomingPropertiesOK) {
+        if (incomingPropertiesOK != null && (this.incomingPropertiesOK == null || incomingPropertiesOK < this.incomingPropertiesOK)) {
+            this.incomingPropertiesOK = incomingPropertiesOK;
+        }
+    }
 }
@@ -10,6 +10,9 @@ public class SchemaIntersactionClass {
     private String className;
     private Long instanceCount;
 
+    public SchemaIntersactionClass() {
+    }
+
     public SchemaIntersactionClass(String className, Long instanceCount) {
         this.className = className;
         this.instanceCount = instanceCount;
@@ -10,6 +10,9 @@ public class TripleCount {
     private Long tripleCount;
     private Long tripleCountBase;
 
+    public TripleCount() {
+    }
+
     public TripleCount(Long tripleCount, Long tripleCountBase) {
         this.tripleCount = tripleCount;
         this.tripleCountBase = tripleCountBase;
@@ -3,66 +3,160 @@ package lv.lumii.obis.schema.services;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator;
 import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
 import lv.lumii.obis.schema.model.v1.Schema;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorRequestDto.SchemaFormat;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * JSON, YAML, Smile and CBOR conversions. The mappers are created once and shared, so that Jackson builds the serializers
+ * and deserializers of a class only once; the configured ObjectReader and ObjectWriter instances are immutable and thread-safe.
+ */
 @Service
 public class ObjectConversionService {
 
+    private final ObjectWriter jsonWriter;
+    private final ObjectWriter jsonStreamWriter;
+    private final ObjectWriter jsonPrettyStreamWriter;
+    private final ObjectWriter smileStreamWriter;
+    private final ObjectWriter cborStreamWriter;
+    private final ObjectWriter yamlWriter;
+
+    private final ObjectMapper jsonReaderMapper;
+    private final ObjectMapper yamlReaderMapper;
+    private final Map<Class<?>, ObjectReader> jsonReaders = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectReader> jsonFileReaders = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectReader> yamlReaders = new ConcurrentHashMap<>();
+
+    public ObjectConversionService() {
+        ObjectMapper jsonMapper = new ObjectMapper();
+        jsonMapper.setSerializationInclusion(Include.NON_NULL);
+        jsonWriter = jsonMapper.writerWithDefaultPrettyPrinter();
+        // the streams are closed by their owners
+        jsonStreamWriter = jsonMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        jsonPrettyStreamWriter = jsonWriter.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        smileMapper.setSerializationInclusion(Include.NON_NULL);
+        smileStreamWriter = smileMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+        cborMapper.setSerializationInclusion(Include.NON_NULL);
+        cborStreamWriter = cborMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        ObjectMapper yamlMapper = YAMLMapper.builder()
+                .disable(YAMLGenerator.Feature.WRITE_DOC_START_MARKER)
+                .disable(YAMLGenerator.Feature.USE_NATIVE_TYPE_ID)
+                .build();
+        yamlMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        yamlWriter = yamlMapper.writer();
+
+        jsonReaderMapper = new ObjectMapper();
+
+        yamlReaderMapper = new ObjectMapper(new YAMLFactory());
+        yamlReaderMapper.setSerializationInclusion(Include.NON_NULL);
+        yamlReaderMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        yamlReaderMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+    }
+
     @Nullable
     public String getJsonSchemaString(@Nonnull Schema schema) {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.setSerializationInclusion(Include.NON_NULL);
-        try {
-            return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(schema);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return null;
+        return getJsonFromObject(schema);
     }
 
     @Nullable
     public String getJsonFromObject(@Nonnull Object object) {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.setSerializationInclusion(Include.NON_NULL);
         try {
-            return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(object);
+            return jsonWriter.writeValueAsString(object);
         } catch (Exception e) {
             e.printStackTrace();
         }
         return null;
     }
 
+    /**
+     * Serializes the object as compact JSON on a single line, for the line based files.
+     */
+    @Nonnull
+    public String getJsonLineFromObject(@Nonnull Object object) throws JsonProcessingException {
+        return jsonStreamWriter.writeValueAsString(object);
+    }
+
+    /**
+     * Serializes the object directly into the stream, without building the JSON string. The stream is flushed but not closed.
+     *
+     * @param prettyPrint indent the output, applies to the json format only
+     */
+    public void writeToStream(@Nonnull Object object, @Nonnull OutputStream outputStream, @Nonnull SchemaFormat format, boolean prettyPrint) throws IOException {
+        switch (format) {
+            case smile:
+                smileStreamWriter.writeValue(outputStream, object);
+                break;
+            case cbor:
+                cborStreamWriter.writeValue(outputStream, object);
+                break;
+            default:
+                (prettyPrint ? jsonPrettyStreamWriter : jsonStreamWriter).writeValue(outputStream, object);
+        }
+    }
+
     @Nullable
     public <T> T getObjectFromJsonStream(@Nonnull InputStream inputStream, Class<T> objectToConvert) {
-        ObjectMapper mapper = new ObjectMapper();
         try {
-            return mapper.readValue(inputStream, objectToConvert);
+            return jsonReaders.computeIfAbsent(objectToConvert, jsonReaderMapper::readerFor).readValue(inputStream);
         } catch (Exception e) {
             e.printStackTrace();
         }
         return null;
     }
 
+    /**
+     * Writes the object as compact JSON into the file, the file is created or replaced.
+     */
+    public void writeJsonToFile(@Nonnull Object object, @Nonnull Path file) throws IOException {
+        try (OutputStream outputStream = Files.newOutputStream(file)) {
+            jsonStreamWriter.writeValue(outputStream, object);
+        }
+    }
+
+    /**
+     * Reads the object from the JSON file. Unknown properties are ignored, the file may be written by another version of the extractor.
+     */
+    @Nonnull
+    public <T> T readJsonFromFile(@Nonnull Path file, @Nonnull Class<T> objectClass) throws IOException {
+        ObjectReader reader = jsonFileReaders.computeIfAbsent(objectClass,
+                c -> jsonReaderMapper.readerFor(c).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return reader.readValue(inputStream);
+        }
+    }
+
     @Nullable
     public String getYamlFromObject(@Nonnull Object object) {
-        ObjectMapper mapper = YAMLMapper.builder()
-                .disable(YAMLGenerator.Feature.WRITE_DOC_START_MARKER)
-                .disable(YAMLGenerator.Feature.USE_NATIVE_TYPE_ID)
-                .build();
-        mapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
         try {
-            return mapper.writer().writeValueAsString(object);
+            return yamlWriter.writeValueAsString(object);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -71,11 +165,7 @@ public class ObjectConversionService {
 
     @Nullable
     public <T> T getObjectFromYamlStream(@Nonnull InputStream inputStream, Class<T> objectToConvert) throws Exception {
-        ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
-        mapper.setSerializationInclusion(Include.NON_NULL);
-        mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
-        mapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
-        return mapper.readValue(inputStream, objectToConvert);
+        return yamlReaders.computeIfAbsent(objectToConvert, yamlReaderMapper::readerFor).readValue(inputStream);
     }
 
 }
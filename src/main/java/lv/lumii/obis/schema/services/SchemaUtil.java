@@ -88,6 +88,20 @@ public class SchemaUtil {
         entity.setNamespace(namespace);
     }
 
+    /**
+     * Same as REPLACE(STR(?x), "(.*[/#]).*", "$1") in the namespace queries - the IRI up to the last '/' or '#', or the whole IRI if there is none.
+     */
+    @Nonnull
+    public static String getInstanceNamespace(@Nonnull String iri) {
+        for (int i = iri.length() - 1; i >= 0; i--) {
+            char c = iri.charAt(i);
+            if (c == '/' || c == '#') {
+                return iri.substring(0, i + 1);
+            }
+        }
+        return iri;
+    }
+
     @Nullable
     public static String addQuotesToString(@Nullable String str) {
         return (str == null) ? null : "\"" + str + "\"";
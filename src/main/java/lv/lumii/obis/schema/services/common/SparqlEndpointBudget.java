@@ -0,0 +1,157 @@
+package lv.lumii.obis.schema.services.common;
+
+import lombok.Getter;
+import lv.lumii.obis.schema.services.common.dto.SparqlEndpointConfig;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Server wide limit of the SPARQL queries running at the same time against one endpoint, shared by all extractions
+ * (application property schema-extractor.jobs.max-queries-per-endpoint, 0 - no limit). A freed query slot goes to the waiting extraction
+ * that has the fewest queries running against the endpoint, so an extraction with many querying threads cannot take the whole budget.
+ * The limit applies in addition to maxConnectionsPerEndpoint of the request.
+ */
+@Service
+public class SparqlEndpointBudget {
+
+    @Value("${schema-extractor.jobs.max-queries-per-endpoint:0}")
+    private int maxQueriesPerEndpoint;
+
+    private final Map<String, EndpointQueue> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Waits for a query slot of the endpoint.
+     *
+     * @return the slot that must be returned with {@link #release(Slot)}, or null if the queries are not limited
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    @Nullable
+    public Slot acquire(@Nonnull SparqlEndpointConfig config) throws InterruptedException {
+        if (maxQueriesPerEndpoint <= 0) {
+            return null;
+        }
+        EndpointQueue queue = endpoints.computeIfAbsent(config.getEndpointUrl(), url -> new EndpointQueue(url, maxQueriesPerEndpoint));
+        String extractionId = StringUtils.defaultString(config.getCorrelationId());
+        queue.acquire(extractionId);
+        return new Slot(queue, extractionId);
+    }
+
+    public void release(@Nullable Slot slot) {
+        if (slot != null) {
+            slot.queue.release(slot.extractionId);
+        }
+    }
+
+    /**
+     * @return the query slots of the endpoints that were used
+     */
+    @Nonnull
+    public List<EndpointStatus> getStatus() {
+        List<EndpointStatus> status = new ArrayList<>();
+        endpoints.values().forEach(queue -> status.add(queue.getStatus()));
+        return status;
+    }
+
+    public static class Slot {
+
+        private final EndpointQueue queue;
+        private final String extractionId;
+
+        private Slot(@Nonnull EndpointQueue queue, @Nonnull String extractionId) {
+            this.queue = queue;
+            this.extractionId = extractionId;
+        }
+    }
+
+    @Getter
+    public static class EndpointStatus {
+
+        private final String endpointUrl;
+        private final int maxQueries;
+        private final int runningQueries;
+        private final int waitingQueries;
+        private final Map<String, Integer> runningQueriesByExtraction;
+
+        private EndpointStatus(String endpointUrl, int maxQueries, int runningQueries, int waitingQueries, Map<String, Integer> runningQueriesByExtraction) {
+            this.endpointUrl = endpointUrl;
+            this.maxQueries = maxQueries;
+            this.runningQueries = runningQueries;
+            this.waitingQueries = waitingQueries;
+            this.runningQueriesByExtraction = runningQueriesByExtraction;
+        }
+    }
+
+    private static class EndpointQueue {
+
+        private final String endpointUrl;
+        private final int maxQueries;
+        private final Map<String, Integer> runningByExtraction = new HashMap<>();
+        private final List<Waiter> waiting = new LinkedList<>();
+        private int running;
+
+        private EndpointQueue(@Nonnull String endpointUrl, int maxQueries) {
+            this.endpointUrl = endpointUrl;
+            this.maxQueries = maxQueries;
+        }
+
+        private synchronized void acquire(@Nonnull String extractionId) throws InterruptedException {
+            Waiter waiter = new Waiter(extractionId);
+            waiting.add(waiter);
+            try {
+                while (running >= maxQueries || nextWaiting() != waiter) {
+                    wait();
+                }
+            } finally {
+                waiting.remove(waiter);
+                // the next waiting thread can change
+                notifyAll();
+            }
+            running++;
+            runningByExtraction.merge(extractionId, 1, Integer::sum);
+        }
+
+        private synchronized void release(@Nonnull String extractionId) {
+            running--;
+            runningByExtraction.computeIfPresent(extractionId, (id, count) -> count > 1 ? count - 1 : null);
+            notifyAll();
+        }
+
+        /**
+         * The first waiting thread of the extraction with the fewest running queries.
+         */
+        @Nullable
+        private Waiter nextWaiting() {
+            Waiter next = null;
+            int nextRunning = Integer.MAX_VALUE;
+            for (Waiter waiter : waiting) {
+                int waiterRunning = runningByExtraction.getOrDefault(waiter.extractionId, 0);
+                if (waiterRunning < nextRunning) {
+                    next = waiter;
+                    nextRunning = waiterRunning;
+                }
+            }
+            return next;
+        }
+
+        @Nonnull
+        private synchronized EndpointStatus getStatus() {
+            return new EndpointStatus(endpointUrl, maxQueries, running, waiting.size(), new TreeMap<>(runningByExtraction));
+        }
+    }
+
+    private static class Waiter {
+
+        private final String extractionId;
+
+        private Waiter(@Nonnull String extractionId) {
+            this.extractionId = extractionId;
+        }
+    }
+
+}
@@ -0,0 +1,371 @@
+package lv.lumii.obis.schema.services.common;
+
+import lombok.extern.slf4j.Slf4j;
+import lv.lumii.obis.schema.services.SchemaUtil;
+import lv.lumii.obis.schema.services.SparqlEndpointException;
+import lv.lumii.obis.schema.services.common.dto.SparqlEndpointConfig;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+import static lv.lumii.obis.schema.services.extractor.v2.SchemaExtractorQueries.ENDPOINT_HEALTH_CHECK;
+import static org.apache.commons.lang3.BooleanUtils.isTrue;
+
+/**
+ * Circuit breaker per SPARQL endpoint. When a query fails, one health check query is sent for all queries that failed at the same time.
+ * If the check fails, the circuit is open: new queries to the endpoint wait instead of being sent, and a single background prober
+ * checks the endpoint with exponential backoff and jitter (or after the time given in the Retry-After header of a 429 or 503 response).
+ * When a probe succeeds, the circuit is closed and all waiting queries - also from other extractions - continue.
+ */
+@Slf4j
+@Service
+public class SparqlEndpointCircuitBreaker {
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private static final long INITIAL_BACKOFF_IN_SECONDS = 60L;
+    private static final long MAX_BACKOFF_IN_SECONDS = 15 * 60L;
+    private static final long PROBE_TIMEOUT_IN_SECONDS = 60L;
+    private static final String DEFAULT_PROBE_ACCEPT_HEADER = "application/sparql-results+json, application/sparql-results+xml;q=0.9, */*;q=0.1";
+    private static final Pattern JSON_FIRST_BINDING = Pattern.compile("\"bindings\"\\s*:\\s*\\[\\s*\\{");
+    private static final Pattern XML_FIRST_RESULT = Pattern.compile("<([\\w.-]+:)?result[\\s>]");
+
+    @Autowired
+    private SparqlHttpClientProvider httpClientProvider;
+
+    private final Map<String, EndpointCircuit> circuits = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sparql-endpoint-prober");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Nonnull
+    public State getState(@Nonnull SparqlEndpointConfig config) {
+        EndpointCircuit circuit = circuits.get(config.getEndpointUrl());
+        return circuit != null ? circuit.getState() : State.CLOSED;
+    }
+
+    /**
+     * Called after a failed query. Checks the endpoint (one check is shared by all queries that failed at the same time)
+     * and waits for the recovery if the check fails.
+     *
+     * @return true if the endpoint was available without waiting
+     * @throws SparqlEndpointException if the endpoint does not recover within waitingTimeForEndpoint
+     */
+    public boolean awaitAvailable(@Nonnull SparqlEndpointConfig config) {
+        EndpointCircuit circuit = getCircuit(config);
+        CompletableFuture<Boolean> probe = circuit.startProbeIfClosed(config);
+        boolean healthy = probe != null && isTrue(getProbeResult(probe, config));
+        // also waits for delayOnFailure if the endpoint was healthy
+        awaitClosed(config);
+        return healthy;
+    }
+
+    /**
+     * Waits while the circuit of the endpoint is open. Returns immediately if the circuit is closed.
+     *
+     * @throws SparqlEndpointException if the endpoint does not recover within waitingTimeForEndpoint
+     */
+    public void awaitClosed(@Nonnull SparqlEndpointConfig config) {
+        EndpointCircuit circuit = circuits.get(config.getEndpointUrl());
+        if (circuit == null) {
+            return;
+        }
+        CompletableFuture<Void> recovery = circuit.getRecoveryAndStartProbing(config);
+        if (recovery == null) {
+            return;
+        }
+        boolean waitForever = config.getWaitingTimeForEndpoint() == null || config.getWaitingTimeForEndpoint() <= 0;
+        try {
+            if (waitForever) {
+                recovery.get();
+            } else {
+                recovery.get(config.getWaitingTimeForEndpoint(), TimeUnit.MINUTES);
+            }
+        } catch (TimeoutException e) {
+            throw stopExecution(config, "is not available");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw stopExecution(config, "did not recover before the execution was interrupted");
+        } catch (ExecutionException e) {
+            throw stopExecution(config, "is not available");
+        } finally {
+            circuit.waiterLeft();
+        }
+        log.info(String.format("The endpoint [ %s ] is available and in working state - schema extractor execution [ %s ] is in progress",
+                SchemaUtil.getEndpointLinkText(config.getEndpointUrl(), config.getGraphName()), config.getCorrelationId()));
+    }
+
+    @Nonnull
+    private EndpointCircuit getCircuit(@Nonnull SparqlEndpointConfig config) {
+        return circuits.computeIfAbsent(config.getEndpointUrl(), k -> new EndpointCircuit());
+    }
+
+    @Nullable
+    private Boolean getProbeResult(@Nonnull CompletableFuture<Boolean> probe, @Nonnull SparqlEndpointConfig config) {
+        try {
+            return probe.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw stopExecution(config, "could not be checked before the execution was interrupted");
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    @Nonnull
+    private SparqlEndpointException stopExecution(@Nonnull SparqlEndpointConfig config, @Nonnull String reason) {
+        String stoppingError = String.format("The endpoint [ %s ] %s, stopping the schema extraction for the request [ %s ]",
+                SchemaUtil.getEndpointLinkText(config.getEndpointUrl(), config.getGraphName()), reason, config.getCorrelationId());
+        log.error(stoppingError);
+        return new SparqlEndpointException(stoppingError);
+    }
+
+    /**
+     * Sends the health check query without Jena, so that the status code and the Retry-After header are available.
+     * Same as the health check of the endpoint processor, the endpoint is healthy only if the query returns a row.
+     */
+    @Nonnull
+    private CompletableFuture<ProbeResult> sendProbe(@Nonnull SparqlEndpointConfig config) {
+        String parameters = "query=" + URLEncoder.encode(ENDPOINT_HEALTH_CHECK.getSparqlQuery(), StandardCharsets.UTF_8);
+        if (StringUtils.isNotEmpty(config.getGraphName())) {
+            parameters += "&default-graph-uri=" + URLEncoder.encode(config.getGraphName(), StandardCharsets.UTF_8);
+        }
+        HttpRequest.Builder builder;
+        try {
+            if (config.isPostRequest()) {
+                builder = HttpRequest.newBuilder(URI.create(config.getEndpointUrl()))
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString(parameters));
+            } else {
+                String separator = config.getEndpointUrl().contains("?") ? "&" : "?";
+                builder = HttpRequest.newBuilder(URI.create(config.getEndpointUrl() + separator + parameters)).GET();
+            }
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(new ProbeResult(false, null));
+        }
+        builder.timeout(Duration.ofSeconds(PROBE_TIMEOUT_IN_SECONDS))
+                .header("Accept", StringUtils.defaultIfEmpty(config.getAcceptHeaderForSparqlResults(), DEFAULT_PROBE_ACCEPT_HEADER));
+        HttpClient httpClient = config.getHttpClient() != null ? config.getHttpClient() : httpClientProvider.getHttpClient(true);
+        return httpClient.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofString())
+                .handle((response, error) -> {
+                    if (error != null || response == null) {
+                        return new ProbeResult(false, null);
+                    }
+                    boolean healthy = response.statusCode() >= 200 && response.statusCode() < 300
+                            && hasResultRow(response.headers().firstValue("Content-Type").orElse(StringUtils.EMPTY), response.body());
+                    Long retryAfter = null;
+                    if (response.statusCode() == 429 || response.statusCode() == 503) {
+                        retryAfter = parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null));
+                    }
+                    return new ProbeResult(healthy, retryAfter);
+                });
+    }
+
+    /**
+     * Checks the health check response for a result row without parsing the whole response:
+     * a binding in JSON, a result element in XML, or a line after the header line in TSV and CSV.
+     */
+    private static boolean hasResultRow(@Nonnull String contentType, @Nullable String body) {
+        if (StringUtils.isBlank(body)) {
+            return false;
+        }
+        String mediaType = StringUtils.lowerCase(contentType);
+        String trimmedBody = body.trim();
+        if (mediaType.contains("json") || trimmedBody.startsWith("{")) {
+            return JSON_FIRST_BINDING.matcher(body).find();
+        }
+        if (mediaType.contains("xml") || trimmedBody.startsWith("<")) {
+            return XML_FIRST_RESULT.matcher(body).find();
+        }
+        return trimmedBody.indexOf('\n') > 0;
+    }
+
+    @Nullable
+    private static Long parseRetryAfter(@Nullable String retryAfter) {
+        if (StringUtils.isBlank(retryAfter)) {
+            return null;
+        }
+        String value = retryAfter.trim();
+        if (StringUtils.isNumeric(value)) {
+            return Long.parseLong(value);
+        }
+        try {
+            ZonedDateTime retryTime = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0L, Duration.between(ZonedDateTime.now(retryTime.getZone()), retryTime).getSeconds());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static class ProbeResult {
+        private final boolean healthy;
+        private final Long retryAfterInSeconds;
+
+        private ProbeResult(boolean healthy, @Nullable Long retryAfterInSeconds) {
+            this.healthy = healthy;
+            this.retryAfterInSeconds = retryAfterInSeconds;
+        }
+    }
+
+    private class EndpointCircuit {
+
+        private State state = State.CLOSED;
+        private CompletableFuture<Boolean> probe;
+        private CompletableFuture<Void> recovery;
+        private boolean probeScheduled;
+        private int failedProbes;
+        private int waiters;
+        private SparqlEndpointConfig probeConfig;
+
+        synchronized State getState() {
+            return state;
+        }
+
+        /**
+         * Starts a health check if the circuit is closed and no check is running, otherwise returns the running check.
+         * Returns null if the circuit is already open.
+         */
+        @Nullable
+        synchronized CompletableFuture<Boolean> startProbeIfClosed(@Nonnull SparqlEndpointConfig config) {
+            if (state != State.CLOSED) {
+                return null;
+            }
+            if (probe == null) {
+                probeConfig = config;
+                log.warn(String.format("SPARQL queries encountered errors, running validation queries to check the endpoint availability - [ %s ]",
+                        SchemaUtil.getEndpointLinkText(config.getEndpointUrl(), config.getGraphName())));
+                CompletableFuture<Boolean> currentProbe = new CompletableFuture<>();
+                probe = currentProbe;
+                sendProbe(config).thenAccept(result -> onFirstProbe(currentProbe, result));
+                return currentProbe;
+            }
+            return probe;
+        }
+
+        private synchronized void onFirstProbe(@Nonnull CompletableFuture<Boolean> currentProbe, @Nonnull ProbeResult result) {
+            probe = null;
+            if (!result.healthy) {
+                open(result);
+            } else if (getResumeDelay() > 0L) {
+                // the endpoint answers the health check, but the queries to it are paused for delayOnFailure
+                state = State.HALF_OPEN;
+                recovery = new CompletableFuture<>();
+                probeScheduled = true;
+                scheduleClose();
+            }
+            currentProbe.complete(result.healthy);
+        }
+
+        /**
+         * Returns the recovery of the open circuit and registers the caller as a waiter, or null if the circuit is closed.
+         */
+        @Nullable
+        synchronized CompletableFuture<Void> getRecoveryAndStartProbing(@Nonnull SparqlEndpointConfig config) {
+            if (state == State.CLOSED) {
+                return null;
+            }
+            waiters++;
+            if (!probeScheduled) {
+                // nobody was waiting, so the probing was stopped - check the endpoint again now
+                probeConfig = config;
+                scheduleProbe(0L);
+            }
+            return recovery;
+        }
+
+        synchronized void waiterLeft() {
+            waiters--;
+        }
+
+        private void open(@Nonnull ProbeResult result) {
+            state = State.OPEN;
+            failedProbes++;
+            if (recovery == null || recovery.isDone()) {
+                recovery = new CompletableFuture<>();
+            }
+            long delay = calculateBackoff(result.retryAfterInSeconds);
+            log.error(String.format("The endpoint is not healthy - [ %s ]. Queries to this endpoint are paused, the endpoint will be checked again after %d seconds.",
+                    SchemaUtil.getEndpointLinkText(probeConfig.getEndpointUrl(), probeConfig.getGraphName()), delay));
+            scheduleProbe(delay);
+        }
+
+        private long calculateBackoff(@Nullable Long retryAfterInSeconds) {
+            if (retryAfterInSeconds != null) {
+                return Math.max(1L, retryAfterInSeconds);
+            }
+            long backoff = Math.min(MAX_BACKOFF_IN_SECONDS, INITIAL_BACKOFF_IN_SECONDS << Math.min(failedProbes - 1, 10));
+            // equal jitter - the endpoints of several extractions are not checked at the same moment
+            return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        }
+
+        private void scheduleProbe(long delayInSeconds) {
+            probeScheduled = true;
+            prober.schedule(this::probeOpenCircuit, delayInSeconds, TimeUnit.SECONDS);
+        }
+
+        private synchronized void probeOpenCircuit() {
+            if (waiters <= 0) {
+                // nobody is waiting for the endpoint, the next query restarts the checks
+                probeScheduled = false;
+                return;
+            }
+            state = State.HALF_OPEN;
+            sendProbe(probeConfig).thenAccept(this::onOpenCircuitProbe);
+        }
+
+        private synchronized void onOpenCircuitProbe(@Nonnull ProbeResult result) {
+            if (!result.healthy) {
+                open(result);
+                return;
+            }
+            failedProbes = 0;
+            scheduleClose();
+        }
+
+        private long getResumeDelay() {
+            return probeConfig.getDelayOnFailure() != null ? Math.max(0L, probeConfig.getDelayOnFailure()) : 0L;
+        }
+
+        private void scheduleClose() {
+            long resumeDelay = getResumeDelay();
+            if (resumeDelay > 0L) {
+                log.info(String.format("The endpoint [ %s ] is available and in working state - the queries will be resumed in %d seconds",
+                        SchemaUtil.getEndpointLinkText(probeConfig.getEndpointUrl(), probeConfig.getGraphName()), resumeDelay));
+            }
+            prober.schedule(this::close, resumeDelay, TimeUnit.SECONDS);
+        }
+
+        private synchronized void close() {
+            state = State.CLOSED;
+            probeScheduled = false;
+            recovery.complete(null);
+        }
+    }
+
+}
@@ -1,10 +1,19 @@
 package lv.lumii.obis.schema.services.common;
 
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import lombok.extern.slf4j.Slf4j;
 import lv.lumii.obis.schema.services.SchemaUtil;
@@ -21,12 +30,14 @@ import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
 import org.apache.jena.sparql.exec.http.QueryExecutionHTTP;
 import org.apache.jena.sparql.exec.http.QueryExecutionHTTPBuilder;
 import org.apache.jena.sparql.exec.http.QuerySendMode;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import static lv.lumii.obis.schema.services.extractor.v2.SchemaExtractorQueries.*;
+import static org.apache.commons.lang3.BooleanUtils.isTrue;
 import static lv.lumii.obis.schema.services.extractor.v2.SchemaExtractorQueries.QueryType;
 
 @Slf4j
@@ -34,6 +45,44 @@ import static lv.lumii.obis.schema.services.extractor.v2.SchemaExtractorQueries.
 public class SparqlEndpointProcessor {
 
     private static final int RETRY_COUNT = 2;
+    private static final int HTTP_STATUS_OK = 200;
+    private static final int HTTP_STATUS_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_STATUS_GATEWAY_TIMEOUT = 504;
+    // connection limit for the queries sent ahead of their use if maxConnectionsPerEndpoint is not set
+    private static final int DEFAULT_CONNECTIONS_FOR_VIRTUAL_THREADS = 8;
+
+    @Autowired
+    private SparqlResponseCache responseCache;
+
+    @Autowired
+    private SparqlHttpClientProvider httpClientProvider;
+
+    @Autowired
+    private SparqlEndpointCircuitBreaker circuitBreaker;
+
+    @Autowired
+    private SparqlQueryMetrics queryMetrics;
+
+    @Autowired
+    private SparqlQueryTracer queryTracer;
+
+    @Autowired
+    private SparqlResultsReader resultsReader;
+
+    @Autowired
+    private SparqlIoExecutor ioExecutor;
+
+    @Autowired
+    private SparqlQueryMemo queryMemo;
+
+    @Autowired
+    private SparqlReplicaBalancer replicaBalancer;
+
+    @Autowired
+    private SparqlInFlightRequests inFlightRequests;
+
+    @Autowired
+    private SparqlEndpointBudget endpointBudget;
 
     private static final String[] FALLBACK_ACCEPT_HEADERS = {
             "application/sparql-results+json",
@@ -49,70 +98,131 @@ public class SparqlEndpointProcessor {
      */
     @Nonnull
     public QueryResponse read(@Nonnull SchemaExtractorRequestDto request, @Nonnull SparqlQueryBuilder queryBuilder) {
+        return read(buildEndpointConfig(request, queryBuilder), queryBuilder, true, null);
+    }
+
+    /**
+     * Streaming variant - each result row is passed to the consumer as soon as it is read from the endpoint and is not kept in the response,
+     * so the returned response contains only the status, execution time and row/byte counters.
+     * The query is retried on failure only if no rows were delivered to the consumer yet.
+     */
+    @Nonnull
+    public QueryResponse read(@Nonnull SchemaExtractorRequestDto request, @Nonnull SparqlQueryBuilder queryBuilder, @Nonnull Consumer<QueryResult> resultConsumer) {
+        return read(buildEndpointConfig(request, queryBuilder), queryBuilder, true, resultConsumer);
+    }
+
+    /**
+     * Independent queries whose responses are used in the given order. With useVirtualThreads the following queries are sent
+     * while the earlier responses are processed, as many as the connection limit per endpoint allows for the replicas that are not quarantined.
+     */
+    @Nonnull
+    public SparqlReadAhead<QueryResponse> readAhead(@Nonnull SchemaExtractorRequestDto request, @Nonnull List<SparqlQueryBuilder> queryBuilders) {
+        List<Supplier<QueryResponse>> tasks = new ArrayList<>(queryBuilders.size());
+        for (SparqlQueryBuilder queryBuilder : queryBuilders) {
+            tasks.add(() -> read(request, queryBuilder));
+        }
+        return readAheadTasks(request, tasks);
+    }
+
+    /**
+     * Same as above for tasks that send several dependent queries. The tasks must not change the schema, they are run on other threads.
+     */
+    @Nonnull
+    public <T> SparqlReadAhead<T> readAheadTasks(@Nonnull SchemaExtractorRequestDto request, @Nonnull Iterable<Supplier<T>> tasks) {
+        List<Supplier<T>> tracedTasks = new ArrayList<>();
+        if (!isTrue(request.getUseVirtualThreads())) {
+            tasks.forEach(tracedTasks::add);
+            return new SparqlReadAhead<>(tracedTasks, null, 1);
+        }
+        String tracePhase = queryTracer.getPhase();
+        String traceSubject = queryTracer.getSubject();
+        for (Supplier<T> task : tasks) {
+            tracedTasks.add(() -> {
+                queryTracer.setContext(tracePhase, traceSubject);
+                try {
+                    return task.get();
+                } finally {
+                    queryTracer.clearContext();
+                }
+            });
+        }
+        // the connection limit applies to each replica, the quarantined replicas get no queries
+        SparqlEndpointConfig config = new SparqlEndpointConfig(request.getCorrelationId(), request.getEndpointUrl(), request.getGraphName(), request.getEnableLogging(), null);
+        config.setReplicaEndpointUrls(request.getReplicaEndpointUrls());
+        return new SparqlReadAhead<>(tracedTasks, ioExecutor, getMaxConnectionsPerEndpoint(request) * replicaBalancer.countAvailableReplicas(config));
+    }
+
+    public void logStatistics(@Nonnull SchemaExtractorRequestDto request) {
+        if (isTrue(request.getUseResponseCache())) {
+            responseCache.logStatistics(request.getCorrelationId());
+        }
+        queryMemo.finish(request.getCorrelationId());
+    }
+
+    @Nonnull
+    private SparqlEndpointConfig buildEndpointConfig(@Nonnull SchemaExtractorRequestDto request, @Nonnull SparqlQueryBuilder queryBuilder) {
         Long timeout = calculateTimeout(request, queryBuilder);
-        return read(new SparqlEndpointConfig(request.getCorrelationId(), request.getEndpointUrl(), request.getGraphName(), request.getEnableLogging(),
-                request.getPostMethod(), request.getAcceptHeaderForSparqlResults(), timeout, request.getDelayOnFailure(), request.getWaitingTimeForEndpoint()), queryBuilder, true);
+        SparqlEndpointConfig config = new SparqlEndpointConfig(request.getCorrelationId(), request.getEndpointUrl(), request.getGraphName(), request.getEnableLogging(),
+                request.getPostMethod(), request.getAcceptHeaderForSparqlResults(), timeout, request.getDelayOnFailure(), request.getWaitingTimeForEndpoint());
+        config.setUseResponseCache(isTrue(request.getUseResponseCache()));
+        config.setResponseCacheTtl(request.getResponseCacheTtl());
+        config.setResponseCacheMaxSize(request.getResponseCacheMaxSize());
+        config.setResultsParser(request.getResultsParser());
+        config.setUseQueryMemo(isTrue(request.getUseQueryMemo()));
+        config.setReplicaEndpointUrls(request.getReplicaEndpointUrls());
+        config.setReplicaBalancing(request.getReplicaBalancing());
+        applyHttpSettings(config, request);
+        return config;
+    }
+
+    private void applyHttpSettings(@Nonnull SparqlEndpointConfig config, @Nonnull SchemaExtractorRequestDto request) {
+        config.setHttpClient(httpClientProvider.getHttpClient(isTrue(request.getUseHttp2())));
+        config.setUseHttpCompression(isTrue(request.getUseHttpCompression()));
+        config.setMaxConnectionsPerEndpoint(getMaxConnectionsPerEndpoint(request));
+    }
+
+    private int getMaxConnectionsPerEndpoint(@Nonnull SchemaExtractorRequestDto request) {
+        if (request.getMaxConnectionsPerEndpoint() <= 0 && isTrue(request.getUseVirtualThreads())) {
+            return DEFAULT_CONNECTIONS_FOR_VIRTUAL_THREADS;
+        }
+        return request.getMaxConnectionsPerEndpoint();
     }
 
+    /**
+     * With applyWaiting the check is shared with other queries to the same endpoint and, if the endpoint is not healthy,
+     * waits for the recovery in the endpoint circuit breaker.
+     *
+     * @return true if the endpoint was healthy without waiting
+     */
     public boolean checkEndpointHealthAndStopExecutionOnError(@Nonnull SparqlEndpointConfig request, boolean applyWaiting) {
-        boolean endpointIsHealthyWithoutRetries = true;
-        AtomicBoolean isEndpointHealthy = new AtomicBoolean(checkEndpointHealthQuery(request));
         if (applyWaiting) {
-            if (!isEndpointHealthy.get()) {
-                endpointIsHealthyWithoutRetries = false;
-                // wait 1 minute
-                waitForEndpoint(request, 60 * 1000L);
-                isEndpointHealthy.set(checkEndpointHealthQuery(request));
-                if (!isEndpointHealthy.get()) {
-                    // wait 15 minutes periods for the time <= request.getWaitingTimeForEndpoint()
-                    // if getWaitingTimeForEndpoint == 0 then wait forever
-                    long waitingIterations = (request.getWaitingTimeForEndpoint() != null && request.getWaitingTimeForEndpoint() > 15)
-                            ? request.getWaitingTimeForEndpoint() / 15 : 1;
-                    boolean waitForever = request.getWaitingTimeForEndpoint() == null || request.getWaitingTimeForEndpoint() <= 0;
-                    while (waitingIterations > 0 || waitForever) {
-                        if (!waitForever) waitingIterations--;
-                        waitForEndpoint(request, 15 * 60 * 1000L);
-                        isEndpointHealthy.set(checkEndpointHealthQuery(request));
-                        if (isEndpointHealthy.get()) break;
-                    }
-                }
-            }
+            return circuitBreaker.awaitAvailable(request);
         }
-        if (isEndpointHealthy.get()) {
-            if (request.getDelayOnFailure() != null && request.getDelayOnFailure() > 0L) {
-                log.info(String.format("The endpoint [ %s ] is available and in working state - schema extractor execution [ %s ] will be resumed in %d seconds",
-                        SchemaUtil.getEndpointLinkText(request.getEndpointUrl(), request.getGraphName()), request.getCorrelationId(), request.getDelayOnFailure()));
-                try {
-                    Thread.sleep(request.getDelayOnFailure() * 1000);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                }
-            } else {
-                log.info(String.format("The endpoint [ %s ] is available and in working state - schema extractor execution [ %s ] is in progress",
-                        SchemaUtil.getEndpointLinkText(request.getEndpointUrl(), request.getGraphName()), request.getCorrelationId()));
-            }
-        } else {
+        if (!checkEndpointHealthQuery(request)) {
             String stoppingError = String.format("The endpoint [ %s ] is not available, stopping the schema extraction for the request [ %s ]",
                     SchemaUtil.getEndpointLinkText(request.getEndpointUrl(), request.getGraphName()), request.getCorrelationId());
             log.error(stoppingError);
             throw new SparqlEndpointException(stoppingError);
         }
-        return endpointIsHealthyWithoutRetries;
+        log.info(String.format("The endpoint [ %s ] is available and in working state - schema extractor execution [ %s ] is in progress",
+                SchemaUtil.getEndpointLinkText(request.getEndpointUrl(), request.getGraphName()), request.getCorrelationId()));
+        return true;
     }
 
     public boolean checkEndpointHealthQuery(@Nonnull SchemaExtractorRequestDto request) {
         SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(ENDPOINT_HEALTH_CHECK.getSparqlQuery(), ENDPOINT_HEALTH_CHECK);
         SparqlEndpointConfig config = new SparqlEndpointConfig(request.getCorrelationId(), request.getEndpointUrl(), request.getGraphName(), request.getEnableLogging(),
                 request.getPostMethod(), request.getAcceptHeaderForSparqlResults(), null, null, null);
+        applyHttpSettings(config, request);
 
-        QueryResponse response = read(config, queryBuilder, false);
+        QueryResponse response = read(config, queryBuilder, false, null);
 
         if (isNotAcceptable(response)) {
             log.error("The endpoint does not support multi-value Accept headers");
             for (String acceptHeader : FALLBACK_ACCEPT_HEADERS) {
                 log.info("Checking endpoint availability with Accept header = " + acceptHeader);
                 config.setAcceptHeaderForSparqlResults(acceptHeader);
-                response = read(config, queryBuilder, false);
+                response = read(config, queryBuilder, false, null);
                 if (!isNotAcceptable(response)) {
                     break;
                 }
@@ -136,28 +246,20 @@ public class SparqlEndpointProcessor {
 
     private boolean checkEndpointHealthQuery(@Nonnull SparqlEndpointConfig config) {
         SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(ENDPOINT_HEALTH_CHECK.getSparqlQuery(), ENDPOINT_HEALTH_CHECK);
-        QueryResponse response = read(config, queryBuilder, false);
+        QueryResponse response = read(config, queryBuilder, false, null);
         return !response.hasErrors() && !response.getResults().isEmpty();
     }
 
-    private void waitForEndpoint(@Nonnull SparqlEndpointConfig request, @Nonnull Long sleepTime) {
-        log.error(String.format("The endpoint is not healthy - [ %s ]. Stopping the execution [ %s ] and will retry after %d %s.",
-                SchemaUtil.getEndpointLinkText(request.getEndpointUrl(), request.getGraphName()),
-                request.getCorrelationId(), sleepTime / 1000 / 60, (sleepTime / 1000 / 60) == 1 ? "minute" : "minutes"));
-        try {
-            Thread.sleep(sleepTime);
-        } catch (InterruptedException ie) {
-            Thread.currentThread().interrupt();
-        }
-    }
-
     @Nonnull
-    private QueryResponse read(@Nonnull SparqlEndpointConfig request, @Nonnull SparqlQueryBuilder queryBuilder, boolean withRetry) {
+    private QueryResponse read(@Nonnull SparqlEndpointConfig request, @Nonnull SparqlQueryBuilder queryBuilder, boolean withRetry,
+                               @Nullable Consumer<QueryResult> resultConsumer) {
 
+        long startTime = System.nanoTime();
         String query = queryBuilder.build();
         if (query == null) {
             QueryResponse response = new QueryResponse();
             response.setHasErrors(true);
+            queryMetrics.record(request, queryBuilder, SparqlQueryMetrics.OUTCOME_INVALID, System.nanoTime() - startTime, response);
             return response;
         }
 
@@ -165,58 +267,189 @@ public class SparqlEndpointProcessor {
             log.info(queryBuilder.getQueryName() + (request.getTimeout() != null ? " (timeout: " + request.getTimeout() + "s)" : "") + "\n" + queryBuilder.getQueryString());
         }
 
-        return requestData(request, queryBuilder.getQueryName(), queryBuilder.getQueryString(), queryBuilder.getQueryType(), request.getTimeout(), 1, withRetry);
+        // the same query of the extraction is sent only once, streamed reads do not keep the rows and are always sent
+        SparqlQueryMemo.Call memoCall = null;
+        if (withRetry && resultConsumer == null && request.isUseQueryMemo()) {
+            memoCall = queryMemo.start(request, queryBuilder.getQueryString());
+            if (!memoCall.isFirst()) {
+                QueryResponse memoResponse = memoCall.await();
+                long endTime = System.nanoTime();
+                queryMetrics.record(request, queryBuilder, SparqlQueryMetrics.OUTCOME_MEMO, endTime - startTime, memoResponse);
+                queryTracer.recordCacheHit(request.getCorrelationId(), queryBuilder.getQueryName(), queryBuilder.getQueryType(), startTime, endTime,
+                        memoResponse.getRowCount(), memoResponse.getResultBytes());
+                return memoResponse;
+            }
+        }
+        QueryResponse response;
+        try {
+            response = readFromCacheOrEndpoint(request, queryBuilder, withRetry, resultConsumer, startTime);
+        } catch (RuntimeException | Error e) {
+            if (memoCall != null) {
+                memoCall.fail(e);
+            }
+            throw e;
+        }
+        return memoCall != null ? memoCall.complete(response) : response;
     }
 
+    @Nonnull
+    private QueryResponse readFromCacheOrEndpoint(@Nonnull SparqlEndpointConfig request, @Nonnull SparqlQueryBuilder queryBuilder, boolean withRetry,
+                                                  @Nullable Consumer<QueryResult> resultConsumer, long startTime) {
+        // health check queries (withRetry = false) always go to the endpoint
+        if (withRetry && request.isUseResponseCache()) {
+            QueryResponse cachedResponse = responseCache.read(request, queryBuilder.getQueryString(), resultConsumer);
+            if (cachedResponse != null) {
+                if (request.isEnableLogging()) {
+                    log.info(queryBuilder.getQueryName() + " - response read from the cache (" + cachedResponse.getRowCount() + " rows)");
+                }
+                long endTime = System.nanoTime();
+                queryMetrics.record(request, queryBuilder, SparqlQueryMetrics.OUTCOME_CACHED, endTime - startTime, cachedResponse);
+                queryTracer.recordCacheHit(request.getCorrelationId(), queryBuilder.getQueryName(), queryBuilder.getQueryType(), startTime, endTime,
+                        cachedResponse.getRowCount(), cachedResponse.getResultBytes());
+                return cachedResponse;
+            }
+        }
+
+        QueryResponse response = requestData(request, queryBuilder.getQueryName(), queryBuilder.getQueryString(), queryBuilder.getQueryType(), request.getTimeout(), 1, withRetry,
+                resultConsumer, new HashSet<>());
+        queryMetrics.record(request, queryBuilder, response.hasErrors() ? SparqlQueryMetrics.OUTCOME_ERROR : SparqlQueryMetrics.OUTCOME_SUCCESS,
+                System.nanoTime() - startTime, response);
+        return response;
+    }
+
+    /**
+     * @param failedReplicas replica endpoints that failed for this query, the query is not sent to them again while other replicas are available
+     */
     @Nonnull
     private QueryResponse requestData(@Nonnull SparqlEndpointConfig request, @Nonnull String queryName, @Nonnull String sparqlQuery, @Nullable QueryType queryType,
-                                      @Nullable Long timeout, int attempt, boolean withRetry) {
+                                      @Nullable Long timeout, int attempt, boolean withRetry, @Nullable Consumer<QueryResult> resultConsumer,
+                                      @Nonnull Set<String> failedReplicas) {
+        // a request of a cancelled extraction is not sent
+        SparqlInFlightRequests.Request inFlight = inFlightRequests.begin(request.getCorrelationId());
         LocalDateTime startTime = LocalDateTime.now();
         QueryResponse response = new QueryResponse();
         List<QueryResult> queryResults = null;
-        ResultSet resultSet;
-        QueryExecutionHTTP queryExecutor = getQueryExecutor(request.getEndpointUrl(), request.getGraphName(), sparqlQuery, request.isPostRequest(),
-                request.getAcceptHeaderForSparqlResults(), timeout);
+        long rowCount = 0L;
+        long resultBytes = 0L;
+        SparqlResponseCache.Writer cacheWriter = null;
+        boolean retry = false;
+        SparqlResultRows resultRows = null;
+        // health checks go to the given endpoint, other queries to the replica chosen by the balancer
+        SparqlReplicaBalancer.Replica replica = withRetry ? replicaBalancer.acquire(request, failedReplicas) : null;
+        SparqlEndpointConfig endpoint = replica != null ? request.forEndpoint(replica.getEndpointUrl()) : request;
+        SparqlEndpointBudget.Slot budgetSlot = null;
+        Semaphore connectionLimit;
         try {
-            resultSet = queryExecutor.execSelect();
+            // while the endpoint is being recovered the queries wait here instead of failing one by one (health checks are not delayed)
+            if (withRetry) {
+                circuitBreaker.awaitClosed(endpoint);
+                budgetSlot = endpointBudget.acquire(endpoint);
+            }
+            connectionLimit = httpClientProvider.acquire(endpoint);
+        } catch (RuntimeException e) {
+            endpointBudget.release(budgetSlot);
+            replicaBalancer.cancel(replica);
+            inFlightRequests.end(inFlight);
+            throw e;
+        } catch (InterruptedException e) {
+            endpointBudget.release(budgetSlot);
+            replicaBalancer.cancel(replica);
+            inFlightRequests.end(inFlight);
+            Thread.currentThread().interrupt();
+            response.setHasErrors(true);
+            response.setResults(new ArrayList<>());
+            response.setQueryResponseError(new QueryResponseError(500, "Interrupted while waiting for a free connection to the endpoint"));
+            return response;
+        }
+        long requestStartTime = System.nanoTime();
+        boolean replicaFailure = false;
+        try {
+            resultRows = openResultRows(endpoint, sparqlQuery, timeout, withRetry);
+            inFlightRequests.opened(inFlight, resultRows);
             if (attempt > 1) {
                 log.info(String.format("SPARQL Endpoint returned a valid response after an attempt number %d", attempt));
             }
             queryResults = new ArrayList<>();
-            if (resultSet != null) {
-                List<String> resultVariables = resultSet.getResultVars();
-                while (resultSet.hasNext()) {
-                    buildQueryResultObject(queryResults, resultVariables, resultSet.next());
+            QueryResultColumns columns = resultRows.getColumns();
+            if (columns != null) {
+                if (withRetry && request.isUseResponseCache()) {
+                    cacheWriter = responseCache.startWriting(request, sparqlQuery, columns);
+                }
+                QueryResult queryResult;
+                while ((queryResult = resultRows.next()) != null) {
+                    rowCount++;
+                    resultBytes += queryResult.getValuesLength();
+                    if (cacheWriter != null) {
+                        cacheWriter.write(queryResult);
+                    }
+                    if (resultConsumer != null) {
+                        resultConsumer.accept(queryResult);
+                    } else {
+                        queryResults.add(queryResult);
+                    }
+                }
+                if (cacheWriter != null) {
+                    cacheWriter.commit();
+                    cacheWriter = null;
                 }
             }
         } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
             if (e instanceof QueryExceptionHTTP) {
                 response.setQueryResponseError(new QueryResponseError(((QueryExceptionHTTP) e).getStatusCode(), ((QueryExceptionHTTP) e).getResponseMessage()));
             } else {
                 response.setQueryResponseError(new QueryResponseError(500, e.getMessage()));
             }
+            replicaFailure = isReplicaFailure(e);
             if (withRetry) {
                 log.error(String.format("SPARQL Endpoint Exception status '%s'. This was attempt number %d for the query %s", e.getMessage(), attempt, queryName));
                 log.error("\n" + sparqlQuery);
-                if (attempt < RETRY_COUNT) {
-                    log.warn(String.format("SPARQL queries encountered errors, running validation queries to check the endpoint availability - [ %s ]",
-                            SchemaUtil.getEndpointLinkText(request.getEndpointUrl(), request.getGraphName())));
-                    boolean endpointIsHealthyWithoutRetries = checkEndpointHealthAndStopExecutionOnError(request, true);
-                    if (!endpointIsHealthyWithoutRetries || !QueryType.SMALL.equals(queryType)) {
-                        return requestData(request, queryName, sparqlQuery, queryType, timeout, ++attempt, withRetry);
-                    }
-                }
+                retry = attempt < RETRY_COUNT && (resultConsumer == null || rowCount == 0L) && !(e instanceof InterruptedException);
             } else {
                 log.error(String.format("SPARQL Endpoint Exception status '%s' for the query %s", e.getMessage(), queryName));
                 log.error("\n" + sparqlQuery);
             }
         } finally {
-            queryExecutor.close();
+            if (cacheWriter != null) {
+                cacheWriter.discard();
+            }
+            closeResultRows(resultRows);
+            httpClientProvider.release(connectionLimit);
+            endpointBudget.release(budgetSlot);
+            // an interrupted request says nothing about the replica
+            replicaBalancer.release(replica, System.nanoTime() - requestStartTime,
+                    replicaFailure && !Thread.currentThread().isInterrupted() && !inFlightRequests.isCancelled(inFlight));
+            inFlightRequests.end(inFlight);
+        }
+        queryTracer.recordRequest(request.getCorrelationId(), queryName, queryType, attempt, requestStartTime, System.nanoTime(), rowCount, resultBytes,
+                response.getQueryResponseError() != null ? response.getQueryResponseError().getErrorStatusCode() : HTTP_STATUS_OK);
+
+        // a failed replica is quarantined by the balancer, the query is sent to another replica without the health check
+        if (replica != null && replicaFailure && (resultConsumer == null || rowCount == 0L)
+                && !Thread.currentThread().isInterrupted()) {
+            failedReplicas.add(replica.getEndpointUrl());
+            if (replicaBalancer.hasAvailableReplica(request, failedReplicas)) {
+                log.info(String.format("Sending the query %s to another replica of the endpoint", queryName));
+                return requestData(request, queryName, sparqlQuery, queryType, timeout, attempt, withRetry, resultConsumer, failedReplicas);
+            }
+        }
+
+        // the connection is released before the health check, so that the check and the retry can get it
+        if (retry) {
+            boolean endpointIsHealthyWithoutRetries = checkEndpointHealthAndStopExecutionOnError(endpoint, true);
+            if (!endpointIsHealthyWithoutRetries || !QueryType.SMALL.equals(queryType)) {
+                return requestData(request, queryName, sparqlQuery, queryType, timeout, ++attempt, withRetry, resultConsumer, new HashSet<>());
+            }
         }
 
         LocalDateTime endTime = LocalDateTime.now();
-        long executionTimeInSeconds = Duration.between(startTime, endTime).getSeconds();
-        response.setExecutionTime(executionTimeInSeconds);
+        Duration executionTime = Duration.between(startTime, endTime);
+        response.setExecutionTime(executionTime.getSeconds());
+        response.setExecutionTimeInMillis(executionTime.toMillis());
+        response.setRowCount(rowCount);
+        response.setResultBytes(resultBytes);
 
         if (queryResults != null) {
             response.setHasErrors(false);
@@ -229,46 +462,127 @@ public class SparqlEndpointProcessor {
         return response;
     }
 
-    private void buildQueryResultObject(@Nonnull List<QueryResult> queryResults, List<String> resultVariables, QuerySolution resultItem) {
-        if (resultItem == null || resultVariables == null || resultVariables.isEmpty()) {
+    /**
+     * Errors of the replica itself: the connection could not be made, or the server answered with a server error or throttling.
+     * Query timeouts (also the gateway timeout) and errors of the client are not counted, another replica would fail the same way.
+     */
+    private boolean isReplicaFailure(@Nonnull Exception e) {
+        if (e instanceof QueryExceptionHTTP && ((QueryExceptionHTTP) e).getStatusCode() > 0) {
+            int statusCode = ((QueryExceptionHTTP) e).getStatusCode();
+            return (statusCode >= 500 && statusCode != HTTP_STATUS_GATEWAY_TIMEOUT) || statusCode == HTTP_STATUS_TOO_MANY_REQUESTS;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException
+                    || cause instanceof UnknownHostException || cause instanceof NoRouteToHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Health checks and V1 queries are always read with Jena, other queries with the results reader selected in the request.
+     */
+    @Nonnull
+    private SparqlResultRows openResultRows(@Nonnull SparqlEndpointConfig config, @Nonnull String sparqlQuery, @Nullable Long timeout, boolean withRetry)
+            throws IOException, InterruptedException {
+        if (withRetry && resultsReader.isEnabled(config)) {
+            SparqlResultRows resultRows = resultsReader.open(config, sparqlQuery, timeout);
+            if (resultRows != null) {
+                return resultRows;
+            }
+        }
+        return new JenaResultRows(getQueryExecutor(config, sparqlQuery, timeout));
+    }
+
+    private void closeResultRows(@Nullable SparqlResultRows resultRows) {
+        if (resultRows == null) {
             return;
         }
-        QueryResult queryResult = new QueryResult();
-        for (String key : resultVariables) {
-            RDFNode value = resultItem.get(key);
+        try {
+            resultRows.close();
+        } catch (IOException | RuntimeException e) {
+            log.error("Cannot close the SPARQL query response: " + e.getMessage());
+        }
+    }
+
+    private class JenaResultRows implements SparqlResultRows {
+
+        private final QueryExecutionHTTP queryExecutor;
+        private final ResultSet resultSet;
+        private final QueryResultColumns columns;
+
+        JenaResultRows(@Nonnull QueryExecutionHTTP queryExecutor) {
+            this.queryExecutor = queryExecutor;
+            try {
+                this.resultSet = queryExecutor.execSelect();
+            } catch (RuntimeException e) {
+                queryExecutor.close();
+                throw e;
+            }
+            this.columns = resultSet != null
+                    ? new QueryResultColumns(resultSet.getResultVars() != null ? resultSet.getResultVars() : new ArrayList<>()) : null;
+        }
+
+        @Nullable
+        @Override
+        public QueryResultColumns getColumns() {
+            return columns;
+        }
+
+        @Nullable
+        @Override
+        public QueryResult next() {
+            while (resultSet != null && resultSet.hasNext()) {
+                QueryResult queryResult = buildQueryResultObject(columns, resultSet.next());
+                if (queryResult != null) {
+                    return queryResult;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() {
+            queryExecutor.close();
+        }
+    }
+
+    @Nullable
+    private QueryResult buildQueryResultObject(@Nonnull QueryResultColumns columns, QuerySolution resultItem) {
+        if (resultItem == null || columns.size() == 0) {
+            return null;
+        }
+        QueryResult queryResult = new QueryResult(columns);
+        List<String> resultVariables = columns.getVariables();
+        for (int i = 0; i < resultVariables.size(); i++) {
+            RDFNode value = resultItem.get(resultVariables.get(i));
             if (value == null) {
                 continue;
             }
-            QueryResultObject queryResultObject = new QueryResultObject();
             if (value instanceof Resource) {
-                Resource uriValue = value.asResource();
-                queryResultObject.setValue(uriValue.getURI());
-                queryResultObject.setFullName(uriValue.getURI());
-                queryResultObject.setLocalName(uriValue.getLocalName());
-                queryResultObject.setNamespace(uriValue.getNameSpace());
-                queryResultObject.setIsLiteral(false);
+                queryResult.setResource(i, value.asResource().getURI());
             } else if (value instanceof Literal) {
                 Literal literal = value.asLiteral();
-                queryResultObject.setValue(literal.getString());
-                queryResultObject.setFullName(literal.getString());
-                queryResultObject.setLocalName(literal.getString());
-                queryResultObject.setDataType(literal.getDatatypeURI());
-                queryResultObject.setIsLiteral(true);
-                if (StringUtils.isNotEmpty(queryResultObject.getDataType())) {
-                    queryResultObject.setFullName("\"" + queryResultObject.getLocalName() + "\"^^<" + queryResultObject.getDataType() + ">");
-                }
+                queryResult.setLiteral(i, literal.getString(), literal.getDatatypeURI());
             } else {
-                queryResultObject.setValue(value.toString().split("\\^\\^")[0]);
+                queryResult.setOther(i, value.toString().split("\\^\\^")[0]);
             }
-            queryResult.addResultObject(key, queryResultObject);
         }
-        queryResults.add(queryResult);
+        return queryResult;
     }
 
-    private QueryExecutionHTTP getQueryExecutor(@Nonnull String endpointUrl, @Nullable String graphName, @Nonnull String query, boolean isPostMethod,
-                                                @Nullable String acceptHeaderForSparqlResults, @Nullable Long timeout) {
+    private QueryExecutionHTTP getQueryExecutor(@Nonnull SparqlEndpointConfig config, @Nonnull String query, @Nullable Long timeout) {
+        String graphName = config.getGraphName();
+        String acceptHeaderForSparqlResults = config.getAcceptHeaderForSparqlResults();
 
-        QueryExecutionHTTPBuilder builder = QueryExecutionHTTP.create().endpoint(endpointUrl).queryString(query);
+        QueryExecutionHTTPBuilder builder = QueryExecutionHTTP.create().endpoint(config.getEndpointUrl()).queryString(query)
+                .httpClient(config.getHttpClient() != null ? config.getHttpClient() : httpClientProvider.getHttpClient(true));
+
+        // Jena decodes the gzip response body according to the Content-Encoding header
+        if (config.isUseHttpCompression()) {
+            builder = builder.httpHeader(SparqlHttpClientProvider.ACCEPT_ENCODING_HEADER, SparqlHttpClientProvider.ACCEPT_ENCODING_VALUE);
+        }
 
         // If no MIME type is configured, leave the Accept header unset so the SPARQL client uses its default content negotiation.
         if (StringUtils.isNotEmpty(acceptHeaderForSparqlResults)) {
@@ -277,7 +591,7 @@ public class SparqlEndpointProcessor {
         if (StringUtils.isNotEmpty(graphName)) {
             builder = builder.addDefaultGraphURI(graphName);
         }
-        if (isPostMethod) {
+        if (config.isPostRequest()) {
             builder = builder.sendMode(QuerySendMode.asPostForm);
         } else {
             builder = builder.sendMode(QuerySendMode.asGetAlways);
@@ -313,6 +627,7 @@ public class SparqlEndpointProcessor {
     public List<QueryResult> read(@Nonnull SchemaExtractorRequestDto request, @Nonnull String queryName, @Nonnull String sparqlQuery) {
         SparqlEndpointConfig config = new SparqlEndpointConfig(request.getCorrelationId(), request.getEndpointUrl(), request.getGraphName(), request.getEnableLogging(), request.getPostMethod(), null);
         config.setAcceptHeaderForSparqlResults(request.getAcceptHeaderForSparqlResults());
+        applyHttpSettings(config, request);
         return read(config, queryName, sparqlQuery);
     }
 
@@ -339,7 +654,7 @@ public class SparqlEndpointProcessor {
             log.info(queryName + "\n" + sparqlQuery);
         }
 
-        return requestData(request, queryName, sparqlQuery, null, null, 1, true);
+        return requestData(request, queryName, sparqlQuery, null, null, 1, true, null, new HashSet<>());
     }
 
 }
@@ -0,0 +1,72 @@
+package lv.lumii.obis.schema.services.common;
+
+import lv.lumii.obis.schema.services.common.dto.SparqlEndpointConfig;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Shared HTTP clients for all SPARQL requests. The JDK client keeps the connections of a client instance open and reuses them,
+ * so all queries of all extractions go through the same two instances (HTTP/2 with fallback to HTTP/1.1, and HTTP/1.1 only).
+ * The keep-alive time of idle connections is set with the JVM property jdk.httpclient.keepalive.timeout (in seconds).
+ * Because the JDK client does not limit the connections per host, the limit per endpoint is applied with a semaphore around each request.
+ */
+@Service
+public class SparqlHttpClientProvider {
+
+    public static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+    // only gzip: the Jena response reader does not decode the deflate encoding
+    public static final String ACCEPT_ENCODING_VALUE = "gzip";
+
+    private static final long CONNECT_TIMEOUT_IN_SECONDS = 30L;
+
+    private final HttpClient http2Client = buildHttpClient(HttpClient.Version.HTTP_2);
+    private final HttpClient http11Client = buildHttpClient(HttpClient.Version.HTTP_1_1);
+
+    private final Map<String, Semaphore> endpointConnectionLimits = new ConcurrentHashMap<>();
+
+    @Nonnull
+    public HttpClient getHttpClient(boolean useHttp2) {
+        return useHttp2 ? http2Client : http11Client;
+    }
+
+    /**
+     * Waits for a free connection to the endpoint if maxConnectionsPerEndpoint is set.
+     *
+     * @return the acquired permit that must be returned with {@link #release(Semaphore)}, or null if the connections are not limited
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    @Nullable
+    public Semaphore acquire(@Nonnull SparqlEndpointConfig config) throws InterruptedException {
+        if (config.getMaxConnectionsPerEndpoint() <= 0) {
+            return null;
+        }
+        // requests with a different limit for the same endpoint do not share the permits
+        String key = config.getMaxConnectionsPerEndpoint() + "|" + config.getEndpointUrl();
+        Semaphore connectionLimit = endpointConnectionLimits.computeIfAbsent(key, k -> new Semaphore(config.getMaxConnectionsPerEndpoint(), true));
+        connectionLimit.acquire();
+        return connectionLimit;
+    }
+
+    public void release(@Nullable Semaphore connectionLimit) {
+        if (connectionLimit != null) {
+            connectionLimit.release();
+        }
+    }
+
+    @Nonnull
+    private static HttpClient buildHttpClient(@Nonnull HttpClient.Version version) {
+        return HttpClient.newBuilder()
+                .version(version)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(CONNECT_TIMEOUT_IN_SECONDS))
+                .build();
+    }
+
+}
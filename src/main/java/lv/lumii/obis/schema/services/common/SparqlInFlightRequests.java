@@ -0,0 +1,175 @@
+package lv.lumii.obis.schema.services.common;
+
+import lombok.extern.slf4j.Slf4j;
+import lv.lumii.obis.schema.services.SparqlEndpointException;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SPARQL requests in flight of the tracked extractions (the extraction jobs), so that a cancelled extraction can abort them.
+ * Cancelling interrupts the threads waiting for the endpoint and closes the responses being read; every later request of the
+ * extraction fails at once with {@link SparqlEndpointException}. Requests of extractions that are not tracked are not registered.
+ */
+@Slf4j
+@Service
+public class SparqlInFlightRequests {
+
+    private final Map<String, Extraction> extractions = new ConcurrentHashMap<>();
+
+    public void startExtraction(@Nonnull String correlationId) {
+        extractions.put(correlationId, new Extraction());
+    }
+
+    public void finishExtraction(@Nonnull String correlationId) {
+        extractions.remove(correlationId);
+    }
+
+    /**
+     * @return false if the extraction is not tracked
+     */
+    public boolean cancel(@Nonnull String correlationId) {
+        Extraction extraction = extractions.get(correlationId);
+        if (extraction == null) {
+            return false;
+        }
+        extraction.cancelled = true;
+        int aborted = 0;
+        for (Request request : extraction.requests) {
+            if (request.cancel()) {
+                aborted++;
+            }
+        }
+        log.info(correlationId + String.format(" - extraction cancelled, %d SPARQL requests in flight aborted", aborted));
+        return true;
+    }
+
+    public boolean isCancelled(@Nullable Request request) {
+        return request != null && request.extraction.cancelled;
+    }
+
+    public long getCompletedRequests(@Nonnull String correlationId) {
+        Extraction extraction = extractions.get(correlationId);
+        return extraction != null ? extraction.completedRequests.get() : 0L;
+    }
+
+    /**
+     * Registers the request of the current thread.
+     *
+     * @return the registered request or null if the extraction is not tracked
+     * @throws SparqlEndpointException if the extraction is cancelled
+     */
+    @Nullable
+    public Request begin(@Nullable String correlationId) {
+        Extraction extraction = correlationId != null ? extractions.get(correlationId) : null;
+        if (extraction == null) {
+            return null;
+        }
+        checkCancelled(correlationId, extraction);
+        Request request = new Request(correlationId, extraction, Thread.currentThread());
+        extraction.requests.add(request);
+        // the extraction can be cancelled between the check and the registration
+        if (extraction.cancelled) {
+            extraction.requests.remove(request);
+            checkCancelled(correlationId, extraction);
+        }
+        return request;
+    }
+
+    /**
+     * The response of the request is being read, cancelling closes it.
+     */
+    public void opened(@Nullable Request request, @Nonnull SparqlResultRows resultRows) {
+        if (request != null) {
+            request.setResultRows(resultRows);
+        }
+    }
+
+    /**
+     * Removes the request. If the request was aborted, the interrupt meant for it is cleared, so that it does not reach the next task of a shared thread.
+     *
+     * @throws SparqlEndpointException if the extraction is cancelled
+     */
+    public void end(@Nullable Request request) {
+        if (request == null) {
+            return;
+        }
+        request.extraction.requests.remove(request);
+        request.extraction.completedRequests.incrementAndGet();
+        if (request.finish()) {
+            Thread.interrupted();
+        }
+        checkCancelled(request.correlationId, request.extraction);
+    }
+
+    private void checkCancelled(@Nonnull String correlationId, @Nonnull Extraction extraction) {
+        if (extraction.cancelled) {
+            throw new SparqlEndpointException(String.format("The extraction %s was cancelled", correlationId));
+        }
+    }
+
+    private static class Extraction {
+        private final Set<Request> requests = ConcurrentHashMap.newKeySet();
+        private final AtomicLong completedRequests = new AtomicLong();
+        private volatile boolean cancelled;
+    }
+
+    public static class Request {
+
+        private final String correlationId;
+        private final Extraction extraction;
+        private final Thread thread;
+        private SparqlResultRows resultRows;
+        private boolean aborted;
+        private boolean finished;
+
+        private Request(@Nonnull String correlationId, @Nonnull Extraction extraction, @Nonnull Thread thread) {
+            this.correlationId = correlationId;
+            this.extraction = extraction;
+            this.thread = thread;
+        }
+
+        private synchronized void setResultRows(@Nonnull SparqlResultRows resultRows) {
+            this.resultRows = resultRows;
+            if (aborted) {
+                closeResultRows();
+            }
+        }
+
+        private synchronized boolean cancel() {
+            if (finished) {
+                return false;
+            }
+            aborted = true;
+            thread.interrupt();
+            closeResultRows();
+            return true;
+        }
+
+        /**
+         * @return true if the request was aborted
+         */
+        private synchronized boolean finish() {
+            finished = true;
+            return aborted;
+        }
+
+        private void closeResultRows() {
+            if (resultRows == null) {
+                return;
+            }
+            try {
+                resultRows.close();
+            } catch (IOException | RuntimeException e) {
+                // the reading thread gets the error
+            }
+        }
+    }
+
+}
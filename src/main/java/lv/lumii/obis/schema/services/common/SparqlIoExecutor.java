@@ -0,0 +1,58 @@
+package lv.lumii.obis.schema.services.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor for the blocking SPARQL requests that are sent ahead of their use (request parameter useVirtualThreads).
+ * On Java 21 and newer every request runs on its own virtual thread, on older Java versions on a bounded pool of daemon threads.
+ * The number of requests actually sent to an endpoint at the same time is limited by the connection permits of {@link SparqlHttpClientProvider}.
+ */
+@Slf4j
+@Service
+public class SparqlIoExecutor {
+
+    private static final int PLATFORM_THREAD_COUNT = 64;
+
+    private final ExecutorService executor = createExecutor();
+
+    @Nonnull
+    public <T> CompletableFuture<T> submit(@Nonnull Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                result.complete(task.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    @Nonnull
+    private static ExecutorService createExecutor() {
+        try {
+            // available from Java 21, the sources are compiled for Java 11
+            ExecutorService virtualThreadExecutor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            log.info("SPARQL requests sent ahead of their use will run on virtual threads");
+            return virtualThreadExecutor;
+        } catch (ReflectiveOperationException e) {
+            log.info(String.format("Virtual threads are not available in this Java version, SPARQL requests sent ahead of their use will run on %d platform threads",
+                    PLATFORM_THREAD_COUNT));
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor platformThreadExecutor = new ThreadPoolExecutor(PLATFORM_THREAD_COUNT, PLATFORM_THREAD_COUNT, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "sparql-io-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        platformThreadExecutor.allowCoreThreadTimeOut(true);
+        return platformThreadExecutor;
+    }
+
+}
@@ -5,8 +5,6 @@ import lv.lumii.obis.schema.services.SchemaUtil;
 import lv.lumii.obis.schema.services.extractor.v2.SchemaExtractorQueries;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.jena.query.QueryException;
-import org.apache.jena.query.QueryFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -82,7 +80,10 @@ public class SparqlQueryBuilder {
     public String build() {
         String query = buildQuery(this.query);
         if (query == null) {
-            log.info("External query is not defined or has errors, using built-in query " + this.backupQuery.name());
+            // invalid external queries are reported once, when the query template is compiled
+            if (StringUtils.isEmpty(this.query)) {
+                log.info("External query is not defined, using built-in query " + this.backupQuery.name());
+            }
             query = buildQuery(this.backupQuery.getSparqlQuery());
         }
         return query;
@@ -93,17 +94,10 @@ public class SparqlQueryBuilder {
         if (StringUtils.isEmpty(queryToBuild)) {
             return null;
         }
-        try {
-            for (String param : this.getContextMap().keySet()) {
-                queryToBuild = queryToBuild.replace(param, this.getContextMap().get(param));
-            }
-            QueryFactory.create(queryToBuild);
-            this.resultQuery = queryToBuild;
-            return this.resultQuery;
-        } catch (QueryException e) {
-            log.error(String.format("SPARQL query syntax or parsing exception for the query %s", this.backupQuery.name()));
-            log.error("\n" + queryToBuild);
+        String builtQuery = SparqlQueryTemplate.of(queryToBuild, this.backupQuery.name()).build(this.getContextMap(), this.backupQuery.name());
+        if (builtQuery != null) {
+            this.resultQuery = builtQuery;
         }
-        return null;
+        return builtQuery;
     }
 }
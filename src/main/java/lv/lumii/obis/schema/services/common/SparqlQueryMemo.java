@@ -0,0 +1,179 @@
+package lv.lumii.obis.schema.services.common;
+
+import lombok.extern.slf4j.Slf4j;
+import lv.lumii.obis.schema.services.SparqlEndpointException;
+import lv.lumii.obis.schema.services.common.dto.QueryResponse;
+import lv.lumii.obis.schema.services.common.dto.QueryResponseError;
+import lv.lumii.obis.schema.services.common.dto.SparqlEndpointConfig;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Responses of the queries already sent during one extraction, keyed by the final query text.
+ * If the same query is requested while it is still in flight, the caller waits for that request instead of sending the query again.
+ * Only successful responses with up to {@link #MAX_ROWS} rows are kept, the table of the extraction is dropped by {@link #finish(String)}.
+ * The kept responses are evicted in the least recently used order when there are more than {@link #MAX_ENTRIES} of them
+ * or their results exceed {@link #MAX_RESULT_BYTES}.
+ */
+@Slf4j
+@Service
+public class SparqlQueryMemo {
+
+    private static final int MAX_ROWS = 1000;
+    private static final int MAX_ENTRIES = 10000;
+    private static final long MAX_RESULT_BYTES = 64L * 1024 * 1024;
+
+    private final Map<String, RunMemo> runs = new ConcurrentHashMap<>();
+
+    /**
+     * Registers the query of the extraction. If {@link Call#isFirst()}, the caller must send the query and pass the response
+     * (or the exception) to the call, otherwise the response is taken with {@link Call#await()}.
+     */
+    @Nonnull
+    public Call start(@Nonnull SparqlEndpointConfig config, @Nonnull String sparqlQuery) {
+        RunMemo memo = runs.computeIfAbsent(StringUtils.defaultString(config.getCorrelationId()), id -> new RunMemo());
+        CompletableFuture<QueryResponse> newResponse = new CompletableFuture<>();
+        CompletableFuture<QueryResponse> response = memo.responses.putIfAbsent(sparqlQuery, newResponse);
+        return response == null ? new Call(memo, sparqlQuery, newResponse, true) : new Call(memo, sparqlQuery, response, false);
+    }
+
+    public void finish(@Nullable String correlationId) {
+        RunMemo memo = runs.remove(StringUtils.defaultString(correlationId));
+        if (memo == null) {
+            return;
+        }
+        long saved = memo.savedCompleted.get() + memo.savedInFlight.get();
+        log.info(String.format("%s - SPARQL query memo: %d duplicate queries not sent (%d of them joined a query in flight), %d responses kept, %d evicted",
+                correlationId, saved, memo.savedInFlight.get(), memo.responses.size(), memo.evicted.get()));
+    }
+
+    public static class Call {
+
+        private final RunMemo memo;
+        private final String sparqlQuery;
+        private final CompletableFuture<QueryResponse> response;
+        private final boolean first;
+
+        private Call(@Nonnull RunMemo memo, @Nonnull String sparqlQuery, @Nonnull CompletableFuture<QueryResponse> response, boolean first) {
+            this.memo = memo;
+            this.sparqlQuery = sparqlQuery;
+            this.response = response;
+            this.first = first;
+        }
+
+        public boolean isFirst() {
+            return first;
+        }
+
+        /**
+         * Shares the response with the waiting callers and keeps it for the later ones if it is small and has no errors.
+         *
+         * @return the response for the caller, a copy if the response is kept
+         */
+        @Nonnull
+        public QueryResponse complete(@Nonnull QueryResponse queryResponse) {
+            boolean keep = !queryResponse.hasErrors() && queryResponse.getRowCount() <= MAX_ROWS;
+            if (!keep) {
+                memo.responses.remove(sparqlQuery, response);
+            }
+            response.complete(queryResponse);
+            if (!keep) {
+                return queryResponse;
+            }
+            memo.keep(sparqlQuery, response, queryResponse.getResultBytes());
+            return copy(queryResponse, true);
+        }
+
+        public void fail(@Nonnull Throwable e) {
+            memo.responses.remove(sparqlQuery, response);
+            response.completeExceptionally(e);
+        }
+
+        @Nonnull
+        public QueryResponse await() {
+            boolean inFlight = !response.isDone();
+            QueryResponse queryResponse;
+            try {
+                queryResponse = response.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                QueryResponse interruptedResponse = new QueryResponse();
+                interruptedResponse.setHasErrors(true);
+                interruptedResponse.setResults(new ArrayList<>());
+                interruptedResponse.setQueryResponseError(new QueryResponseError(500, "Interrupted while waiting for the same query in flight"));
+                return interruptedResponse;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new SparqlEndpointException("The same query in flight failed", e.getCause());
+            }
+            if (inFlight) {
+                memo.savedInFlight.incrementAndGet();
+            } else {
+                memo.savedCompleted.incrementAndGet();
+                memo.touch(sparqlQuery);
+            }
+            return copy(queryResponse, false);
+        }
+
+        // callers may change the result list (for example, clear it when the results are processed);
+        // the reused responses have no execution time, same as the cached ones, so they are not counted as endpoint latency
+        @Nonnull
+        private static QueryResponse copy(@Nonnull QueryResponse queryResponse, boolean sent) {
+            QueryResponse copy = new QueryResponse();
+            copy.setHasErrors(queryResponse.hasErrors());
+            copy.setQueryResponseError(queryResponse.getQueryResponseError());
+            if (sent) {
+                copy.setExecutionTime(queryResponse.getExecutionTime());
+                copy.setExecutionTimeInMillis(queryResponse.getExecutionTimeInMillis());
+            }
+            copy.setRowCount(queryResponse.getRowCount());
+            copy.setResultBytes(queryResponse.getResultBytes());
+            copy.setResults(new ArrayList<>(queryResponse.getResults()));
+            return copy;
+        }
+    }
+
+    private static class RunMemo {
+        private final Map<String, CompletableFuture<QueryResponse>> responses = new ConcurrentHashMap<>();
+        // kept query -> result bytes, in the access order
+        private final LinkedHashMap<String, Long> kept = new LinkedHashMap<>(16, 0.75f, true);
+        private long keptBytes = 0L;
+        private final AtomicLong savedCompleted = new AtomicLong();
+        private final AtomicLong savedInFlight = new AtomicLong();
+        private final AtomicLong evicted = new AtomicLong();
+
+        private synchronized void keep(@Nonnull String sparqlQuery, @Nonnull CompletableFuture<QueryResponse> response, long resultBytes) {
+            if (responses.get(sparqlQuery) != response) {
+                return;
+            }
+            kept.put(sparqlQuery, resultBytes);
+            keptBytes += resultBytes;
+            Iterator<Map.Entry<String, Long>> iterator = kept.entrySet().iterator();
+            while ((kept.size() > MAX_ENTRIES || keptBytes > MAX_RESULT_BYTES) && iterator.hasNext()) {
+                Map.Entry<String, Long> eldest = iterator.next();
+                iterator.remove();
+                keptBytes -= eldest.getValue();
+                responses.remove(eldest.getKey());
+                evicted.incrementAndGet();
+            }
+        }
+
+        private synchronized void touch(@Nonnull String sparqlQuery) {
+            kept.get(sparqlQuery);
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package lv.lumii.obis.schema.services.common;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lv.lumii.obis.schema.services.common.dto.QueryResponse;
+import lv.lumii.obis.schema.services.common.dto.SparqlEndpointConfig;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+
+import static lv.lumii.obis.schema.constants.SchemaConstants.SPARQL_QUERY_BINDING_NAME_LIMIT;
+
+/**
+ * SPARQL query metrics, exported at /actuator/prometheus (and /actuator/metrics).
+ * All meters are tagged by the query name, query type (LARGE/SMALL), endpoint, outcome (success, error, cached, memo, invalid)
+ * and fallback level - the LIMIT value of the fallback queries or "none" for the queries without a limit.
+ */
+@Service
+public class SparqlQueryMetrics {
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_ERROR = "error";
+    public static final String OUTCOME_CACHED = "cached";
+    public static final String OUTCOME_INVALID = "invalid";
+    public static final String OUTCOME_MEMO = "memo";
+
+    private static final String FALLBACK_LEVEL_NONE = "none";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    public void record(@Nonnull SparqlEndpointConfig config, @Nonnull SparqlQueryBuilder queryBuilder, @Nonnull String outcome,
+                       long durationInNanos, @Nonnull QueryResponse response) {
+        Tags tags = Tags.of(
+                "query", queryBuilder.getQueryName(),
+                "queryType", queryBuilder.getQueryType() != null ? queryBuilder.getQueryType().name() : "UNKNOWN",
+                "endpoint", StringUtils.defaultString(config.getEndpointUrl()),
+                "outcome", outcome,
+                "fallbackLevel", StringUtils.defaultIfEmpty(queryBuilder.getContextMap().get(SPARQL_QUERY_BINDING_NAME_LIMIT), FALLBACK_LEVEL_NONE));
+
+        Timer.builder("sparql.query.duration")
+                .description("Execution time of SPARQL queries, including the retries")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(durationInNanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("sparql.query.rows")
+                .description("Result rows of SPARQL queries")
+                .baseUnit("rows")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(response.getRowCount());
+        DistributionSummary.builder("sparql.query.response")
+                .description("Size of the values in SPARQL query results")
+                .baseUnit("bytes")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(response.getResultBytes());
+    }
+
+}
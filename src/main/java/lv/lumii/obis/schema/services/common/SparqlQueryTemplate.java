@@ -0,0 +1,229 @@
+package lv.lumii.obis.schema.services.common;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jena.query.QueryException;
+import org.apache.jena.query.QueryFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static lv.lumii.obis.schema.constants.SchemaConstants.*;
+
+/**
+ * SPARQL query text split into the fixed parts and the placeholders (such as &lt;property&gt;, &lt;classA&gt;, &lt;limit&gt;, &lt;valuesClause&gt;).
+ * Every distinct query text (built-in query or an override from queries.properties) is parsed only once, when it is first used,
+ * with sample values in place of the placeholders. A query is built by joining the parts with the placeholder values,
+ * without the replacing over the whole text and without parsing it again. Only if a value cannot be checked for the SPARQL syntax
+ * without the parser (for example, a literal or an IRI with characters that are not allowed in IRIs), the built query is still parsed.
+ */
+@Slf4j
+public class SparqlQueryTemplate {
+
+    private static final String SAMPLE_IRI = "urn:sample";
+
+    // placeholder -> value used to validate the template; the placeholders that are not enclosed in angle brackets are used inside IRIs
+    private static final Map<String, String> PLACEHOLDER_SAMPLES = new LinkedHashMap<>();
+
+    static {
+        for (String iriPlaceholder : Arrays.asList(SPARQL_QUERY_BINDING_NAME_CLASS_FULL, SPARQL_QUERY_BINDING_NAME_CLASS_A_FULL, SPARQL_QUERY_BINDING_NAME_CLASS_B_FULL,
+                SPARQL_QUERY_BINDING_NAME_CLASS_SOURCE_FULL, SPARQL_QUERY_BINDING_NAME_CLASS_TARGET_FULL,
+                SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, SPARQL_QUERY_BINDING_NAME_PROPERTY2_FULL)) {
+            PLACEHOLDER_SAMPLES.put(iriPlaceholder, "<" + SAMPLE_IRI + ">");
+        }
+        for (String innerIriPlaceholder : Arrays.asList(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY, SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_A,
+                SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_B, SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_FOR_SOURCE,
+                SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_FOR_TARGET, SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_OTHER,
+                SPARQL_QUERY_BINDING_NAME_RESOURCE1, SPARQL_QUERY_BINDING_NAME_RESOURCE2)) {
+            PLACEHOLDER_SAMPLES.put(innerIriPlaceholder, SAMPLE_IRI);
+        }
+        PLACEHOLDER_SAMPLES.put(SPARQL_QUERY_BINDING_NAME_DISTINCT_FULL, SPARQL_QUERY_BINDING_NAME_DISTINCT);
+        PLACEHOLDER_SAMPLES.put(SPARQL_QUERY_BINDING_NAME_LIMIT, "1");
+        PLACEHOLDER_SAMPLES.put(SPARQL_QUERY_BINDING_NAME_VALUES, StringUtils.EMPTY);
+        PLACEHOLDER_SAMPLES.put(SPARQL_QUERY_BINDING_NAME_CUSTOM_FILTER, "true");
+    }
+
+    // longer placeholders first, so that classificationPropertyA is not taken for classificationProperty
+    private static final List<String> PLACEHOLDERS = new ArrayList<>(PLACEHOLDER_SAMPLES.keySet());
+
+    static {
+        PLACEHOLDERS.sort(Comparator.comparingInt(String::length).reversed());
+    }
+
+    private static final Map<String, SparqlQueryTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
+    // fixed parts of the query, there is always one more part than placeholders
+    private final String[] parts;
+    private final String[] placeholders;
+    private final boolean[] insideIri;
+    private final int fixedLength;
+    @Getter
+    private final boolean valid;
+
+    private SparqlQueryTemplate(@Nonnull String query, @Nonnull String queryName) {
+        List<String> queryParts = new ArrayList<>();
+        List<String> queryPlaceholders = new ArrayList<>();
+        int partStart = 0;
+        int position = 0;
+        while (position < query.length()) {
+            String placeholder = findPlaceholder(query, position);
+            if (placeholder == null) {
+                position++;
+                continue;
+            }
+            queryParts.add(query.substring(partStart, position));
+            queryPlaceholders.add(placeholder);
+            position += placeholder.length();
+            partStart = position;
+        }
+        queryParts.add(query.substring(partStart));
+
+        this.parts = queryParts.toArray(new String[0]);
+        this.placeholders = queryPlaceholders.toArray(new String[0]);
+        this.insideIri = new boolean[placeholders.length];
+        int length = 0;
+        for (int i = 0; i < placeholders.length; i++) {
+            insideIri[i] = parts[i].endsWith("<") && parts[i + 1].startsWith(">");
+        }
+        for (String part : parts) {
+            length += part.length();
+        }
+        this.fixedLength = length;
+        this.valid = validate(queryName);
+    }
+
+    /**
+     * Returns the compiled template of the query text. Invalid query texts are reported only when they are compiled.
+     */
+    @Nonnull
+    public static SparqlQueryTemplate of(@Nonnull String query, @Nonnull String queryName) {
+        SparqlQueryTemplate template = TEMPLATES.get(query);
+        if (template == null) {
+            template = TEMPLATES.computeIfAbsent(query, q -> new SparqlQueryTemplate(q, queryName));
+        }
+        return template;
+    }
+
+    /**
+     * Builds the query. Placeholders without a value in the context are left as they are (and then the query is parsed).
+     *
+     * @return the query or null if it is not a valid SPARQL query
+     */
+    @Nullable
+    public String build(@Nonnull Map<String, String> context, @Nonnull String queryName) {
+        if (!valid) {
+            return null;
+        }
+        for (String param : context.keySet()) {
+            if (!PLACEHOLDER_SAMPLES.containsKey(param)) {
+                // not a known placeholder, the template cannot be used
+                return buildAndParse(join(context), queryName);
+            }
+        }
+        boolean checked = true;
+        for (int i = 0; i < placeholders.length && checked; i++) {
+            String value = context.get(placeholders[i]);
+            checked = value != null && isSafeValue(placeholders[i], value, insideIri[i]);
+        }
+        String query = join(context);
+        if (!checked) {
+            return buildAndParse(query, queryName);
+        }
+        return query;
+    }
+
+    @Nonnull
+    private String join(@Nonnull Map<String, String> context) {
+        int length = fixedLength;
+        for (String placeholder : placeholders) {
+            length += StringUtils.defaultString(context.get(placeholder), placeholder).length();
+        }
+        StringBuilder query = new StringBuilder(length);
+        for (int i = 0; i < placeholders.length; i++) {
+            query.append(parts[i]);
+            String value = context.get(placeholders[i]);
+            query.append(value != null ? value : placeholders[i]);
+        }
+        query.append(parts[parts.length - 1]);
+        String result = query.toString();
+        // context params that are not known placeholders are replaced over the whole query as before
+        for (Map.Entry<String, String> param : context.entrySet()) {
+            if (!PLACEHOLDER_SAMPLES.containsKey(param.getKey()) && param.getValue() != null) {
+                result = result.replace(param.getKey(), param.getValue());
+            }
+        }
+        return result;
+    }
+
+    @Nullable
+    private String buildAndParse(@Nonnull String query, @Nonnull String queryName) {
+        try {
+            QueryFactory.create(query);
+            return query;
+        } catch (QueryException e) {
+            log.error(String.format("SPARQL query syntax or parsing exception for the query %s", queryName));
+            log.error("\n" + query);
+            return null;
+        }
+    }
+
+    private boolean validate(@Nonnull String queryName) {
+        StringBuilder sampleQuery = new StringBuilder();
+        for (int i = 0; i < placeholders.length; i++) {
+            sampleQuery.append(parts[i]).append(PLACEHOLDER_SAMPLES.get(placeholders[i]));
+        }
+        sampleQuery.append(parts[parts.length - 1]);
+        try {
+            QueryFactory.create(sampleQuery.toString());
+            return true;
+        } catch (QueryException e) {
+            log.error(String.format("SPARQL query %s has syntax errors and will not be used: %s", queryName, e.getMessage()));
+            log.error("\n" + join(Collections.emptyMap()));
+            return false;
+        }
+    }
+
+    /**
+     * Checks without the parser that the value keeps the query valid - IRIs and the values generated by the extractor.
+     */
+    private static boolean isSafeValue(@Nonnull String placeholder, @Nonnull String value, boolean insideIri) {
+        if (SPARQL_QUERY_BINDING_NAME_VALUES.equals(placeholder) || SPARQL_QUERY_BINDING_NAME_CUSTOM_FILTER.equals(placeholder)) {
+            return true;
+        }
+        if (SPARQL_QUERY_BINDING_NAME_DISTINCT_FULL.equals(placeholder)) {
+            return value.isEmpty() || SPARQL_QUERY_BINDING_NAME_DISTINCT.equals(value);
+        }
+        if (SPARQL_QUERY_BINDING_NAME_LIMIT.equals(placeholder)) {
+            return !value.isEmpty() && StringUtils.isNumeric(value);
+        }
+        if (insideIri) {
+            return isIriContent(value, 0, value.length());
+        }
+        return value.length() > 2 && value.charAt(0) == '<' && value.charAt(value.length() - 1) == '>'
+                && isIriContent(value, 1, value.length() - 1);
+    }
+
+    private static boolean isIriContent(@Nonnull String value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c <= ' ' || c == '<' || c == '>' || c == '"' || c == '{' || c == '}' || c == '|' || c == '^' || c == '`' || c == '\\') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    private static String findPlaceholder(@Nonnull String query, int position) {
+        for (String placeholder : PLACEHOLDERS) {
+            if (query.startsWith(placeholder, position)) {
+                return placeholder;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,270 @@
+package lv.lumii.obis.schema.services.common;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import lv.lumii.obis.schema.services.ObjectConversionService;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorRequestDto;
+import lv.lumii.obis.schema.services.extractor.v2.SchemaExtractorQueries.QueryType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.BooleanUtils.isTrue;
+
+/**
+ * Writes every SPARQL request of an extraction (every attempt and every response read from the cache) as one JSON line
+ * to the file {correlationId}-trace.jsonl. The querying threads only put the entry into a queue, the file is written by a separate thread.
+ * The extraction phase and the processed property or class are taken from the context of the querying thread, see {@link #setContext(String, String)}.
+ * Independently of the trace file, the requests sent for each property or class are counted until they are taken with {@link #takeSubjectQueries}.
+ */
+@Slf4j
+@Service
+public class SparqlQueryTracer {
+
+    public static final String TRACE_FILE_SUFFIX = "-trace.jsonl";
+
+    private static final int QUEUE_CAPACITY = 100_000;
+    private static final long FINISH_TIMEOUT_IN_SECONDS = 60L;
+
+    private static final ThreadLocal<TraceContext> CONTEXT = ThreadLocal.withInitial(TraceContext::new);
+
+    @Autowired
+    private ObjectConversionService objectConversionService;
+
+    private final Map<String, TraceFile> traceFiles = new ConcurrentHashMap<>();
+
+    private final Map<String, Map<String, SubjectQueries>> subjectQueries = new ConcurrentHashMap<>();
+
+    public void start(@Nonnull SchemaExtractorRequestDto request) {
+        subjectQueries.put(request.getCorrelationId(), new ConcurrentHashMap<>());
+        if (!isTrue(request.getSaveQueryTrace())) {
+            return;
+        }
+        Path file = Paths.get(request.getCorrelationId() + TRACE_FILE_SUFFIX);
+        try {
+            TraceFile traceFile = new TraceFile(request.getCorrelationId(), Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+            traceFiles.put(request.getCorrelationId(), traceFile);
+            traceFile.start();
+        } catch (IOException e) {
+            log.error(request.getCorrelationId() + " - cannot create the query trace file " + file.toAbsolutePath() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the remaining entries and closes the trace file.
+     */
+    public void finish(@Nonnull SchemaExtractorRequestDto request) {
+        clearContext();
+        subjectQueries.remove(request.getCorrelationId());
+        TraceFile traceFile = traceFiles.remove(request.getCorrelationId());
+        if (traceFile != null) {
+            traceFile.finish();
+        }
+    }
+
+    /**
+     * Sets the extraction phase and the processed property or class for the following queries of the current thread.
+     */
+    public void setContext(@Nullable String phase, @Nullable String subject) {
+        TraceContext context = CONTEXT.get();
+        context.phase = phase;
+        context.subject = subject;
+    }
+
+    @Nullable
+    public String getPhase() {
+        return CONTEXT.get().phase;
+    }
+
+    @Nullable
+    public String getSubject() {
+        return CONTEXT.get().subject;
+    }
+
+    public void clearContext() {
+        CONTEXT.remove();
+    }
+
+    /**
+     * Returns and resets the number and the total time of the requests sent for the property or class.
+     */
+    @Nonnull
+    public SubjectQueries takeSubjectQueries(@Nullable String correlationId, @Nonnull String subject) {
+        Map<String, SubjectQueries> extractionQueries = correlationId != null ? subjectQueries.get(correlationId) : null;
+        SubjectQueries queries = extractionQueries != null ? extractionQueries.remove(subject) : null;
+        return queries != null ? queries : new SubjectQueries();
+    }
+
+    public void recordRequest(@Nullable String correlationId, @Nonnull String queryName, @Nullable QueryType queryType, int attempt,
+                              long startNanos, long endNanos, long rows, long bytes, @Nullable Integer httpStatus) {
+        Map<String, SubjectQueries> extractionQueries = correlationId != null ? subjectQueries.get(correlationId) : null;
+        String subject = CONTEXT.get().subject;
+        if (extractionQueries != null && subject != null) {
+            extractionQueries.computeIfAbsent(subject, s -> new SubjectQueries()).add(endNanos - startNanos);
+        }
+        record(correlationId, queryName, queryType, attempt, startNanos, endNanos, rows, bytes, httpStatus, false);
+    }
+
+    public void recordCacheHit(@Nullable String correlationId, @Nonnull String queryName, @Nullable QueryType queryType,
+                               long startNanos, long endNanos, long rows, long bytes) {
+        record(correlationId, queryName, queryType, null, startNanos, endNanos, rows, bytes, null, true);
+    }
+
+    private void record(@Nullable String correlationId, @Nonnull String queryName, @Nullable QueryType queryType, @Nullable Integer attempt,
+                        long startNanos, long endNanos, long rows, long bytes, @Nullable Integer httpStatus, boolean cacheHit) {
+        TraceFile traceFile = correlationId != null ? traceFiles.get(correlationId) : null;
+        if (traceFile == null) {
+            return;
+        }
+        TraceContext context = CONTEXT.get();
+        TraceEntry entry = new TraceEntry(queryName, queryType != null ? queryType.name() : null, context.phase, context.subject,
+                Thread.currentThread().getName(), startNanos - traceFile.startNanos, endNanos - traceFile.startNanos,
+                rows, bytes, httpStatus, attempt, cacheHit);
+        traceFile.add(entry);
+    }
+
+    private static class TraceContext {
+        private String phase;
+        private String subject;
+    }
+
+    public static class SubjectQueries {
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+
+        private void add(long durationNanos) {
+            count.incrementAndGet();
+            nanos.addAndGet(durationNanos);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos.get());
+        }
+    }
+
+    @Getter
+    private static class TraceEntry {
+        private final String query;
+        private final String queryType;
+        private final String phase;
+        private final String subject;
+        private final String thread;
+        private final long startNanos;
+        private final long endNanos;
+        private final long rows;
+        private final long bytes;
+        private final Integer httpStatus;
+        private final Integer attempt;
+        private final boolean cacheHit;
+
+        TraceEntry(String query, String queryType, String phase, String subject, String thread, long startNanos, long endNanos,
+                   long rows, long bytes, Integer httpStatus, Integer attempt, boolean cacheHit) {
+            this.query = query;
+            this.queryType = queryType;
+            this.phase = phase;
+            this.subject = subject;
+            this.thread = thread;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.httpStatus = httpStatus;
+            this.attempt = attempt;
+            this.cacheHit = cacheHit;
+        }
+    }
+
+    private class TraceFile {
+
+        // marks the end of the trace in the queue
+        private final TraceEntry endOfTrace = new TraceEntry(null, null, null, null, null, 0L, 0L, 0L, 0L, null, null, false);
+
+        private final String correlationId;
+        private final BufferedWriter output;
+        private final BlockingQueue<TraceEntry> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+        private final AtomicLong droppedEntries = new AtomicLong();
+        private final long startNanos = System.nanoTime();
+        private final Thread writerThread;
+        private volatile boolean failed;
+
+        TraceFile(@Nonnull String correlationId, @Nonnull BufferedWriter output) {
+            this.correlationId = correlationId;
+            this.output = output;
+            this.writerThread = new Thread(this::writeEntries, "sparql-query-trace-" + correlationId);
+            this.writerThread.setDaemon(true);
+        }
+
+        void start() {
+            writerThread.start();
+        }
+
+        void add(@Nonnull TraceEntry entry) {
+            // the querying thread never waits for the file, if the writer falls behind the entry is dropped
+            if (failed || !queue.offer(entry)) {
+                droppedEntries.incrementAndGet();
+            }
+        }
+
+        void finish() {
+            if (failed) {
+                return;
+            }
+            try {
+                if (!queue.offer(endOfTrace, FINISH_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+                    writerThread.interrupt();
+                }
+                writerThread.join(TimeUnit.SECONDS.toMillis(FINISH_TIMEOUT_IN_SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                writerThread.interrupt();
+            }
+            if (droppedEntries.get() > 0L) {
+                log.error(correlationId + String.format(" - %d query trace entries were not written, the trace file could not be written fast enough", droppedEntries.get()));
+            }
+        }
+
+        private void writeEntries() {
+            try (BufferedWriter out = output) {
+                while (true) {
+                    TraceEntry entry = queue.poll();
+                    if (entry == null) {
+                        // flush while idle, so that the trace of a long running extraction can be followed and is not lost if the process is stopped
+                        out.flush();
+                        entry = queue.take();
+                    }
+                    if (entry == endOfTrace) {
+                        break;
+                    }
+                    out.write(objectConversionService.getJsonLineFromObject(entry));
+                    out.newLine();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                log.error(correlationId + " - cannot write the query trace file: " + e.getMessage());
+                failed = true;
+                queue.clear();
+            }
+        }
+    }
+
+}
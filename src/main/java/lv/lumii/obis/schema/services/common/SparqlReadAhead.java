@@ -0,0 +1,63 @@
+package lv.lumii.obis.schema.services.common;
+
+import lv.lumii.obis.schema.services.SparqlEndpointException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Results of independent SPARQL tasks that are consumed in the given order.
+ * If an executor is given, up to window tasks are started ahead of the consumed one, so the caller can stop early (for example, when the first match is found)
+ * without sending all the remaining queries. Without an executor every task runs on the calling thread when its result is requested.
+ */
+public class SparqlReadAhead<T> implements AutoCloseable {
+
+    private final List<Supplier<T>> tasks;
+    private final SparqlIoExecutor executor;
+    private final int window;
+    private final List<CompletableFuture<T>> started = new ArrayList<>();
+    private volatile boolean closed;
+
+    public SparqlReadAhead(@Nonnull List<Supplier<T>> tasks, @Nullable SparqlIoExecutor executor, int window) {
+        this.tasks = tasks;
+        this.executor = executor;
+        this.window = Math.max(window, 1);
+    }
+
+    public int size() {
+        return tasks.size();
+    }
+
+    public T get(int index) {
+        if (executor == null) {
+            return tasks.get(index).get();
+        }
+        while (started.size() < tasks.size() && started.size() < index + window) {
+            Supplier<T> task = tasks.get(started.size());
+            // tasks that have not started before close are skipped
+            started.add(executor.submit(() -> closed ? null : task.get()));
+        }
+        try {
+            return started.get(index).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SparqlEndpointException("Waiting for the SPARQL query results was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new SparqlEndpointException("SPARQL query task failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+}
@@ -0,0 +1,195 @@
+package lv.lumii.obis.schema.services.common;
+
+import lombok.extern.slf4j.Slf4j;
+import lv.lumii.obis.schema.services.SchemaUtil;
+import lv.lumii.obis.schema.services.common.dto.SparqlEndpointConfig;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorRequestDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses one of the equivalent replica endpoints (request parameter replicaEndpointUrls) for each query.
+ * The replica is chosen by the number of outstanding requests or by the outstanding requests weighted with the average response time.
+ * A replica that fails is quarantined - it gets no queries for a while (longer after each consecutive failure) and the queries
+ * fail over to the other replicas. Only when all replicas are quarantined, the query goes to the replica that leaves the quarantine first
+ * and the endpoint circuit breaker handles the failure as for a single endpoint.
+ * The state of the replicas is shared by all extractions.
+ */
+@Slf4j
+@Service
+public class SparqlReplicaBalancer {
+
+    private static final long INITIAL_QUARANTINE_IN_SECONDS = 30L;
+    private static final long MAX_QUARANTINE_IN_SECONDS = 10 * 60L;
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    @Autowired
+    private SparqlEndpointCircuitBreaker circuitBreaker;
+
+    private final Map<String, Replica> replicas = new ConcurrentHashMap<>();
+    private final AtomicInteger rotation = new AtomicInteger();
+
+    /**
+     * Chooses the replica for the next request and counts the request as outstanding until {@link #release} or {@link #cancel}.
+     *
+     * @param excludedEndpoints replicas that already failed for this query
+     * @return the chosen replica or null if the request has no replicas
+     */
+    @Nullable
+    public Replica acquire(@Nonnull SparqlEndpointConfig config, @Nonnull Set<String> excludedEndpoints) {
+        List<String> endpointUrls = config.getEndpointUrls();
+        if (endpointUrls.size() < 2) {
+            return null;
+        }
+        long now = System.nanoTime();
+        int offset = Math.floorMod(rotation.getAndIncrement(), endpointUrls.size());
+        Replica best = null;
+        double bestScore = Double.MAX_VALUE;
+        Replica firstReleased = null;
+        for (int i = 0; i < endpointUrls.size(); i++) {
+            // the replicas with equal scores take turns
+            Replica replica = getReplica(endpointUrls.get((offset + i) % endpointUrls.size()));
+            if (!isAvailable(config, replica, excludedEndpoints, now)) {
+                if (firstReleased == null || replica.quarantinedUntil < firstReleased.quarantinedUntil) {
+                    firstReleased = replica;
+                }
+                continue;
+            }
+            double score = replica.score(config.getReplicaBalancing());
+            if (score < bestScore) {
+                best = replica;
+                bestScore = score;
+            }
+        }
+        Replica chosen = best != null ? best : firstReleased;
+        chosen.outstanding.incrementAndGet();
+        return chosen;
+    }
+
+    /**
+     * @return true if some replica of the request is not quarantined and has not failed for this query yet
+     */
+    public boolean hasAvailableReplica(@Nonnull SparqlEndpointConfig config, @Nonnull Set<String> excludedEndpoints) {
+        long now = System.nanoTime();
+        for (String endpointUrl : config.getEndpointUrls()) {
+            if (isAvailable(config, getReplica(endpointUrl), excludedEndpoints, now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of replicas that are not quarantined now, at least 1
+     */
+    public int countAvailableReplicas(@Nonnull SparqlEndpointConfig config) {
+        long now = System.nanoTime();
+        int count = 0;
+        for (String endpointUrl : config.getEndpointUrls()) {
+            if (isAvailable(config, getReplica(endpointUrl), Collections.emptySet(), now)) {
+                count++;
+            }
+        }
+        return Math.max(count, 1);
+    }
+
+    /**
+     * Ends the request. A failed request quarantines the replica, a successful one updates its average response time.
+     */
+    public void release(@Nullable Replica replica, long durationInNanos, boolean failed) {
+        if (replica == null) {
+            return;
+        }
+        replica.outstanding.decrementAndGet();
+        if (failed) {
+            replica.quarantine(durationInNanos);
+        } else {
+            replica.recordSuccess(durationInNanos);
+        }
+    }
+
+    /**
+     * Ends the request that was not sent to the replica.
+     */
+    public void cancel(@Nullable Replica replica) {
+        if (replica != null) {
+            replica.outstanding.decrementAndGet();
+        }
+    }
+
+    private boolean isAvailable(@Nonnull SparqlEndpointConfig config, @Nonnull Replica replica, @Nonnull Set<String> excludedEndpoints, long now) {
+        return !excludedEndpoints.contains(replica.endpointUrl) && !replica.isQuarantined(now)
+                && circuitBreaker.getState(config.forEndpoint(replica.endpointUrl)) == SparqlEndpointCircuitBreaker.State.CLOSED;
+    }
+
+    @Nonnull
+    private Replica getReplica(@Nonnull String endpointUrl) {
+        return replicas.computeIfAbsent(endpointUrl, Replica::new);
+    }
+
+    public static class Replica {
+
+        private final String endpointUrl;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private double averageLatencyInMillis;
+        private int consecutiveFailures;
+        private long quarantinedSince;
+        private volatile long quarantinedUntil;
+
+        private Replica(@Nonnull String endpointUrl) {
+            this.endpointUrl = endpointUrl;
+        }
+
+        @Nonnull
+        public String getEndpointUrl() {
+            return endpointUrl;
+        }
+
+        private boolean isQuarantined(long now) {
+            return quarantinedUntil - now > 0L;
+        }
+
+        private synchronized double score(@Nonnull SchemaExtractorRequestDto.ReplicaBalancingMode mode) {
+            if (SchemaExtractorRequestDto.ReplicaBalancingMode.latencyWeighted.equals(mode)) {
+                // a replica without measured responses gets the next query
+                return (outstanding.get() + 1) * Math.max(averageLatencyInMillis, 1.0);
+            }
+            return outstanding.get();
+        }
+
+        private synchronized void recordSuccess(long durationInNanos) {
+            double latencyInMillis = durationInNanos / 1_000_000.0;
+            averageLatencyInMillis = averageLatencyInMillis <= 0.0
+                    ? latencyInMillis : averageLatencyInMillis + LATENCY_SMOOTHING * (latencyInMillis - averageLatencyInMillis);
+            if (consecutiveFailures > 0) {
+                log.info(String.format("The replica endpoint [ %s ] responds again and gets queries", SchemaUtil.getEndpointLinkText(endpointUrl, null)));
+                consecutiveFailures = 0;
+            }
+        }
+
+        private synchronized void quarantine(long durationInNanos) {
+            long now = System.nanoTime();
+            // the requests that fail during the quarantine or were sent before it started count as one failure with the request that started it
+            if (isQuarantined(now) || (consecutiveFailures > 0 && now - durationInNanos - quarantinedSince < 0L)) {
+                return;
+            }
+            consecutiveFailures++;
+            long quarantineInSeconds = Math.min(MAX_QUARANTINE_IN_SECONDS, INITIAL_QUARANTINE_IN_SECONDS << Math.min(consecutiveFailures - 1, 10));
+            quarantinedSince = now;
+            quarantinedUntil = now + TimeUnit.SECONDS.toNanos(quarantineInSeconds);
+            log.warn(String.format("The replica endpoint [ %s ] failed %d time(s) in a row, it gets no queries for %d seconds",
+                    SchemaUtil.getEndpointLinkText(endpointUrl, null), consecutiveFailures, quarantineInSeconds));
+        }
+    }
+
+}
@@ -0,0 +1,401 @@
+package lv.lumii.obis.schema.services.common;
+
+import lombok.extern.slf4j.Slf4j;
+import lv.lumii.obis.schema.services.common.dto.QueryResponse;
+import lv.lumii.obis.schema.services.common.dto.QueryResult;
+import lv.lumii.obis.schema.services.common.dto.QueryResultColumns;
+import lv.lumii.obis.schema.services.common.dto.SparqlEndpointConfig;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static lv.lumii.obis.schema.constants.SchemaConstants.GLOBAL_RESPONSE_CACHE_PATH;
+
+/**
+ * Local file cache of successful SPARQL SELECT responses.
+ * Entries are keyed by the endpoint URL, graph name, Accept header and the normalized query text,
+ * expire after the configured TTL and are evicted in the least recently used order when the cache exceeds the size limit.
+ */
+@Slf4j
+@Service
+public class SparqlResponseCache {
+
+    private static final int FILE_FORMAT_VERSION = 1;
+    private static final String FILE_EXTENSION = ".bin";
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+    private final Path cacheDirectory = Paths.get(GLOBAL_RESPONSE_CACHE_PATH);
+
+    // file name -> file size, in the access order
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize = 0L;
+    private boolean initialized = false;
+
+    private final Map<String, CacheStatistics> statistics = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the cached response or null if there is no valid entry. If the consumer is provided, the cached rows are passed to it and not kept in the response.
+     */
+    @Nullable
+    public QueryResponse read(@Nonnull SparqlEndpointConfig config, @Nonnull String sparqlQuery, @Nullable Consumer<QueryResult> resultConsumer) {
+        String key = buildKey(config, sparqlQuery);
+        String fileName = DigestUtils.sha256Hex(key) + FILE_EXTENSION;
+        Path file = cacheDirectory.resolve(fileName);
+        CacheStatistics cacheStatistics = getStatistics(config.getCorrelationId());
+
+        synchronized (this) {
+            initialize();
+            if (!entries.containsKey(fileName)) {
+                cacheStatistics.misses.incrementAndGet();
+                return null;
+            }
+        }
+
+        QueryResponse response = new QueryResponse();
+        List<QueryResult> queryResults = new ArrayList<>();
+        long rowCount = 0L;
+        long resultBytes = 0L;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            long createdAt = input.readLong();
+            if (input.readInt() != FILE_FORMAT_VERSION || !key.equals(readString(input)) || isExpired(createdAt, config.getResponseCacheTtl())) {
+                remove(fileName);
+                cacheStatistics.misses.incrementAndGet();
+                return null;
+            }
+            int columnCount = input.readInt();
+            List<String> variables = new ArrayList<>(columnCount);
+            for (int i = 0; i < columnCount; i++) {
+                variables.add(readString(input));
+            }
+            QueryResultColumns columns = new QueryResultColumns(variables);
+            while (input.readBoolean()) {
+                QueryResult queryResult = new QueryResult(columns);
+                for (int i = 0; i < columnCount; i++) {
+                    byte kind = input.readByte();
+                    if (kind != QueryResult.KIND_UNBOUND) {
+                        queryResult.setCell(i, kind, readString(input), readString(input));
+                    }
+                }
+                rowCount++;
+                resultBytes += queryResult.getValuesLength();
+                if (resultConsumer != null) {
+                    resultConsumer.accept(queryResult);
+                } else {
+                    queryResults.add(queryResult);
+                }
+            }
+        } catch (IOException e) {
+            log.error(config.getCorrelationId() + " - cannot read the cached SPARQL response " + file + ": " + e.getMessage());
+            remove(fileName);
+            if (rowCount > 0L && resultConsumer != null) {
+                // rows were already delivered, so the query cannot be repeated without duplicates
+                response.setHasErrors(true);
+                response.setRowCount(rowCount);
+                response.setResultBytes(resultBytes);
+                return response;
+            }
+            cacheStatistics.misses.incrementAndGet();
+            return null;
+        }
+
+        touch(file);
+        cacheStatistics.hits.incrementAndGet();
+        response.setHasErrors(false);
+        response.setResults(queryResults);
+        response.setRowCount(rowCount);
+        response.setResultBytes(resultBytes);
+        return response;
+    }
+
+    /**
+     * Opens a writer for the response rows. The entry becomes visible only after {@link Writer#commit()}.
+     */
+    @Nonnull
+    public Writer startWriting(@Nonnull SparqlEndpointConfig config, @Nonnull String sparqlQuery, @Nonnull QueryResultColumns columns) {
+        return new Writer(config, buildKey(config, sparqlQuery), columns);
+    }
+
+    public void logStatistics(@Nonnull String correlationId) {
+        CacheStatistics cacheStatistics = statistics.remove(correlationId);
+        if (cacheStatistics == null) {
+            return;
+        }
+        long hits = cacheStatistics.hits.get();
+        long misses = cacheStatistics.misses.get();
+        long currentSize;
+        int currentEntries;
+        synchronized (this) {
+            currentSize = totalSize;
+            currentEntries = entries.size();
+        }
+        log.info(String.format("%s - SPARQL response cache: %d hits, %d misses (hit rate %.1f%%), %d stored, %d evicted; cache contains %d entries, %d KB",
+                correlationId, hits, misses, (hits + misses) > 0 ? 100.0 * hits / (hits + misses) : 0.0,
+                cacheStatistics.stored.get(), cacheStatistics.evicted.get(), currentEntries, currentSize / 1024));
+    }
+
+    public class Writer {
+
+        private final SparqlEndpointConfig config;
+        private final String key;
+        private final Path tempFile;
+        private DataOutputStream output;
+
+        private Writer(@Nonnull SparqlEndpointConfig config, @Nonnull String key, @Nonnull QueryResultColumns columns) {
+            this.config = config;
+            this.key = key;
+            this.tempFile = cacheDirectory.resolve(DigestUtils.sha256Hex(key) + "-" + UUID.randomUUID() + TEMP_FILE_EXTENSION);
+            try {
+                Files.createDirectories(cacheDirectory);
+                output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tempFile))));
+                output.writeLong(System.currentTimeMillis());
+                output.writeInt(FILE_FORMAT_VERSION);
+                writeString(output, key);
+                output.writeInt(columns.size());
+                for (String variable : columns.getVariables()) {
+                    writeString(output, variable);
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        public void write(@Nonnull QueryResult queryResult) {
+            if (output == null) {
+                return;
+            }
+            try {
+                output.writeBoolean(true);
+                for (int i = 0; i < queryResult.getColumns().size(); i++) {
+                    byte kind = queryResult.getKind(i);
+                    output.writeByte(kind);
+                    if (kind != QueryResult.KIND_UNBOUND) {
+                        writeString(output, queryResult.getValue(i));
+                        writeString(output, queryResult.getDataType(i));
+                    }
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        public void commit() {
+            if (output == null) {
+                return;
+            }
+            String fileName = DigestUtils.sha256Hex(key) + FILE_EXTENSION;
+            try {
+                output.writeBoolean(false);
+                output.close();
+                output = null;
+                Files.move(tempFile, cacheDirectory.resolve(fileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            CacheStatistics cacheStatistics = getStatistics(config.getCorrelationId());
+            cacheStatistics.stored.incrementAndGet();
+            long fileSize = getFileSize(cacheDirectory.resolve(fileName));
+            synchronized (SparqlResponseCache.this) {
+                initialize();
+                Long previousSize = entries.put(fileName, fileSize);
+                totalSize += fileSize - (previousSize != null ? previousSize : 0L);
+                long maxSize = config.getResponseCacheMaxSize() != null ? config.getResponseCacheMaxSize() * 1024 * 1024 : Long.MAX_VALUE;
+                Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+                while (totalSize > maxSize && iterator.hasNext()) {
+                    Map.Entry<String, Long> eldest = iterator.next();
+                    if (eldest.getKey().equals(fileName)) {
+                        continue;
+                    }
+                    iterator.remove();
+                    totalSize -= eldest.getValue();
+                    deleteFile(cacheDirectory.resolve(eldest.getKey()));
+                    cacheStatistics.evicted.incrementAndGet();
+                }
+            }
+        }
+
+        public void discard() {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    // the file is deleted anyway
+                }
+                output = null;
+            }
+            deleteFile(tempFile);
+        }
+
+        private void fail(@Nonnull IOException e) {
+            log.error(config.getCorrelationId() + " - cannot write the SPARQL response to the cache " + tempFile + ": " + e.getMessage());
+            discard();
+        }
+    }
+
+    @Nonnull
+    protected String buildKey(@Nonnull SparqlEndpointConfig config, @Nonnull String sparqlQuery) {
+        return config.getEndpointUrl() + "\n" + StringUtils.defaultString(config.getGraphName()) + "\n"
+                + StringUtils.defaultString(config.getAcceptHeaderForSparqlResults()) + "\n" + normalizeQuery(sparqlQuery);
+    }
+
+    /**
+     * Collapses whitespace outside of string literals and IRIs, so that the same query with different formatting uses the same cache entry.
+     */
+    @Nonnull
+    protected String normalizeQuery(@Nonnull String sparqlQuery) {
+        StringBuilder normalized = new StringBuilder(sparqlQuery.length());
+        char quote = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < sparqlQuery.length(); i++) {
+            char c = sparqlQuery.charAt(i);
+            if (quote != 0) {
+                normalized.append(c);
+                if (c == '\\' && quote != '>' && i + 1 < sparqlQuery.length()) {
+                    normalized.append(sparqlQuery.charAt(++i));
+                } else if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                normalized.append(' ');
+                pendingSpace = false;
+            }
+            normalized.append(c);
+            if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '<' && i + 1 < sparqlQuery.length() && !Character.isWhitespace(sparqlQuery.charAt(i + 1)) && sparqlQuery.charAt(i + 1) != '=') {
+                quote = '>';
+            }
+        }
+        return normalized.toString();
+    }
+
+    private void initialize() {
+        if (initialized) {
+            return;
+        }
+        initialized = true;
+        if (!Files.isDirectory(cacheDirectory)) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(cacheDirectory)) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            log.error("Cannot read the SPARQL response cache directory " + cacheDirectory + ": " + e.getMessage());
+            return;
+        }
+        files.sort(Comparator.comparing(this::getLastModifiedTime));
+        for (Path file : files) {
+            String fileName = file.getFileName().toString();
+            if (fileName.endsWith(TEMP_FILE_EXTENSION)) {
+                // left from an interrupted write
+                deleteFile(file);
+            } else if (fileName.endsWith(FILE_EXTENSION)) {
+                long fileSize = getFileSize(file);
+                entries.put(fileName, fileSize);
+                totalSize += fileSize;
+            }
+        }
+        log.info(String.format("SPARQL response cache loaded from %s - %d entries, %d KB", cacheDirectory.toAbsolutePath(), entries.size(), totalSize / 1024));
+    }
+
+    private synchronized void remove(@Nonnull String fileName) {
+        Long size = entries.remove(fileName);
+        if (size != null) {
+            totalSize -= size;
+        }
+        deleteFile(cacheDirectory.resolve(fileName));
+    }
+
+    private boolean isExpired(long createdAt, @Nullable Long ttlInHours) {
+        return ttlInHours != null && ttlInHours > 0L && System.currentTimeMillis() - createdAt > ttlInHours * 60 * 60 * 1000;
+    }
+
+    // the modification time keeps the access order between application restarts
+    private void touch(@Nonnull Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // the entry stays valid, only its position in the eviction order is not updated on disk
+        }
+    }
+
+    @Nonnull
+    private FileTime getLastModifiedTime(@Nonnull Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0L);
+        }
+    }
+
+    private long getFileSize(@Nonnull Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private void deleteFile(@Nonnull Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.error("Cannot delete the SPARQL response cache file " + file + ": " + e.getMessage());
+        }
+    }
+
+    @Nonnull
+    private CacheStatistics getStatistics(@Nullable String correlationId) {
+        return statistics.computeIfAbsent(StringUtils.defaultString(correlationId), id -> new CacheStatistics());
+    }
+
+    private static void writeString(@Nonnull DataOutputStream output, @Nullable String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    @Nullable
+    private static String readString(@Nonnull DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class CacheStatistics {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong stored = new AtomicLong();
+        private final AtomicLong evicted = new AtomicLong();
+    }
+
+}
@@ -0,0 +1,27 @@
+package lv.lumii.obis.schema.services.common;
+
+import lv.lumii.obis.schema.services.common.dto.QueryResult;
+import lv.lumii.obis.schema.services.common.dto.QueryResultColumns;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Rows of one SELECT query response, read from the endpoint one by one.
+ */
+public interface SparqlResultRows extends Closeable {
+
+    /**
+     * @return the result variables or null if the response has no result set
+     */
+    @Nullable
+    QueryResultColumns getColumns();
+
+    /**
+     * @return the next row or null if there are no more rows
+     */
+    @Nullable
+    QueryResult next() throws IOException;
+
+}
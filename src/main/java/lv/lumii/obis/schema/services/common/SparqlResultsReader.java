@@ -0,0 +1,624 @@
+package lv.lumii.obis.schema.services.common;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import lombok.extern.slf4j.Slf4j;
+import lv.lumii.obis.schema.services.common.dto.QueryResult;
+import lv.lumii.obis.schema.services.common.dto.QueryResultColumns;
+import lv.lumii.obis.schema.services.common.dto.SparqlEndpointConfig;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorRequestDto.ResultsParserMode;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
+import org.apache.jena.vocabulary.RDF;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads SELECT query results directly from the HTTP response, without the Jena ResultSet and RDF node objects:
+ * application/sparql-results+json with the Jackson streaming parser and text/tab-separated-values with a byte level scanner.
+ * If an endpoint answers with another format, it is remembered and its queries are read with Jena.
+ * The query timeout applies to the whole response: HttpRequest.timeout covers only the wait for the response headers,
+ * so the body is read with a deadline as well.
+ */
+@Slf4j
+@Service
+public class SparqlResultsReader {
+
+    private static final String JSON_MEDIA_TYPE = "application/sparql-results+json";
+    private static final String PLAIN_JSON_MEDIA_TYPE = "application/json";
+    private static final String TSV_MEDIA_TYPE = "text/tab-separated-values";
+    private static final int ERROR_MESSAGE_MAX_LENGTH = 4096;
+
+    private static final String XSD_STRING = XSDDatatype.XSDstring.getURI();
+    private static final String RDF_LANG_STRING = RDF.dtLangString.getURI();
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Autowired
+    private SparqlHttpClientProvider httpClientProvider;
+
+    // endpoint|format pairs that returned another format
+    private final Set<String> unsupportedFormats = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sparql-response-deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public boolean isEnabled(@Nonnull SparqlEndpointConfig config) {
+        return config.getResultsParser() != null && !ResultsParserMode.jena.equals(config.getResultsParser())
+                && !unsupportedFormats.contains(buildKey(config));
+    }
+
+    /**
+     * Sends the query and starts reading the response.
+     *
+     * @return the rows or null if the endpoint does not return the requested format, then the query must be read with Jena
+     * @throws QueryExceptionHTTP if the endpoint returns a status other than 2xx
+     */
+    @Nullable
+    public SparqlResultRows open(@Nonnull SparqlEndpointConfig config, @Nonnull String query, @Nullable Long timeout) throws IOException, InterruptedException {
+        boolean json = ResultsParserMode.json.equals(config.getResultsParser());
+        HttpClient httpClient = config.getHttpClient() != null ? config.getHttpClient() : httpClientProvider.getHttpClient(true);
+        long startTime = System.nanoTime();
+        HttpResponse<InputStream> response = httpClient.send(buildRequest(config, query, timeout, json ? JSON_MEDIA_TYPE : TSV_MEDIA_TYPE), HttpResponse.BodyHandlers.ofInputStream());
+        InputStream body = response.body();
+        if (timeout != null) {
+            long remaining = TimeUnit.SECONDS.toNanos(timeout) - (System.nanoTime() - startTime);
+            body = new DeadlineInputStream(body, timeout, remaining, deadlines);
+        }
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            String message = readErrorMessage(response, body);
+            throw new QueryExceptionHTTP(response.statusCode(), StringUtils.defaultIfEmpty(message, "HTTP " + response.statusCode()));
+        }
+        String contentType = StringUtils.lowerCase(response.headers().firstValue("Content-Type").orElse(StringUtils.EMPTY));
+        body = decode(response, body);
+        try {
+            if (json && (contentType.startsWith(JSON_MEDIA_TYPE) || contentType.startsWith(PLAIN_JSON_MEDIA_TYPE))) {
+                SparqlResultRows rows = new JsonResultRows(JSON_FACTORY.createParser(body));
+                if (rows.getColumns() != null) {
+                    return rows;
+                }
+            } else if (!json && contentType.startsWith(TSV_MEDIA_TYPE)) {
+                return new TsvResultRows(body);
+            }
+        } catch (IOException | RuntimeException e) {
+            body.close();
+            throw e;
+        }
+        body.close();
+        if (unsupportedFormats.add(buildKey(config))) {
+            log.warn(String.format("The endpoint %s does not return the results as %s (content type '%s'), the results will be read with Jena",
+                    config.getEndpointUrl(), json ? JSON_MEDIA_TYPE : TSV_MEDIA_TYPE, contentType));
+        }
+        return null;
+    }
+
+    @Nonnull
+    private HttpRequest buildRequest(@Nonnull SparqlEndpointConfig config, @Nonnull String query, @Nullable Long timeout, @Nonnull String mediaType) {
+        StringBuilder parameters = new StringBuilder("query=").append(URLEncoder.encode(query, StandardCharsets.UTF_8));
+        if (StringUtils.isNotEmpty(config.getGraphName())) {
+            parameters.append("&default-graph-uri=").append(URLEncoder.encode(config.getGraphName(), StandardCharsets.UTF_8));
+        }
+        HttpRequest.Builder builder;
+        if (config.isPostRequest()) {
+            builder = HttpRequest.newBuilder(URI.create(config.getEndpointUrl()))
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .POST(HttpRequest.BodyPublishers.ofString(parameters.toString()));
+        } else {
+            String separator = config.getEndpointUrl().contains("?") ? "&" : "?";
+            builder = HttpRequest.newBuilder(URI.create(config.getEndpointUrl() + separator + parameters)).GET();
+        }
+        builder.header("Accept", mediaType);
+        if (config.isUseHttpCompression()) {
+            builder.header(SparqlHttpClientProvider.ACCEPT_ENCODING_HEADER, SparqlHttpClientProvider.ACCEPT_ENCODING_VALUE);
+        }
+        if (timeout != null) {
+            builder.timeout(Duration.ofSeconds(timeout));
+        }
+        return builder.build();
+    }
+
+    @Nonnull
+    private static InputStream decode(@Nonnull HttpResponse<InputStream> response, @Nonnull InputStream body) throws IOException {
+        String contentEncoding = response.headers().firstValue("Content-Encoding").orElse(StringUtils.EMPTY).trim();
+        if ("gzip".equalsIgnoreCase(contentEncoding)) {
+            return new GZIPInputStream(body);
+        }
+        return body;
+    }
+
+    @Nullable
+    private static String readErrorMessage(@Nonnull HttpResponse<InputStream> response, @Nonnull InputStream body) {
+        try (InputStream in = body) {
+            return new String(decode(response, in).readNBytes(ERROR_MESSAGE_MAX_LENGTH), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Nonnull
+    private static String buildKey(@Nonnull SparqlEndpointConfig config) {
+        return config.getEndpointUrl() + "|" + config.getResultsParser();
+    }
+
+    /**
+     * The response body with a deadline. When the deadline passes, a read that is waiting for the data is interrupted
+     * and the reads fail with HttpTimeoutException.
+     */
+    private static class DeadlineInputStream extends FilterInputStream {
+
+        private final long timeoutInSeconds;
+        private final ScheduledFuture<?> expiry;
+        private Thread reader;
+        private boolean expired;
+
+        DeadlineInputStream(@Nonnull InputStream in, long timeoutInSeconds, long remainingNanos, @Nonnull ScheduledExecutorService deadlines) {
+            super(in);
+            this.timeoutInSeconds = timeoutInSeconds;
+            this.expiry = deadlines.schedule(this::expire, Math.max(remainingNanos, 0L), TimeUnit.NANOSECONDS);
+        }
+
+        private synchronized void expire() {
+            expired = true;
+            if (reader != null) {
+                reader.interrupt();
+            }
+        }
+
+        private synchronized void beginRead() throws HttpTimeoutException {
+            if (expired) {
+                throw newTimeoutException();
+            }
+            reader = Thread.currentThread();
+        }
+
+        private synchronized void endRead() {
+            reader = null;
+            if (expired) {
+                // the interrupt was sent by the deadline, not by the owner of the thread
+                Thread.interrupted();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            beginRead();
+            try {
+                return super.read();
+            } catch (IOException e) {
+                throw isExpired() ? newTimeoutException() : e;
+            } finally {
+                endRead();
+            }
+        }
+
+        @Override
+        public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+            beginRead();
+            try {
+                return super.read(b, off, len);
+            } catch (IOException e) {
+                throw isExpired() ? newTimeoutException() : e;
+            } finally {
+                endRead();
+            }
+        }
+
+        private synchronized boolean isExpired() {
+            return expired;
+        }
+
+        @Nonnull
+        private HttpTimeoutException newTimeoutException() {
+            return new HttpTimeoutException(String.format("The response was not read within the query timeout of %d seconds", timeoutInSeconds));
+        }
+
+        @Override
+        public void close() throws IOException {
+            expiry.cancel(false);
+            super.close();
+        }
+    }
+
+    /**
+     * SPARQL 1.1 Query Results JSON Format. If the results come before the head (result variables),
+     * they are buffered until the head is read.
+     */
+    private static class JsonResultRows implements SparqlResultRows {
+
+        private final JsonParser parser;
+        // the parser of the bindings, the response parser or the parser of the buffered results
+        private JsonParser bindingsParser;
+        private QueryResultColumns columns;
+        private boolean finished;
+
+        JsonResultRows(@Nonnull JsonParser parser) throws IOException {
+            this.parser = parser;
+            this.bindingsParser = parser;
+            readUntilBindings();
+        }
+
+        @Nullable
+        @Override
+        public QueryResultColumns getColumns() {
+            return columns;
+        }
+
+        private void readUntilBindings() throws IOException {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            TokenBuffer bufferedResults = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("head".equals(field) && value == JsonToken.START_OBJECT) {
+                    readHead();
+                } else if ("results".equals(field) && value == JsonToken.START_OBJECT) {
+                    if (columns == null) {
+                        // the variables are not known yet, the results are read after the head
+                        bufferedResults = new TokenBuffer(parser);
+                        bufferedResults.copyCurrentStructure(parser);
+                    } else if (startBindings(parser)) {
+                        return;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (bufferedResults != null && columns != null) {
+                bindingsParser = bufferedResults.asParser();
+                bindingsParser.nextToken();
+                if (startBindings(bindingsParser)) {
+                    return;
+                }
+            }
+            // no bindings in the response
+            finished = true;
+        }
+
+        /**
+         * Moves the parser from the start of the results object to the start of the bindings array.
+         *
+         * @return false if the results have no bindings
+         */
+        private static boolean startBindings(@Nonnull JsonParser resultsParser) throws IOException {
+            while (resultsParser.nextToken() == JsonToken.FIELD_NAME) {
+                String resultsField = resultsParser.getCurrentName();
+                if (resultsParser.nextToken() == JsonToken.START_ARRAY && "bindings".equals(resultsField)) {
+                    return true;
+                }
+                resultsParser.skipChildren();
+            }
+            return false;
+        }
+
+        private void readHead() throws IOException {
+            List<String> variables = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && "vars".equals(field)) {
+                    while (parser.nextToken() == JsonToken.VALUE_STRING) {
+                        variables.add(parser.getText());
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            columns = new QueryResultColumns(variables);
+        }
+
+        @Nullable
+        @Override
+        public QueryResult next() throws IOException {
+            while (!finished) {
+                if (bindingsParser.nextToken() != JsonToken.START_OBJECT) {
+                    finished = true;
+                    return null;
+                }
+                QueryResult queryResult = readBinding();
+                if (columns.size() > 0) {
+                    return queryResult;
+                }
+            }
+            return null;
+        }
+
+        @Nonnull
+        private QueryResult readBinding() throws IOException {
+            QueryResult queryResult = new QueryResult(columns);
+            while (bindingsParser.nextToken() == JsonToken.FIELD_NAME) {
+                int index = columns.indexOf(bindingsParser.getCurrentName());
+                if (bindingsParser.nextToken() != JsonToken.START_OBJECT || index < 0) {
+                    bindingsParser.skipChildren();
+                    continue;
+                }
+                String type = null, value = null, language = null, dataType = null;
+                while (bindingsParser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = bindingsParser.getCurrentName();
+                    JsonToken token = bindingsParser.nextToken();
+                    if (token != JsonToken.VALUE_STRING) {
+                        // RDF-star triple terms and unknown extensions are left unbound
+                        bindingsParser.skipChildren();
+                        continue;
+                    }
+                    switch (field) {
+                        case "type":
+                            type = bindingsParser.getText();
+                            break;
+                        case "value":
+                            value = bindingsParser.getText();
+                            break;
+                        case "xml:lang":
+                            language = bindingsParser.getText();
+                            break;
+                        case "datatype":
+                            dataType = bindingsParser.getText();
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                if ("uri".equals(type)) {
+                    queryResult.setResource(index, value);
+                } else if ("bnode".equals(type)) {
+                    // same as Jena, blank nodes are resources without URI
+                    queryResult.setResource(index, null);
+                } else if (("literal".equals(type) || "typed-literal".equals(type)) && value != null) {
+                    queryResult.setLiteral(index, value, StringUtils.isNotEmpty(language) ? RDF_LANG_STRING : StringUtils.defaultIfEmpty(dataType, XSD_STRING));
+                }
+            }
+            return queryResult;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (bindingsParser != parser) {
+                bindingsParser.close();
+            }
+            parser.close();
+        }
+    }
+
+    /**
+     * SPARQL 1.1 Query Results TSV Format. The response bytes are scanned for tabs and line ends in place,
+     * strings are created only for the cell values.
+     */
+    private static class TsvResultRows implements SparqlResultRows {
+
+        private static final int BUFFER_SIZE = 64 * 1024;
+        private static final int END_OF_ROW = '\n';
+        private static final int END_OF_CELL = '\t';
+        private static final int END_OF_INPUT = -1;
+
+        private final InputStream input;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        // a cell that continues over the end of the buffer is collected here
+        private byte[] spill = new byte[256];
+        private final QueryResultColumns columns;
+        private final List<String> rowCells = new ArrayList<>();
+        private int lastTerminator;
+        private boolean finished;
+
+        TsvResultRows(@Nonnull InputStream input) throws IOException {
+            this.input = input;
+            List<String> variables = new ArrayList<>();
+            do {
+                String variable = readCell();
+                if (!variable.isEmpty()) {
+                    variables.add(variable.charAt(0) == '?' || variable.charAt(0) == '$' ? variable.substring(1) : variable);
+                }
+            } while (lastTerminator == END_OF_CELL);
+            finished = lastTerminator == END_OF_INPUT;
+            this.columns = new QueryResultColumns(variables);
+        }
+
+        @Nullable
+        @Override
+        public QueryResultColumns getColumns() {
+            return columns;
+        }
+
+        @Nullable
+        @Override
+        public QueryResult next() throws IOException {
+            while (!finished) {
+                rowCells.clear();
+                do {
+                    rowCells.add(readCell());
+                } while (lastTerminator == END_OF_CELL);
+                finished = lastTerminator == END_OF_INPUT;
+                // skip the end after the last line break and the rows of responses without variables
+                if (columns.size() == 0 || (finished && rowCells.size() == 1 && rowCells.get(0).isEmpty())) {
+                    continue;
+                }
+                QueryResult queryResult = new QueryResult(columns);
+                for (int i = 0; i < rowCells.size() && i < columns.size(); i++) {
+                    setCell(queryResult, i, rowCells.get(i));
+                }
+                return queryResult;
+            }
+            return null;
+        }
+
+        /**
+         * Reads the value up to the next tab or line end, the terminator is kept in lastTerminator.
+         */
+        @Nonnull
+        private String readCell() throws IOException {
+            int spillLength = 0;
+            while (true) {
+                if (position >= limit) {
+                    limit = input.read(buffer, 0, buffer.length);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        lastTerminator = END_OF_INPUT;
+                        return new String(spill, 0, spillLength, StandardCharsets.UTF_8);
+                    }
+                }
+                int start = position;
+                while (position < limit && buffer[position] != END_OF_CELL && buffer[position] != END_OF_ROW) {
+                    position++;
+                }
+                if (position < limit) {
+                    lastTerminator = buffer[position++];
+                    int end = position - 1;
+                    if (lastTerminator == END_OF_ROW && end > start && buffer[end - 1] == '\r') {
+                        end--;
+                    }
+                    if (spillLength == 0) {
+                        return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+                    }
+                    spillLength = appendSpill(spillLength, start, end);
+                    if (lastTerminator == END_OF_ROW && spill[spillLength - 1] == '\r') {
+                        spillLength--;
+                    }
+                    return new String(spill, 0, spillLength, StandardCharsets.UTF_8);
+                }
+                spillLength = appendSpill(spillLength, start, limit);
+            }
+        }
+
+        private int appendSpill(int spillLength, int start, int end) {
+            int length = end - start;
+            if (spillLength + length > spill.length) {
+                byte[] larger = new byte[Math.max(spill.length * 2, spillLength + length)];
+                System.arraycopy(spill, 0, larger, 0, spillLength);
+                spill = larger;
+            }
+            System.arraycopy(buffer, start, spill, spillLength, length);
+            return spillLength + length;
+        }
+
+        private static void setCell(@Nonnull QueryResult queryResult, int index, @Nonnull String term) {
+            if (term.isEmpty()) {
+                return;
+            }
+            char first = term.charAt(0);
+            if (first == '<' && term.charAt(term.length() - 1) == '>') {
+                queryResult.setResource(index, term.substring(1, term.length() - 1));
+            } else if (first == '_' && term.startsWith("_:")) {
+                queryResult.setResource(index, null);
+            } else if (first == '"' || first == '\'') {
+                setLiteral(queryResult, index, term, first);
+            } else if ("true".equals(term) || "false".equals(term)) {
+                queryResult.setLiteral(index, term, XSDDatatype.XSDboolean.getURI());
+            } else if (isNumber(term)) {
+                String dataType = term.indexOf('e') >= 0 || term.indexOf('E') >= 0 ? XSDDatatype.XSDdouble.getURI()
+                        : term.indexOf('.') >= 0 ? XSDDatatype.XSDdecimal.getURI() : XSDDatatype.XSDinteger.getURI();
+                queryResult.setLiteral(index, term, dataType);
+            } else {
+                queryResult.setOther(index, term);
+            }
+        }
+
+        private static void setLiteral(@Nonnull QueryResult queryResult, int index, @Nonnull String term, char quote) {
+            int end = term.lastIndexOf(quote);
+            if (end <= 0) {
+                queryResult.setOther(index, term);
+                return;
+            }
+            String lexicalForm = unescape(term, 1, end);
+            String suffix = term.substring(end + 1);
+            if (suffix.startsWith("@")) {
+                queryResult.setLiteral(index, lexicalForm, RDF_LANG_STRING);
+            } else if (suffix.startsWith("^^<") && suffix.endsWith(">")) {
+                queryResult.setLiteral(index, lexicalForm, suffix.substring(3, suffix.length() - 1));
+            } else {
+                queryResult.setLiteral(index, lexicalForm, XSD_STRING);
+            }
+        }
+
+        @Nonnull
+        private static String unescape(@Nonnull String term, int start, int end) {
+            if (term.indexOf('\\', start) < 0 || term.indexOf('\\', start) >= end) {
+                return term.substring(start, end);
+            }
+            StringBuilder value = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                char c = term.charAt(i);
+                if (c != '\\' || i + 1 >= end) {
+                    value.append(c);
+                    continue;
+                }
+                char escaped = term.charAt(++i);
+                switch (escaped) {
+                    case 't': value.append('\t'); break;
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                    case 'U':
+                        int digits = escaped == 'u' ? 4 : 8;
+                        if (i + digits < end) {
+                            try {
+                                value.appendCodePoint(Integer.parseInt(term.substring(i + 1, i + 1 + digits), 16));
+                                i += digits;
+                                break;
+                            } catch (NumberFormatException e) {
+                                // not an escape sequence, keep as it is
+                            }
+                        }
+                        value.append('\\').append(escaped);
+                        break;
+                    default:
+                        value.append(escaped);
+                        break;
+                }
+            }
+            return value.toString();
+        }
+
+        private static boolean isNumber(@Nonnull String term) {
+            int i = (term.charAt(0) == '+' || term.charAt(0) == '-') ? 1 : 0;
+            boolean digits = false;
+            for (; i < term.length(); i++) {
+                char c = term.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    digits = true;
+                } else if (c != '.' && c != 'e' && c != 'E' && c != '+' && c != '-') {
+                    return false;
+                }
+            }
+            return digits;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+}
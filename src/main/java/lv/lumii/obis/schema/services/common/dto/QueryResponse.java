@@ -13,6 +13,10 @@ public class QueryResponse {
     private QueryResponseError queryResponseError;
 
     private long executionTime;
+    private long executionTimeInMillis;
+
+    private long rowCount;
+    private long resultBytes;
 
     private List<QueryResult> results;
 
@@ -24,6 +28,24 @@ public class QueryResponse {
         return executionTime;
     }
 
+    public long getExecutionTimeInMillis() {
+        return executionTimeInMillis;
+    }
+
+    /**
+     * Number of result rows received from the endpoint, also set for streamed reads where results are not kept.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Approximate size of the received result values (sum of the lexical forms of all bound values).
+     */
+    public long getResultBytes() {
+        return resultBytes;
+    }
+
     public List<QueryResult> getResults() {
         if (results == null) {
             results = new ArrayList<>();
@@ -1,21 +1,126 @@
 package lv.lumii.obis.schema.services.common.dto;
 
+import lv.lumii.obis.schema.constants.SchemaConstants;
+import lv.lumii.obis.schema.services.SchemaUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jena.rdf.model.impl.Util;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * One result row stored as plain cell arrays indexed by the shared {@link QueryResultColumns}.
+ * The full name of typed literals, IRI local names and namespaces are derived only when requested,
+ * integer literals are parsed once while reading and kept as primitives.
+ */
 public class QueryResult {
 
-    private Map<String, QueryResultObject> queryResultObjects;
+    public static final byte KIND_UNBOUND = 0;
+    public static final byte KIND_RESOURCE = 1;
+    public static final byte KIND_LITERAL = 2;
+    public static final byte KIND_OTHER = 3;
+
+    private static final Set<String> INTEGER_DATA_TYPES = new HashSet<>(Arrays.asList(
+            "integer", "long", "int", "short", "byte",
+            "nonNegativeInteger", "positiveInteger", "nonPositiveInteger", "negativeInteger",
+            "unsignedLong", "unsignedInt", "unsignedShort", "unsignedByte"));
+
+    private final QueryResultColumns columns;
+    private final byte[] kinds;
+    private final String[] values;
+    private String[] dataTypes;
+    private long[] numbers;
+    private boolean[] isNumber;
+
+    public QueryResult(@Nonnull QueryResultColumns columns) {
+        this.columns = columns;
+        this.kinds = new byte[columns.size()];
+        this.values = new String[columns.size()];
+    }
+
+    public void setResource(int index, @Nullable String uri) {
+        kinds[index] = KIND_RESOURCE;
+        values[index] = uri;
+    }
+
+    public void setLiteral(int index, @Nonnull String lexicalForm, @Nullable String dataType) {
+        kinds[index] = KIND_LITERAL;
+        values[index] = lexicalForm;
+        if (StringUtils.isEmpty(dataType)) {
+            return;
+        }
+        if (dataTypes == null) {
+            dataTypes = new String[kinds.length];
+        }
+        dataTypes[index] = dataType;
+        if (isIntegerDataType(dataType)) {
+            try {
+                long number = Long.parseLong(lexicalForm);
+                if (numbers == null) {
+                    numbers = new long[kinds.length];
+                    isNumber = new boolean[kinds.length];
+                }
+                numbers[index] = number;
+                isNumber[index] = true;
+            } catch (NumberFormatException e) {
+                // keep only the lexical form, getLongValue will report it
+            }
+        }
+    }
+
+    public void setOther(int index, @Nullable String value) {
+        kinds[index] = KIND_OTHER;
+        values[index] = value;
+    }
+
+    public void setCell(int index, byte kind, @Nullable String value, @Nullable String dataType) {
+        if (kind == KIND_RESOURCE) {
+            setResource(index, value);
+        } else if (kind == KIND_LITERAL && value != null) {
+            setLiteral(index, value, dataType);
+        } else if (kind == KIND_OTHER) {
+            setOther(index, value);
+        }
+    }
+
+    @Nonnull
+    public QueryResultColumns getColumns() {
+        return columns;
+    }
+
+    public byte getKind(int index) {
+        return kinds[index];
+    }
 
     @Nullable
-    public QueryResultObject getResultObject(@Nonnull String key) {
-        return getResultObjects().get(key);
+    public String getValue(int index) {
+        return values[index];
     }
 
-    public void addResultObject(@Nonnull String key, @Nonnull QueryResultObject resultObject) {
-        getResultObjects().put(key, resultObject);
+    /**
+     * Builds a detached value object for the binding, intended for the few callers that need all parts of a value at once.
+     */
+    @Nullable
+    public QueryResultObject getResultObject(@Nonnull String key) {
+        int index = columns.indexOf(key);
+        if (index < 0 || kinds[index] == KIND_UNBOUND) {
+            return null;
+        }
+        QueryResultObject resultObject = new QueryResultObject();
+        resultObject.setValue(values[index]);
+        if (kinds[index] != KIND_OTHER) {
+            resultObject.setFullName(getFullName(index));
+            resultObject.setLocalName(getLocalName(index));
+            resultObject.setNamespace(getNamespace(index));
+            resultObject.setDataType(getDataType(index));
+            resultObject.setIsLiteral(kinds[index] == KIND_LITERAL);
+        }
+        return resultObject;
     }
 
     @Deprecated
@@ -26,35 +131,109 @@ public class QueryResult {
 
     @Nullable
     public String getValue(@Nonnull String key) {
-        return getResultObjects().get(key) != null ? getResultObjects().get(key).getValue() : null;
+        int index = columns.indexOf(key);
+        return index >= 0 ? values[index] : null;
+    }
+
+    /**
+     * Returns the numeric value of the binding or 0 if it is not bound or is not a number, same as {@link SchemaUtil#getLongValueFromString(String)}.
+     */
+    @Nonnull
+    public Long getLongValue(@Nonnull String key) {
+        int index = columns.indexOf(key);
+        if (index < 0) {
+            return 0L;
+        }
+        if (isNumber != null && isNumber[index]) {
+            return numbers[index];
+        }
+        return SchemaUtil.getLongValueFromString(values[index]);
     }
 
     @Nullable
     public String getValueDataType(@Nonnull String key) {
-        return getResultObjects().get(key) != null ? getResultObjects().get(key).getDataType() : null;
+        int index = columns.indexOf(key);
+        return index >= 0 ? getDataType(index) : null;
     }
 
     @Nullable
     public String getValueLocalName(@Nonnull String key) {
-        return getResultObjects().get(key) != null ? getResultObjects().get(key).getLocalName() : null;
+        int index = columns.indexOf(key);
+        return index >= 0 ? getLocalName(index) : null;
     }
 
     @Nullable
     public String getValueFullName(@Nonnull String key) {
-        return getResultObjects().get(key) != null ? getResultObjects().get(key).getFullName() : null;
+        int index = columns.indexOf(key);
+        return index >= 0 ? getFullName(index) : null;
     }
 
     @Nullable
     public String getValueNamespace(String key) {
-        return getResultObjects().get(key) != null ? getResultObjects().get(key).getNamespace() : null;
+        int index = columns.indexOf(key);
+        return index >= 0 ? getNamespace(index) : null;
     }
 
+    public long getValuesLength() {
+        long length = 0L;
+        for (String value : values) {
+            if (value != null) {
+                length += value.length();
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Bound values by variable name, in the order of the result variables.
+     */
     @Nonnull
     public Map<String, QueryResultObject> getResultObjects() {
-        if (queryResultObjects == null) {
-            queryResultObjects = new LinkedHashMap<>();
+        Map<String, QueryResultObject> resultObjects = new LinkedHashMap<>();
+        for (String variable : columns.getVariables()) {
+            QueryResultObject resultObject = getResultObject(variable);
+            if (resultObject != null) {
+                resultObjects.putIfAbsent(variable, resultObject);
+            }
+        }
+        return resultObjects;
+    }
+
+    @Nullable
+    public String getDataType(int index) {
+        return dataTypes != null ? dataTypes[index] : null;
+    }
+
+    @Nullable
+    private String getFullName(int index) {
+        String dataType = getDataType(index);
+        if (kinds[index] == KIND_LITERAL && dataType != null) {
+            return "\"" + values[index] + "\"^^<" + dataType + ">";
+        }
+        return kinds[index] == KIND_OTHER ? null : values[index];
+    }
+
+    @Nullable
+    private String getLocalName(int index) {
+        if (kinds[index] == KIND_LITERAL) {
+            return values[index];
+        }
+        if (kinds[index] != KIND_RESOURCE || values[index] == null) {
+            return null;
         }
-        return queryResultObjects;
+        return values[index].substring(Util.splitNamespaceXML(values[index]));
+    }
+
+    @Nullable
+    private String getNamespace(int index) {
+        if (kinds[index] != KIND_RESOURCE || values[index] == null) {
+            return null;
+        }
+        return values[index].substring(0, Util.splitNamespaceXML(values[index]));
+    }
+
+    private static boolean isIntegerDataType(@Nonnull String dataType) {
+        return dataType.startsWith(SchemaConstants.XSD_NAMESPACE) && INTEGER_DATA_TYPES.contains(dataType.substring(SchemaConstants.XSD_NAMESPACE.length()));
     }
 
 }
@@ -0,0 +1,39 @@
+package lv.lumii.obis.schema.services.common.dto;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result variable layout shared by all rows of one result set - rows keep only the cell arrays and resolve variable names through this index.
+ */
+public class QueryResultColumns {
+
+    private final List<String> variables;
+    private final Map<String, Integer> indexes;
+
+    public QueryResultColumns(@Nonnull List<String> variables) {
+        this.variables = Collections.unmodifiableList(variables);
+        this.indexes = new HashMap<>(variables.size() * 2);
+        for (int i = 0; i < variables.size(); i++) {
+            indexes.putIfAbsent(variables.get(i), i);
+        }
+    }
+
+    @Nonnull
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    public int size() {
+        return variables.size();
+    }
+
+    public int indexOf(@Nonnull String variable) {
+        Integer index = indexes.get(variable);
+        return index != null ? index : -1;
+    }
+
+}
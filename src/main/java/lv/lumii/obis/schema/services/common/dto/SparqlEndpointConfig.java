@@ -2,6 +2,12 @@ package lv.lumii.obis.schema.services.common.dto;
 
 import lombok.Getter;
 import lombok.Setter;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorRequestDto;
+
+import javax.annotation.Nonnull;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
 
 @Setter
 @Getter
@@ -16,6 +22,16 @@ public class SparqlEndpointConfig {
     private Long timeout;
     private Long delayOnFailure;
     private Long waitingTimeForEndpoint;
+    private boolean useResponseCache;
+    private Long responseCacheTtl;
+    private Long responseCacheMaxSize;
+    private HttpClient httpClient;
+    private boolean useHttpCompression = true;
+    private int maxConnectionsPerEndpoint;
+    private SchemaExtractorRequestDto.ResultsParserMode resultsParser;
+    private boolean useQueryMemo;
+    private List<String> replicaEndpointUrls;
+    private SchemaExtractorRequestDto.ReplicaBalancingMode replicaBalancing;
 
     public SparqlEndpointConfig(String correlationId, String endpointUrl, String graphName, boolean enableLogging, boolean isPostRequest,
                                 String acceptHeaderForSparqlResults, Long timeout, Long delayOnFailure, Long waitingTimeForEndpoint) {
@@ -48,4 +64,39 @@ public class SparqlEndpointConfig {
         this.isPostRequest = false;
         this.timeout = timeout;
     }
+
+    /**
+     * @return the endpoint URL followed by the URLs of its replicas, without duplicates
+     */
+    @Nonnull
+    public List<String> getEndpointUrls() {
+        List<String> endpointUrls = new ArrayList<>();
+        if (endpointUrl != null) {
+            endpointUrls.add(endpointUrl);
+        }
+        if (replicaEndpointUrls != null) {
+            replicaEndpointUrls.stream().filter(url -> url != null && !endpointUrls.contains(url)).forEach(endpointUrls::add);
+        }
+        return endpointUrls;
+    }
+
+    /**
+     * @return a copy of this configuration for sending the query to the given replica
+     */
+    @Nonnull
+    public SparqlEndpointConfig forEndpoint(@Nonnull String replicaEndpointUrl) {
+        SparqlEndpointConfig config = new SparqlEndpointConfig(correlationId, replicaEndpointUrl, graphName, enableLogging, isPostRequest,
+                acceptHeaderForSparqlResults, timeout, delayOnFailure, waitingTimeForEndpoint);
+        config.setUseResponseCache(useResponseCache);
+        config.setResponseCacheTtl(responseCacheTtl);
+        config.setResponseCacheMaxSize(responseCacheMaxSize);
+        config.setHttpClient(httpClient);
+        config.setUseHttpCompression(useHttpCompression);
+        config.setMaxConnectionsPerEndpoint(maxConnectionsPerEndpoint);
+        config.setResultsParser(resultsParser);
+        config.setUseQueryMemo(useQueryMemo);
+        config.setReplicaEndpointUrls(replicaEndpointUrls);
+        config.setReplicaBalancing(replicaBalancing);
+        return config;
+    }
 }
@@ -1,12 +1,15 @@
 package lv.lumii.obis.schema.services.extractor.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
 import lombok.Setter;
 import lv.lumii.obis.schema.services.extractor.v2.dto.SchemaExtractorIntersectionClassDto;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Setter @Getter
 public class SchemaExtractorClassNodeInfo {
@@ -41,6 +44,10 @@ public class SchemaExtractorClassNodeInfo {
 	private String classificationProperty;
 	private Boolean isLiteral;
 
+	// settled superclass checks: candidate class -> the candidate contains all instances of this class
+	@JsonIgnore
+	private Map<String, Boolean> superclassChecks;
+
 	public SchemaExtractorClassNodeInfo() {
 	}
 
@@ -68,6 +75,14 @@ public class SchemaExtractorClassNodeInfo {
 		return neighbors;
 	}
 
+	@Nonnull
+	public Map<String, Boolean> getSuperclassChecks() {
+		if (superclassChecks == null) {
+			superclassChecks = new HashMap<>();
+		}
+		return superclassChecks;
+	}
+
 	@Nonnull
 	public List<SchemaExtractorDataTypeInfo> getDataTypes() {
 		if (dataTypes == null) {
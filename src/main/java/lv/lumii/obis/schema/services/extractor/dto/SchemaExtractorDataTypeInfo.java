@@ -11,6 +11,9 @@ public class SchemaExtractorDataTypeInfo {
     private Long tripleCount;
     private Long tripleCountBase;
 
+    public SchemaExtractorDataTypeInfo() {
+    }
+
     public SchemaExtractorDataTypeInfo(String dataType, Long tripleCount, Long tripleCountBase) {
         this.dataType = dataType;
         this.tripleCount = tripleCount;
@@ -16,6 +16,9 @@ public class SchemaExtractorMessage {
     private String queryName;
     private String query;
 
+    public SchemaExtractorMessage() {
+    }
+
     public SchemaExtractorMessage(MessageLevel messageLevel, String entity, String queryName, String query) {
         this.messageLevel = messageLevel;
         this.entity = entity;
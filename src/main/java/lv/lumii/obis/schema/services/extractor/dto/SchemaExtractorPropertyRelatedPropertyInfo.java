@@ -17,6 +17,9 @@ public class SchemaExtractorPropertyRelatedPropertyInfo {
     @JsonIgnore
     private LinkType linkType;
 
+    public SchemaExtractorPropertyRelatedPropertyInfo() {
+    }
+
     public SchemaExtractorPropertyRelatedPropertyInfo(String propertyName, Long tripleCount, Long tripleCountBase, LinkType linkType) {
         this.propertyName = propertyName;
         this.tripleCount = tripleCount;
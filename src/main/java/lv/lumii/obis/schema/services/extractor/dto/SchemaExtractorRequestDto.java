@@ -44,6 +44,8 @@ public class SchemaExtractorRequestDto {
 
     public enum InstanceNamespacesMode {no, detailed, overview}
 
+    public enum InstanceNamespacesQueryMode {perElement, bulk, sample}
+
     public enum DistinctSubjectsAndObjectsMode {no, propertyLevel, yes}
 
     public enum BlankNodeMode {no, targetsOnly, full}
@@ -52,9 +54,16 @@ public class SchemaExtractorRequestDto {
 
     public enum NoClassesLoggingOptions {yes, no, sourcesOnly}
 
+    public enum ResultsParserMode {jena, json, tsv}
+
+    public enum ReplicaBalancingMode {leastOutstanding, latencyWeighted}
+
+    public enum SchemaFormat {json, smile, cbor}
+
     private String correlationId;
 
     private String endpointUrl;
+    private List<String> replicaEndpointUrls;
     private String graphName;
 
     private Boolean calculateSubClassRelations;
@@ -81,6 +90,7 @@ public class SchemaExtractorRequestDto {
 
     private InstanceNamespacesMode calculateInstanceNamespaces;
     private Long sampleLimitForInstanceNamespacesCalculation;
+    private InstanceNamespacesQueryMode instanceNamespacesQueryMode;
     private Integer minimalAnalyzedClassSize;
     private List<String> principalClassificationProperties;
     private List<String> classificationPropertiesWithConnectionsOnly;
@@ -102,6 +112,27 @@ public class SchemaExtractorRequestDto {
     private Long delayOnFailure;
     private Long waitingTimeForEndpoint;
 
+    private Integer maxConcurrentQueries;
+    private Boolean useResponseCache;
+    private Long responseCacheTtl;
+    private Long responseCacheMaxSize;
+    private Boolean saveCheckpoints;
+    private String resumeFromCorrelationId;
+    private Boolean useHttp2;
+    private Boolean useHttpCompression;
+    private Integer maxConnectionsPerEndpoint;
+    private Boolean useAdaptiveLimits;
+    private Boolean saveQueryTrace;
+    private ResultsParserMode resultsParser;
+    private Boolean useVirtualThreads;
+    private Boolean useQueryMemo;
+    private Boolean calculatePropertyTypesInBulk;
+    private Boolean checkSuperclassesInBatch;
+    private ReplicaBalancingMode replicaBalancing;
+    private Integer propertyShards;
+    private Boolean prettyPrintSchema;
+    private SchemaFormat schemaFormat;
+
     private Boolean enableLogging;
 
     private NoClassesLoggingOptions logNoClassesForProperty;
@@ -139,6 +170,14 @@ public class SchemaExtractorRequestDto {
         this.correlationId = correlationId;
     }
 
+    @Nonnull
+    public List<String> getReplicaEndpointUrls() {
+        if (replicaEndpointUrls == null) {
+            replicaEndpointUrls = new ArrayList<>();
+        }
+        return replicaEndpointUrls;
+    }
+
     @Nonnull
     public List<SchemaExtractorRequestedClassDto> getIncludedClasses() {
         if (includedClasses == null) {
@@ -347,6 +386,14 @@ public class SchemaExtractorRequestDto {
         return sampleLimitForInstanceNamespacesCalculation;
     }
 
+    @Nonnull
+    public InstanceNamespacesQueryMode getInstanceNamespacesQueryMode() {
+        if (instanceNamespacesQueryMode == null) {
+            instanceNamespacesQueryMode = InstanceNamespacesQueryMode.perElement;
+        }
+        return instanceNamespacesQueryMode;
+    }
+
     @Nonnull
     public Set<String> getAllClassificationProperties() {
         if (allClassificationProperties == null) {
@@ -409,6 +456,158 @@ public class SchemaExtractorRequestDto {
         return waitingTimeForEndpoint;
     }
 
+    @Nonnull
+    public Integer getMaxConcurrentQueries() {
+        if(maxConcurrentQueries == null || maxConcurrentQueries < 1) {
+            return 1;
+        }
+        return maxConcurrentQueries;
+    }
+
+    @Nonnull
+    public Boolean getUseResponseCache() {
+        if (useResponseCache == null) {
+            useResponseCache = Boolean.FALSE;
+        }
+        return useResponseCache;
+    }
+
+    @Nonnull
+    public Long getResponseCacheTtl() {
+        if(responseCacheTtl == null || responseCacheTtl < 0L) {
+            return 168L;
+        }
+        return responseCacheTtl;
+    }
+
+    @Nonnull
+    public Long getResponseCacheMaxSize() {
+        if(responseCacheMaxSize == null || responseCacheMaxSize <= 0L) {
+            return 1024L;
+        }
+        return responseCacheMaxSize;
+    }
+
+    @Nonnull
+    public Boolean getSaveCheckpoints() {
+        if (saveCheckpoints == null) {
+            saveCheckpoints = Boolean.FALSE;
+        }
+        return saveCheckpoints;
+    }
+
+    @Nonnull
+    public Boolean getUseHttp2() {
+        if (useHttp2 == null) {
+            useHttp2 = Boolean.TRUE;
+        }
+        return useHttp2;
+    }
+
+    @Nonnull
+    public Boolean getUseHttpCompression() {
+        if (useHttpCompression == null) {
+            useHttpCompression = Boolean.TRUE;
+        }
+        return useHttpCompression;
+    }
+
+    @Nonnull
+    public Integer getMaxConnectionsPerEndpoint() {
+        if(maxConnectionsPerEndpoint == null || maxConnectionsPerEndpoint < 0) {
+            return 0;
+        }
+        return maxConnectionsPerEndpoint;
+    }
+
+    @Nonnull
+    public Boolean getUseAdaptiveLimits() {
+        if (useAdaptiveLimits == null) {
+            useAdaptiveLimits = Boolean.FALSE;
+        }
+        return useAdaptiveLimits;
+    }
+
+    @Nonnull
+    public Boolean getSaveQueryTrace() {
+        if (saveQueryTrace == null) {
+            saveQueryTrace = Boolean.FALSE;
+        }
+        return saveQueryTrace;
+    }
+
+    @Nonnull
+    public ResultsParserMode getResultsParser() {
+        if (resultsParser == null) {
+            resultsParser = ResultsParserMode.jena;
+        }
+        return resultsParser;
+    }
+
+    @Nonnull
+    public Boolean getUseVirtualThreads() {
+        if (useVirtualThreads == null) {
+            useVirtualThreads = Boolean.FALSE;
+        }
+        return useVirtualThreads;
+    }
+
+    @Nonnull
+    public Boolean getUseQueryMemo() {
+        if (useQueryMemo == null) {
+            useQueryMemo = Boolean.FALSE;
+        }
+        return useQueryMemo;
+    }
+
+    @Nonnull
+    public Boolean getCalculatePropertyTypesInBulk() {
+        if (calculatePropertyTypesInBulk == null) {
+            calculatePropertyTypesInBulk = Boolean.FALSE;
+        }
+        return calculatePropertyTypesInBulk;
+    }
+
+    @Nonnull
+    public Boolean getCheckSuperclassesInBatch() {
+        if (checkSuperclassesInBatch == null) {
+            checkSuperclassesInBatch = Boolean.FALSE;
+        }
+        return checkSuperclassesInBatch;
+    }
+
+    @Nonnull
+    public ReplicaBalancingMode getReplicaBalancing() {
+        if (replicaBalancing == null) {
+            replicaBalancing = ReplicaBalancingMode.leastOutstanding;
+        }
+        return replicaBalancing;
+    }
+
+    @Nonnull
+    public Integer getPropertyShards() {
+        if (propertyShards == null || propertyShards < 1) {
+            return 1;
+        }
+        return propertyShards;
+    }
+
+    @Nonnull
+    public Boolean getPrettyPrintSchema() {
+        if (prettyPrintSchema == null) {
+            prettyPrintSchema = Boolean.TRUE;
+        }
+        return prettyPrintSchema;
+    }
+
+    @Nonnull
+    public SchemaFormat getSchemaFormat() {
+        if (schemaFormat == null) {
+            schemaFormat = SchemaFormat.json;
+        }
+        return schemaFormat;
+    }
+
     @Nonnull
     public NoClassesLoggingOptions getLogNoClassesForProperty() {
         if (logNoClassesForProperty == null) {
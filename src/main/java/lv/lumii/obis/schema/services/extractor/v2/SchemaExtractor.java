@@ -11,6 +11,8 @@ import lv.lumii.obis.schema.services.SchemaUtil;
 import lv.lumii.obis.schema.services.SparqlEndpointException;
 import lv.lumii.obis.schema.services.common.SparqlEndpointProcessor;
 import lv.lumii.obis.schema.services.common.SparqlQueryBuilder;
+import lv.lumii.obis.schema.services.common.SparqlQueryTracer;
+import lv.lumii.obis.schema.services.common.SparqlReadAhead;
 import lv.lumii.obis.schema.services.common.dto.QueryResponse;
 import lv.lumii.obis.schema.services.common.dto.QueryResult;
 import lv.lumii.obis.schema.services.common.dto.QueryResultObject;
@@ -27,7 +29,16 @@ import javax.annotation.Nullable;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 import static lv.lumii.obis.schema.constants.SchemaConstants.*;
@@ -54,6 +65,30 @@ public class SchemaExtractor {
 
     private static final String INVALID_URI = "invalidURI";
 
+    // extraction phases in the query trace
+    private static final String TRACE_PHASE_CLASSES = "buildClasses";
+    private static final String TRACE_PHASE_PROPERTIES = "buildProperties";
+    private static final String TRACE_PHASE_PROPERTY_TYPES = "enrichProperties.propertyTypes";
+    private static final String TRACE_PHASE_PROPERTY_DETAILS = "enrichProperties.propertyDetails";
+    private static final String TRACE_PHASE_PROPERTY_RELATIONS = "enrichProperties.propertyRelations";
+    private static final String TRACE_PHASE_PROPERTY_CARDINALITIES = "enrichProperties.propertyCardinalities";
+    private static final String TRACE_PHASE_NAMESPACES = "namespaces";
+    private static final String TRACE_PHASE_LABELS = "labels";
+
+    // number of resources in one label query, the size grows while the queries are fast and is halved when a query fails
+    private static final int LABEL_BATCH_SIZE_INITIAL = 200;
+    private static final int LABEL_BATCH_SIZE_MIN = 25;
+    private static final int LABEL_BATCH_SIZE_MAX = 800;
+    private static final long LABEL_BATCH_FAST_MILLIS = 2000L;
+
+    // number of classes or properties in one grouped instance namespace query
+    private static final int INSTANCE_NAMESPACES_BATCH_SIZE = 100;
+
+    // number of superclass candidates in one CHECK_SUPERCLASSES query
+    private static final int SUPERCLASS_CHECK_BATCH_SIZE = 20;
+
+    private static final long SHARD_RESULTS_POLLING_INTERVAL_MILLIS = 2000L;
+
     @Autowired
     @Setter
     @Getter
@@ -64,24 +99,131 @@ public class SchemaExtractor {
     @Getter
     private ObjectConversionService objectConversionService;
 
+    @Autowired
+    @Setter
+    @Getter
+    private SchemaExtractorCheckpointService checkpointService;
+
+    @Autowired
+    @Setter
+    @Getter
+    private SparqlQueryTracer queryTracer;
+
+    @Autowired
+    @Setter
+    @Getter
+    private SchemaExtractorLimitSelector limitSelector;
+
+    @Autowired
+    @Setter
+    @Getter
+    private SchemaExtractorShardService shardService;
+
+    @Autowired
+    @Setter
+    @Getter
+    private SchemaExtractorJobService jobService;
+
+    @Autowired
+    @Setter
+    @Getter
+    private SchemaExtractorProgressEvents progressEvents;
+
+    // set for the property tasks of the parallel processing, see ClassPropertyListsOrder
+    private final ThreadLocal<ClassPropertyListsTurn> classPropertyListsTurn = new ThreadLocal<>();
+
     @Nonnull
     public Schema extractSchema(@Nonnull SchemaExtractorRequestDto request) {
         validateEndpointHealth(request);
+        checkpointService.startExtraction(request);
 
         Schema schema = initializeSchema(request);
         Map<String, String> prefixMap = new HashMap<>();
         Map<String, SchemaExtractorClassNodeInfo> graphOfClasses = new HashMap<>();
 
-        buildClasses(request, schema, graphOfClasses);
-        buildProperties(request, schema, graphOfClasses);
-        buildInstanceNamespaces(request, schema);
-        buildPrefixMap(request, prefixMap);
-        buildNamespaceMap(request, schema, prefixMap);
-        buildLabels(request, schema, prefixMap);
+        queryTracer.start(request);
+        progressEvents.extractionStarted(request);
+        String error = null;
+        try {
+            if (!restoreClassesFromCheckpoint(request, schema, graphOfClasses)) {
+                startPhase(request, schema, TRACE_PHASE_CLASSES);
+                buildClasses(request, schema, graphOfClasses);
+                saveClassesCheckpoint(request, schema, graphOfClasses);
+            }
+            startPhase(request, schema, TRACE_PHASE_PROPERTIES);
+            buildProperties(request, schema, graphOfClasses);
+            startPhase(request, schema, TRACE_PHASE_NAMESPACES);
+            buildInstanceNamespaces(request, schema);
+            buildPrefixMap(request, prefixMap);
+            buildNamespaceMap(request, schema, prefixMap);
+            startPhase(request, schema, TRACE_PHASE_LABELS);
+            buildLabels(request, schema, prefixMap);
+        } catch (RuntimeException e) {
+            error = StringUtils.defaultIfEmpty(e.getMessage(), e.getClass().getSimpleName());
+            throw e;
+        } finally {
+            sparqlEndpointProcessor.logStatistics(request);
+            queryTracer.finish(request);
+            progressEvents.extractionFinished(request, schema, error);
+        }
+        checkpointService.completeExtraction(request);
 
         return schema;
     }
 
+    /**
+     * Sets the phase for the query trace, for the status of the extraction job and for the progress events.
+     */
+    protected void startPhase(@Nonnull SchemaExtractorRequestDto request, @Nonnull Schema schema, @Nonnull String phase) {
+        queryTracer.setContext(phase, null);
+        jobService.setPhase(request.getCorrelationId(), phase);
+        progressEvents.phaseStarted(request, schema, phase);
+    }
+
+    protected boolean restoreClassesFromCheckpoint(@Nonnull SchemaExtractorRequestDto request, @Nonnull Schema schema,
+                                                   @Nonnull Map<String, SchemaExtractorClassNodeInfo> graphOfClasses) {
+        SchemaExtractorClassesCheckpoint checkpoint = checkpointService.readClasses(request);
+        if (checkpoint == null) {
+            return false;
+        }
+        schema.setClasses(checkpoint.getClasses());
+        restoreSubClasses(schema.getClasses());
+        schema.setHasBlankNodeSubjects(checkpoint.getHasBlankNodeSubjects());
+        schema.getMessages().addAll(checkpoint.getMessages());
+        for (SchemaExtractorClassNodeInfo classNode : checkpoint.getGraphOfClasses()) {
+            graphOfClasses.put(classNode.getClassName(), classNode);
+        }
+        log.info(request.getCorrelationId() + String.format(" - restored %d classes from the checkpoint", checkpoint.getClasses().size()));
+        return true;
+    }
+
+    /**
+     * The subclasses are not serialized, they are restored from the superclasses of the deserialized classes.
+     */
+    protected void restoreSubClasses(@Nonnull List<SchemaClass> classes) {
+        for (SchemaClass schemaClass : classes) {
+            for (String superClassName : schemaClass.getSuperClasses()) {
+                SchemaClass superClass = findClass(classes, superClassName);
+                if (superClass != null) {
+                    superClass.getSubClasses().add(schemaClass.getFullName());
+                }
+            }
+        }
+    }
+
+    protected void saveClassesCheckpoint(@Nonnull SchemaExtractorRequestDto request, @Nonnull Schema schema,
+                                         @Nonnull Map<String, SchemaExtractorClassNodeInfo> graphOfClasses) {
+        if (!checkpointService.isEnabled(request)) {
+            return;
+        }
+        SchemaExtractorClassesCheckpoint checkpoint = new SchemaExtractorClassesCheckpoint();
+        checkpoint.setClasses(schema.getClasses());
+        checkpoint.setGraphOfClasses(new ArrayList<>(graphOfClasses.values()));
+        checkpoint.setHasBlankNodeSubjects(schema.getHasBlankNodeSubjects());
+        checkpoint.setMessages(new ArrayList<>(schema.getMessages()));
+        checkpointService.saveClasses(request, checkpoint);
+    }
+
     protected Schema initializeSchema(@Nonnull SchemaExtractorRequestDto request) {
         Schema schema = new Schema();
         schema.setName((StringUtils.isNotEmpty(request.getGraphName())) ? request.getGraphName() + "_Schema" : "Schema");
@@ -141,6 +283,7 @@ public class SchemaExtractor {
                 if (SchemaUtil.getLongValueFromString(includedClass.getInstanceCount()) > 0L) {
                     addClass(null, includedClass.getClassName(), includedClass.getInstanceCount(), null, classes, request);
                 } else {
+                    queryTracer.setContext(TRACE_PHASE_CLASSES, includedClass.getClassName());
                     for (String classificationProperty : request.getAllClassificationProperties()) {
                         SchemaExtractorQueries query = selectQuery(request.getExactCountCalculations(), FIND_INSTANCE_COUNT_FOR_CLASS, FIND_INSTANCE_COUNT_FOR_CLASS_DISTINCT);
                         SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(query.name()), query)
@@ -167,6 +310,7 @@ public class SchemaExtractor {
                     }
                 }
             }
+            queryTracer.setContext(TRACE_PHASE_CLASSES, null);
             log.info(request.getCorrelationId() + String.format(" - processed %d classes from the request input", classes.size()));
         }
 
@@ -299,7 +443,7 @@ public class SchemaExtractor {
                     }
                     SchemaClass clazz = findClass(classes, classNameObject.getValue());
                     if (clazz != null) {
-                        Long distinctCount = SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                        Long distinctCount = queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                         if (distinctCount > 0L) {
                             clazz.setDistinctInstances(distinctCount);
                         }
@@ -382,7 +526,7 @@ public class SchemaExtractor {
                 .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_A_FULL, clazz.getFullName(), false);
         QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
         if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
-            Long distinctCount = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+            Long distinctCount = queryResponse.getResults().get(0).getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
             if (distinctCount > 0L) {
                 clazz.setDistinctInstances(distinctCount);
             }
@@ -445,8 +589,19 @@ public class SchemaExtractor {
 
         Map<String, SchemaExtractorPropertyNodeInfo> properties = new HashMap<>();
 
-        // if the request does not include the list of properties - read from the SPARQL endpoint
-        if (isTrue(request.getIncludedProperties().isEmpty())) {
+        SchemaExtractorPropertiesCheckpoint propertiesCheckpoint = checkpointService.readProperties(request);
+        if (propertiesCheckpoint != null) {
+            // continue with the properties and property types from the checkpoint, in the same processing order
+            properties = new LinkedHashMap<>();
+            for (SchemaExtractorPropertyNodeInfo property : propertiesCheckpoint.getProperties()) {
+                properties.put(property.getPropertyName(), property);
+            }
+            schema.getMessages().clear();
+            schema.getMessages().addAll(propertiesCheckpoint.getMessages());
+            schema.setHasBlankNodeObjects(propertiesCheckpoint.getHasBlankNodeObjects());
+            log.info(request.getCorrelationId() + String.format(" - restored %d properties from the checkpoint", properties.size()));
+        } else if (isTrue(request.getIncludedProperties().isEmpty())) {
+            // if the request does not include the list of properties - read from the SPARQL endpoint
             readPropertiesFromEndpoint(request, schema, properties);
             if (SchemaExtractorRequestDto.DistinctQueryMode.no.equals(request.getExactCountCalculations()) && request.getCalculateDistinctTriples()) {
                 calculateDistinctTriplesForProperties(request, schema, properties);
@@ -488,7 +643,7 @@ public class SchemaExtractor {
         }
 
         // fill properties with additional data
-        enrichProperties(properties, schema, graphOfClasses, request);
+        enrichProperties(properties, schema, graphOfClasses, request, propertiesCheckpoint);
 
         // update classes with incoming triple count
         updateClassesWithIncomingTripleCount(properties, schema);
@@ -557,7 +712,7 @@ public class SchemaExtractor {
                 }
                 SchemaExtractorPropertyNodeInfo property = properties.get(propertyName);
                 if (property != null) {
-                    Long distinctCount = SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                    Long distinctCount = queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                     if (distinctCount > 0L) {
                         property.setDistinctTriples(distinctCount);
                     }
@@ -611,25 +766,28 @@ public class SchemaExtractor {
             SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(FIND_PROPERTIES_FOR_CLASS.name()), FIND_PROPERTIES_FOR_CLASS)
                     .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_SOURCE_FULL, clazz.getFullName(), clazz.getIsLiteral())
                     .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY, clazz.getClassificationProperty());
-            QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
+            Set<String> classProperties = new HashSet<>();
+            QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder, queryResult -> addPropertyName(queryResult, classProperties, schema));
 
-            if (queryResponse.hasErrors() || queryResponse.getResults().isEmpty()) {
+            if (queryResponse.hasErrors() || queryResponse.getRowCount() == 0L) {
                 schema.getMessages().add(new SchemaExtractorMessage(WARNING, clazz.getFullName(), FIND_PROPERTIES_FOR_CLASS.name(), queryBuilder.getQueryString()));
-                for (Long limit : sampleLimits) {
+                for (Long limit : limitSelector.selectLimits(request, FIND_PROPERTIES_FOR_CLASS_WITH_LIMIT, clazz.getInstanceCount(), sampleLimits)) {
                     queryBuilder = new SparqlQueryBuilder(request.getQueries().get(FIND_PROPERTIES_FOR_CLASS_WITH_LIMIT.name()), FIND_PROPERTIES_FOR_CLASS_WITH_LIMIT)
                             .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_SOURCE_FULL, clazz.getFullName(), clazz.getIsLiteral())
                             .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY, clazz.getClassificationProperty())
                             .withContextParam(SPARQL_QUERY_BINDING_NAME_LIMIT, limit.toString());
-                    queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
-                    if (queryResponse.hasErrors() || queryResponse.getResults().isEmpty()) {
+                    Set<String> limitedClassProperties = new HashSet<>();
+                    queryResponse = sparqlEndpointProcessor.read(request, queryBuilder, queryResult -> addPropertyName(queryResult, limitedClassProperties, schema));
+                    limitSelector.recordResult(request, FIND_PROPERTIES_FOR_CLASS_WITH_LIMIT, clazz.getInstanceCount(), limit, queryResponse);
+                    if (queryResponse.hasErrors() || queryResponse.getRowCount() == 0L) {
                         schema.getMessages().add(new SchemaExtractorMessage(WARNING, clazz.getFullName(), FIND_PROPERTIES_FOR_CLASS_WITH_LIMIT.name(), queryBuilder.getQueryString()));
                         continue;
                     }
-                    properties = addPropertyNames(queryResponse.getResults(), schema);
+                    properties = limitedClassProperties;
                     break;
                 }
             } else {
-                properties.addAll(addPropertyNames(queryResponse.getResults(), schema));
+                properties.addAll(classProperties);
             }
         }
 
@@ -640,18 +798,22 @@ public class SchemaExtractor {
     protected Set<String> addPropertyNames(@Nonnull List<QueryResult> queryResults, @Nonnull Schema schema) {
         Set<String> properties = new HashSet<>();
         for (QueryResult queryResult : queryResults) {
-            String propertyName = queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_PROPERTY);
-            if (StringUtils.isEmpty(propertyName)) continue;
-            if (SchemaUtil.isValidURI(propertyName)) {
-                properties.add(propertyName);
-            } else {
-                schema.getMessages().add(new SchemaExtractorMessage(ERROR, "Invalid property URI returned from the endpoint", propertyName,
-                        null, INVALID_URI, null));
-            }
+            addPropertyName(queryResult, properties, schema);
         }
         return properties;
     }
 
+    protected void addPropertyName(@Nonnull QueryResult queryResult, @Nonnull Set<String> properties, @Nonnull Schema schema) {
+        String propertyName = queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_PROPERTY);
+        if (StringUtils.isEmpty(propertyName)) return;
+        if (SchemaUtil.isValidURI(propertyName)) {
+            properties.add(propertyName);
+        } else {
+            schema.getMessages().add(new SchemaExtractorMessage(ERROR, "Invalid property URI returned from the endpoint", propertyName,
+                    null, INVALID_URI, null));
+        }
+    }
+
     protected void readTripleCountForProperty(@Nonnull SchemaExtractorRequestDto request, @Nonnull Schema schema, @Nonnull String propertyName,
                                               @Nonnull Map<String, SchemaExtractorPropertyNodeInfo> properties) {
 
@@ -676,7 +838,7 @@ public class SchemaExtractor {
                 .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getPropertyName(), false);
         QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
         if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
-            Long distinctCount = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+            Long distinctCount = queryResponse.getResults().get(0).getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
             if (distinctCount > 0L) {
                 property.setDistinctTriples(distinctCount);
             }
@@ -718,166 +880,757 @@ public class SchemaExtractor {
     }
 
     protected void enrichProperties(@Nonnull Map<String, SchemaExtractorPropertyNodeInfo> properties, @Nonnull Schema schema,
-                                    @Nonnull Map<String, SchemaExtractorClassNodeInfo> graphOfClasses, @Nonnull SchemaExtractorRequestDto request) {
+                                    @Nonnull Map<String, SchemaExtractorClassNodeInfo> graphOfClasses, @Nonnull SchemaExtractorRequestDto request,
+                                    @Nullable SchemaExtractorPropertiesCheckpoint propertiesCheckpoint) {
         int totalCountOfProperties = properties.size();
 
         Map<String, Long> subjectsMap = null, objectsMap = null, blankNodeObjects = null, blankNodeSubjects = null;
+        boolean calculateBlankNodeObjects = false;
 
-        if (isTrue(SchemaExtractorRequestDto.DistinctSubjectsAndObjectsMode.yes.equals(request.getIncludeDistinctSubjectsAndObjects()))
-                || isTrue(SchemaExtractorRequestDto.DistinctSubjectsAndObjectsMode.propertyLevel.equals(request.getIncludeDistinctSubjectsAndObjects()))) {
-            subjectsMap = determineDistinctSubjectsForAllProperties(schema, request);
-            objectsMap = determineDistinctObjectsForAllProperties(schema, request);
-        }
-        if (isTrue(SchemaExtractorRequestDto.BlankNodeMode.full.equals(request.getComputeBlankNodeStatistics()))
-                && BooleanUtils.isNotFalse(schema.getHasBlankNodeSubjects())) {
-            blankNodeSubjects = determineBlankNodeSubjectsForAllProperties(schema, request, properties);
+        if (propertiesCheckpoint != null) {
+            subjectsMap = propertiesCheckpoint.getDistinctSubjects();
+            objectsMap = propertiesCheckpoint.getDistinctObjects();
+            blankNodeSubjects = propertiesCheckpoint.getBlankNodeSubjects();
+            blankNodeObjects = propertiesCheckpoint.getBlankNodeObjects();
+            calculateBlankNodeObjects = isTrue(propertiesCheckpoint.getCalculateBlankNodeObjects());
+        } else {
+            if (isTrue(SchemaExtractorRequestDto.DistinctSubjectsAndObjectsMode.yes.equals(request.getIncludeDistinctSubjectsAndObjects()))
+                    || isTrue(SchemaExtractorRequestDto.DistinctSubjectsAndObjectsMode.propertyLevel.equals(request.getIncludeDistinctSubjectsAndObjects()))) {
+                subjectsMap = determineDistinctSubjectsForAllProperties(schema, request);
+                objectsMap = determineDistinctObjectsForAllProperties(schema, request);
+            }
+            if (isTrue(SchemaExtractorRequestDto.BlankNodeMode.full.equals(request.getComputeBlankNodeStatistics()))
+                    && BooleanUtils.isNotFalse(schema.getHasBlankNodeSubjects())) {
+                blankNodeSubjects = determineBlankNodeSubjectsForAllProperties(schema, request, properties);
+            }
+            if (isTrue(SchemaExtractorRequestDto.BlankNodeMode.targetsOnly.equals(request.getComputeBlankNodeStatistics()))
+                    || isTrue(SchemaExtractorRequestDto.BlankNodeMode.full.equals(request.getComputeBlankNodeStatistics()))) {
+                validateBlankNodesForProperties(schema, request);
+                if (BooleanUtils.isNotFalse(schema.getHasBlankNodeObjects())) {
+                    blankNodeObjects = determineBlankNodeObjectsForAllProperties(schema, request, properties);
+                    calculateBlankNodeObjects = true;
+                }
+            }
+
+            // calculate property type separately (this information later is needed in other calculations)
+            Map<String, Long> objectTripleCounts = new HashMap<>();
+            Map<String, Long> dataTripleCounts = new HashMap<>();
+            startPhase(request, schema, TRACE_PHASE_PROPERTY_TYPES);
+            if (isTrue(request.getCalculatePropertyTypesInBulk())) {
+                determineUrlAndLiteralValuesForAllProperties(schema, request, properties, objectTripleCounts, dataTripleCounts);
+            }
+            processProperties(properties, schema, request, (property, propertyInd) -> {
+                log.info(request.getCorrelationId() + String.format(PROPERTY_TYPE_PROCESSING, propertyInd, totalCountOfProperties, property.getPropertyName()));
+                jobService.propertyStarted(request.getCorrelationId(), totalCountOfProperties);
+                queryTracer.setContext(TRACE_PHASE_PROPERTY_TYPES, property.getPropertyName());
+
+                // the properties missing from the bulk query results are counted one by one
+                if (objectTripleCounts.containsKey(property.getPropertyName())) {
+                    property.setObjectTripleCount(objectTripleCounts.get(property.getPropertyName()));
+                } else {
+                    determinePropertyObjectTripleCount(schema, property, request, totalCountOfProperties);
+                }
+                if (dataTripleCounts.containsKey(property.getPropertyName())) {
+                    property.setDataTripleCount(dataTripleCounts.get(property.getPropertyName()));
+                } else {
+                    determinePropertyDataTripleCount(schema, property, request, totalCountOfProperties);
+                }
+                determinePropertyType(property, request);
+            }, null, null, null, null);
+
+            savePropertiesCheckpoint(request, schema, properties, subjectsMap, objectsMap, blankNodeSubjects, blankNodeObjects, calculateBlankNodeObjects);
         }
-        boolean calculateBlankNodeObjects = false;
-        if (isTrue(SchemaExtractorRequestDto.BlankNodeMode.targetsOnly.equals(request.getComputeBlankNodeStatistics()))
-                || isTrue(SchemaExtractorRequestDto.BlankNodeMode.full.equals(request.getComputeBlankNodeStatistics()))) {
-            validateBlankNodesForProperties(schema, request);
-            if (BooleanUtils.isNotFalse(schema.getHasBlankNodeObjects())) {
-                blankNodeObjects = determineBlankNodeObjectsForAllProperties(schema, request, properties);
-                calculateBlankNodeObjects = true;
+
+        // properties completed before the interruption are taken from the checkpoints and are not processed again
+        Map<String, SchemaExtractorPropertyCheckpoint> processedProperties = null;
+        // class flags already saved in classes.json or in the checkpoints of the processed properties
+        Map<String, SchemaExtractorClassFlags> savedClassFlags = new HashMap<>();
+        if (checkpointService.isEnabled(request)) {
+            processedProperties = checkpointService.readProcessedProperties(request);
+            for (SchemaExtractorPropertyCheckpoint processedProperty : processedProperties.values()) {
+                if (properties.containsKey(processedProperty.getProperty().getPropertyName())) {
+                    properties.put(processedProperty.getProperty().getPropertyName(), processedProperty.getProperty());
+                }
+                mergeClassFlags(schema, processedProperty.getClassFlags());
+            }
+            if (!processedProperties.isEmpty()) {
+                log.info(request.getCorrelationId() + String.format(" - restored %d processed properties from the checkpoints", processedProperties.size()));
             }
+            collectClassFlags(schema, savedClassFlags);
         }
 
-        // calculate property type separately (this information later is needed in other calculations)
-        int currentPropertyInd = 1;
-        for (Map.Entry<String, SchemaExtractorPropertyNodeInfo> entry : properties.entrySet()) {
+        // enrich property with detailed information
+        // property relation backup modes reuse the relations of already processed properties, so then the relations are calculated in the original order
+        boolean orderedPropertyRelations = isTrue(request.getCalculatePropertyPropertyRelations()) && isPropertyRelationsCalculationOrderDependent(request);
+        startPhase(request, schema, TRACE_PHASE_PROPERTY_DETAILS);
+        if (request.getPropertyShards() > 1) {
+            determineClassPropertyLists(schema, properties, request, processedProperties);
+            processPropertyShards(properties, schema, graphOfClasses, request, subjectsMap, objectsMap, blankNodeSubjects, blankNodeObjects,
+                    calculateBlankNodeObjects, processedProperties, savedClassFlags);
+            if (orderedPropertyRelations) {
+                for (SchemaExtractorPropertyNodeInfo property : properties.values()) {
+                    queryTracer.setContext(TRACE_PHASE_PROPERTY_RELATIONS, property.getPropertyName());
+                    enrichPropertyRelations(schema, property, properties, request);
+                }
+            }
+            queryTracer.setContext(TRACE_PHASE_PROPERTIES, null);
+            return;
+        }
+        Map<String, Long> finalSubjectsMap = subjectsMap, finalObjectsMap = objectsMap, finalBlankNodeSubjects = blankNodeSubjects, finalBlankNodeObjects = blankNodeObjects;
+        boolean finalCalculateBlankNodeObjects = calculateBlankNodeObjects;
+        processProperties(properties, schema, request, (property, propertyInd) -> enrichProperty(schema, property, propertyInd, properties, graphOfClasses, request,
+                finalSubjectsMap, finalObjectsMap, finalBlankNodeSubjects, finalBlankNodeObjects, finalCalculateBlankNodeObjects, orderedPropertyRelations),
+                orderedPropertyRelations ? property -> {
+                    queryTracer.setContext(TRACE_PHASE_PROPERTY_RELATIONS, property.getPropertyName());
+                    enrichPropertyRelations(schema, property, properties, request);
+                } : null, property -> {
+                    queryTracer.setContext(TRACE_PHASE_PROPERTY_CARDINALITIES, property.getPropertyName());
+                    enrichPropertyCardinalities(schema, property, request, totalCountOfProperties);
+                }, processedProperties,
+                processedProperties != null ? (checkpoint, propertyInd) -> {
+                    checkpoint.setClassFlags(collectClassFlags(schema, savedClassFlags));
+                    checkpointService.saveProcessedProperty(request, propertyInd, checkpoint);
+                } : null);
+        queryTracer.setContext(TRACE_PHASE_PROPERTIES, null);
+    }
 
-            SchemaExtractorPropertyNodeInfo property = entry.getValue();
+    /**
+     * Property details and, if their order does not matter, property relations.
+     */
+    protected void enrichProperty(@Nonnull Schema schema, @Nonnull SchemaExtractorPropertyNodeInfo property, int propertyInd,
+                                  @Nonnull Map<String, SchemaExtractorPropertyNodeInfo> properties, @Nonnull Map<String, SchemaExtractorClassNodeInfo> graphOfClasses,
+                                  @Nonnull SchemaExtractorRequestDto request, @Nullable Map<String, Long> subjectsMap, @Nullable Map<String, Long> objectsMap,
+                                  @Nullable Map<String, Long> blankNodeSubjects, @Nullable Map<String, Long> blankNodeObjects, boolean calculateBlankNodeObjects,
+                                  boolean orderedPropertyRelations) {
+        log.info(request.getCorrelationId() + String.format(PROPERTY_PROCESSING, propertyInd, properties.size(), property.getPropertyName()));
+        jobService.propertyStarted(request.getCorrelationId(), properties.size());
 
-            log.info(request.getCorrelationId() + String.format(PROPERTY_TYPE_PROCESSING, currentPropertyInd++, totalCountOfProperties, property.getPropertyName()));
+        queryTracer.setContext(TRACE_PHASE_PROPERTY_DETAILS, property.getPropertyName());
+        enrichPropertyDetails(schema, property, properties, graphOfClasses, request, properties.size(),
+                subjectsMap, objectsMap, blankNodeSubjects, blankNodeObjects, calculateBlankNodeObjects);
+        if (isTrue(request.getCalculatePropertyPropertyRelations()) && !orderedPropertyRelations) {
+            queryTracer.setContext(TRACE_PHASE_PROPERTY_RELATIONS, property.getPropertyName());
+            enrichPropertyRelations(schema, property, properties, request);
+        }
+    }
 
-            determinePropertyObjectTripleCount(schema, property, request, totalCountOfProperties);
-            determinePropertyDataTripleCount(schema, property, request, totalCountOfProperties);
-            determinePropertyType(property, request);
+    /**
+     * Coordinator part of the distributed extraction: the properties that are not processed yet are split into shards that are processed
+     * by the worker instances (and by this instance while it waits), then the processed properties replace the properties in the map
+     * and their messages are added in the original property order. Order dependent property relations are left for the caller.
+     *
+     * @param savedClassFlags class flags already saved in the checkpoints, updated when the processed properties are saved
+     */
+    protected void processPropertyShards(@Nonnull Map<String, SchemaExtractorPropertyNodeInfo> properties, @Nonnull Schema schema,
+                                         @Nonnull Map<String, SchemaExtractorClassNodeInfo> graphOfClasses, @Nonnull SchemaExtractorRequestDto request,
+                                         @Nullable Map<String, Long> subjectsMap, @Nullable Map<String, Long> objectsMap,
+                                         @Nullable Map<String, Long> blankNodeSubjects, @Nullable Map<String, Long> blankNodeObjects, boolean calculateBlankNodeObjects,
+                                         @Nullable Map<String, SchemaExtractorPropertyCheckpoint> processedProperties,
+                                         @Nonnull Map<String, SchemaExtractorClassFlags> savedClassFlags) {
+        List<SchemaExtractorPropertyShard> shards = new ArrayList<>();
+        for (int i = 0; i < request.getPropertyShards(); i++) {
+            shards.add(new SchemaExtractorPropertyShard(i + 1, new ArrayList<>()));
+        }
+        // round robin, so that the large properties at the start of the list are spread over the shards
+        int propertyInd = 0;
+        for (String propertyName : properties.keySet()) {
+            if (processedProperties == null || !processedProperties.containsKey(propertyName)) {
+                shards.get(propertyInd++ % shards.size()).getPropertyNames().add(propertyName);
+            }
+        }
+        shards.removeIf(shard -> shard.getPropertyNames().isEmpty());
+
+        SchemaExtractorShardJob job = new SchemaExtractorShardJob();
+        job.setRequest(request);
+        job.setQueries(request.getQueries());
+        job.setPostMethod(request.getPostMethod());
+        job.setAcceptHeaderForSparqlResults(request.getAcceptHeaderForSparqlResults());
+        job.setClasses(schema.getClasses());
+        job.setClassPropertyLists(collectClassPropertyLists(schema));
+        job.setGraphOfClasses(new ArrayList<>(graphOfClasses.values()));
+        job.setHasBlankNodeSubjects(schema.getHasBlankNodeSubjects());
+        job.setHasBlankNodeObjects(schema.getHasBlankNodeObjects());
+        job.setProperties(new ArrayList<>(properties.values()));
+        job.setDistinctSubjects(subjectsMap);
+        job.setDistinctObjects(objectsMap);
+        job.setBlankNodeSubjects(blankNodeSubjects);
+        job.setBlankNodeObjects(blankNodeObjects);
+        job.setCalculateBlankNodeObjects(calculateBlankNodeObjects);
+
+        Map<String, SchemaExtractorPropertyCheckpoint> shardProperties = new HashMap<>();
+        try {
+            shardService.publish(request.getCorrelationId(), job, shards);
+            Map<Integer, SchemaExtractorPropertyShardResult> results = new HashMap<>();
+            while (results.size() < shards.size()) {
+                for (SchemaExtractorPropertyShard shard : shards) {
+                    if (!results.containsKey(shard.getShardIndex())) {
+                        SchemaExtractorPropertyShardResult result = shardService.readResult(request.getCorrelationId(), shard.getShardIndex());
+                        if (result != null) {
+                            results.put(shard.getShardIndex(), result);
+                        }
+                    }
+                }
+                if (results.size() == shards.size()) {
+                    break;
+                }
+                SchemaExtractorShardService.ClaimedShard claimedShard = shardService.claim(request.getCorrelationId());
+                if (claimedShard != null) {
+                    log.info(request.getCorrelationId() + String.format(" - processing the property shard %d/%d", claimedShard.getShard().getShardIndex(), shards.size()));
+                    shardService.complete(claimedShard, processPropertyShard(job, claimedShard.getShard()));
+                    continue;
+                }
+                shardService.releaseStaleClaims(request.getCorrelationId());
+                try {
+                    Thread.sleep(SHARD_RESULTS_POLLING_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SparqlEndpointException("Waiting for the property shards was interrupted", e);
+                }
+            }
+            for (SchemaExtractorPropertyShard shard : shards) {
+                SchemaExtractorPropertyShardResult result = results.get(shard.getShardIndex());
+                if (result.getError() != null) {
+                    log.error(request.getCorrelationId() + String.format(" - the property shard %d failed on a worker (%s), processing it here", shard.getShardIndex(), result.getError()));
+                    result = processPropertyShard(job, shard);
+                    if (result.getError() != null) {
+                        throw new SparqlEndpointException(String.format("The property shard %d failed: %s", shard.getShardIndex(), result.getError()));
+                    }
+                }
+                result.getProperties().forEach(checkpoint -> shardProperties.put(checkpoint.getProperty().getPropertyName(), checkpoint));
+                mergeClassFlags(schema, result.getClassFlags());
+            }
+        } finally {
+            shardService.removeJob(request.getCorrelationId());
         }
-        // enrich property with detailed information
-        currentPropertyInd = 1;
+
+        int currentPropertyInd = 1;
         for (Map.Entry<String, SchemaExtractorPropertyNodeInfo> entry : properties.entrySet()) {
+            int currentInd = currentPropertyInd++;
+            if (processedProperties != null && processedProperties.containsKey(entry.getKey())) {
+                schema.getMessages().addAll(processedProperties.get(entry.getKey()).getMessages());
+                continue;
+            }
+            SchemaExtractorPropertyCheckpoint processedProperty = shardProperties.get(entry.getKey());
+            if (processedProperty == null) {
+                throw new SparqlEndpointException(String.format("The property %s is missing from the property shard results", entry.getKey()));
+            }
+            entry.setValue(processedProperty.getProperty());
+            schema.getMessages().addAll(processedProperty.getMessages());
+            if (processedProperties != null) {
+                processedProperty.setClassFlags(collectClassFlags(schema, savedClassFlags));
+                checkpointService.saveProcessedProperty(request, currentInd, processedProperty);
+            }
+        }
+        log.info(request.getCorrelationId() + String.format(" - merged %d properties from %d property shards", shardProperties.size(), shards.size()));
+    }
 
-            SchemaExtractorPropertyNodeInfo property = entry.getValue();
+    /**
+     * Worker part of the distributed extraction: runs the property detail, relation and cardinality steps of enrichProperties
+     * for the properties of the shard.
+     *
+     * @return the processed properties with their messages, or the error
+     */
+    @Nonnull
+    public SchemaExtractorPropertyShardResult processPropertyShard(@Nonnull SchemaExtractorShardJob job, @Nonnull SchemaExtractorPropertyShard shard) {
+        SchemaExtractorRequestDto request = job.getRequest();
+        request.setQueries(job.getQueries());
+        request.setPostMethod(job.getPostMethod());
+        request.setAcceptHeaderForSparqlResults(job.getAcceptHeaderForSparqlResults());
 
-            log.info(request.getCorrelationId() + String.format(PROPERTY_PROCESSING, currentPropertyInd++, totalCountOfProperties, property.getPropertyName()));
+        Schema schema = initializeSchema(request);
+        schema.setClasses(job.getClasses());
+        restoreSubClasses(schema.getClasses());
+        restoreClassPropertyLists(schema, job.getClassPropertyLists());
+        schema.setHasBlankNodeSubjects(job.getHasBlankNodeSubjects());
+        schema.setHasBlankNodeObjects(job.getHasBlankNodeObjects());
+        Map<String, SchemaExtractorClassNodeInfo> graphOfClasses = new HashMap<>();
+        job.getGraphOfClasses().forEach(classNode -> graphOfClasses.put(classNode.getClassName(), classNode));
+        Map<String, SchemaExtractorPropertyNodeInfo> properties = new LinkedHashMap<>();
+        job.getProperties().forEach(property -> properties.put(property.getPropertyName(), property));
+        Map<String, SchemaExtractorPropertyNodeInfo> shardProperties = new LinkedHashMap<>();
+        shard.getPropertyNames().stream().filter(properties::containsKey).forEach(propertyName -> shardProperties.put(propertyName, properties.get(propertyName)));
+
+        boolean orderedPropertyRelations = isTrue(request.getCalculatePropertyPropertyRelations()) && isPropertyRelationsCalculationOrderDependent(request);
+        boolean calculateBlankNodeObjects = isTrue(job.getCalculateBlankNodeObjects());
+        // the class flags set by the properties of the shard are returned to the coordinator
+        Map<String, SchemaExtractorClassFlags> initialClassFlags = new HashMap<>();
+        collectClassFlags(schema, initialClassFlags);
+        SchemaExtractorPropertyShardResult result = new SchemaExtractorPropertyShardResult();
+        result.setShardIndex(shard.getShardIndex());
+        try {
+            processProperties(shardProperties, schema, request, (property, propertyInd) -> enrichProperty(schema, property, propertyInd, properties, graphOfClasses, request,
+                    job.getDistinctSubjects(), job.getDistinctObjects(), job.getBlankNodeSubjects(), job.getBlankNodeObjects(), calculateBlankNodeObjects, orderedPropertyRelations),
+                    null, property -> {
+                        queryTracer.setContext(TRACE_PHASE_PROPERTY_CARDINALITIES, property.getPropertyName());
+                        enrichPropertyCardinalities(schema, property, request, properties.size());
+                    }, null, (checkpoint, propertyInd) -> result.getProperties().add(checkpoint));
+            result.setClassFlags(collectClassFlags(schema, initialClassFlags));
+        } catch (RuntimeException e) {
+            log.error(request.getCorrelationId() + String.format(" - the property shard %d failed: %s", shard.getShardIndex(), e.getMessage()));
+            result.setError(StringUtils.defaultIfEmpty(e.getMessage(), e.getClass().getName()));
+        }
+        return result;
+    }
 
-            boolean foundSources = determinePropertySourcesWithTripleCount(schema, property, request);
-            if (!foundSources) {
-                determinePropertySource(schema, property, properties, request);
-                determinePropertySourceTripleCount(schema, property, properties, request);
+    /**
+     * The source and target fallbacks of a property use the outgoing and incoming properties of the classes, which are otherwise determined
+     * by the first property that needs them. The shards are processed on separate nodes that cannot wait for each other,
+     * so the property lists of all classes are determined here, before the shards are started (class messages are added in the class order).
+     */
+    protected void determineClassPropertyLists(@Nonnull Schema schema, @Nonnull Map<String, SchemaExtractorPropertyNodeInfo> properties,
+                                               @Nonnull SchemaExtractorRequestDto request,
+                                               @Nullable Map<String, SchemaExtractorPropertyCheckpoint> processedProperties) {
+        List<SchemaExtractorPropertyNodeInfo> remainingProperties = properties.values().stream()
+                .filter(property -> processedProperties == null || !processedProperties.containsKey(property.getPropertyName()))
+                .collect(Collectors.toList());
+        if (remainingProperties.isEmpty()) {
+            return;
+        }
+        boolean incomingProperties = remainingProperties.stream().anyMatch(property -> calculateTargetClasses(request, property));
+        log.info(request.getCorrelationId() + " - determineClassPropertyLists");
+        ExecutorService executor = Executors.newFixedThreadPool(request.getMaxConcurrentQueries());
+        try {
+            List<Future<List<SchemaExtractorMessage>>> classTasks = new ArrayList<>();
+            for (SchemaClass schemaClass : schema.getClasses()) {
+                if (isFalse(schemaClass.getPropertiesInSchema())) {
+                    continue;
+                }
+                classTasks.add(executor.submit(() -> collectMessages(schema, () -> {
+                    synchronized (schemaClass) {
+                        if (schemaClass.getOutgoingPropertiesFullList() == null) {
+                            determineClassOutgoingProperties(schema, schemaClass, properties, request);
+                        }
+                        if (incomingProperties && schemaClass.getIncomingPropertiesFullList() == null) {
+                            determineClassIncomingProperties(schema, schemaClass, properties, request);
+                        }
+                    }
+                })));
+            }
+            for (Future<List<SchemaExtractorMessage>> classTask : classTasks) {
+                schema.getMessages().addAll(waitForPropertyTask(classTask));
             }
-            determinePropertySourceObjectTripleCount(schema, property, request, totalCountOfProperties);
-            determinePropertySourceDataTripleCount(schema, property, request, totalCountOfProperties);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-            if (calculateTargetClasses(request, property)) {
-                boolean foundTargets = determinePropertyTargetsWithTripleCount(schema, property, request);
-                if (!foundTargets) {
-                    determinePropertyTarget(schema, property, properties, request);
-                    determinePropertyTargetTripleCount(schema, property, properties, request);
+    @Nonnull
+    protected List<SchemaExtractorClassPropertyLists> collectClassPropertyLists(@Nonnull Schema schema) {
+        List<SchemaExtractorClassPropertyLists> classPropertyLists = new ArrayList<>();
+        for (SchemaClass schemaClass : schema.getClasses()) {
+            if (schemaClass.getOutgoingPropertiesFullList() == null && schemaClass.getIncomingPropertiesFullList() == null) {
+                continue;
+            }
+            SchemaExtractorClassPropertyLists propertyLists = new SchemaExtractorClassPropertyLists(schemaClass.getFullName());
+            if (schemaClass.getOutgoingPropertiesFullList() != null) {
+                propertyLists.setOutgoingProperties(new HashMap<>(schemaClass.getOutgoingProperties()));
+                propertyLists.setOutgoingPropertiesFullList(schemaClass.getOutgoingPropertiesFullList());
+            }
+            if (schemaClass.getIncomingPropertiesFullList() != null) {
+                propertyLists.setIncomingProperties(new HashMap<>(schemaClass.getIncomingProperties()));
+                propertyLists.setIncomingPropertiesFullList(schemaClass.getIncomingPropertiesFullList());
+            }
+            classPropertyLists.add(propertyLists);
+        }
+        return classPropertyLists;
+    }
+
+    protected void restoreClassPropertyLists(@Nonnull Schema schema, @Nonnull List<SchemaExtractorClassPropertyLists> classPropertyLists) {
+        Map<String, SchemaClass> classes = new HashMap<>();
+        schema.getClasses().forEach(schemaClass -> classes.putIfAbsent(schemaClass.getFullName(), schemaClass));
+        for (SchemaExtractorClassPropertyLists propertyLists : classPropertyLists) {
+            SchemaClass schemaClass = classes.get(propertyLists.getClassName());
+            if (schemaClass == null) {
+                continue;
+            }
+            synchronized (schemaClass) {
+                if (propertyLists.getOutgoingPropertiesFullList() != null && schemaClass.getOutgoingPropertiesFullList() == null) {
+                    if (propertyLists.getOutgoingProperties() != null) {
+                        schemaClass.getOutgoingProperties().putAll(propertyLists.getOutgoingProperties());
+                    }
+                    schemaClass.setOutgoingPropertiesFullList(propertyLists.getOutgoingPropertiesFullList());
                 }
-                if (isTrue(request.getCalculateSourceAndTargetPairs())) {
-                    determinePropertySourceTargetPairs(schema, property, request, totalCountOfProperties);
+                if (propertyLists.getIncomingPropertiesFullList() != null && schemaClass.getIncomingPropertiesFullList() == null) {
+                    if (propertyLists.getIncomingProperties() != null) {
+                        schemaClass.getIncomingProperties().putAll(propertyLists.getIncomingProperties());
+                    }
+                    schemaClass.setIncomingPropertiesFullList(propertyLists.getIncomingPropertiesFullList());
                 }
             }
+        }
+    }
 
-            if (isTrue(SchemaExtractorRequestDto.DistinctSubjectsAndObjectsMode.yes.equals(request.getIncludeDistinctSubjectsAndObjects()))
-                    || isTrue(SchemaExtractorRequestDto.DistinctSubjectsAndObjectsMode.propertyLevel.equals(request.getIncludeDistinctSubjectsAndObjects()))) {
-                if (subjectsMap == null || subjectsMap.isEmpty()) {
-                    determineDistinctPropertySubjects(schema, property, request);
-                } else {
-                    property.setDistinctSubjectsCount(subjectsMap.get(property.getPropertyName()));
+    /**
+     * Flags of the classes that differ from the earlier collected flags (all set flags, if the earlier flags are empty); the earlier flags are updated.
+     */
+    @Nonnull
+    protected List<SchemaExtractorClassFlags> collectClassFlags(@Nonnull Schema schema, @Nonnull Map<String, SchemaExtractorClassFlags> earlierClassFlags) {
+        List<SchemaExtractorClassFlags> changedClassFlags = new ArrayList<>();
+        for (SchemaClass schemaClass : schema.getClasses()) {
+            Integer outgoingPropertiesOK = schemaClass.getOutgoingPropertiesOK();
+            Integer incomingPropertiesOK = schemaClass.getIncomingPropertiesOK();
+            if (outgoingPropertiesOK == null && incomingPropertiesOK == null) {
+                continue;
+            }
+            SchemaExtractorClassFlags earlierFlags = earlierClassFlags.get(schemaClass.getFullName());
+            if (earlierFlags == null || !Objects.equals(earlierFlags.getOutgoingPropertiesOK(), outgoingPropertiesOK)
+                    || !Objects.equals(earlierFlags.getIncomingPropertiesOK(), incomingPropertiesOK)) {
+                SchemaExtractorClassFlags classFlags = new SchemaExtractorClassFlags(schemaClass.getFullName(), outgoingPropertiesOK, incomingPropertiesOK);
+                changedClassFlags.add(classFlags);
+                earlierClassFlags.put(schemaClass.getFullName(), classFlags);
+            }
+        }
+        return changedClassFlags;
+    }
+
+    /**
+     * Applies the class flags set by the properties processed elsewhere, the lower flag wins as when all properties are processed here.
+     */
+    protected void mergeClassFlags(@Nonnull Schema schema, @Nonnull List<SchemaExtractorClassFlags> classFlags) {
+        if (classFlags.isEmpty()) {
+            return;
+        }
+        Map<String, SchemaClass> classes = new HashMap<>();
+        schema.getClasses().forEach(schemaClass -> classes.putIfAbsent(schemaClass.getFullName(), schemaClass));
+        for (SchemaExtractorClassFlags flags : classFlags) {
+            SchemaClass schemaClass = classes.get(flags.getClassName());
+            if (schemaClass != null) {
+                schemaClass.mergeOutgoingPropertiesOK(flags.getOutgoingPropertiesOK());
+                schemaClass.mergeIncomingPropertiesOK(flags.getIncomingPropertiesOK());
+            }
+        }
+    }
+
+    protected void savePropertiesCheckpoint(@Nonnull SchemaExtractorRequestDto request, @Nonnull Schema schema, @Nonnull Map<String, SchemaExtractorPropertyNodeInfo> properties,
+                                            @Nullable Map<String, Long> subjectsMap, @Nullable Map<String, Long> objectsMap,
+                                            @Nullable Map<String, Long> blankNodeSubjects, @Nullable Map<String, Long> blankNodeObjects, boolean calculateBlankNodeObjects) {
+        if (!checkpointService.isEnabled(request)) {
+            return;
+        }
+        SchemaExtractorPropertiesCheckpoint checkpoint = new SchemaExtractorPropertiesCheckpoint();
+        checkpoint.setProperties(new ArrayList<>(properties.values()));
+        checkpoint.setDistinctSubjects(subjectsMap);
+        checkpoint.setDistinctObjects(objectsMap);
+        checkpoint.setBlankNodeSubjects(blankNodeSubjects);
+        checkpoint.setBlankNodeObjects(blankNodeObjects);
+        checkpoint.setCalculateBlankNodeObjects(calculateBlankNodeObjects);
+        checkpoint.setHasBlankNodeObjects(schema.getHasBlankNodeObjects());
+        checkpoint.setMessages(new ArrayList<>(schema.getMessages()));
+        checkpointService.saveProperties(request, checkpoint);
+    }
+
+    /**
+     * Runs the given processors for every property. If maxConcurrentQueries is greater than 1, properties are processed in parallel on a bounded executor,
+     * except for orderedPropertyProcessor that is always called in the original property order.
+     * Messages are appended to the schema in the same order as in the sequential processing.
+     * If processedProperties is provided, these properties are skipped (only their messages are added).
+     * Every newly processed property is passed to processedPropertyConsumer together with its messages and its index in the properties map,
+     * and is reported to the progress events.
+     */
+    protected void processProperties(@Nonnull Map<String, SchemaExtractorPropertyNodeInfo> properties, @Nonnull Schema schema, @Nonnull SchemaExtractorRequestDto request,
+                                     @Nonnull BiConsumer<SchemaExtractorPropertyNodeInfo, Integer> propertyProcessor,
+                                     @Nullable Consumer<SchemaExtractorPropertyNodeInfo> orderedPropertyProcessor,
+                                     @Nullable Consumer<SchemaExtractorPropertyNodeInfo> finalPropertyProcessor,
+                                     @Nullable Map<String, SchemaExtractorPropertyCheckpoint> processedProperties,
+                                     @Nullable BiConsumer<SchemaExtractorPropertyCheckpoint, Integer> processedPropertyConsumer) {
+        int currentPropertyInd = 1;
+        if (request.getMaxConcurrentQueries() <= 1) {
+            for (Map.Entry<String, SchemaExtractorPropertyNodeInfo> entry : properties.entrySet()) {
+                SchemaExtractorPropertyNodeInfo property = entry.getValue();
+                int propertyInd = currentPropertyInd++;
+                if (processedProperties != null && processedProperties.containsKey(entry.getKey())) {
+                    schema.getMessages().addAll(processedProperties.get(entry.getKey()).getMessages());
+                    continue;
                 }
-                if (objectsMap == null || objectsMap.isEmpty()) {
-                    determineDistinctPropertyObjects(schema, property, request);
-                } else {
-                    property.setDistinctObjectsCount(objectsMap.get(property.getPropertyName()));
+                int messageCount = schema.getMessages().size();
+                long startTime = System.nanoTime();
+                propertyProcessor.accept(property, propertyInd);
+                if (orderedPropertyProcessor != null) {
+                    orderedPropertyProcessor.accept(property);
+                }
+                if (finalPropertyProcessor != null) {
+                    finalPropertyProcessor.accept(property);
+                }
+                progressEvents.propertyCompleted(request, property.getPropertyName(), propertyInd, properties.size(), System.nanoTime() - startTime,
+                        schema.getMessages().subList(messageCount, schema.getMessages().size()));
+                if (processedPropertyConsumer != null) {
+                    processedPropertyConsumer.accept(buildProcessedPropertyCheckpoint(schema, property, messageCount), propertyInd);
                 }
             }
-            if (isTrue(SchemaExtractorRequestDto.DistinctSubjectsAndObjectsMode.yes.equals(request.getIncludeDistinctSubjectsAndObjects()))) {
-                determineDistinctPropertySubjectsOnSourceClassLevel(schema, property, request);
-                determineDistinctPropertyObjectsOnTargetClassLevel(schema, property, request);
-            }
+            return;
+        }
 
-            if (isTrue(SchemaExtractorRequestDto.BlankNodeMode.full.equals(request.getComputeBlankNodeStatistics()))
-                    && BooleanUtils.isNotFalse(schema.getHasBlankNodeSubjects())) {
-                if (blankNodeSubjects == null || blankNodeSubjects.isEmpty()) {
-                    determinePropertyBlankNodeSubjects(schema, property, request);
-                } else {
-                    property.setBlankNodeSubjects(blankNodeSubjects.get(property.getPropertyName()));
+        ExecutorService executor = Executors.newFixedThreadPool(request.getMaxConcurrentQueries());
+        try {
+            List<Future<List<List<SchemaExtractorMessage>>>> propertyTasks = new ArrayList<>();
+            // processing time of every property, read after its task is done
+            long[] propertyDurations = new long[properties.size()];
+            ClassPropertyListsOrder classPropertyListsOrder = new ClassPropertyListsOrder(properties.size());
+            for (Map.Entry<String, SchemaExtractorPropertyNodeInfo> entry : properties.entrySet()) {
+                SchemaExtractorPropertyNodeInfo property = entry.getValue();
+                int propertyInd = currentPropertyInd++;
+                if (processedProperties != null && processedProperties.containsKey(entry.getKey())) {
+                    classPropertyListsOrder.release(propertyInd);
+                    propertyTasks.add(null);
+                    continue;
                 }
+                // the pool takes the tasks in the submission order, so all earlier properties are already running when a property waits for its turn
+                propertyTasks.add(executor.submit(() -> {
+                    long startTime = System.nanoTime();
+                    classPropertyListsTurn.set(new ClassPropertyListsTurn(classPropertyListsOrder, propertyInd));
+                    try {
+                        List<List<SchemaExtractorMessage>> propertyMessages = new ArrayList<>();
+                        propertyMessages.add(collectMessages(schema, () -> propertyProcessor.accept(property, propertyInd)));
+                        releaseClassPropertyListsTurn();
+                        if (finalPropertyProcessor != null) {
+                            propertyMessages.add(collectMessages(schema, () -> finalPropertyProcessor.accept(property)));
+                        }
+                        propertyDurations[propertyInd - 1] = System.nanoTime() - startTime;
+                        return propertyMessages;
+                    } finally {
+                        classPropertyListsOrder.release(propertyInd);
+                        classPropertyListsTurn.remove();
+                    }
+                }));
             }
-            if (calculateBlankNodeObjects && property.getObjectTripleCount() != null && property.getObjectTripleCount() != 0) {
-                if (blankNodeObjects.isEmpty()) {
-                    determinePropertyBlankNodeObjects(schema, property, request);
-                } else {
-                    property.setBlankNodeObjects(blankNodeObjects.get(property.getPropertyName()));
+            int taskInd = 0;
+            for (Map.Entry<String, SchemaExtractorPropertyNodeInfo> entry : properties.entrySet()) {
+                Future<List<List<SchemaExtractorMessage>>> propertyTask = propertyTasks.get(taskInd++);
+                if (propertyTask == null) {
+                    schema.getMessages().addAll(processedProperties.get(entry.getKey()).getMessages());
+                    continue;
+                }
+                List<List<SchemaExtractorMessage>> propertyMessages = waitForPropertyTask(propertyTask);
+                int messageCount = schema.getMessages().size();
+                schema.getMessages().addAll(propertyMessages.get(0));
+                if (orderedPropertyProcessor != null) {
+                    orderedPropertyProcessor.accept(entry.getValue());
+                }
+                if (propertyMessages.size() > 1) {
+                    schema.getMessages().addAll(propertyMessages.get(1));
+                }
+                progressEvents.propertyCompleted(request, entry.getValue().getPropertyName(), taskInd, properties.size(), propertyDurations[taskInd - 1],
+                        schema.getMessages().subList(messageCount, schema.getMessages().size()));
+                if (processedPropertyConsumer != null) {
+                    processedPropertyConsumer.accept(buildProcessedPropertyCheckpoint(schema, entry.getValue(), messageCount), taskInd);
                 }
             }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-            if (isTrue(request.getCalculateClosedClassSets())) {
-                determinePropertyClosedDomains(schema, property, request, totalCountOfProperties);
-                determinePropertyClosedRanges(schema, property, request, totalCountOfProperties);
-                determinePropertyClosedRangesOnSourceClassLevel(schema, property, request, totalCountOfProperties);
-                determinePropertyClosedDomainsOnTargetClassLevel(schema, property, request, totalCountOfProperties);
-            }
+    /**
+     * Waits until all earlier properties are done with the class property lists (no wait in the sequential processing).
+     */
+    private void awaitClassPropertyListsTurn() {
+        ClassPropertyListsTurn turn = classPropertyListsTurn.get();
+        if (turn != null) {
+            turn.order.await(turn.propertyInd);
+        }
+    }
 
-            if (isNotTrue(property.getIsObjectProperty())) {
-                switch (request.getCalculateDataTypes()) {
-                    case propertyLevelOnly:
-                        determinePropertyDataTypes(schema, property, request, totalCountOfProperties);
-                        break;
-                    case propertyLevelAndClassContext:
-                        determinePropertyDataTypes(schema, property, request, totalCountOfProperties);
-                        determinePropertySourceDataTypes(schema, property, request, totalCountOfProperties);
-                        break;
-                    case none:
-                        // do not calculate data types
-                    default:
-                        break;
-                }
+    private void releaseClassPropertyListsTurn() {
+        ClassPropertyListsTurn turn = classPropertyListsTurn.get();
+        if (turn != null) {
+            turn.order.release(turn.propertyInd);
+        }
+    }
 
+    @Nonnull
+    private SchemaExtractorPropertyCheckpoint buildProcessedPropertyCheckpoint(@Nonnull Schema schema, @Nonnull SchemaExtractorPropertyNodeInfo property,
+                                                                               int messageCountBeforeProperty) {
+        List<SchemaExtractorMessage> propertyMessages = new ArrayList<>(schema.getMessages().subList(messageCountBeforeProperty, schema.getMessages().size()));
+        return new SchemaExtractorPropertyCheckpoint(property, propertyMessages);
+    }
+
+    @Nonnull
+    private List<SchemaExtractorMessage> collectMessages(@Nonnull Schema schema, @Nonnull Runnable action) {
+        schema.startMessageBuffering();
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            schema.stopMessageBuffering();
+            throw e;
+        }
+        return schema.stopMessageBuffering();
+    }
+
+    @Nonnull
+    private <T> T waitForPropertyTask(@Nonnull Future<T> propertyTask) {
+        try {
+            return propertyTask.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SparqlEndpointException("Property processing was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw new SparqlEndpointException("Property processing failed", e.getCause());
+        }
+    }
+
+    private boolean isPropertyRelationsCalculationOrderDependent(@Nonnull SchemaExtractorRequestDto request) {
+        return !SchemaExtractorRequestDto.PropertyRelationsCheckMode.none.equals(request.getPropertyPropertyLinkCheckBackupMode())
+                && !SchemaExtractorRequestDto.PropertyRelationsCheckMode.limits.equals(request.getPropertyPropertyLinkCheckBackupMode());
+    }
+
+    protected void enrichPropertyDetails(@Nonnull Schema schema, @Nonnull SchemaExtractorPropertyNodeInfo property, @Nonnull Map<String, SchemaExtractorPropertyNodeInfo> properties,
+                                         @Nonnull Map<String, SchemaExtractorClassNodeInfo> graphOfClasses, @Nonnull SchemaExtractorRequestDto request, int totalCountOfProperties,
+                                         @Nullable Map<String, Long> distinctSubjectsMap, @Nullable Map<String, Long> distinctObjectsMap,
+                                         @Nullable Map<String, Long> blankNodeSubjects, @Nullable Map<String, Long> blankNodeObjects, boolean calculateBlankNodeObjects) {
+        boolean foundSources = determinePropertySourcesWithTripleCount(schema, property, request);
+        if (!foundSources) {
+            determinePropertySource(schema, property, properties, request);
+            determinePropertySourceTripleCount(schema, property, properties, request);
+        }
+        determinePropertySourceObjectTripleCount(schema, property, request, totalCountOfProperties);
+        determinePropertySourceDataTripleCount(schema, property, request, totalCountOfProperties);
 
-            if (isTrue(request.getCalculateDomainsAndRanges())) {
-                determineDomainsAndRanges(schema, property, schema.getClasses(), request, totalCountOfProperties);
+        boolean targetClasses = calculateTargetClasses(request, property);
+        if (targetClasses) {
+            boolean foundTargets = determinePropertyTargetsWithTripleCount(schema, property, request);
+            if (!foundTargets) {
+                determinePropertyTarget(schema, property, properties, request);
+                determinePropertyTargetTripleCount(schema, property, properties, request);
             }
+        }
+        // the next steps do not use the class property lists
+        releaseClassPropertyListsTurn();
+
+        if (targetClasses && isTrue(request.getCalculateSourceAndTargetPairs())) {
+            determinePropertySourceTargetPairs(schema, property, request, totalCountOfProperties);
+        }
 
-            if (isFalse(SchemaExtractorRequestDto.ImportantIndexesMode.no.equals(request.getCalculateImportanceIndexes()))) {
-                determineImportanceIndexes(schema, property, schema.getClasses(), graphOfClasses, request, totalCountOfProperties);
+        if (isTrue(SchemaExtractorRequestDto.DistinctSubjectsAndObjectsMode.yes.equals(request.getIncludeDistinctSubjectsAndObjects()))
+                || isTrue(SchemaExtractorRequestDto.DistinctSubjectsAndObjectsMode.propertyLevel.equals(request.getIncludeDistinctSubjectsAndObjects()))) {
+            if (distinctSubjectsMap == null || distinctSubjectsMap.isEmpty()) {
+                determineDistinctPropertySubjects(schema, property, request);
+            } else {
+                property.setDistinctSubjectsCount(distinctSubjectsMap.get(property.getPropertyName()));
             }
+            if (distinctObjectsMap == null || distinctObjectsMap.isEmpty()) {
+                determineDistinctPropertyObjects(schema, property, request);
+            } else {
+                property.setDistinctObjectsCount(distinctObjectsMap.get(property.getPropertyName()));
+            }
+        }
+        if (isTrue(SchemaExtractorRequestDto.DistinctSubjectsAndObjectsMode.yes.equals(request.getIncludeDistinctSubjectsAndObjects()))) {
+            determineDistinctPropertySubjectsOnSourceClassLevel(schema, property, request);
+            determineDistinctPropertyObjectsOnTargetClassLevel(schema, property, request);
+        }
 
-            if (isTrue(request.getCalculatePropertyPropertyRelations())) {
-                determineOutgoingProperties(schema, property, request, properties);
-                if (property.getObjectTripleCount() != null && property.getObjectTripleCount() != 0) {
-                    determineFollowers(schema, property, request, properties);
-                    determineIncomingProperties(schema, property, request, properties);
-                }
+        if (isTrue(SchemaExtractorRequestDto.BlankNodeMode.full.equals(request.getComputeBlankNodeStatistics()))
+                && BooleanUtils.isNotFalse(schema.getHasBlankNodeSubjects())) {
+            if (blankNodeSubjects == null || blankNodeSubjects.isEmpty()) {
+                determinePropertyBlankNodeSubjects(schema, property, request);
+            } else {
+                property.setBlankNodeSubjects(blankNodeSubjects.get(property.getPropertyName()));
+            }
+        }
+        if (calculateBlankNodeObjects && property.getObjectTripleCount() != null && property.getObjectTripleCount() != 0) {
+            if (blankNodeObjects.isEmpty()) {
+                determinePropertyBlankNodeObjects(schema, property, request);
+            } else {
+                property.setBlankNodeObjects(blankNodeObjects.get(property.getPropertyName()));
             }
+        }
+
+        if (isTrue(request.getCalculateClosedClassSets())) {
+            determinePropertyClosedDomains(schema, property, request, totalCountOfProperties);
+            determinePropertyClosedRanges(schema, property, request, totalCountOfProperties);
+            determinePropertyClosedRangesOnSourceClassLevel(schema, property, request, totalCountOfProperties);
+            determinePropertyClosedDomainsOnTargetClassLevel(schema, property, request, totalCountOfProperties);
+        }
 
-            switch (request.getCalculateCardinalities()) {
+        if (isNotTrue(property.getIsObjectProperty())) {
+            switch (request.getCalculateDataTypes()) {
                 case propertyLevelOnly:
-                    determinePropertyMaxCardinality(schema, property, request, totalCountOfProperties);
-                    if (property.getObjectTripleCount() != null && property.getObjectTripleCount() != 0) {
-                        determinePropertyInverseMaxCardinality(schema, property, request, totalCountOfProperties);
-                    }
+                    determinePropertyDataTypes(schema, property, request, totalCountOfProperties);
                     break;
                 case propertyLevelAndClassContext:
-                    determinePropertyMaxCardinality(schema, property, request, totalCountOfProperties);
-                    determinePropertySourceMaxCardinality(schema, property, request, totalCountOfProperties);
-                    determinePropertySourceMinCardinality(schema, property, request, totalCountOfProperties);
-                    if (property.getObjectTripleCount() != null && property.getObjectTripleCount() != 0) {
-                        determinePropertyInverseMaxCardinality(schema, property, request, totalCountOfProperties);
-                        determinePropertyTargetsInverseMinCardinality(schema, property, request, totalCountOfProperties);
-                        determinePropertyTargetsInverseMaxCardinality(schema, property, request, totalCountOfProperties);
-                    }
+                    determinePropertyDataTypes(schema, property, request, totalCountOfProperties);
+                    determinePropertySourceDataTypes(schema, property, request, totalCountOfProperties);
                     break;
                 case none:
-                    // do not calculate cardinalities
+                    // do not calculate data types
                 default:
                     break;
             }
+
+        }
+
+        if (isTrue(request.getCalculateDomainsAndRanges())) {
+            determineDomainsAndRanges(schema, property, schema.getClasses(), request, totalCountOfProperties);
+        }
+
+        if (isFalse(SchemaExtractorRequestDto.ImportantIndexesMode.no.equals(request.getCalculateImportanceIndexes()))) {
+            determineImportanceIndexes(schema, property, schema.getClasses(), graphOfClasses, request, totalCountOfProperties);
+        }
+    }
+
+    protected void enrichPropertyRelations(@Nonnull Schema schema, @Nonnull SchemaExtractorPropertyNodeInfo property, @Nonnull Map<String, SchemaExtractorPropertyNodeInfo> properties,
+                                           @Nonnull SchemaExtractorRequestDto request) {
+        determineOutgoingProperties(schema, property, request, properties);
+        if (property.getObjectTripleCount() != null && property.getObjectTripleCount() != 0) {
+            determineFollowers(schema, property, request, properties);
+            determineIncomingProperties(schema, property, request, properties);
+        }
+    }
+
+    protected void enrichPropertyCardinalities(@Nonnull Schema schema, @Nonnull SchemaExtractorPropertyNodeInfo property, @Nonnull SchemaExtractorRequestDto request,
+                                               int totalCountOfProperties) {
+        switch (request.getCalculateCardinalities()) {
+            case propertyLevelOnly:
+                determinePropertyMaxCardinality(schema, property, request, totalCountOfProperties);
+                if (property.getObjectTripleCount() != null && property.getObjectTripleCount() != 0) {
+                    determinePropertyInverseMaxCardinality(schema, property, request, totalCountOfProperties);
+                }
+                break;
+            case propertyLevelAndClassContext:
+                determinePropertyMaxCardinality(schema, property, request, totalCountOfProperties);
+                determinePropertySourceMaxCardinality(schema, property, request, totalCountOfProperties);
+                determinePropertySourceMinCardinality(schema, property, request, totalCountOfProperties);
+                if (property.getObjectTripleCount() != null && property.getObjectTripleCount() != 0) {
+                    determinePropertyInverseMaxCardinality(schema, property, request, totalCountOfProperties);
+                    determinePropertyTargetsInverseMinCardinality(schema, property, request, totalCountOfProperties);
+                    determinePropertyTargetsInverseMaxCardinality(schema, property, request, totalCountOfProperties);
+                }
+                break;
+            case none:
+                // do not calculate cardinalities
+            default:
+                break;
+        }
+    }
+
+    protected void determineUrlAndLiteralValuesForAllProperties(@Nonnull Schema schema, @Nonnull SchemaExtractorRequestDto request,
+                                                                @Nonnull Map<String, SchemaExtractorPropertyNodeInfo> properties,
+                                                                @Nonnull Map<String, Long> objectTripleCounts, @Nonnull Map<String, Long> dataTripleCounts) {
+        log.info(request.getCorrelationId() + " - determineUrlAndLiteralValuesForAllProperties");
+
+        SchemaExtractorQueries query = selectQuery(request.getExactCountCalculations(), COUNT_URL_AND_LITERAL_VALUES_FOR_PROPERTIES, COUNT_URL_AND_LITERAL_VALUES_FOR_PROPERTIES_DISTINCT);
+        SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(query.name()), query);
+        if (!setPropertyValuesClause(request, properties, queryBuilder)) {
+            return;
+        }
+        QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
+        if (!queryResponse.hasErrors()) {
+            for (QueryResult queryResult : queryResponse.getResults()) {
+                String propertyName = queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_PROPERTY);
+                if (propertyName == null || !properties.containsKey(propertyName)
+                        || StringUtils.isEmpty(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_OBJECT_TRIPLE_COUNT))
+                        || StringUtils.isEmpty(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_DATA_TRIPLE_COUNT))) {
+                    continue;
+                }
+                objectTripleCounts.put(propertyName, queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_OBJECT_TRIPLE_COUNT));
+                dataTripleCounts.put(propertyName, queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_DATA_TRIPLE_COUNT));
+            }
+        } else {
+            schema.getMessages().add(new SchemaExtractorMessage(INFO, null, query.name(), queryBuilder.getQueryString()));
         }
+        log.info(request.getCorrelationId() + String.format(" - URL and literal value counts found for %d of %d properties", objectTripleCounts.size(), properties.size()));
     }
 
     protected void determinePropertyObjectTripleCount(@Nonnull Schema schema, @Nonnull SchemaExtractorPropertyNodeInfo property, @Nonnull SchemaExtractorRequestDto request, int totalCountOfProperties) {
@@ -889,7 +1642,7 @@ public class SchemaExtractor {
                 .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getPropertyName(), false);
         QueryResponse queryResponseForUrlCount = sparqlEndpointProcessor.read(request, queryBuilder);
         if (!queryResponseForUrlCount.hasErrors() && !queryResponseForUrlCount.getResults().isEmpty() && queryResponseForUrlCount.getResults().get(0) != null) {
-            long objectTripleCount = SchemaUtil.getLongValueFromString(queryResponseForUrlCount.getResults().get(0).getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+            long objectTripleCount = queryResponseForUrlCount.getResults().get(0).getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
             property.setObjectTripleCount(objectTripleCount);
         } else {
             schema.getMessages().add(new SchemaExtractorMessage(INFO, property.getPropertyName(), query.name(), queryBuilder.getQueryString()));
@@ -917,7 +1670,7 @@ public class SchemaExtractor {
                 .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getPropertyName(), false);
         QueryResponse queryResponseForLiteralCount = sparqlEndpointProcessor.read(request, queryBuilder);
         if (!queryResponseForLiteralCount.hasErrors() && !queryResponseForLiteralCount.getResults().isEmpty() && queryResponseForLiteralCount.getResults().get(0) != null) {
-            long dataTripleCount = SchemaUtil.getLongValueFromString(queryResponseForLiteralCount.getResults().get(0).getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+            long dataTripleCount = queryResponseForLiteralCount.getResults().get(0).getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
             property.setDataTripleCount(dataTripleCount);
         } else {
             schema.getMessages().add(new SchemaExtractorMessage(INFO, property.getPropertyName(), query.name(), queryBuilder.getQueryString()));
@@ -982,12 +1735,10 @@ public class SchemaExtractor {
                     SchemaClass schemaClass = findClass(schema.getClasses(), className);
                     if (schemaClass != null && isNotFalse(schemaClass.getPropertiesInSchema())) {
                         SchemaExtractorClassNodeInfo sourceClass = new SchemaExtractorClassNodeInfo(className, classificationProperty, schemaClass.getIsLiteral());
-                        sourceClass.setTripleCount(SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT)));
+                        sourceClass.setTripleCount(queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
                         sourceClass.setTripleCountBase(null);
                         property.getSourceClasses().add(sourceClass);
-                        if (schemaClass.getOutgoingPropertiesOK() == null) {
-                            schemaClass.setOutgoingPropertiesOK(5);
-                        }
+                        schemaClass.initOutgoingPropertiesOK(5);
                     }
                 }
             }
@@ -1014,9 +1765,7 @@ public class SchemaExtractor {
                     SchemaClass schemaClass = findClass(schema.getClasses(), className);
                     if (schemaClass != null && isNotFalse(schemaClass.getPropertiesInSchema())) {
                         property.getSourceClasses().add(new SchemaExtractorClassNodeInfo(className, classificationProperty, schemaClass.getIsLiteral()));
-                        if (schemaClass.getOutgoingPropertiesOK() == null) {
-                            schemaClass.setOutgoingPropertiesOK(5);
-                        }
+                        schemaClass.initOutgoingPropertiesOK(5);
                     }
                 }
             }
@@ -1027,6 +1776,7 @@ public class SchemaExtractor {
             property.setSourceClassesOK(3);
         }
         if (hasErrors && property.getSourceClasses().isEmpty()) {
+            awaitClassPropertyListsTurn();
             AtomicBoolean hasAtLeastOneError = new AtomicBoolean(false);
             AtomicBoolean hasAtLeastOneResult = new AtomicBoolean(false);
             schema.getClasses().forEach(potentialSource -> {
@@ -1039,9 +1789,7 @@ public class SchemaExtractor {
                                     potentialSource.getClassificationProperty(), potentialSource.getIsLiteral());
                             newSourceClass.setTripleCountBase(tripleCountObject.getTripleCountBase());
                             property.getSourceClasses().add(newSourceClass);
-                            if (potentialSource.getOutgoingPropertiesOK() == null) {
-                                potentialSource.setOutgoingPropertiesOK(5);
-                            }
+                            potentialSource.initOutgoingPropertiesOK(5);
                         }
                     } else if (isNotTrue(potentialSource.getOutgoingPropertiesFullList())) {
                         SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(CHECK_CLASS_AS_PROPERTY_SOURCE.name()), CHECK_CLASS_AS_PROPERTY_SOURCE)
@@ -1052,27 +1800,25 @@ public class SchemaExtractor {
                         if (!checkSourceQueryResponse.hasErrors() && !checkSourceQueryResponse.getResults().isEmpty()) {
                             hasAtLeastOneResult.set(true);
                             property.getSourceClasses().add(new SchemaExtractorClassNodeInfo(potentialSource.getFullName(), potentialSource.getClassificationProperty(), potentialSource.getIsLiteral()));
-                            if (potentialSource.getOutgoingPropertiesOK() == null) {
-                                potentialSource.setOutgoingPropertiesOK(5);
-                            }
+                            potentialSource.initOutgoingPropertiesOK(5);
                         } else if (checkSourceQueryResponse.hasErrors()) {
                             schema.getMessages().add(new SchemaExtractorMessage(WARNING, property.getPropertyName(), CHECK_CLASS_AS_PROPERTY_SOURCE.name(), queryBuilder.getQueryString()));
-                            if (potentialSource.getOutgoingPropertiesFullList() == null) {
-                                boolean foundOutgoingProperties = determineClassOutgoingProperties(schema, potentialSource, properties, request);
-                                if (!foundOutgoingProperties) {
-                                    hasAtLeastOneError.set(true);
-                                    potentialSource.setOutgoingPropertiesOK(3);
-                                } else {
-                                    if (potentialSource.getOutgoingProperties().containsKey(property.getPropertyName())) {
-                                        hasAtLeastOneResult.set(true);
-                                        TripleCount tripleCountObject = potentialSource.getOutgoingProperties().get(property.getPropertyName());
-                                        if (tripleCountObject != null) {
-                                            SchemaExtractorClassNodeInfo newSourceClass = new SchemaExtractorClassNodeInfo(potentialSource.getFullName(), tripleCountObject.getTripleCount(),
-                                                    potentialSource.getClassificationProperty(), potentialSource.getIsLiteral());
-                                            newSourceClass.setTripleCountBase(tripleCountObject.getTripleCountBase());
-                                            property.getSourceClasses().add(newSourceClass);
-                                            if (potentialSource.getOutgoingPropertiesOK() == null) {
-                                                potentialSource.setOutgoingPropertiesOK(5);
+                            synchronized (potentialSource) {
+                                if (potentialSource.getOutgoingPropertiesFullList() == null) {
+                                    boolean foundOutgoingProperties = determineClassOutgoingProperties(schema, potentialSource, properties, request);
+                                    if (!foundOutgoingProperties) {
+                                        hasAtLeastOneError.set(true);
+                                        potentialSource.setOutgoingPropertiesOK(3);
+                                    } else {
+                                        if (potentialSource.getOutgoingProperties().containsKey(property.getPropertyName())) {
+                                            hasAtLeastOneResult.set(true);
+                                            TripleCount tripleCountObject = potentialSource.getOutgoingProperties().get(property.getPropertyName());
+                                            if (tripleCountObject != null) {
+                                                SchemaExtractorClassNodeInfo newSourceClass = new SchemaExtractorClassNodeInfo(potentialSource.getFullName(), tripleCountObject.getTripleCount(),
+                                                        potentialSource.getClassificationProperty(), potentialSource.getIsLiteral());
+                                                newSourceClass.setTripleCountBase(tripleCountObject.getTripleCountBase());
+                                                property.getSourceClasses().add(newSourceClass);
+                                                potentialSource.initOutgoingPropertiesOK(5);
                                             }
                                         }
                                     }
@@ -1093,12 +1839,9 @@ public class SchemaExtractor {
         SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(FIND_OUTGOING_PROPERTY_TRIPLE_COUNTS_FOR_CLASS.name()), FIND_OUTGOING_PROPERTY_TRIPLE_COUNTS_FOR_CLASS)
                 .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_SOURCE_FULL, clazz.getFullName(), clazz.getIsLiteral())
                 .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY, clazz.getClassificationProperty());
-        if (!request.getIncludedProperties().isEmpty()) {
-            if (!properties.keySet().isEmpty()) {
-                queryBuilder.withContextParam(SPARQL_QUERY_BINDING_NAME_VALUES, buildValuesClause(properties.keySet(), SPARQL_QUERY_BINDING_NAME_PROPERTY));
-            }
-        } else {
-            queryBuilder.withContextParam(SPARQL_QUERY_BINDING_NAME_VALUES, StringUtils.EMPTY);
+        if (!setPropertyValuesClause(request, properties, queryBuilder)) {
+            clazz.setOutgoingPropertiesFullList(Boolean.TRUE);
+            return true;
         }
         QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
         if (!queryResponse.hasErrors()) {
@@ -1126,13 +1869,7 @@ public class SchemaExtractor {
                             .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_SOURCE_FULL, clazz.getFullName(), clazz.getIsLiteral())
                             .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY, clazz.getClassificationProperty())
                             .withContextParam(SPARQL_QUERY_BINDING_NAME_LIMIT, tripleCountLimit.toString());
-                    if (!request.getIncludedProperties().isEmpty()) {
-                        if (!properties.keySet().isEmpty()) {
-                            queryBuilder.withContextParam(SPARQL_QUERY_BINDING_NAME_VALUES, buildValuesClause(properties.keySet(), SPARQL_QUERY_BINDING_NAME_PROPERTY));
-                        }
-                    } else {
-                        queryBuilder.withContextParam(SPARQL_QUERY_BINDING_NAME_VALUES, StringUtils.EMPTY);
-                    }
+                    setPropertyValuesClause(request, properties, queryBuilder);
                     QueryResponse queryResponseLimit = sparqlEndpointProcessor.read(request, queryBuilder);
                     if (!queryResponseLimit.hasErrors()) {
                         outgoingPropertiesWithLimits = getClassOutgoingProperties(queryResponseLimit.getResults(), schema, tripleCountLimit, request);
@@ -1172,7 +1909,7 @@ public class SchemaExtractor {
                         null, INVALID_URI, null));
                 continue;
             }
-            Long tripleCount = SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+            Long tripleCount = queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
             outgoingProperties.put(propertyName, new TripleCount(tripleCount, tripleCountBase));
         }
         return outgoingProperties;
@@ -1185,12 +1922,9 @@ public class SchemaExtractor {
         SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(FIND_INCOMING_PROPERTY_TRIPLE_COUNTS_FOR_CLASS.name()), FIND_INCOMING_PROPERTY_TRIPLE_COUNTS_FOR_CLASS)
                 .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_TARGET_FULL, clazz.getFullName(), clazz.getIsLiteral())
                 .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY, clazz.getClassificationProperty());
-        if (!request.getIncludedProperties().isEmpty()) {
-            if (!properties.keySet().isEmpty()) {
-                queryBuilder.withContextParam(SPARQL_QUERY_BINDING_NAME_VALUES, buildValuesClause(properties.keySet(), SPARQL_QUERY_BINDING_NAME_PROPERTY));
-            }
-        } else {
-            queryBuilder.withContextParam(SPARQL_QUERY_BINDING_NAME_VALUES, StringUtils.EMPTY);
+        if (!setPropertyValuesClause(request, properties, queryBuilder)) {
+            clazz.setIncomingPropertiesFullList(Boolean.TRUE);
+            return true;
         }
         QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
         if (!queryResponse.hasErrors()) {
@@ -1218,13 +1952,7 @@ public class SchemaExtractor {
                             .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_TARGET_FULL, clazz.getFullName(), clazz.getIsLiteral())
                             .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY, clazz.getClassificationProperty())
                             .withContextParam(SPARQL_QUERY_BINDING_NAME_LIMIT, tripleCountLimit.toString());
-                    if (!request.getIncludedProperties().isEmpty()) {
-                        if (!properties.keySet().isEmpty()) {
-                            queryBuilder.withContextParam(SPARQL_QUERY_BINDING_NAME_VALUES, buildValuesClause(properties.keySet(), SPARQL_QUERY_BINDING_NAME_PROPERTY));
-                        }
-                    } else {
-                        queryBuilder.withContextParam(SPARQL_QUERY_BINDING_NAME_VALUES, StringUtils.EMPTY);
-                    }
+                    setPropertyValuesClause(request, properties, queryBuilder);
                     QueryResponse queryResponseLimit = sparqlEndpointProcessor.read(request, queryBuilder);
                     if (!queryResponseLimit.hasErrors()) {
                         incomingPropertiesWithLimits = getClassIncomingProperties(queryResponseLimit.getResults(), schema, tripleCountLimit, request);
@@ -1264,7 +1992,7 @@ public class SchemaExtractor {
                         null, INVALID_URI, null));
                 continue;
             }
-            Long tripleCount = SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+            Long tripleCount = queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
             incomingProperties.put(propertyName, new TripleCount(tripleCount, tripleCountBase));
         }
         return incomingProperties;
@@ -1287,20 +2015,22 @@ public class SchemaExtractor {
             if (!queryResponse.hasErrors()) {
                 for (QueryResult queryResult : queryResponse.getResults()) {
                     if (queryResult != null) {
-                        sourceClass.setTripleCount(SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT)));
+                        sourceClass.setTripleCount(queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
                         sourceClass.setTripleCountBase(null);
                     }
                 }
             } else {
                 schema.getMessages().add(new SchemaExtractorMessage(WARNING, property.getPropertyName(), query.name(), queryBuilder.getQueryString()));
                 boolean found = false;
-                for (Long limit : sampleLimits) {
+                SchemaExtractorQueries queryWithLimits = selectQuery(request.getExactCountCalculations(), FIND_PROPERTY_SOURCE_TRIPLE_COUNT_WITH_LIMITS, FIND_PROPERTY_SOURCE_TRIPLE_COUNT_WITH_LIMITS_DISTINCT);
+                for (Long limit : limitSelector.selectLimits(request, queryWithLimits, property.getTripleCount(), sampleLimits)) {
                     if (property.getTripleCount() == null || limit <= property.getTripleCount()) {
                         found = determinePropertySourceTripleCountWithLimits(schema, property, sourceClass, request, limit);
                         if (found) break;
                     }
                 }
                 if (!found) {
+                    awaitClassPropertyListsTurn();
                     SchemaClass sourceClassWithoutTripleCount = findClass(schema.getClasses(), sourceClass.getClassName());
                     if (sourceClassWithoutTripleCount == null) continue;
                     if (sourceClassWithoutTripleCount.getOutgoingProperties().containsKey(property.getPropertyName())) {
@@ -1311,13 +2041,15 @@ public class SchemaExtractor {
                         }
                         continue;
                     }
-                    if (sourceClassWithoutTripleCount.getOutgoingPropertiesFullList() == null) {
-                        boolean foundOutgoingProperties = determineClassOutgoingProperties(schema, sourceClassWithoutTripleCount, properties, request);
-                        if (foundOutgoingProperties && sourceClassWithoutTripleCount.getOutgoingProperties().containsKey(property.getPropertyName())) {
-                            TripleCount tripleCountObject = sourceClassWithoutTripleCount.getOutgoingProperties().get(property.getPropertyName());
-                            if (tripleCountObject != null) {
-                                sourceClass.setTripleCount(tripleCountObject.getTripleCount());
-                                sourceClass.setTripleCountBase(tripleCountObject.getTripleCountBase());
+                    synchronized (sourceClassWithoutTripleCount) {
+                        if (sourceClassWithoutTripleCount.getOutgoingPropertiesFullList() == null) {
+                            boolean foundOutgoingProperties = determineClassOutgoingProperties(schema, sourceClassWithoutTripleCount, properties, request);
+                            if (foundOutgoingProperties && sourceClassWithoutTripleCount.getOutgoingProperties().containsKey(property.getPropertyName())) {
+                                TripleCount tripleCountObject = sourceClassWithoutTripleCount.getOutgoingProperties().get(property.getPropertyName());
+                                if (tripleCountObject != null) {
+                                    sourceClass.setTripleCount(tripleCountObject.getTripleCount());
+                                    sourceClass.setTripleCountBase(tripleCountObject.getTripleCountBase());
+                                }
                             }
                         }
                     }
@@ -1338,12 +2070,13 @@ public class SchemaExtractor {
                 .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getPropertyName(), false)
                 .withContextParam(SPARQL_QUERY_BINDING_NAME_LIMIT, limit.toString());
         QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
+        limitSelector.recordResult(request, query, property.getTripleCount(), limit, queryResponse);
         if (queryResponse.hasErrors()) {
             return false;
         }
         if (!queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
             QueryResult queryResult = queryResponse.getResults().get(0);
-            sourceClass.setTripleCount(SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT)));
+            sourceClass.setTripleCount(queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
             sourceClass.setTripleCountBase(limit);
             schema.getMessages().add(new SchemaExtractorMessage(OK, property.getPropertyName(), query.name(), queryBuilder.getQueryString()));
         }
@@ -1371,7 +2104,7 @@ public class SchemaExtractor {
                     SchemaExtractorClassNodeInfo sourceClass = property.getSourceClasses().stream()
                             .filter(c -> className.equals(c.getClassName())).findFirst().orElse(null);
                     if (sourceClass != null) {
-                        Long objectTripleCountForSource = SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                        Long objectTripleCountForSource = queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                         sourceClass.setObjectTripleCount(objectTripleCountForSource);
                     }
                 }
@@ -1399,7 +2132,7 @@ public class SchemaExtractor {
                         .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getPropertyName(), false);
                 QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
                 if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
-                    Long objectTripleCountForSource = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                    Long objectTripleCountForSource = queryResponse.getResults().get(0).getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                     sourceClass.setObjectTripleCount(objectTripleCountForSource);
                 } else {
                     schema.getMessages().add(new SchemaExtractorMessage(INFO, property.getPropertyName(), query.name(), queryBuilder.getQueryString()));
@@ -1441,7 +2174,7 @@ public class SchemaExtractor {
                     SchemaExtractorClassNodeInfo sourceClass = property.getSourceClasses().stream()
                             .filter(c -> className.equals(c.getClassName())).findFirst().orElse(null);
                     if (sourceClass != null) {
-                        Long dataTripleCountForSource = SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                        Long dataTripleCountForSource = queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                         sourceClass.setDataTripleCount(dataTripleCountForSource);
                     }
                 }
@@ -1469,7 +2202,7 @@ public class SchemaExtractor {
                         .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getPropertyName(), false);
                 QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
                 if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
-                    Long dataTripleCountForSource = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                    Long dataTripleCountForSource = queryResponse.getResults().get(0).getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                     sourceClass.setDataTripleCount(dataTripleCountForSource);
                 } else {
                     schema.getMessages().add(new SchemaExtractorMessage(INFO, property.getPropertyName(), query.name(), queryBuilder.getQueryString()));
@@ -1521,12 +2254,10 @@ public class SchemaExtractor {
                     SchemaClass schemaClass = findClass(schema.getClasses(), className);
                     if (schemaClass != null && isNotFalse(schemaClass.getPropertiesInSchema())) {
                         SchemaExtractorClassNodeInfo targetClass = new SchemaExtractorClassNodeInfo(className, classificationProperty, schemaClass.getIsLiteral());
-                        targetClass.setTripleCount(SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT)));
+                        targetClass.setTripleCount(queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
                         targetClass.setTripleCountBase(null);
                         property.getTargetClasses().add(targetClass);
-                        if (schemaClass.getIncomingPropertiesOK() == null) {
-                            schemaClass.setIncomingPropertiesOK(5);
-                        }
+                        schemaClass.initIncomingPropertiesOK(5);
                     }
                 }
             }
@@ -1553,9 +2284,7 @@ public class SchemaExtractor {
                     SchemaClass schemaClass = findClass(schema.getClasses(), className);
                     if (schemaClass != null && isNotFalse(schemaClass.getPropertiesInSchema())) {
                         property.getTargetClasses().add(new SchemaExtractorClassNodeInfo(className, classificationProperty, schemaClass.getIsLiteral()));
-                        if (schemaClass.getIncomingPropertiesOK() == null) {
-                            schemaClass.setIncomingPropertiesOK(5);
-                        }
+                        schemaClass.initIncomingPropertiesOK(5);
                     }
                 }
             }
@@ -1566,6 +2295,7 @@ public class SchemaExtractor {
             property.setTargetClassesOK(3);
         }
         if (hasErrors && property.getTargetClasses().isEmpty()) {
+            awaitClassPropertyListsTurn();
             AtomicBoolean hasAtLeastOneError = new AtomicBoolean(false);
             AtomicBoolean hasAtLeastOneResult = new AtomicBoolean(false);
             schema.getClasses().forEach(potentialTarget -> {
@@ -1578,9 +2308,7 @@ public class SchemaExtractor {
                                     potentialTarget.getClassificationProperty(), potentialTarget.getIsLiteral());
                             newTargetClass.setTripleCountBase(tripleCountObject.getTripleCountBase());
                             property.getTargetClasses().add(newTargetClass);
-                            if (potentialTarget.getIncomingPropertiesOK() == null) {
-                                potentialTarget.setIncomingPropertiesOK(5);
-                            }
+                            potentialTarget.initIncomingPropertiesOK(5);
                         }
                     } else if (isNotTrue(potentialTarget.getIncomingPropertiesFullList())) {
                         SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(CHECK_CLASS_AS_PROPERTY_TARGET.name()), CHECK_CLASS_AS_PROPERTY_TARGET)
@@ -1591,27 +2319,25 @@ public class SchemaExtractor {
                         if (!checkTargetQueryResponse.hasErrors() && !checkTargetQueryResponse.getResults().isEmpty()) {
                             hasAtLeastOneResult.set(true);
                             property.getTargetClasses().add(new SchemaExtractorClassNodeInfo(potentialTarget.getFullName(), potentialTarget.getClassificationProperty(), potentialTarget.getIsLiteral()));
-                            if (potentialTarget.getIncomingPropertiesOK() == null) {
-                                potentialTarget.setIncomingPropertiesOK(5);
-                            }
+                            potentialTarget.initIncomingPropertiesOK(5);
                         } else if (checkTargetQueryResponse.hasErrors()) {
                             schema.getMessages().add(new SchemaExtractorMessage(WARNING, property.getPropertyName(), CHECK_CLASS_AS_PROPERTY_TARGET.name(), queryBuilder.getQueryString()));
-                            if (potentialTarget.getIncomingPropertiesFullList() == null) {
-                                boolean foundIncomingProperties = determineClassIncomingProperties(schema, potentialTarget, properties, request);
-                                if (!foundIncomingProperties) {
-                                    hasAtLeastOneError.set(true);
-                                    potentialTarget.setIncomingPropertiesOK(3);
-                                } else {
-                                    if (potentialTarget.getIncomingProperties().containsKey(property.getPropertyName())) {
-                                        hasAtLeastOneResult.set(true);
-                                        TripleCount tripleCountObject = potentialTarget.getIncomingProperties().get(property.getPropertyName());
-                                        if (tripleCountObject != null) {
-                                            SchemaExtractorClassNodeInfo newTargetClass = new SchemaExtractorClassNodeInfo(potentialTarget.getFullName(), tripleCountObject.getTripleCount(),
-                                                    potentialTarget.getClassificationProperty(), potentialTarget.getIsLiteral());
-                                            newTargetClass.setTripleCountBase(tripleCountObject.getTripleCountBase());
-                                            property.getTargetClasses().add(newTargetClass);
-                                            if (potentialTarget.getIncomingPropertiesOK() == null) {
-                                                potentialTarget.setIncomingPropertiesOK(5);
+                            synchronized (potentialTarget) {
+                                if (potentialTarget.getIncomingPropertiesFullList() == null) {
+                                    boolean foundIncomingProperties = determineClassIncomingProperties(schema, potentialTarget, properties, request);
+                                    if (!foundIncomingProperties) {
+                                        hasAtLeastOneError.set(true);
+                                        potentialTarget.setIncomingPropertiesOK(3);
+                                    } else {
+                                        if (potentialTarget.getIncomingProperties().containsKey(property.getPropertyName())) {
+                                            hasAtLeastOneResult.set(true);
+                                            TripleCount tripleCountObject = potentialTarget.getIncomingProperties().get(property.getPropertyName());
+                                            if (tripleCountObject != null) {
+                                                SchemaExtractorClassNodeInfo newTargetClass = new SchemaExtractorClassNodeInfo(potentialTarget.getFullName(), tripleCountObject.getTripleCount(),
+                                                        potentialTarget.getClassificationProperty(), potentialTarget.getIsLiteral());
+                                                newTargetClass.setTripleCountBase(tripleCountObject.getTripleCountBase());
+                                                property.getTargetClasses().add(newTargetClass);
+                                                potentialTarget.initIncomingPropertiesOK(5);
                                             }
                                         }
                                     }
@@ -1642,20 +2368,22 @@ public class SchemaExtractor {
             if (!queryResponse.hasErrors()) {
                 for (QueryResult queryResult : queryResponse.getResults()) {
                     if (queryResult != null) {
-                        targetClass.setTripleCount(SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT)));
+                        targetClass.setTripleCount(queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
                         targetClass.setTripleCountBase(null);
                     }
                 }
             } else {
                 schema.getMessages().add(new SchemaExtractorMessage(WARNING, property.getPropertyName(), query.name(), queryBuilder.getQueryString()));
                 boolean found = false;
-                for (Long limit : sampleLimits) {
+                SchemaExtractorQueries queryWithLimits = selectQuery(request.getExactCountCalculations(), FIND_PROPERTY_TARGET_TRIPLE_COUNT_WITH_LIMITS, FIND_PROPERTY_TARGET_TRIPLE_COUNT_WITH_LIMITS_DISTINCT);
+                for (Long limit : limitSelector.selectLimits(request, queryWithLimits, property.getTripleCount(), sampleLimits)) {
                     if (property.getTripleCount() == null || limit <= property.getTripleCount()) {
                         found = determinePropertyTargetTripleCountWithLimits(schema, property, targetClass, request, limit);
                         if (found) break;
                     }
                 }
                 if (!found) {
+                    awaitClassPropertyListsTurn();
                     SchemaClass targetClassWithoutTripleCount = findClass(schema.getClasses(), targetClass.getClassName());
                     if (targetClassWithoutTripleCount == null) continue;
                     if (targetClassWithoutTripleCount.getIncomingProperties().containsKey(property.getPropertyName())) {
@@ -1666,13 +2394,15 @@ public class SchemaExtractor {
                         }
                         continue;
                     }
-                    if (targetClassWithoutTripleCount.getIncomingPropertiesFullList() == null) {
-                        boolean foundIncomingProperties = determineClassIncomingProperties(schema, targetClassWithoutTripleCount, properties, request);
-                        if (foundIncomingProperties && targetClassWithoutTripleCount.getIncomingProperties().containsKey(property.getPropertyName())) {
-                            TripleCount tripleCountObject = targetClassWithoutTripleCount.getIncomingProperties().get(property.getPropertyName());
-                            if (tripleCountObject != null) {
-                                targetClass.setTripleCount(tripleCountObject.getTripleCount());
-                                targetClass.setTripleCountBase(tripleCountObject.getTripleCountBase());
+                    synchronized (targetClassWithoutTripleCount) {
+                        if (targetClassWithoutTripleCount.getIncomingPropertiesFullList() == null) {
+                            boolean foundIncomingProperties = determineClassIncomingProperties(schema, targetClassWithoutTripleCount, properties, request);
+                            if (foundIncomingProperties && targetClassWithoutTripleCount.getIncomingProperties().containsKey(property.getPropertyName())) {
+                                TripleCount tripleCountObject = targetClassWithoutTripleCount.getIncomingProperties().get(property.getPropertyName());
+                                if (tripleCountObject != null) {
+                                    targetClass.setTripleCount(tripleCountObject.getTripleCount());
+                                    targetClass.setTripleCountBase(tripleCountObject.getTripleCountBase());
+                                }
                             }
                         }
                     }
@@ -1693,12 +2423,13 @@ public class SchemaExtractor {
                 .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getPropertyName(), false)
                 .withContextParam(SPARQL_QUERY_BINDING_NAME_LIMIT, limit.toString());
         QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
+        limitSelector.recordResult(request, query, property.getTripleCount(), limit, queryResponse);
         if (queryResponse.hasErrors()) {
             return false;
         }
         if (!queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
             QueryResult queryResult = queryResponse.getResults().get(0);
-            targetClass.setTripleCount(SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT)));
+            targetClass.setTripleCount(queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
             targetClass.setTripleCountBase(limit);
             schema.getMessages().add(new SchemaExtractorMessage(OK, property.getPropertyName(), query.name(), queryBuilder.getQueryString()));
         }
@@ -1715,24 +2446,26 @@ public class SchemaExtractor {
                         .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_FOR_SOURCE, classificationPropertySource)
                         .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_FOR_TARGET, classificationPropertyTarget)
                         .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getPropertyName(), false);
-                QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
-                for (QueryResult queryResult : queryResponse.getResults()) {
+                // the pairs are streamed, so a query that fails after some rows leaves an incomplete list of pairs - it is not used
+                List<SchemaExtractorSourceTargetInfo> pairs = new ArrayList<>();
+                QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder, queryResult -> {
                     String sourceClass = queryResult.getValueFullName(SchemaConstants.SPARQL_QUERY_BINDING_NAME_CLASS_SOURCE);
                     String targetClass = queryResult.getValueFullName(SchemaConstants.SPARQL_QUERY_BINDING_NAME_CLASS_TARGET);
-                    String tripleCountStr = queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                     if (StringUtils.isNotEmpty(sourceClass) && StringUtils.isNotEmpty(targetClass)
                             && isNotExcludedResource(sourceClass, request.getExcludedNamespaces()) && isNotExcludedResource(targetClass, request.getExcludedNamespaces())) {
                         SchemaClass sourceSchemaClass = findClass(schema.getClasses(), sourceClass);
                         SchemaClass targetSchemaClass = findClass(schema.getClasses(), targetClass);
                         if (sourceSchemaClass != null && isNotFalse(sourceSchemaClass.getPropertiesInSchema())
                                 && targetSchemaClass != null && isNotFalse(targetSchemaClass.getPropertiesInSchema())) {
-                            property.getSourceAndTargetPairs().add(new SchemaExtractorSourceTargetInfo(
-                                    sourceClass, targetClass, SchemaUtil.getLongValueFromString(tripleCountStr), classificationPropertySource, classificationPropertyTarget));
+                            pairs.add(new SchemaExtractorSourceTargetInfo(
+                                    sourceClass, targetClass, queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT), classificationPropertySource, classificationPropertyTarget));
                         }
                     }
-                }
+                });
                 if (queryResponse.hasErrors()) {
                     schema.getMessages().add(new SchemaExtractorMessage(INFO, property.getPropertyName(), query.name(), queryBuilder.getQueryString()));
+                } else {
+                    property.getSourceAndTargetPairs().addAll(pairs);
                 }
             }
         }
@@ -1753,12 +2486,11 @@ public class SchemaExtractor {
                     if (!queryResponse.hasErrors()) {
                         for (QueryResult queryResult : queryResponse.getResults()) {
                             String targetClass = queryResult.getValueFullName(SchemaConstants.SPARQL_QUERY_BINDING_NAME_CLASS_TARGET);
-                            String tripleCountStr = queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                             if (StringUtils.isNotEmpty(targetClass) && isNotExcludedResource(targetClass, request.getExcludedNamespaces())) {
                                 SchemaClass targetSchemaClass = findClass(schema.getClasses(), targetClass);
                                 if (targetSchemaClass != null && isNotFalse(targetSchemaClass.getPropertiesInSchema())) {
                                     property.getSourceAndTargetPairs().add(new SchemaExtractorSourceTargetInfo(
-                                            sourceClass.getClassName(), targetClass, SchemaUtil.getLongValueFromString(tripleCountStr), sourceClass.getClassificationProperty(), classificationPropertyTarget));
+                                            sourceClass.getClassName(), targetClass, queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT), sourceClass.getClassificationProperty(), classificationPropertyTarget));
                                 }
                             }
                         }
@@ -1776,7 +2508,7 @@ public class SchemaExtractor {
                                     .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getPropertyName(), false);
                             QueryResponse pairQueryResponse = sparqlEndpointProcessor.read(request, pairQueryBuilder);
                             if (!pairQueryResponse.getResults().isEmpty() && pairQueryResponse.getResults().get(0) != null) {
-                                Long tripleCountForPair = SchemaUtil.getLongValueFromString(pairQueryResponse.getResults().get(0).getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                                Long tripleCountForPair = pairQueryResponse.getResults().get(0).getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                                 if (tripleCountForPair > 0) {
                                     property.getSourceAndTargetPairs().add(new SchemaExtractorSourceTargetInfo(
                                             sourceClass.getClassName(), targetClass.getClassName(), tripleCountForPair, sourceClass.getClassificationProperty(), targetClass.getClassificationProperty()));
@@ -1877,7 +2609,7 @@ public class SchemaExtractor {
                 QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
                 if (!queryResponse.hasErrors()) {
                     if (!queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
-                        long blankNodeCount = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                        long blankNodeCount = queryResponse.getResults().get(0).getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                         clazz.setBlankNodeCount(blankNodeCount);
                     } else {
                         clazz.setBlankNodeCount(0L);
@@ -1895,12 +2627,8 @@ public class SchemaExtractor {
 
         Map<String, Long> blankNodeMap = new HashMap<>();
         SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(COUNT_SOURCE_BLANK_VALUES_FOR_PROPERTIES.name()), COUNT_SOURCE_BLANK_VALUES_FOR_PROPERTIES);
-        if (!request.getIncludedProperties().isEmpty()) {
-            if (!properties.keySet().isEmpty()) {
-                queryBuilder.withContextParam(SPARQL_QUERY_BINDING_NAME_VALUES, buildValuesClause(properties.keySet(), SPARQL_QUERY_BINDING_NAME_PROPERTY));
-            }
-        } else {
-            queryBuilder.withContextParam(SPARQL_QUERY_BINDING_NAME_VALUES, StringUtils.EMPTY);
+        if (!setPropertyValuesClause(request, properties, queryBuilder)) {
+            return blankNodeMap;
         }
         QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
         if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty()) {
@@ -1923,12 +2651,8 @@ public class SchemaExtractor {
 
         Map<String, Long> blankNodeMap = new HashMap<>();
         SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(COUNT_TARGET_BLANK_VALUES_FOR_PROPERTIES.name()), COUNT_TARGET_BLANK_VALUES_FOR_PROPERTIES);
-        if (!request.getIncludedProperties().isEmpty()) {
-            if (!properties.keySet().isEmpty()) {
-                queryBuilder.withContextParam(SPARQL_QUERY_BINDING_NAME_VALUES, buildValuesClause(properties.keySet(), SPARQL_QUERY_BINDING_NAME_PROPERTY));
-            }
-        } else {
-            queryBuilder.withContextParam(SPARQL_QUERY_BINDING_NAME_VALUES, StringUtils.EMPTY);
+        if (!setPropertyValuesClause(request, properties, queryBuilder)) {
+            return blankNodeMap;
         }
         QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
         if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty()) {
@@ -1953,7 +2677,7 @@ public class SchemaExtractor {
         QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
         if (!queryResponse.hasErrors()) {
             if (!queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
-                long blankNodeCount = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                long blankNodeCount = queryResponse.getResults().get(0).getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                 property.setBlankNodeSubjects(blankNodeCount);
             } else {
                 property.setBlankNodeSubjects(0L);
@@ -1971,7 +2695,7 @@ public class SchemaExtractor {
         QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
         if (!queryResponse.hasErrors()) {
             if (!queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
-                long blankNodeCount = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                long blankNodeCount = queryResponse.getResults().get(0).getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                 property.setBlankNodeObjects(blankNodeCount);
             } else {
                 property.setBlankNodeObjects(0L);
@@ -2028,7 +2752,7 @@ public class SchemaExtractor {
                 .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getPropertyName(), false);
         QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
         if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
-            long distinctSubjectsCount = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+            long distinctSubjectsCount = queryResponse.getResults().get(0).getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
             property.setDistinctSubjectsCount(distinctSubjectsCount);
         } else if (queryResponse.hasErrors()) {
             schema.getMessages().add(new SchemaExtractorMessage(WARNING, property.getPropertyName(), COUNT_DISTINCT_SUBJECTS_FOR_PROPERTY.name(), queryBuilder.getQueryString()));
@@ -2042,7 +2766,7 @@ public class SchemaExtractor {
                 .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getPropertyName(), false);
         QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
         if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
-            long distinctObjectsCount = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+            long distinctObjectsCount = queryResponse.getResults().get(0).getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
             property.setDistinctObjectsCount(distinctObjectsCount);
         } else if (queryResponse.hasErrors()) {
             schema.getMessages().add(new SchemaExtractorMessage(WARNING, property.getPropertyName(), COUNT_DISTINCT_OBJECTS_FOR_PROPERTY.name(), queryBuilder.getQueryString()));
@@ -2098,7 +2822,7 @@ public class SchemaExtractor {
                     .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getPropertyName(), false);
             QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
             if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
-                long distinctSubjectsCount = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                long distinctSubjectsCount = queryResponse.getResults().get(0).getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                 sourceClass.setDistinctSubjectsCount(distinctSubjectsCount);
             } else if (queryResponse.hasErrors()) {
                 schema.getMessages().add(new SchemaExtractorMessage(WARNING, property.getPropertyName(), COUNT_DISTINCT_SUBJECTS_FOR_PROPERTY_SOURCE.name(), queryBuilder.getQueryString()));
@@ -2155,7 +2879,7 @@ public class SchemaExtractor {
                     .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getPropertyName(), false);
             QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
             if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
-                long distinctObjectsCount = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                long distinctObjectsCount = queryResponse.getResults().get(0).getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                 targetClass.setDistinctObjectsCount(distinctObjectsCount);
             } else if (queryResponse.hasErrors()) {
                 schema.getMessages().add(new SchemaExtractorMessage(WARNING, property.getPropertyName(), COUNT_DISTINCT_OBJECTS_FOR_PROPERTY_TARGET.name(), queryBuilder.getQueryString()));
@@ -2290,18 +3014,22 @@ public class SchemaExtractor {
                     .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getPropertyName(), false);
         } else {
             query = selectQuery(request.getExactCountCalculations(), FIND_PROPERTY_DATA_TYPE_WITH_TRIPLE_COUNT_WITH_LIMITS, FIND_PROPERTY_DATA_TYPE_WITH_TRIPLE_COUNT_WITH_LIMITS_DISTINCT);
+            tripleCountBase = limitSelector.selectLimit(request, query, property.getDataTripleCount(), tripleCountBase, sampleLimits);
             queryBuilder = new SparqlQueryBuilder(request.getQueries().get(query.name()), query)
                     .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getPropertyName(), false)
                     .withContextParam(SPARQL_QUERY_BINDING_NAME_LIMIT, tripleCountBase.toString());
         }
         QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
+        if (tripleCountBase != null) {
+            limitSelector.recordResult(request, query, property.getDataTripleCount(), tripleCountBase, queryResponse);
+        }
         if (queryResponse.hasErrors()) {
             schema.getMessages().add(new SchemaExtractorMessage(WARNING, property.getPropertyName(), query.name(), queryBuilder.getQueryString()));
         }
         boolean hasEmptyDataType = false;
         for (QueryResult queryResult : queryResponse.getResults()) {
             String resultDataType = queryResult.getValue(SPARQL_QUERY_BINDING_NAME_DATA_TYPE);
-            Long tripleCount = SchemaUtil.getLongValueFromString(queryResult.getValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+            Long tripleCount = queryResult.getLongValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
             if (StringUtils.isNotEmpty(resultDataType)) {
                 property.getDataTypes().add(new SchemaExtractorDataTypeInfo(SchemaUtil.parseDataType(resultDataType), tripleCount, tripleCountBase));
             } else {
@@ -2326,7 +3054,7 @@ public class SchemaExtractor {
                 schema.getMessages().add(new SchemaExtractorMessage(WARNING, property.getPropertyName(), query.name(), queryBuilder.getQueryString()));
             }
             if (!queryResponse.getResults().isEmpty()) {
-                Long tripleCount = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                Long tripleCount = queryResponse.getResults().get(0).getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                 if (tripleCount > 0L) {
                     property.getDataTypes().add(new SchemaExtractorDataTypeInfo(DATA_TYPE_RDF_LANG_STRING, tripleCount, tripleCountBase));
                 }
@@ -2341,6 +3069,8 @@ public class SchemaExtractor {
         if (request.getSampleLimitForDataTypeCalculation() != null && request.getSampleLimitForDataTypeCalculation() > 0
                 && (property.getDataTripleCount() == null || property.getDataTripleCount() < 0 || property.getDataTripleCount() > request.getSampleLimitForDataTypeCalculation())) {
             tripleCountBase = request.getSampleLimitForDataTypeCalculation();
+            SchemaExtractorQueries queryWithLimits = selectQuery(request.getExactCountCalculations(), FIND_PROPERTY_DATA_TYPE_WITH_TRIPLE_COUNT_FOR_SOURCE_WITH_LIMITS, FIND_PROPERTY_DATA_TYPE_WITH_TRIPLE_COUNT_FOR_SOURCE_WITH_LIMITS_DISTINCT);
+            tripleCountBase = limitSelector.selectLimit(request, queryWithLimits, property.getDataTripleCount(), tripleCountBase, sampleLimits);
         }
 
         Long finalTripleCountBase = tripleCountBase;
@@ -2362,13 +3092,16 @@ public class SchemaExtractor {
                         .withContextParam(SPARQL_QUERY_BINDING_NAME_LIMIT, finalTripleCountBase.toString());
             }
             QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
+            if (finalTripleCountBase != null) {
+                limitSelector.recordResult(request, query, property.getDataTripleCount(), finalTripleCountBase, queryResponse);
+            }
             if (queryResponse.hasErrors()) {
                 schema.getMessages().add(new SchemaExtractorMessage(WARNING, property.getPropertyName(), query.name(), queryBuilder.getQueryString()));
             }
             boolean hasEmptyDataType = false;
             for (QueryResult queryResult : queryResponse.getResults()) {
                 String resultDataType = queryResult.getValue(SPARQL_QUERY_BINDING_NAME_DATA_TYPE);
-                Long tripleCount = SchemaUtil.getLongValueFromString(queryResult.getValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                Long tripleCount = queryResult.getLongValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                 if (StringUtils.isNotEmpty(resultDataType)) {
                     sourceClass.getDataTypes().add(new SchemaExtractorDataTypeInfo(SchemaUtil.parseDataType(resultDataType), tripleCount, finalTripleCountBase));
                 } else {
@@ -2393,7 +3126,7 @@ public class SchemaExtractor {
                 }
                 queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
                 if (!queryResponse.getResults().isEmpty()) {
-                    Long tripleCount = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                    Long tripleCount = queryResponse.getResults().get(0).getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                     if (tripleCount > 0L) {
                         sourceClass.getDataTypes().add(new SchemaExtractorDataTypeInfo(DATA_TYPE_RDF_LANG_STRING, tripleCount, finalTripleCountBase));
                     }
@@ -2482,6 +3215,24 @@ public class SchemaExtractor {
         return 0;
     }
 
+    /**
+     * Binds the processed properties with VALUES if only the included properties are processed.
+     *
+     * @return false if the included properties are requested but none of them is processed, the query must not be sent then
+     */
+    private boolean setPropertyValuesClause(@Nonnull SchemaExtractorRequestDto request, @Nonnull Map<String, SchemaExtractorPropertyNodeInfo> properties,
+                                            @Nonnull SparqlQueryBuilder queryBuilder) {
+        if (request.getIncludedProperties().isEmpty()) {
+            queryBuilder.withContextParam(SPARQL_QUERY_BINDING_NAME_VALUES, StringUtils.EMPTY);
+            return true;
+        }
+        if (properties.isEmpty()) {
+            return false;
+        }
+        queryBuilder.withContextParam(SPARQL_QUERY_BINDING_NAME_VALUES, buildValuesClause(properties.keySet(), SPARQL_QUERY_BINDING_NAME_PROPERTY));
+        return true;
+    }
+
     private void updateValueClause(@Nonnull SchemaExtractorRequestDto request, @Nonnull Map<String, SchemaExtractorPropertyNodeInfo> properties,
                                    @Nonnull SparqlQueryBuilder queryBuilder) {
         if (!request.getIncludedProperties().isEmpty() && !properties.keySet().isEmpty()) {
@@ -2496,7 +3247,7 @@ public class SchemaExtractor {
                                           @Nullable Long tripleCountBase) {
         for (QueryResult queryResult : queryResponse.getResults()) {
             String otherProperty = queryResult.getValue(SPARQL_QUERY_BINDING_NAME_PROPERTY_OTHER);
-            Long tripleCount = SchemaUtil.getLongValueFromString(queryResult.getValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+            Long tripleCount = queryResult.getLongValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
             if (StringUtils.isNotEmpty(otherProperty) && isNotExcludedResource(otherProperty, request.getExcludedNamespaces()) && tripleCount > 0) {
                 relatedProperties.add(new SchemaExtractorPropertyRelatedPropertyInfo(otherProperty, tripleCount, tripleCountBase, linkType));
             }
@@ -2510,11 +3261,12 @@ public class SchemaExtractor {
         boolean retry = true;
         Long tripleCountLimit = null;
         SparqlQueryBuilder queryBuilder = null;
+        List<Long> selectedLimits = limitSelector.selectLimits(request, queryWithLimit, property.getTripleCount(), limitsLarge);
 
         while (isTrue(retry)) {
 
             Long finalTripleCountLimit = tripleCountLimit;
-            Long newLimit = limitsLarge.stream()
+            Long newLimit = selectedLimits.stream()
                     .filter(limit -> (finalTripleCountLimit == null || limit < finalTripleCountLimit) && (property.getTripleCount() == null || limit <= property.getTripleCount())).findFirst().orElse(null);
             if (newLimit != null) {
                 tripleCountLimit = newLimit;
@@ -2523,6 +3275,7 @@ public class SchemaExtractor {
                         .withContextParam(SPARQL_QUERY_BINDING_NAME_LIMIT, tripleCountLimit.toString());
                 updateValueClause(request, properties, queryBuilder);
                 QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
+                limitSelector.recordResult(request, queryWithLimit, property.getTripleCount(), tripleCountLimit, queryResponse);
 
                 if (isFalse(queryResponse.hasErrors())) {
                     updatedRelatedProperties(request, queryResponse, relatedProperties, linkType, tripleCountLimit);
@@ -2636,7 +3389,7 @@ public class SchemaExtractor {
             QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
 
             if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
-                Long tripleCount = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                Long tripleCount = queryResponse.getResults().get(0).getLongValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                 if (tripleCount > 0) {
                     relatedProperties.add(new SchemaExtractorPropertyRelatedPropertyInfo(property2.getPropertyName(), tripleCount, null, linkType));
                 }
@@ -2730,7 +3483,7 @@ public class SchemaExtractor {
                 QueryResponse countQueryResponse = sparqlEndpointProcessor.read(request, countQueryBuilder);
 
                 if (!countQueryResponse.hasErrors() && !countQueryResponse.getResults().isEmpty() && countQueryResponse.getResults().get(0) != null) {
-                    Long tripleCount = SchemaUtil.getLongValueFromString(countQueryResponse.getResults().get(0).getValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                    Long tripleCount = countQueryResponse.getResults().get(0).getLongValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                     if (tripleCount > 0) {
                         relatedProperties.add(new SchemaExtractorPropertyRelatedPropertyInfo(property2.getPropertyName(), tripleCount, null, linkType));
                     }
@@ -2826,7 +3579,7 @@ public class SchemaExtractor {
                 QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
 
                 if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
-                    Long tripleCount = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                    Long tripleCount = queryResponse.getResults().get(0).getLongValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                     candidate.setTripleCount(tripleCount);
                     candidate.setTripleCountBase(tripleCountLimit);
                 } else {
@@ -2860,7 +3613,7 @@ public class SchemaExtractor {
                     QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
 
                     if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
-                        Long tripleCount = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                        Long tripleCount = queryResponse.getResults().get(0).getLongValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                         candidate.setTripleCount(tripleCount);
                         candidate.setTripleCountBase(tripleCountLimit);
                         retry = false;
@@ -2903,7 +3656,7 @@ public class SchemaExtractor {
                 QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
 
                 if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
-                    Long tripleCount = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                    Long tripleCount = queryResponse.getResults().get(0).getLongValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                     candidate.setTripleCount(tripleCount);
                     candidate.setTripleCountBase(tripleCountLimit);
                 } else {
@@ -2938,7 +3691,7 @@ public class SchemaExtractor {
                     QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
 
                     if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty() && queryResponse.getResults().get(0) != null) {
-                        Long tripleCount = SchemaUtil.getLongValueFromString(queryResponse.getResults().get(0).getValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                        Long tripleCount = queryResponse.getResults().get(0).getLongValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                         candidate.setTripleCount(tripleCount);
                         candidate.setTripleCountBase(tripleCountLimit);
                         retry = false;
@@ -2973,25 +3726,32 @@ public class SchemaExtractor {
     protected void determinePropertySourceMinCardinality(@Nonnull Schema schema, @Nonnull SchemaExtractorPropertyNodeInfo property,
                                                          @Nonnull SchemaExtractorRequestDto request, int totalCountOfProperties) {
         log.info(request.getCorrelationId() + " - determinePropertySourceMinCardinality [" + property.getPropertyName() + "]");
-        property.getSourceClasses().forEach(sourceClass -> {
-            SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(FIND_PROPERTY_MIN_CARDINALITY.name()), FIND_PROPERTY_MIN_CARDINALITY)
+        List<SchemaExtractorClassNodeInfo> sourceClasses = property.getSourceClasses();
+        List<SparqlQueryBuilder> queryBuilders = new ArrayList<>(sourceClasses.size());
+        for (SchemaExtractorClassNodeInfo sourceClass : sourceClasses) {
+            queryBuilders.add(new SparqlQueryBuilder(request.getQueries().get(FIND_PROPERTY_MIN_CARDINALITY.name()), FIND_PROPERTY_MIN_CARDINALITY)
                     .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_SOURCE_FULL, sourceClass.getClassName(), sourceClass.getIsLiteral())
                     .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY, sourceClass.getClassificationProperty())
-                    .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getPropertyName(), false);
-            QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
-            if (!queryResponse.getResults().isEmpty()) {
-                sourceClass.setMinCardinality(DEFAULT_MIN_CARDINALITY);
-            } else {
-                sourceClass.setMinCardinality(1);
-            }
-            if (queryResponse.hasErrors()) {
-                schema.getMessages().add(new SchemaExtractorMessage(WARNING_LOW, property.getPropertyName(), FIND_PROPERTY_MIN_CARDINALITY.name(), queryBuilder.getQueryString()));
-                sourceClass.setMinCardinality(0);
-                if (queryResponse.getExecutionTime() > 45) {
-                    sourceClass.setMinCardinalityAssertionSize(-1);
+                    .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getPropertyName(), false));
+        }
+        try (SparqlReadAhead<QueryResponse> queryResponses = sparqlEndpointProcessor.readAhead(request, queryBuilders)) {
+            for (int i = 0; i < sourceClasses.size(); i++) {
+                SchemaExtractorClassNodeInfo sourceClass = sourceClasses.get(i);
+                QueryResponse queryResponse = queryResponses.get(i);
+                if (!queryResponse.getResults().isEmpty()) {
+                    sourceClass.setMinCardinality(DEFAULT_MIN_CARDINALITY);
+                } else {
+                    sourceClass.setMinCardinality(1);
+                }
+                if (queryResponse.hasErrors()) {
+                    schema.getMessages().add(new SchemaExtractorMessage(WARNING_LOW, property.getPropertyName(), FIND_PROPERTY_MIN_CARDINALITY.name(), queryBuilders.get(i).getQueryString()));
+                    sourceClass.setMinCardinality(0);
+                    if (queryResponse.getExecutionTime() > 45) {
+                        sourceClass.setMinCardinalityAssertionSize(-1);
+                    }
                 }
             }
-        });
+        }
     }
 
     protected void determinePropertyMaxCardinality(@Nonnull Schema schema, @Nonnull SchemaExtractorPropertyNodeInfo
@@ -3749,6 +4509,17 @@ public class SchemaExtractor {
         if (SchemaExtractorRequestDto.InstanceNamespacesMode.no.equals(request.getCalculateInstanceNamespaces())) {
             return;
         }
+        if (!SchemaExtractorRequestDto.InstanceNamespacesQueryMode.perElement.equals(request.getInstanceNamespacesQueryMode())) {
+            boolean sampled = request.getSampleLimitForInstanceNamespacesCalculation() > 0
+                    && (SchemaExtractorRequestDto.InstanceNamespacesQueryMode.sample.equals(request.getInstanceNamespacesQueryMode())
+                    || SchemaExtractorRequestDto.InstanceNamespacesMode.overview.equals(request.getCalculateInstanceNamespaces()));
+            if (sampled) {
+                buildInstanceNamespacesFromSamples(request, schema);
+            } else {
+                buildInstanceNamespacesWithBulkQueries(request, schema);
+            }
+            return;
+        }
         if (SchemaExtractorRequestDto.InstanceNamespacesMode.overview.equals(request.getCalculateInstanceNamespaces())) {
             buildInstanceNamespacesWithOverviewMode(request, schema);
             return;
@@ -3772,7 +4543,7 @@ public class SchemaExtractor {
                 queryResponse.getResults().forEach(queryResult -> {
                     String instanceNamespace = queryResult.getValue(SPARQL_QUERY_BINDING_NAME_NAMESPACE);
                     if (StringUtils.isNotEmpty(instanceNamespace)) {
-                        Long count = SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_NAMESPACE_COUNT));
+                        Long count = queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_NAMESPACE_COUNT);
                         instanceNamespaces.add(new InstanceNamespace(instanceNamespace, count, request.getSampleLimitForInstanceNamespacesCalculation()));
                     }
                 });
@@ -3792,7 +4563,7 @@ public class SchemaExtractor {
                 queryResponse.getResults().forEach(queryResult -> {
                     String instanceNamespace = queryResult.getValue(SPARQL_QUERY_BINDING_NAME_NAMESPACE);
                     if (StringUtils.isNotEmpty(instanceNamespace)) {
-                        Long count = SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_NAMESPACE_COUNT));
+                        Long count = queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_NAMESPACE_COUNT);
                         subjectInstanceNamespaces.add(new InstanceNamespace(instanceNamespace, count, request.getSampleLimitForInstanceNamespacesCalculation()));
                     }
                 });
@@ -3808,7 +4579,7 @@ public class SchemaExtractor {
                 queryResponse.getResults().forEach(queryResult -> {
                     String instanceNamespace = queryResult.getValue(SPARQL_QUERY_BINDING_NAME_NAMESPACE);
                     if (StringUtils.isNotEmpty(instanceNamespace)) {
-                        Long count = SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_NAMESPACE_COUNT));
+                        Long count = queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_NAMESPACE_COUNT);
                         objectInstanceNamespaces.add(new InstanceNamespace(instanceNamespace, count, request.getSampleLimitForInstanceNamespacesCalculation()));
                     }
                 });
@@ -3821,56 +4592,175 @@ public class SchemaExtractor {
 
         // find instance namespaces for classes
         for (SchemaClass clazz : schema.getClasses()) {
-            List<InstanceNamespace> instanceNamespaces = new ArrayList<>();
-            SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(FIND_INSTANCE_NAMESPACES_FOR_CLASS.name()), FIND_INSTANCE_NAMESPACES_FOR_CLASS)
-                    .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_A_FULL, clazz.getFullName(), clazz.getIsLiteral())
-                    .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY, clazz.getClassificationProperty());
-            QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
-            if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty()) {
-                queryResponse.getResults().forEach(queryResult -> {
-                    String instanceNamespace = queryResult.getValue(SPARQL_QUERY_BINDING_NAME_NAMESPACE);
-                    if (StringUtils.isNotEmpty(instanceNamespace)) {
-                        Long count = SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_NAMESPACE_COUNT));
-                        instanceNamespaces.add(new InstanceNamespace(instanceNamespace, count));
-                    }
-                });
-            }
-            clazz.getInstanceNamespaces().addAll(instanceNamespaces);
+            clazz.getInstanceNamespaces().addAll(findInstanceNamespacesForClass(request, clazz));
         }
 
         // find instance namespaces for property subjects and objects
         for (SchemaProperty property : schema.getProperties()) {
+            property.getSubjectInstanceNamespaces().addAll(findInstanceNamespacesForProperty(request, property, FIND_INSTANCE_NAMESPACES_FOR_PROPERTY_SUBJECTS));
+            property.getObjectInstanceNamespaces().addAll(findInstanceNamespacesForProperty(request, property, FIND_INSTANCE_NAMESPACES_FOR_PROPERTY_OBJECTS));
+        }
+    }
 
-            List<InstanceNamespace> subjectInstanceNamespaces = new ArrayList<>();
-            SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(FIND_INSTANCE_NAMESPACES_FOR_PROPERTY_SUBJECTS.name()), FIND_INSTANCE_NAMESPACES_FOR_PROPERTY_SUBJECTS)
-                    .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getFullName(), false);
+    @Nonnull
+    protected List<InstanceNamespace> findInstanceNamespacesForClass(@Nonnull SchemaExtractorRequestDto request, @Nonnull SchemaClass clazz) {
+        SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(FIND_INSTANCE_NAMESPACES_FOR_CLASS.name()), FIND_INSTANCE_NAMESPACES_FOR_CLASS)
+                .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_A_FULL, clazz.getFullName(), clazz.getIsLiteral())
+                .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY, clazz.getClassificationProperty());
+        return readInstanceNamespaces(sparqlEndpointProcessor.read(request, queryBuilder));
+    }
+
+    @Nonnull
+    protected List<InstanceNamespace> findInstanceNamespacesForProperty(@Nonnull SchemaExtractorRequestDto request, @Nonnull SchemaProperty property,
+                                                                        @Nonnull SchemaExtractorQueries query) {
+        SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(query.name()), query)
+                .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getFullName(), false);
+        return readInstanceNamespaces(sparqlEndpointProcessor.read(request, queryBuilder));
+    }
+
+    @Nonnull
+    private List<InstanceNamespace> readInstanceNamespaces(@Nonnull QueryResponse queryResponse) {
+        List<InstanceNamespace> instanceNamespaces = new ArrayList<>();
+        if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty()) {
+            queryResponse.getResults().forEach(queryResult -> {
+                String instanceNamespace = queryResult.getValue(SPARQL_QUERY_BINDING_NAME_NAMESPACE);
+                if (StringUtils.isNotEmpty(instanceNamespace)) {
+                    Long count = queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_NAMESPACE_COUNT);
+                    instanceNamespaces.add(new InstanceNamespace(instanceNamespace, count));
+                }
+            });
+        }
+        return instanceNamespaces;
+    }
+
+    /**
+     * Namespaces of all instances with grouped queries for batches of classes (with the same classification property) and properties.
+     * The elements of a failed batch are queried one by one.
+     */
+    protected void buildInstanceNamespacesWithBulkQueries(@Nonnull SchemaExtractorRequestDto request, @Nonnull Schema schema) {
+        Map<String, List<SchemaClass>> classesByClassificationProperty = new LinkedHashMap<>();
+        for (SchemaClass clazz : schema.getClasses()) {
+            if (isTrue(clazz.getIsLiteral()) || clazz.getClassificationProperty() == null) {
+                clazz.getInstanceNamespaces().addAll(findInstanceNamespacesForClass(request, clazz));
+            } else {
+                classesByClassificationProperty.computeIfAbsent(clazz.getClassificationProperty(), k -> new ArrayList<>()).add(clazz);
+            }
+        }
+        classesByClassificationProperty.forEach((classificationProperty, classes) ->
+                buildInstanceNamespacesInBatches(request, classes, SchemaClass::getFullName, SPARQL_QUERY_BINDING_NAME_CLASS_A, FIND_INSTANCE_NAMESPACES_FOR_CLASSES,
+                        queryBuilder -> queryBuilder.withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY, classificationProperty),
+                        (clazz, instanceNamespaces) -> clazz.getInstanceNamespaces().addAll(instanceNamespaces),
+                        clazz -> clazz.getInstanceNamespaces().addAll(findInstanceNamespacesForClass(request, clazz))));
+
+        buildInstanceNamespacesInBatches(request, schema.getProperties(), SchemaProperty::getFullName, SPARQL_QUERY_BINDING_NAME_PROPERTY,
+                FIND_INSTANCE_NAMESPACES_FOR_PROPERTIES_SUBJECTS, queryBuilder -> queryBuilder,
+                (property, instanceNamespaces) -> property.getSubjectInstanceNamespaces().addAll(instanceNamespaces),
+                property -> property.getSubjectInstanceNamespaces().addAll(findInstanceNamespacesForProperty(request, property, FIND_INSTANCE_NAMESPACES_FOR_PROPERTY_SUBJECTS)));
+        buildInstanceNamespacesInBatches(request, schema.getProperties(), SchemaProperty::getFullName, SPARQL_QUERY_BINDING_NAME_PROPERTY,
+                FIND_INSTANCE_NAMESPACES_FOR_PROPERTIES_OBJECTS, queryBuilder -> queryBuilder,
+                (property, instanceNamespaces) -> property.getObjectInstanceNamespaces().addAll(instanceNamespaces),
+                property -> property.getObjectInstanceNamespaces().addAll(findInstanceNamespacesForProperty(request, property, FIND_INSTANCE_NAMESPACES_FOR_PROPERTY_OBJECTS)));
+    }
+
+    private <T> void buildInstanceNamespacesInBatches(@Nonnull SchemaExtractorRequestDto request, @Nonnull List<T> elements, @Nonnull Function<T, String> elementName,
+                                                      @Nonnull String elementBinding, @Nonnull SchemaExtractorQueries query,
+                                                      @Nonnull UnaryOperator<SparqlQueryBuilder> queryParams, @Nonnull BiConsumer<T, List<InstanceNamespace>> namespacesConsumer,
+                                                      @Nonnull Consumer<T> fallback) {
+        for (List<T> batch : Lists.partition(elements, INSTANCE_NAMESPACES_BATCH_SIZE)) {
+            Set<String> names = new LinkedHashSet<>();
+            batch.forEach(element -> names.add(elementName.apply(element)));
+            SparqlQueryBuilder queryBuilder = queryParams.apply(new SparqlQueryBuilder(request.getQueries().get(query.name()), query)
+                    .withContextParam(SPARQL_QUERY_BINDING_NAME_VALUES, buildValuesClause(names, elementBinding)));
             QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
-            if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty()) {
-                queryResponse.getResults().forEach(queryResult -> {
-                    String instanceNamespace = queryResult.getValue(SPARQL_QUERY_BINDING_NAME_NAMESPACE);
-                    if (StringUtils.isNotEmpty(instanceNamespace)) {
-                        Long count = SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_NAMESPACE_COUNT));
-                        subjectInstanceNamespaces.add(new InstanceNamespace(instanceNamespace, count));
-                    }
-                });
+            if (queryResponse.hasErrors()) {
+                log.info(request.getCorrelationId() + " - " + query.name() + " failed for " + batch.size() + " elements, the namespaces are requested for each element");
+                batch.forEach(fallback);
+                continue;
             }
-            property.getSubjectInstanceNamespaces().addAll(subjectInstanceNamespaces);
-
-            List<InstanceNamespace> objectInstanceNamespaces = new ArrayList<>();
-            queryBuilder = new SparqlQueryBuilder(request.getQueries().get(FIND_INSTANCE_NAMESPACES_FOR_PROPERTY_OBJECTS.name()), FIND_INSTANCE_NAMESPACES_FOR_PROPERTY_OBJECTS)
-                    .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getFullName(), false);
-            queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
-            if (!queryResponse.hasErrors() && !queryResponse.getResults().isEmpty()) {
-                queryResponse.getResults().forEach(queryResult -> {
-                    String instanceNamespace = queryResult.getValue(SPARQL_QUERY_BINDING_NAME_NAMESPACE);
-                    if (StringUtils.isNotEmpty(instanceNamespace)) {
-                        Long count = SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_NAMESPACE_COUNT));
-                        objectInstanceNamespaces.add(new InstanceNamespace(instanceNamespace, count));
-                    }
-                });
+            Map<String, List<InstanceNamespace>> namespacesByElement = new HashMap<>();
+            for (QueryResult queryResult : queryResponse.getResults()) {
+                String name = queryResult.getValue(elementBinding);
+                String instanceNamespace = queryResult.getValue(SPARQL_QUERY_BINDING_NAME_NAMESPACE);
+                if (name != null && StringUtils.isNotEmpty(instanceNamespace)) {
+                    namespacesByElement.computeIfAbsent(name, k -> new ArrayList<>())
+                            .add(new InstanceNamespace(instanceNamespace, queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_NAMESPACE_COUNT)));
+                }
             }
-            property.getObjectInstanceNamespaces().addAll(objectInstanceNamespaces);
+            for (T element : batch) {
+                List<InstanceNamespace> instanceNamespaces = namespacesByElement.getOrDefault(elementName.apply(element), new ArrayList<>());
+                instanceNamespaces.sort(Comparator.comparing(InstanceNamespace::getCount, Comparator.reverseOrder()));
+                namespacesConsumer.accept(element, instanceNamespaces);
+            }
+        }
+    }
+
+    /**
+     * Namespaces of sampled instances - the instances of each class and the subjects and the objects of each property are read once
+     * (up to sampleLimitForInstanceNamespacesCalculation) and the namespaces are derived locally. If a sample query fails,
+     * the namespaces of the element are calculated with the query without the limit.
+     */
+    protected void buildInstanceNamespacesFromSamples(@Nonnull SchemaExtractorRequestDto request, @Nonnull Schema schema) {
+        Long limit = request.getSampleLimitForInstanceNamespacesCalculation();
+
+        for (SchemaClass clazz : schema.getClasses()) {
+            SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(FIND_INSTANCE_SAMPLE_FOR_CLASS.name()), FIND_INSTANCE_SAMPLE_FOR_CLASS)
+                    .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_A_FULL, clazz.getFullName(), clazz.getIsLiteral())
+                    .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY, clazz.getClassificationProperty())
+                    .withContextParam(SPARQL_QUERY_BINDING_NAME_LIMIT, limit.toString());
+            List<InstanceNamespace> instanceNamespaces = readSampleInstanceNamespaces(request, queryBuilder, SPARQL_QUERY_BINDING_NAME_SUBJECT, clazz.getFullName(), limit);
+            clazz.getInstanceNamespaces().addAll(instanceNamespaces != null ? instanceNamespaces : findInstanceNamespacesForClass(request, clazz));
+        }
+
+        // subjects and objects are sampled separately, so that the IRI objects are not crowded out by the IRI subjects with literal objects
+        for (SchemaProperty property : schema.getProperties()) {
+            List<InstanceNamespace> subjectNamespaces = readSampleInstanceNamespaces(request,
+                    buildPropertySampleQuery(request, property, FIND_INSTANCE_SAMPLE_FOR_PROPERTY_SUBJECTS, limit), SPARQL_QUERY_BINDING_NAME_SUBJECT, property.getFullName(), limit);
+            property.getSubjectInstanceNamespaces().addAll(subjectNamespaces != null ? subjectNamespaces
+                    : findInstanceNamespacesForProperty(request, property, FIND_INSTANCE_NAMESPACES_FOR_PROPERTY_SUBJECTS));
+            List<InstanceNamespace> objectNamespaces = readSampleInstanceNamespaces(request,
+                    buildPropertySampleQuery(request, property, FIND_INSTANCE_SAMPLE_FOR_PROPERTY_OBJECTS, limit), SPARQL_QUERY_BINDING_NAME_OBJECT, property.getFullName(), limit);
+            property.getObjectInstanceNamespaces().addAll(objectNamespaces != null ? objectNamespaces
+                    : findInstanceNamespacesForProperty(request, property, FIND_INSTANCE_NAMESPACES_FOR_PROPERTY_OBJECTS));
+        }
+    }
+
+    @Nonnull
+    private SparqlQueryBuilder buildPropertySampleQuery(@Nonnull SchemaExtractorRequestDto request, @Nonnull SchemaProperty property,
+                                                        @Nonnull SchemaExtractorQueries query, @Nonnull Long limit) {
+        return new SparqlQueryBuilder(request.getQueries().get(query.name()), query)
+                .withContextParam(SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL, property.getFullName(), false)
+                .withContextParam(SPARQL_QUERY_BINDING_NAME_LIMIT, limit.toString());
+    }
+
+    /**
+     * @return the namespaces of the sampled instances or null if the sample query failed
+     */
+    @Nullable
+    private List<InstanceNamespace> readSampleInstanceNamespaces(@Nonnull SchemaExtractorRequestDto request, @Nonnull SparqlQueryBuilder queryBuilder,
+                                                                 @Nonnull String binding, @Nonnull String elementName, @Nonnull Long limit) {
+        Map<String, Long> namespaceCounts = new HashMap<>();
+        QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder, queryResult -> countInstanceNamespace(namespaceCounts, queryResult, binding));
+        if (queryResponse.hasErrors()) {
+            log.info(request.getCorrelationId() + " - " + queryBuilder.getQueryName() + " failed for " + elementName + ", the namespaces are requested without the sample limit");
+            return null;
         }
+        return toInstanceNamespaces(namespaceCounts, limit);
+    }
+
+    private void countInstanceNamespace(@Nonnull Map<String, Long> namespaceCounts, @Nonnull QueryResult queryResult, @Nonnull String binding) {
+        int index = queryResult.getColumns().indexOf(binding);
+        // blank nodes are resources without IRI
+        if (index >= 0 && queryResult.getKind(index) == QueryResult.KIND_RESOURCE && queryResult.getValue(index) != null) {
+            namespaceCounts.merge(SchemaUtil.getInstanceNamespace(queryResult.getValue(index)), 1L, Long::sum);
+        }
+    }
+
+    @Nonnull
+    private List<InstanceNamespace> toInstanceNamespaces(@Nonnull Map<String, Long> namespaceCounts, @Nonnull Long limit) {
+        return namespaceCounts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .map(entry -> new InstanceNamespace(entry.getKey(), entry.getValue(), limit))
+                .collect(Collectors.toList());
     }
 
     protected void buildPrefixMap(@Nonnull SchemaExtractorRequestDto request, @Nonnull Map<String, String> prefixMap) {
@@ -4017,6 +4907,7 @@ public class SchemaExtractor {
             }
 
             if (hasErrors) {
+                List<SchemaClass> classesToCheck = new ArrayList<>();
                 for (SchemaClass classB : sortedClasses) {
                     // skip the same class
                     if (classA.getFullName().equals(classB.getFullName())) continue;
@@ -4028,31 +4919,31 @@ public class SchemaExtractor {
                     }
                     if (isNotExcludedResource(classB.getFullName(), request.getExcludedNamespaces())
                             && (isNotFalse(classA.getPropertiesInSchema()) || isNotFalse(classB.getPropertiesInSchema()))) {
-                        SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(CHECK_CLASS_INTERSECTION_PLAIN.name()), CHECK_CLASS_INTERSECTION_PLAIN)
-                                .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_A_FULL, classA.getFullName(), classA.getIsLiteral())
-                                .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_B_FULL, classB.getFullName(), classB.getIsLiteral())
-                                .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_A, classA.getClassificationProperty())
-                                .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_B, classB.getClassificationProperty());
-                        QueryResponse checkQueryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
-                        if (!checkQueryResponse.hasErrors()) {
+                        classesToCheck.add(classB);
+                    }
+                }
+                // the queries are sent ahead, the results are applied in the order of the classes
+                List<Supplier<ClassIntersectionCheck>> checks = new ArrayList<>(classesToCheck.size());
+                for (SchemaClass classB : classesToCheck) {
+                    checks.add(() -> checkClassIntersection(classA, classB, request));
+                }
+                try (SparqlReadAhead<ClassIntersectionCheck> checkResults = sparqlEndpointProcessor.readAheadTasks(request, checks)) {
+                    for (int i = 0; i < classesToCheck.size(); i++) {
+                        SchemaClass classB = classesToCheck.get(i);
+                        ClassIntersectionCheck check = checkResults.get(i);
+                        if (!check.checkQueryResponse.hasErrors()) {
                             updateProcessedClasses(processedClasses, classA, classB);
                         } else {
                             schema.getMessages().add(new SchemaExtractorMessage(WARNING, "Check class intersection failed. Assume no intersection",
-                                    classA.getFullName(), null, CHECK_CLASS_INTERSECTION_PLAIN.name(), queryBuilder.getQueryString()));
+                                    classA.getFullName(), null, CHECK_CLASS_INTERSECTION_PLAIN.name(), check.checkQuery.getQueryString()));
                         }
-                        if (!checkQueryResponse.hasErrors() && !checkQueryResponse.getResults().isEmpty()) {
-                            queryBuilder = new SparqlQueryBuilder(request.getQueries().get(CHECK_CLASS_INTERSECTION.name()), CHECK_CLASS_INTERSECTION)
-                                    .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_A_FULL, classA.getFullName(), classA.getIsLiteral())
-                                    .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_B_FULL, classB.getFullName(), classB.getIsLiteral())
-                                    .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_A, classA.getClassificationProperty())
-                                    .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_B, classB.getClassificationProperty());
-                            QueryResponse countQueryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
-                            if (!countQueryResponse.hasErrors() && !countQueryResponse.getResults().isEmpty()) {
-                                Long intersectionCount = SchemaUtil.getLongValueFromString(countQueryResponse.getResults().get(0).getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                        if (check.countQueryResponse != null) {
+                            if (!check.countQueryResponse.hasErrors() && !check.countQueryResponse.getResults().isEmpty()) {
+                                Long intersectionCount = check.countQueryResponse.getResults().get(0).getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                                 addNeighbor(graphOfClasses, classA.getFullName(), classB.getFullName(), intersectionCount);
-                            } else if (countQueryResponse.hasErrors()) {
+                            } else if (check.countQueryResponse.hasErrors()) {
                                 schema.getMessages().add(new SchemaExtractorMessage(WARNING, "Check class intersection: Unable to obtain statistics",
-                                        classA.getFullName(), null, CHECK_CLASS_INTERSECTION.name(), queryBuilder.getQueryString()));
+                                        classA.getFullName(), null, CHECK_CLASS_INTERSECTION.name(), check.countQuery.getQueryString()));
                             }
                         }
                     }
@@ -4061,6 +4952,29 @@ public class SchemaExtractor {
         }
     }
 
+    /**
+     * Sends CHECK_CLASS_INTERSECTION_PLAIN and, if the classes intersect, CHECK_CLASS_INTERSECTION. Does not change the schema.
+     */
+    @Nonnull
+    private ClassIntersectionCheck checkClassIntersection(@Nonnull SchemaClass classA, @Nonnull SchemaClass classB, @Nonnull SchemaExtractorRequestDto request) {
+        ClassIntersectionCheck check = new ClassIntersectionCheck();
+        check.checkQuery = new SparqlQueryBuilder(request.getQueries().get(CHECK_CLASS_INTERSECTION_PLAIN.name()), CHECK_CLASS_INTERSECTION_PLAIN)
+                .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_A_FULL, classA.getFullName(), classA.getIsLiteral())
+                .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_B_FULL, classB.getFullName(), classB.getIsLiteral())
+                .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_A, classA.getClassificationProperty())
+                .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_B, classB.getClassificationProperty());
+        check.checkQueryResponse = sparqlEndpointProcessor.read(request, check.checkQuery);
+        if (!check.checkQueryResponse.hasErrors() && !check.checkQueryResponse.getResults().isEmpty()) {
+            check.countQuery = new SparqlQueryBuilder(request.getQueries().get(CHECK_CLASS_INTERSECTION.name()), CHECK_CLASS_INTERSECTION)
+                    .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_A_FULL, classA.getFullName(), classA.getIsLiteral())
+                    .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_B_FULL, classB.getFullName(), classB.getIsLiteral())
+                    .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_A, classA.getClassificationProperty())
+                    .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_B, classB.getClassificationProperty());
+            check.countQueryResponse = sparqlEndpointProcessor.read(request, check.countQuery);
+        }
+        return check;
+    }
+
     private void updateProcessedClasses(@Nonnull Map<String, List<String>> processedClasses, @Nonnull SchemaClass key, @Nullable SchemaClass neighbor) {
         String keyName = key.getFullName();
         if (neighbor == null) {
@@ -4104,7 +5018,7 @@ public class SchemaExtractor {
                     && isNotExcludedResource(classB, request.getExcludedNamespaces())
                     && (includedClasses.isEmpty() || includedClasses.contains(classB))
                     && findClass(schema.getClasses(), classB) != null) {
-                Long intersectionCount = SchemaUtil.getLongValueFromString(queryResult.getValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+                Long intersectionCount = queryResult.getLongValue(SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
                 addNeighbor(graphOfClasses, sourceClass, classB, intersectionCount);
             }
         }
@@ -4273,9 +5187,11 @@ public class SchemaExtractor {
             List<SchemaExtractorIntersectionClassDto> neighbors = sortNeighborsByTripleCountAsc(entry.getValue().getNeighbors(), classesGraph);
 
             // find the class with the smallest number of instances but including all current instances
+            queryTracer.setContext(TRACE_PHASE_CLASSES, currentClass.getFullName());
             findSuperClass(schema, currentClass, entry.getValue(), neighbors, classesGraph, classes, request);
 
         }
+        queryTracer.setContext(TRACE_PHASE_CLASSES, null);
     }
 
     protected SchemaClass findClass(@Nonnull List<SchemaClass> classes, @Nullable String className) {
@@ -4289,6 +5205,7 @@ public class SchemaExtractor {
                                   @Nonnull Map<String, SchemaExtractorClassNodeInfo> classesGraph, List<SchemaClass> classes,
                                   @Nonnull SchemaExtractorRequestDto request) {
 
+        List<SchemaExtractorIntersectionClassDto> candidates = new ArrayList<>();
         for (SchemaExtractorIntersectionClassDto neighbor : neighbors) {
             SchemaExtractorClassNodeInfo neighborClassInfo = classesGraph.get(neighbor.getClassName());
             if (neighborClassInfo == null) {
@@ -4301,30 +5218,105 @@ public class SchemaExtractor {
                     || neighborClassTotalInstances < request.getMinimalAnalyzedClassSize()) {
                 continue;
             }
-            SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(CHECK_SUPERCLASS.name()), CHECK_SUPERCLASS)
+            candidates.add(neighbor);
+        }
+
+        Map<String, Boolean> superclassChecks = currentClassInfo.getSuperclassChecks();
+        if (isTrue(request.getCheckSuperclassesInBatch())) {
+            checkSuperclassCandidatesInBatch(currentClass, currentClassInfo, candidates, classesGraph, request);
+        }
+
+        // the candidates that are not settled yet are checked one by one
+        int[] queryIndexes = new int[candidates.size()];
+        List<SparqlQueryBuilder> queryBuilders = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            queryIndexes[i] = -1;
+            if (superclassChecks.containsKey(candidates.get(i).getClassName())) {
+                continue;
+            }
+            SchemaExtractorClassNodeInfo neighborClassInfo = classesGraph.get(candidates.get(i).getClassName());
+            queryIndexes[i] = queryBuilders.size();
+            queryBuilders.add(new SparqlQueryBuilder(request.getQueries().get(CHECK_SUPERCLASS.name()), CHECK_SUPERCLASS)
                     .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_A_FULL, currentClass.getFullName(), currentClass.getIsLiteral())
                     .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_B_FULL, neighborClassInfo.getClassName(), neighborClassInfo.getIsLiteral())
                     .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_A, currentClass.getClassificationProperty())
-                    .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_B, neighborClassInfo.getClassificationProperty());
-            QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
-            if (queryResponse.hasErrors()) {
-                schema.getMessages().add(new SchemaExtractorMessage(WARNING, "Check superclass failed. Assume no superclass relation.",
-                        currentClass.getFullName(), null, CHECK_SUPERCLASS.name(), queryBuilder.getQueryString()));
-            }
-            if (!queryResponse.getResults().isEmpty()) {
-                continue;
-            }
-            SchemaClass superClass = findClass(classes, neighbor.getClassName());
-            if (!hasCyclicDependency(currentClass, superClass, classes)) {
-                currentClass.getSuperClasses().add(neighbor.getClassName());
-                if (superClass != null) {
-                    superClass.getSubClasses().add(currentClass.getFullName());
+                    .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_B, neighborClassInfo.getClassificationProperty()));
+        }
+
+        // the first suitable candidate is taken, the checks of the remaining candidates that are not sent yet are skipped
+        try (SparqlReadAhead<QueryResponse> queryResponses = sparqlEndpointProcessor.readAhead(request, queryBuilders)) {
+            for (int i = 0; i < candidates.size(); i++) {
+                SchemaExtractorIntersectionClassDto neighbor = candidates.get(i);
+                boolean includesAllInstances;
+                if (queryIndexes[i] < 0) {
+                    includesAllInstances = superclassChecks.get(neighbor.getClassName());
+                } else {
+                    QueryResponse queryResponse = queryResponses.get(queryIndexes[i]);
+                    if (queryResponse.hasErrors()) {
+                        schema.getMessages().add(new SchemaExtractorMessage(WARNING, "Check superclass failed. Assume no superclass relation.",
+                                currentClass.getFullName(), null, CHECK_SUPERCLASS.name(), queryBuilders.get(queryIndexes[i]).getQueryString()));
+                    } else {
+                        superclassChecks.put(neighbor.getClassName(), queryResponse.getResults().isEmpty());
+                    }
+                    includesAllInstances = queryResponse.getResults().isEmpty();
+                }
+                if (!includesAllInstances) {
+                    continue;
+                }
+                SchemaClass superClass = findClass(classes, neighbor.getClassName());
+                if (!hasCyclicDependency(currentClass, superClass, classes)) {
+                    currentClass.getSuperClasses().add(neighbor.getClassName());
+                    if (superClass != null) {
+                        superClass.getSubClasses().add(currentClass.getFullName());
+                    }
+                    break;
                 }
-                break;
             }
         }
     }
 
+    /**
+     * Settles the candidates with queries per classification property and batch of the candidates - the query returns the candidates
+     * that do not contain some instance of the current class. Candidates of failed queries stay unsettled.
+     */
+    protected void checkSuperclassCandidatesInBatch(@Nonnull SchemaClass currentClass, @Nonnull SchemaExtractorClassNodeInfo currentClassInfo,
+                                                    @Nonnull List<SchemaExtractorIntersectionClassDto> candidates,
+                                                    @Nonnull Map<String, SchemaExtractorClassNodeInfo> classesGraph, @Nonnull SchemaExtractorRequestDto request) {
+        if (isTrue(currentClass.getIsLiteral())) {
+            return;
+        }
+        Map<String, Set<String>> candidatesByClassificationProperty = new LinkedHashMap<>();
+        for (SchemaExtractorIntersectionClassDto candidate : candidates) {
+            SchemaExtractorClassNodeInfo candidateInfo = classesGraph.get(candidate.getClassName());
+            if (!currentClassInfo.getSuperclassChecks().containsKey(candidate.getClassName())
+                    && candidateInfo.getClassificationProperty() != null && !isTrue(candidateInfo.getIsLiteral())) {
+                candidatesByClassificationProperty.computeIfAbsent(candidateInfo.getClassificationProperty(), k -> new LinkedHashSet<>()).add(candidate.getClassName());
+            }
+        }
+        candidatesByClassificationProperty.forEach((classificationProperty, candidateNames) -> {
+            if (candidateNames.size() < 2) {
+                // a single candidate is checked with the LIMIT 1 query
+                return;
+            }
+            for (List<String> batch : Lists.partition(new ArrayList<>(candidateNames), SUPERCLASS_CHECK_BATCH_SIZE)) {
+                SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(CHECK_SUPERCLASSES.name()), CHECK_SUPERCLASSES)
+                        .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASS_A_FULL, currentClass.getFullName(), currentClass.getIsLiteral())
+                        .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_A, currentClass.getClassificationProperty())
+                        .withContextParam(SPARQL_QUERY_BINDING_NAME_CLASSIFICATION_PROPERTY_B, classificationProperty)
+                        .withContextParam(SPARQL_QUERY_BINDING_NAME_VALUES, buildValuesClause(new LinkedHashSet<>(batch), SPARQL_QUERY_BINDING_NAME_CLASS_B));
+                QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
+                if (queryResponse.hasErrors()) {
+                    log.info(request.getCorrelationId() + " - " + CHECK_SUPERCLASSES.name() + " failed for the class [" + currentClass.getFullName()
+                            + "], the candidates of the query are checked one by one");
+                    continue;
+                }
+                Set<String> notSuperclasses = new HashSet<>();
+                queryResponse.getResults().forEach(queryResult -> notSuperclasses.add(queryResult.getValue(SPARQL_QUERY_BINDING_NAME_CLASS_B)));
+                batch.forEach(candidateName -> currentClassInfo.getSuperclassChecks().put(candidateName, !notSuperclasses.contains(candidateName)));
+            }
+        });
+    }
+
     protected boolean hasCyclicDependency(@Nonnull SchemaClass currentClass, @Nullable SchemaClass newClass, @Nonnull List<SchemaClass> classes) {
         if (newClass == null) {
             return false;
@@ -4555,32 +5547,75 @@ public class SchemaExtractor {
 
     protected void buildLabelsForSchemaElements(@Nonnull SchemaExtractorRequestDto request, @Nonnull SchemaExtractorRequestedLabelDto label,
                                                 @Nonnull List<? extends SchemaElement> elements) {
-        elements.forEach(element -> {
-            QueryResponse queryResponse;
+        int batchSize = LABEL_BATCH_SIZE_INITIAL;
+        int position = 0;
+        while (position < elements.size()) {
+            List<? extends SchemaElement> batch = elements.subList(position, Math.min(position + batchSize, elements.size()));
+            SparqlQueryBuilder queryBuilder;
             if (label.getLanguages().isEmpty()) {
-                SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(FIND_LABEL.name()), FIND_LABEL)
-                        .withContextParam(SPARQL_QUERY_BINDING_NAME_RESOURCE1, element.getFullName())
-                        .withContextParam(SPARQL_QUERY_BINDING_NAME_RESOURCE2, label.getLabelProperty());
-                queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
+                queryBuilder = new SparqlQueryBuilder(request.getQueries().get(FIND_LABELS_FOR_RESOURCES.name()), FIND_LABELS_FOR_RESOURCES);
             } else {
-                SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(FIND_LABEL_WITH_LANG.name()), FIND_LABEL_WITH_LANG)
-                        .withContextParam(SPARQL_QUERY_BINDING_NAME_RESOURCE1, element.getFullName())
-                        .withContextParam(SPARQL_QUERY_BINDING_NAME_RESOURCE2, label.getLabelProperty())
+                queryBuilder = new SparqlQueryBuilder(request.getQueries().get(FIND_LABELS_FOR_RESOURCES_WITH_LANG.name()), FIND_LABELS_FOR_RESOURCES_WITH_LANG)
                         .withContextParam(SPARQL_QUERY_BINDING_NAME_CUSTOM_FILTER, buildFilterWithLanguages(label.getLanguages()));
-                queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
             }
-            for (QueryResult queryResult : queryResponse.getResults()) {
-                String value = queryResult.getValue(SPARQL_QUERY_BINDING_NAME_VALUE);
-                String language = queryResult.getValue(SPARQL_QUERY_BINDING_NAME_LANGUAGE);
-                if (StringUtils.isNotEmpty(value)) {
-                    if (StringUtils.isNotEmpty(language)) {
-                        element.getLabels().add(new Label(label.getLabelPropertyFullOrPrefix(), value, language));
-                    } else {
-                        element.getLabels().add(new Label(label.getLabelPropertyFullOrPrefix(), value));
+            // several elements can have the same full name, e.g. classes with different classification properties
+            Map<String, List<SchemaElement>> batchElements = new LinkedHashMap<>();
+            batch.forEach(element -> batchElements.computeIfAbsent(element.getFullName(), k -> new ArrayList<>()).add(element));
+            queryBuilder.withContextParam(SPARQL_QUERY_BINDING_NAME_RESOURCE2, label.getLabelProperty())
+                    .withContextParam(SPARQL_QUERY_BINDING_NAME_VALUES, buildValuesClause(batchElements.keySet(), SPARQL_QUERY_BINDING_NAME_X));
+            QueryResponse queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
+            if (!queryResponse.hasErrors()) {
+                for (QueryResult queryResult : queryResponse.getResults()) {
+                    List<SchemaElement> resultElements = batchElements.get(queryResult.getValue(SPARQL_QUERY_BINDING_NAME_X));
+                    if (resultElements != null) {
+                        resultElements.forEach(element -> addLabel(label, element, queryResult));
                     }
                 }
+                position += batch.size();
+                if (queryResponse.getExecutionTimeInMillis() <= LABEL_BATCH_FAST_MILLIS) {
+                    batchSize = Math.min(batchSize * 2, LABEL_BATCH_SIZE_MAX);
+                }
+            } else if (batch.size() > LABEL_BATCH_SIZE_MIN) {
+                // the same elements are queried again in smaller batches
+                batchSize = Math.max(batch.size() / 2, LABEL_BATCH_SIZE_MIN);
+            } else {
+                log.info(request.getCorrelationId() + " - label query for " + batch.size() + " resources failed, the labels are requested for each resource");
+                batch.forEach(element -> buildLabelsForSchemaElement(request, label, element));
+                position += batch.size();
             }
-        });
+        }
+    }
+
+    protected void buildLabelsForSchemaElement(@Nonnull SchemaExtractorRequestDto request, @Nonnull SchemaExtractorRequestedLabelDto label,
+                                               @Nonnull SchemaElement element) {
+        QueryResponse queryResponse;
+        if (label.getLanguages().isEmpty()) {
+            SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(FIND_LABEL.name()), FIND_LABEL)
+                    .withContextParam(SPARQL_QUERY_BINDING_NAME_RESOURCE1, element.getFullName())
+                    .withContextParam(SPARQL_QUERY_BINDING_NAME_RESOURCE2, label.getLabelProperty());
+            queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
+        } else {
+            SparqlQueryBuilder queryBuilder = new SparqlQueryBuilder(request.getQueries().get(FIND_LABEL_WITH_LANG.name()), FIND_LABEL_WITH_LANG)
+                    .withContextParam(SPARQL_QUERY_BINDING_NAME_RESOURCE1, element.getFullName())
+                    .withContextParam(SPARQL_QUERY_BINDING_NAME_RESOURCE2, label.getLabelProperty())
+                    .withContextParam(SPARQL_QUERY_BINDING_NAME_CUSTOM_FILTER, buildFilterWithLanguages(label.getLanguages()));
+            queryResponse = sparqlEndpointProcessor.read(request, queryBuilder);
+        }
+        for (QueryResult queryResult : queryResponse.getResults()) {
+            addLabel(label, element, queryResult);
+        }
+    }
+
+    private void addLabel(@Nonnull SchemaExtractorRequestedLabelDto label, @Nonnull SchemaElement element, @Nonnull QueryResult queryResult) {
+        String value = queryResult.getValue(SPARQL_QUERY_BINDING_NAME_VALUE);
+        String language = queryResult.getValue(SPARQL_QUERY_BINDING_NAME_LANGUAGE);
+        if (StringUtils.isNotEmpty(value)) {
+            if (StringUtils.isNotEmpty(language)) {
+                element.getLabels().add(new Label(label.getLabelPropertyFullOrPrefix(), value, language));
+            } else {
+                element.getLabels().add(new Label(label.getLabelPropertyFullOrPrefix(), value));
+            }
+        }
     }
 
     protected String buildFilterWithLanguages(@Nonnull List<String> languages) {
@@ -4608,4 +5643,55 @@ public class SchemaExtractor {
         return false;
     }
 
+    private static class ClassIntersectionCheck {
+        private SparqlQueryBuilder checkQuery;
+        private QueryResponse checkQueryResponse;
+        private SparqlQueryBuilder countQuery;
+        private QueryResponse countQueryResponse;
+    }
+
+    /**
+     * The class property lists are determined by the first property that needs them in its source or target fallback.
+     * In the parallel processing a property may use these lists only after all earlier properties are done with them,
+     * then the lists and the messages are the same as in the sequential processing.
+     */
+    private static class ClassPropertyListsOrder {
+        private final boolean[] released;
+        // property indexes start with 1
+        private int firstNotReleased = 1;
+
+        private ClassPropertyListsOrder(int propertyCount) {
+            released = new boolean[propertyCount + 1];
+        }
+
+        private synchronized void release(int propertyInd) {
+            released[propertyInd] = true;
+            while (firstNotReleased < released.length && released[firstNotReleased]) {
+                firstNotReleased++;
+            }
+            notifyAll();
+        }
+
+        private synchronized void await(int propertyInd) {
+            while (firstNotReleased < propertyInd) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SparqlEndpointException("Property processing was interrupted", e);
+                }
+            }
+        }
+    }
+
+    private static class ClassPropertyListsTurn {
+        private final ClassPropertyListsOrder order;
+        private final int propertyInd;
+
+        private ClassPropertyListsTurn(ClassPropertyListsOrder order, int propertyInd) {
+            this.order = order;
+            this.propertyInd = propertyInd;
+        }
+    }
+
 }
@@ -0,0 +1,186 @@
+package lv.lumii.obis.schema.services.extractor.v2;
+
+import lombok.extern.slf4j.Slf4j;
+import lv.lumii.obis.schema.services.ObjectConversionService;
+import lv.lumii.obis.schema.services.SparqlEndpointException;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorRequestDto;
+import lv.lumii.obis.schema.services.extractor.v2.dto.SchemaExtractorClassesCheckpoint;
+import lv.lumii.obis.schema.services.extractor.v2.dto.SchemaExtractorPropertiesCheckpoint;
+import lv.lumii.obis.schema.services.extractor.v2.dto.SchemaExtractorPropertyCheckpoint;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static lv.lumii.obis.schema.constants.SchemaConstants.GLOBAL_CHECKPOINT_PATH;
+import static org.apache.commons.lang3.BooleanUtils.isTrue;
+
+/**
+ * Saves the schema extraction state under ./checkpoints/{correlationId} so that an interrupted extraction can be continued
+ * with the request parameter resumeFromCorrelationId. The checkpoints are removed when the extraction completes.
+ */
+@Slf4j
+@Service
+public class SchemaExtractorCheckpointService {
+
+    private static final String CLASSES_FILE = "classes.json";
+    private static final String PROPERTIES_FILE = "properties.json";
+    private static final String PROPERTY_FILE_PREFIX = "property-";
+    private static final String FILE_EXTENSION = ".json";
+
+    @Autowired
+    private ObjectConversionService objectConversionService;
+
+    public boolean isEnabled(@Nonnull SchemaExtractorRequestDto request) {
+        return isTrue(request.getSaveCheckpoints()) || StringUtils.isNotEmpty(request.getResumeFromCorrelationId());
+    }
+
+    /**
+     * Copies the checkpoints of the interrupted extraction to the directory of the current request,
+     * so that the current extraction can also be resumed if it is interrupted again.
+     */
+    public void startExtraction(@Nonnull SchemaExtractorRequestDto request) {
+        if (StringUtils.isEmpty(request.getResumeFromCorrelationId())) {
+            return;
+        }
+        Path sourceDirectory = getDirectory(request.getResumeFromCorrelationId());
+        if (!Files.isDirectory(sourceDirectory)) {
+            throw new SparqlEndpointException(String.format("Cannot resume the schema extraction - checkpoints for the request [ %s ] are not found in %s",
+                    request.getResumeFromCorrelationId(), sourceDirectory.toAbsolutePath()));
+        }
+        Path targetDirectory = getDirectory(request.getCorrelationId());
+        try (Stream<Path> files = Files.list(sourceDirectory)) {
+            Files.createDirectories(targetDirectory);
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, targetDirectory.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new SparqlEndpointException("Cannot copy the checkpoints from " + sourceDirectory.toAbsolutePath(), e);
+        }
+        log.info(request.getCorrelationId() + " - resuming the schema extraction from the checkpoints of the request " + request.getResumeFromCorrelationId());
+    }
+
+    public void completeExtraction(@Nonnull SchemaExtractorRequestDto request) {
+        Path directory = getDirectory(request.getCorrelationId());
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(this::deleteFile);
+        } catch (IOException e) {
+            log.error(request.getCorrelationId() + " - cannot remove the checkpoints " + directory.toAbsolutePath());
+        }
+    }
+
+    @Nullable
+    public SchemaExtractorClassesCheckpoint readClasses(@Nonnull SchemaExtractorRequestDto request) {
+        SchemaExtractorClassesCheckpoint checkpoint = read(request, CLASSES_FILE, SchemaExtractorClassesCheckpoint.class);
+        if (checkpoint != null && (!StringUtils.equals(checkpoint.getEndpointUrl(), request.getEndpointUrl())
+                || !StringUtils.equals(StringUtils.defaultString(checkpoint.getGraphName()), StringUtils.defaultString(request.getGraphName())))) {
+            throw new SparqlEndpointException(String.format("Cannot resume the schema extraction - checkpoints of the request [ %s ] were created for the endpoint %s",
+                    request.getResumeFromCorrelationId(), checkpoint.getEndpointUrl()));
+        }
+        return checkpoint;
+    }
+
+    public void saveClasses(@Nonnull SchemaExtractorRequestDto request, @Nonnull SchemaExtractorClassesCheckpoint checkpoint) {
+        checkpoint.setEndpointUrl(request.getEndpointUrl());
+        checkpoint.setGraphName(request.getGraphName());
+        save(request, CLASSES_FILE, checkpoint);
+    }
+
+    @Nullable
+    public SchemaExtractorPropertiesCheckpoint readProperties(@Nonnull SchemaExtractorRequestDto request) {
+        return read(request, PROPERTIES_FILE, SchemaExtractorPropertiesCheckpoint.class);
+    }
+
+    public void saveProperties(@Nonnull SchemaExtractorRequestDto request, @Nonnull SchemaExtractorPropertiesCheckpoint checkpoint) {
+        save(request, PROPERTIES_FILE, checkpoint);
+    }
+
+    /**
+     * Returns fully processed properties by the property name.
+     */
+    @Nonnull
+    public Map<String, SchemaExtractorPropertyCheckpoint> readProcessedProperties(@Nonnull SchemaExtractorRequestDto request) {
+        Map<String, SchemaExtractorPropertyCheckpoint> processedProperties = new LinkedHashMap<>();
+        Path directory = getDirectory(request.getCorrelationId());
+        if (!isEnabled(request) || !Files.isDirectory(directory)) {
+            return processedProperties;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(fileName -> fileName.startsWith(PROPERTY_FILE_PREFIX) && fileName.endsWith(FILE_EXTENSION))
+                    .sorted()
+                    .forEach(fileName -> {
+                        SchemaExtractorPropertyCheckpoint checkpoint = read(request, fileName, SchemaExtractorPropertyCheckpoint.class);
+                        if (checkpoint != null && checkpoint.getProperty() != null) {
+                            processedProperties.put(checkpoint.getProperty().getPropertyName(), checkpoint);
+                        }
+                    });
+        } catch (IOException e) {
+            log.error(request.getCorrelationId() + " - cannot read the property checkpoints from " + directory.toAbsolutePath());
+        }
+        return processedProperties;
+    }
+
+    public void saveProcessedProperty(@Nonnull SchemaExtractorRequestDto request, int propertyInd, @Nonnull SchemaExtractorPropertyCheckpoint checkpoint) {
+        save(request, String.format("%s%06d%s", PROPERTY_FILE_PREFIX, propertyInd, FILE_EXTENSION), checkpoint);
+    }
+
+    @Nullable
+    private <T> T read(@Nonnull SchemaExtractorRequestDto request, @Nonnull String fileName, @Nonnull Class<T> checkpointClass) {
+        if (!isEnabled(request)) {
+            return null;
+        }
+        Path file = getDirectory(request.getCorrelationId()).resolve(fileName);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return objectConversionService.readJsonFromFile(file, checkpointClass);
+        } catch (IOException e) {
+            log.error(request.getCorrelationId() + " - cannot read the checkpoint " + file.toAbsolutePath() + ", the data will be calculated again");
+            return null;
+        }
+    }
+
+    private void save(@Nonnull SchemaExtractorRequestDto request, @Nonnull String fileName, @Nonnull Object checkpoint) {
+        if (!isEnabled(request)) {
+            return;
+        }
+        Path directory = getDirectory(request.getCorrelationId());
+        Path tempFile = directory.resolve(fileName + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            objectConversionService.writeJsonToFile(checkpoint, tempFile);
+            Files.move(tempFile, directory.resolve(fileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the extraction continues, only this state will not be available for resuming
+            log.error(request.getCorrelationId() + " - cannot save the checkpoint " + directory.resolve(fileName).toAbsolutePath() + ": " + e.getMessage());
+            deleteFile(tempFile);
+        }
+    }
+
+    @Nonnull
+    private Path getDirectory(@Nonnull String correlationId) {
+        return Paths.get(GLOBAL_CHECKPOINT_PATH, correlationId);
+    }
+
+    private void deleteFile(@Nonnull Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.error("Cannot delete the checkpoint file " + file.toAbsolutePath());
+        }
+    }
+
+}
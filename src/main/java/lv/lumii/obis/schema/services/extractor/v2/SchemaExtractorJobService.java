@@ -0,0 +1,362 @@
+package lv.lumii.obis.schema.services.extractor.v2;
+
+import lombok.extern.slf4j.Slf4j;
+import lv.lumii.obis.schema.services.common.SparqlEndpointBudget;
+import lv.lumii.obis.schema.services.common.SparqlInFlightRequests;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorRequestDto;
+import lv.lumii.obis.schema.services.extractor.v2.dto.SchemaExtractorJobStatus;
+import lv.lumii.obis.schema.services.extractor.v2.dto.SchemaExtractorJobStatus.State;
+import lv.lumii.obis.schema.services.extractor.v2.dto.SchemaExtractorSchedulerStatus;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Extractions running in the background (extraction jobs), so that the HTTP request does not wait for the whole extraction.
+ * The job id is the correlation id of the extraction. The extractor reports the phase and the started properties of the job,
+ * the number of sent queries is taken from {@link SparqlInFlightRequests}. Finished jobs are kept for {@link #FINISHED_JOB_RETENTION}.
+ * <p>
+ * At most schema-extractor.jobs.max-concurrent jobs run at the same time, the others wait in the queue. The next job is the one
+ * with the highest priority; among the jobs with the same priority the job for the endpoint with the fewest running jobs goes first,
+ * then the job submitted first. The queries of the running jobs share the endpoint budget of {@link SparqlEndpointBudget}.
+ */
+@Slf4j
+@Service
+public class SchemaExtractorJobService {
+
+    private static final Duration FINISHED_JOB_RETENTION = Duration.ofHours(24);
+
+    private static final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
+
+    @Autowired
+    private SparqlInFlightRequests inFlightRequests;
+
+    @Autowired
+    private SparqlEndpointBudget endpointBudget;
+
+    @Value("${schema-extractor.jobs.max-concurrent:2}")
+    private int maxConcurrentJobs;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    // guarded by the service
+    private final List<Job> queuedJobs = new ArrayList<>();
+    private final List<Job> runningJobs = new ArrayList<>();
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "schema-extraction-job-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Queues the extraction, it is started in the background when there is a free job slot.
+     *
+     * @param priority   jobs with a higher priority are started first
+     * @param extraction extracts the schema and returns the file with the result JSON schema (null if the schema was not saved)
+     */
+    @Nonnull
+    public SchemaExtractorJobStatus submit(@Nonnull SchemaExtractorRequestDto request, int priority, @Nonnull Function<SchemaExtractorRequestDto, Path> extraction) {
+        removeExpiredJobs();
+        Job job = new Job(request, priority, extraction);
+        jobs.put(job.id, job);
+        inFlightRequests.startExtraction(job.id);
+        synchronized (this) {
+            queuedJobs.add(job);
+            startQueuedJobs();
+        }
+        log.info(job.id + String.format(" - extraction job submitted with priority %d", priority));
+        return getStatus(job);
+    }
+
+    /**
+     * @return the running and the queued jobs in the order they will be started, and the query budgets of the endpoints
+     */
+    @Nonnull
+    public SchemaExtractorSchedulerStatus getSchedulerStatus() {
+        List<Job> running;
+        List<Job> queued;
+        synchronized (this) {
+            running = new ArrayList<>(runningJobs);
+            queued = new ArrayList<>(queuedJobs);
+        }
+        SchemaExtractorSchedulerStatus status = new SchemaExtractorSchedulerStatus();
+        status.setMaxConcurrentJobs(getMaxConcurrentJobs());
+        running.forEach(job -> status.getRunningJobs().add(getStatus(job)));
+        queued.forEach(job -> status.getQueuedJobs().add(getStatus(job)));
+        status.getQueuedJobs().sort(Comparator.comparing(SchemaExtractorJobStatus::getQueuePosition, Comparator.nullsLast(Comparator.naturalOrder())));
+        status.setEndpoints(endpointBudget.getStatus());
+        return status;
+    }
+
+    @Nullable
+    public SchemaExtractorJobStatus getStatus(@Nonnull String jobId) {
+        Job job = jobs.get(jobId);
+        return job != null ? getStatus(job) : null;
+    }
+
+    /**
+     * @return the result file of the completed job or null if the job is not completed or has no result file
+     */
+    @Nullable
+    public Path getResultFile(@Nonnull String jobId) {
+        Job job = jobs.get(jobId);
+        return job != null && job.state == State.completed ? job.resultFile : null;
+    }
+
+    /**
+     * Cancels the job. The SPARQL requests in flight are aborted, the extraction stops at its next request.
+     *
+     * @return the status of the job or null if there is no such job
+     */
+    @Nullable
+    public SchemaExtractorJobStatus cancel(@Nonnull String jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null) {
+            return null;
+        }
+        synchronized (job) {
+            if (job.state == State.queued) {
+                job.cancelRequested = true;
+                boolean removed;
+                synchronized (this) {
+                    removed = queuedJobs.remove(job);
+                }
+                // a job that has already left the queue is cancelled when it starts
+                if (removed) {
+                    finish(job, State.cancelled, null);
+                }
+            } else if (job.state == State.running) {
+                job.cancelRequested = true;
+                inFlightRequests.cancel(job.id);
+                if (job.future != null) {
+                    job.future.cancel(true);
+                }
+            }
+        }
+        return getStatus(job);
+    }
+
+    /**
+     * Sets the current phase of the extraction, the property progress starts again.
+     */
+    public void setPhase(@Nullable String correlationId, @Nonnull String phase) {
+        Job job = correlationId != null ? jobs.get(correlationId) : null;
+        if (job == null) {
+            return;
+        }
+        synchronized (job) {
+            job.phase = phase;
+            job.phaseStartTime = System.nanoTime();
+            job.propertyIndex.set(0);
+            job.propertyCount = null;
+        }
+    }
+
+    /**
+     * Counts the property started in the current phase.
+     */
+    public void propertyStarted(@Nullable String correlationId, int propertyCount) {
+        Job job = correlationId != null ? jobs.get(correlationId) : null;
+        if (job == null) {
+            return;
+        }
+        job.propertyCount = propertyCount;
+        job.propertyIndex.incrementAndGet();
+    }
+
+    /**
+     * Starts the queued jobs while there are free job slots.
+     */
+    private synchronized void startQueuedJobs() {
+        while (runningJobs.size() < getMaxConcurrentJobs() && !queuedJobs.isEmpty()) {
+            Job next = queuedJobs.stream().min(this::compareQueuedJobs).get();
+            queuedJobs.remove(next);
+            runningJobs.add(next);
+            next.future = executor.submit(() -> {
+                try {
+                    run(next);
+                } finally {
+                    synchronized (this) {
+                        runningJobs.remove(next);
+                        startQueuedJobs();
+                    }
+                }
+            });
+        }
+    }
+
+    private int compareQueuedJobs(@Nonnull Job job1, @Nonnull Job job2) {
+        if (job1.priority != job2.priority) {
+            return Integer.compare(job2.priority, job1.priority);
+        }
+        int runningForEndpoint1 = countRunningJobs(job1.endpointUrl);
+        int runningForEndpoint2 = countRunningJobs(job2.endpointUrl);
+        if (runningForEndpoint1 != runningForEndpoint2) {
+            return Integer.compare(runningForEndpoint1, runningForEndpoint2);
+        }
+        return Long.compare(job1.submitOrder, job2.submitOrder);
+    }
+
+    private int countRunningJobs(@Nullable String endpointUrl) {
+        return (int) runningJobs.stream().filter(job -> Objects.equals(job.endpointUrl, endpointUrl)).count();
+    }
+
+    private int getMaxConcurrentJobs() {
+        return Math.max(maxConcurrentJobs, 1);
+    }
+
+    @Nonnull
+    private SchemaExtractorJobStatus getStatus(@Nonnull Job job) {
+        Integer queuePosition = null;
+        synchronized (this) {
+            if (queuedJobs.contains(job)) {
+                List<Job> queueOrder = new ArrayList<>(queuedJobs);
+                queueOrder.sort(this::compareQueuedJobs);
+                queuePosition = queueOrder.indexOf(job) + 1;
+            }
+        }
+        SchemaExtractorJobStatus status = job.getStatus(inFlightRequests);
+        status.setQueuePosition(queuePosition);
+        return status;
+    }
+
+    private void run(@Nonnull Job job) {
+        synchronized (job) {
+            if (job.state != State.queued) {
+                return;
+            }
+            if (job.cancelRequested) {
+                finish(job, State.cancelled, null);
+                return;
+            }
+            job.state = State.running;
+            job.startTime = LocalDateTime.now();
+        }
+        try {
+            Path resultFile = job.extraction.apply(job.request);
+            synchronized (job) {
+                job.resultFile = resultFile;
+                // the schema of a cancelled extraction can be incomplete
+                finish(job, job.cancelRequested ? State.cancelled : State.completed, null);
+            }
+        } catch (RuntimeException e) {
+            synchronized (job) {
+                if (job.cancelRequested) {
+                    finish(job, State.cancelled, null);
+                } else {
+                    log.error(job.id + " - extraction job failed", e);
+                    finish(job, State.failed, StringUtils.defaultIfEmpty(e.getMessage(), e.getClass().getName()));
+                }
+            }
+        } finally {
+            // the interrupt of the cancelled job must not reach the next job of the thread
+            Thread.interrupted();
+        }
+    }
+
+    private void finish(@Nonnull Job job, @Nonnull State state, @Nullable String error) {
+        job.queriesDone = inFlightRequests.getCompletedRequests(job.id);
+        inFlightRequests.finishExtraction(job.id);
+        job.state = state;
+        job.error = error;
+        job.endTime = LocalDateTime.now();
+        log.info(job.id + " - extraction job " + state);
+    }
+
+    private void removeExpiredJobs() {
+        LocalDateTime expired = LocalDateTime.now().minus(FINISHED_JOB_RETENTION);
+        jobs.values().removeIf(job -> job.endTime != null && job.endTime.isBefore(expired));
+    }
+
+    private static class Job {
+
+        private static final AtomicLong SUBMIT_COUNTER = new AtomicLong();
+
+        private final String id;
+        private final String endpointUrl;
+        private final int priority;
+        private final SchemaExtractorRequestDto request;
+        private final Function<SchemaExtractorRequestDto, Path> extraction;
+        private final long submitOrder = SUBMIT_COUNTER.incrementAndGet();
+        private final LocalDateTime submitTime = LocalDateTime.now();
+        private final AtomicInteger propertyIndex = new AtomicInteger();
+        private volatile State state = State.queued;
+        private volatile String phase;
+        private volatile long phaseStartTime;
+        private volatile Integer propertyCount;
+        private volatile LocalDateTime startTime;
+        private volatile LocalDateTime endTime;
+        private volatile Long queriesDone;
+        private volatile Path resultFile;
+        private volatile String error;
+        private volatile boolean cancelRequested;
+        private volatile Future<?> future;
+
+        private Job(@Nonnull SchemaExtractorRequestDto request, int priority, @Nonnull Function<SchemaExtractorRequestDto, Path> extraction) {
+            this.id = request.getCorrelationId();
+            this.endpointUrl = request.getEndpointUrl();
+            this.priority = priority;
+            this.request = request;
+            this.extraction = extraction;
+        }
+
+        @Nonnull
+        private synchronized SchemaExtractorJobStatus getStatus(@Nonnull SparqlInFlightRequests inFlightRequests) {
+            SchemaExtractorJobStatus status = new SchemaExtractorJobStatus();
+            status.setJobId(id);
+            status.setState(state);
+            status.setEndpointUrl(endpointUrl);
+            status.setPriority(priority);
+            status.setSubmitTime(format(submitTime));
+            status.setStartTime(format(startTime));
+            status.setEndTime(format(endTime));
+            status.setError(error);
+            if (state != State.running) {
+                status.setQueriesDone(queriesDone);
+                return status;
+            }
+            status.setPhase(phase);
+            status.setQueriesDone(inFlightRequests.getCompletedRequests(id));
+            int startedProperties = propertyIndex.get();
+            if (propertyCount != null && startedProperties > 0) {
+                status.setPropertyIndex(startedProperties);
+                status.setPropertyCount(propertyCount);
+                // the last started property is taken as half done
+                double doneProperties = startedProperties - 0.5;
+                long elapsedNanos = System.nanoTime() - phaseStartTime;
+                status.setPhaseRemainingSeconds(TimeUnit.NANOSECONDS.toSeconds((long) (elapsedNanos / doneProperties * (propertyCount - doneProperties))));
+            }
+            return status;
+        }
+
+        @Nullable
+        private static String format(@Nullable LocalDateTime time) {
+            return time != null ? dateTimeFormatter.format(time) : null;
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+package lv.lumii.obis.schema.services.extractor.v2;
+
+import lombok.extern.slf4j.Slf4j;
+import lv.lumii.obis.schema.services.common.dto.QueryResponse;
+import lv.lumii.obis.schema.services.common.dto.QueryResult;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorRequestDto;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static lv.lumii.obis.schema.constants.SchemaConstants.SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT;
+import static org.apache.commons.lang3.BooleanUtils.isTrue;
+
+/**
+ * Chooses where to start the fallback LIMIT ladders. For every endpoint, query and size of the processed property or class
+ * (order of magnitude of the triple or instance count) it records the smallest limit that failed and the observed milliseconds per processed row
+ * of the successful queries. The ladder then starts at the largest limit that is expected to finish within the query timeout,
+ * instead of waiting for the timeout of every larger limit.
+ */
+@Slf4j
+@Service
+public class SchemaExtractorLimitSelector {
+
+    // a failed limit is tried again after this many selections, the endpoint may have been only temporarily overloaded
+    private static final int FAILED_LIMIT_RECHECK_INTERVAL = 50;
+    private static final double LATENCY_SMOOTHING = 0.3;
+
+    private final Map<String, LimitStatistics> statistics = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the part of the ladder (ordered from the largest limit) that starts from the largest limit predicted to finish.
+     * The smallest limit is always kept.
+     */
+    @Nonnull
+    public List<Long> selectLimits(@Nonnull SchemaExtractorRequestDto request, @Nonnull SchemaExtractorQueries query, @Nullable Long resourceCount,
+                                   @Nonnull List<Long> limits) {
+        if (!isTrue(request.getUseAdaptiveLimits()) || limits.size() <= 1) {
+            return limits;
+        }
+        LimitStatistics limitStatistics = statistics.get(buildKey(request, query, resourceCount));
+        if (limitStatistics == null) {
+            return limits;
+        }
+        int startIndex = limitStatistics.findStartIndex(limits, getTimeout(request, query));
+        if (startIndex > 0 && isTrue(request.getEnableLogging())) {
+            log.info(request.getCorrelationId() + String.format(" - %s starts with the limit %d, larger limits are not expected to finish within the timeout",
+                    query.name(), limits.get(startIndex)));
+        }
+        return limits.subList(startIndex, limits.size());
+    }
+
+    /**
+     * Returns the given limit or, if it is not expected to finish within the timeout, the largest smaller limit from the ladder that is.
+     */
+    @Nonnull
+    public Long selectLimit(@Nonnull SchemaExtractorRequestDto request, @Nonnull SchemaExtractorQueries query, @Nullable Long resourceCount,
+                            @Nonnull Long limit, @Nonnull List<Long> smallerLimits) {
+        if (!isTrue(request.getUseAdaptiveLimits())) {
+            return limit;
+        }
+        LimitStatistics limitStatistics = statistics.get(buildKey(request, query, resourceCount));
+        if (limitStatistics == null) {
+            return limit;
+        }
+        limitStatistics.countSelection();
+        if (limitStatistics.isExpectedToFinish(limit, getTimeout(request, query))) {
+            return limit;
+        }
+        return smallerLimits.stream()
+                .filter(smallerLimit -> smallerLimit < limit && limitStatistics.isExpectedToFinish(smallerLimit, getTimeout(request, query)))
+                .findFirst().orElse(limit);
+    }
+
+    public void recordResult(@Nonnull SchemaExtractorRequestDto request, @Nonnull SchemaExtractorQueries query, @Nullable Long resourceCount,
+                             @Nonnull Long limit, @Nonnull QueryResponse queryResponse) {
+        if (!isTrue(request.getUseAdaptiveLimits())) {
+            return;
+        }
+        LimitStatistics limitStatistics = statistics.computeIfAbsent(buildKey(request, query, resourceCount), k -> new LimitStatistics());
+        if (queryResponse.hasErrors()) {
+            limitStatistics.recordFailure(limit);
+        } else {
+            limitStatistics.recordSuccess(limit, countObservedRows(queryResponse), queryResponse.getExecutionTimeInMillis());
+        }
+    }
+
+    /**
+     * Rows processed by the query: the counted rows for the count queries, otherwise the received rows.
+     * Resources smaller than the limit process fewer rows than the limit.
+     */
+    private long countObservedRows(@Nonnull QueryResponse queryResponse) {
+        if (queryResponse.getResults() == null || queryResponse.getResults().isEmpty() || queryResponse.getResults().get(0) == null
+                || queryResponse.getResults().get(0).getColumns().indexOf(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT) < 0) {
+            return queryResponse.getRowCount();
+        }
+        long rowCount = 0L;
+        for (QueryResult queryResult : queryResponse.getResults()) {
+            if (queryResult != null) {
+                rowCount += queryResult.getLongValue(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT);
+            }
+        }
+        return rowCount;
+    }
+
+    @Nonnull
+    private String buildKey(@Nonnull SchemaExtractorRequestDto request, @Nonnull SchemaExtractorQueries query, @Nullable Long resourceCount) {
+        int sizeGroup = (resourceCount == null || resourceCount <= 0L) ? -1 : (int) Math.log10(resourceCount);
+        return request.getEndpointUrl() + "|" + request.getGraphName() + "|" + query.name() + "|" + sizeGroup;
+    }
+
+    private long getTimeout(@Nonnull SchemaExtractorRequestDto request, @Nonnull SchemaExtractorQueries query) {
+        return SchemaExtractorQueries.QueryType.SMALL.equals(query.getQueryType()) ? request.getSmallQueryTimeout() : request.getLargeQueryTimeout();
+    }
+
+    private static class LimitStatistics {
+
+        private Long smallestFailedLimit;
+        private int selectionsSinceFailure;
+        private Double millisPerRow;
+
+        synchronized void countSelection() {
+            if (smallestFailedLimit != null && ++selectionsSinceFailure > FAILED_LIMIT_RECHECK_INTERVAL) {
+                smallestFailedLimit = null;
+            }
+        }
+
+        synchronized int findStartIndex(@Nonnull List<Long> limits, long timeout) {
+            countSelection();
+            for (int i = 0; i < limits.size() - 1; i++) {
+                if (isExpectedToFinish(limits.get(i), timeout)) {
+                    return i;
+                }
+            }
+            return limits.size() - 1;
+        }
+
+        synchronized boolean isExpectedToFinish(long limit, long timeout) {
+            if (smallestFailedLimit != null && limit >= smallestFailedLimit) {
+                return false;
+            }
+            return millisPerRow == null || timeout <= 0L || millisPerRow * limit <= TimeUnit.SECONDS.toMillis(timeout);
+        }
+
+        synchronized void recordFailure(long limit) {
+            if (smallestFailedLimit == null || limit < smallestFailedLimit) {
+                smallestFailedLimit = limit;
+            }
+            selectionsSinceFailure = 0;
+        }
+
+        synchronized void recordSuccess(long limit, long rowCount, long executionTimeInMillis) {
+            if (smallestFailedLimit != null && limit >= smallestFailedLimit) {
+                smallestFailedLimit = null;
+            }
+            // responses from the cache or the query memo have no execution time
+            if (executionTimeInMillis > 0L && rowCount > 0L && limit > 0L) {
+                double observedMillisPerRow = (double) executionTimeInMillis / Math.min(rowCount, limit);
+                millisPerRow = millisPerRow == null ? observedMillisPerRow
+                        : LATENCY_SMOOTHING * observedMillisPerRow + (1 - LATENCY_SMOOTHING) * millisPerRow;
+            }
+        }
+    }
+
+}
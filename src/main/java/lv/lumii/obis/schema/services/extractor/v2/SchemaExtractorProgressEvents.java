@@ -0,0 +1,231 @@
+package lv.lumii.obis.schema.services.extractor.v2;
+
+import lombok.extern.slf4j.Slf4j;
+import lv.lumii.obis.schema.model.v2.Schema;
+import lv.lumii.obis.schema.services.common.SparqlQueryTracer;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorMessage;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorRequestDto;
+import lv.lumii.obis.schema.services.extractor.v2.dto.SchemaExtractorProgressEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Progress of the running extractions as Server-Sent Events, for the clients subscribed to the correlation id of the extraction.
+ * Events: phase (a new phase starts), property (a property of the phase is processed, with the number and the total time
+ * of its SPARQL requests and the processing time), message (a message added to the schema), end (the extraction has ended).
+ * The messages of a property are sent when the property is processed, the other messages when the next phase starts.
+ * The events are sent by a separate thread, so a slow client does not delay the extraction; if the client falls too far behind, events are dropped.
+ */
+@Slf4j
+@Service
+public class SchemaExtractorProgressEvents {
+
+    public static final String EVENT_PHASE = "phase";
+    public static final String EVENT_PROPERTY = "property";
+    public static final String EVENT_MESSAGE = "message";
+    public static final String EVENT_END = "end";
+
+    private static final int EVENT_QUEUE_CAPACITY = 10_000;
+
+    @Autowired
+    private SparqlQueryTracer queryTracer;
+
+    private final Map<String, Extraction> extractions = new ConcurrentHashMap<>();
+
+    private final Map<String, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+
+    private final ExecutorService sender = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(EVENT_QUEUE_CAPACITY), runnable -> {
+        Thread thread = new Thread(runnable, "extraction-progress-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public boolean isRunning(@Nonnull String correlationId) {
+        return extractions.containsKey(correlationId);
+    }
+
+    /**
+     * Subscribes to the events of the extraction. If the extraction is running, the current phase is sent at once.
+     */
+    @Nonnull
+    public SseEmitter subscribe(@Nonnull String correlationId) {
+        // the stream is open until the extraction ends or the client disconnects
+        SseEmitter emitter = new SseEmitter(0L);
+        subscribers.computeIfAbsent(correlationId, id -> new CopyOnWriteArrayList<>()).add(emitter);
+        Runnable unsubscribe = () -> unsubscribe(correlationId, emitter);
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+
+        Extraction extraction = extractions.get(correlationId);
+        String phase = extraction != null ? extraction.phase : null;
+        if (phase != null) {
+            SchemaExtractorProgressEvent event = newEvent(correlationId);
+            event.setPhase(phase);
+            execute(() -> send(correlationId, Collections.singletonList(emitter), EVENT_PHASE, event));
+        }
+        return emitter;
+    }
+
+    public void extractionStarted(@Nonnull SchemaExtractorRequestDto request) {
+        extractions.put(request.getCorrelationId(), new Extraction());
+    }
+
+    public void phaseStarted(@Nonnull SchemaExtractorRequestDto request, @Nonnull Schema schema, @Nonnull String phase) {
+        Extraction extraction = extractions.get(request.getCorrelationId());
+        if (extraction == null) {
+            return;
+        }
+        extraction.phase = phase;
+        if (!hasSubscribers(request.getCorrelationId())) {
+            return;
+        }
+        publishMessages(request.getCorrelationId(), extraction, newSchemaMessages(extraction, schema));
+        SchemaExtractorProgressEvent event = newEvent(request.getCorrelationId());
+        event.setPhase(phase);
+        publish(request.getCorrelationId(), EVENT_PHASE, event);
+    }
+
+    /**
+     * @param messages messages added to the schema while the property was processed
+     */
+    public void propertyCompleted(@Nonnull SchemaExtractorRequestDto request, @Nonnull String propertyName, int propertyIndex, int propertyCount,
+                                  long durationNanos, @Nonnull List<SchemaExtractorMessage> messages) {
+        // the query counters of the property are reset also when nobody listens
+        SparqlQueryTracer.SubjectQueries queries = queryTracer.takeSubjectQueries(request.getCorrelationId(), propertyName);
+        Extraction extraction = extractions.get(request.getCorrelationId());
+        if (extraction == null || !hasSubscribers(request.getCorrelationId())) {
+            return;
+        }
+        publishMessages(request.getCorrelationId(), extraction, new ArrayList<>(messages));
+        SchemaExtractorProgressEvent event = newEvent(request.getCorrelationId());
+        event.setPhase(extraction.phase);
+        event.setProperty(propertyName);
+        event.setPropertyIndex(propertyIndex);
+        event.setPropertyCount(propertyCount);
+        event.setQueries(queries.getCount());
+        event.setQueryMillis(queries.getMillis());
+        event.setDurationMillis(TimeUnit.NANOSECONDS.toMillis(durationNanos));
+        publish(request.getCorrelationId(), EVENT_PROPERTY, event);
+    }
+
+    /**
+     * Sends the remaining messages and the end event, then closes the streams of the extraction.
+     *
+     * @param error the error that stopped the extraction, null if the extraction has completed
+     */
+    public void extractionFinished(@Nonnull SchemaExtractorRequestDto request, @Nonnull Schema schema, @Nullable String error) {
+        String correlationId = request.getCorrelationId();
+        Extraction extraction = extractions.remove(correlationId);
+        if (extraction == null) {
+            return;
+        }
+        if (hasSubscribers(correlationId)) {
+            publishMessages(correlationId, extraction, newSchemaMessages(extraction, schema));
+        }
+        SchemaExtractorProgressEvent event = newEvent(correlationId);
+        event.setPhase(extraction.phase);
+        event.setError(error);
+        Runnable end = () -> {
+            List<SseEmitter> emitters = subscribers.remove(correlationId);
+            if (emitters != null) {
+                send(correlationId, emitters, EVENT_END, event);
+                emitters.forEach(SseEmitter::complete);
+            }
+        };
+        try {
+            sender.execute(end);
+        } catch (RejectedExecutionException e) {
+            // the end event is not dropped, otherwise the streams would stay open
+            end.run();
+        }
+    }
+
+    @Nonnull
+    private List<SchemaExtractorMessage> newSchemaMessages(@Nonnull Extraction extraction, @Nonnull Schema schema) {
+        List<SchemaExtractorMessage> schemaMessages = schema.getMessages();
+        synchronized (extraction) {
+            List<SchemaExtractorMessage> newMessages = new ArrayList<>(schemaMessages.subList(Math.min(extraction.checkedMessages, schemaMessages.size()), schemaMessages.size()));
+            extraction.checkedMessages = schemaMessages.size();
+            return newMessages;
+        }
+    }
+
+    private void publishMessages(@Nonnull String correlationId, @Nonnull Extraction extraction, @Nonnull List<SchemaExtractorMessage> messages) {
+        for (SchemaExtractorMessage message : messages) {
+            boolean added;
+            synchronized (extraction) {
+                added = extraction.publishedMessages.add(message);
+            }
+            if (added) {
+                SchemaExtractorProgressEvent event = newEvent(correlationId);
+                event.setMessage(message);
+                publish(correlationId, EVENT_MESSAGE, event);
+            }
+        }
+    }
+
+    private boolean hasSubscribers(@Nonnull String correlationId) {
+        List<SseEmitter> emitters = subscribers.get(correlationId);
+        return emitters != null && !emitters.isEmpty();
+    }
+
+    private void publish(@Nonnull String correlationId, @Nonnull String eventName, @Nonnull SchemaExtractorProgressEvent event) {
+        execute(() -> {
+            List<SseEmitter> emitters = subscribers.get(correlationId);
+            if (emitters != null) {
+                send(correlationId, emitters, eventName, event);
+            }
+        });
+    }
+
+    private void execute(@Nonnull Runnable sending) {
+        try {
+            sender.execute(sending);
+        } catch (RejectedExecutionException e) {
+            log.debug("Progress event dropped, the event queue is full");
+        }
+    }
+
+    private void send(@Nonnull String correlationId, @Nonnull List<SseEmitter> emitters, @Nonnull String eventName, @Nonnull SchemaExtractorProgressEvent event) {
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.send(SseEmitter.event().name(eventName).data(event, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                // the client has disconnected
+                unsubscribe(correlationId, emitter);
+            }
+        }
+    }
+
+    private void unsubscribe(@Nonnull String correlationId, @Nonnull SseEmitter emitter) {
+        subscribers.computeIfPresent(correlationId, (id, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+
+    @Nonnull
+    private static SchemaExtractorProgressEvent newEvent(@Nonnull String correlationId) {
+        SchemaExtractorProgressEvent event = new SchemaExtractorProgressEvent();
+        event.setCorrelationId(correlationId);
+        return event;
+    }
+
+    private static class Extraction {
+        private volatile String phase;
+        // messages of the schema that were already checked when a phase started
+        private int checkedMessages;
+        private final Set<SchemaExtractorMessage> publishedMessages = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+}
@@ -42,6 +42,9 @@ public enum SchemaExtractorQueries {
     CHECK_SUPERCLASS(
             "SELECT ?x WHERE { ?x <classificationPropertyA> <classA>. OPTIONAL { ?x <classificationPropertyB> ?value. FILTER (?value = <classB>) } FILTER (!BOUND(?value)) } LIMIT 1 ", QueryType.SMALL
     ),
+    CHECK_SUPERCLASSES(
+            "SELECT ?classB WHERE { <valuesClause> FILTER EXISTS { ?x <classificationPropertyA> <classA>. FILTER NOT EXISTS { ?x <classificationPropertyB> ?classB } } }", QueryType.SMALL
+    ),
 
     FIND_TRIPLE_COUNT_FOR_PROPERTY(
             "SELECT (COUNT(?x) as ?instances) WHERE { ?x <property> ?y. }", QueryType.LARGE
@@ -322,6 +325,12 @@ public enum SchemaExtractorQueries {
     COUNT_PROPERTY_LITERAL_VALUES_DISTINCT(
             "SELECT (COUNT(?x) as ?instances) WHERE { {SELECT DISTINCT ?x ?y WHERE {?x <property> ?y. FILTER(isLiteral(?y)) }}}", QueryType.LARGE
     ),
+    COUNT_URL_AND_LITERAL_VALUES_FOR_PROPERTIES(
+            "SELECT ?property (SUM(IF(isLiteral(?y), 0, 1)) as ?objectTriples) (SUM(IF(isLiteral(?y), 1, 0)) as ?dataTriples) WHERE { <valuesClause> ?x ?property ?y } GROUP BY ?property", QueryType.LARGE
+    ),
+    COUNT_URL_AND_LITERAL_VALUES_FOR_PROPERTIES_DISTINCT(
+            "SELECT ?property (SUM(IF(isLiteral(?y), 0, 1)) as ?objectTriples) (SUM(IF(isLiteral(?y), 1, 0)) as ?dataTriples) WHERE { {SELECT DISTINCT ?x ?property ?y WHERE { <valuesClause> ?x ?property ?y }} } GROUP BY ?property", QueryType.LARGE
+    ),
     CHECK_PROPERTY_LITERAL_VALUES(
             "SELECT ?y WHERE {?x <property> ?y. FILTER(isLiteral(?y))} LIMIT 1", QueryType.LARGE
     ),
@@ -436,6 +445,12 @@ public enum SchemaExtractorQueries {
     FIND_LABEL_WITH_LANG(
             "SELECT (STR(?z) as ?value) (LANG(?z) as ?language) WHERE { ?x ?y ?z. FILTER(?x = <resource1>) FILTER(?y = <resource2>) FILTER (customFilter) }", QueryType.SMALL
     ),
+    FIND_LABELS_FOR_RESOURCES(
+            "SELECT ?x (STR(?z) as ?value) (LANG(?z) as ?language) WHERE { <valuesClause> ?x <resource2> ?z. }", QueryType.SMALL
+    ),
+    FIND_LABELS_FOR_RESOURCES_WITH_LANG(
+            "SELECT ?x (STR(?z) as ?value) (LANG(?z) as ?language) WHERE { <valuesClause> ?x <resource2> ?z. FILTER (customFilter) }", QueryType.SMALL
+    ),
 
     FIND_INSTANCE_NAMESPACES(
             "SELECT DISTINCT ?x WHERE {?x <classificationProperty> <classA>. } LIMIT 1000", QueryType.LARGE
@@ -462,6 +477,25 @@ public enum SchemaExtractorQueries {
             "SELECT ?nspace (COUNT(?object) AS ?nsCount) WHERE { { SELECT ?object WHERE { ?subject <property> ?object . FILTER (isIRI(?object)) } LIMIT <limit> } BIND(REPLACE(STR(?object), \"(.*[/#]).*\", \"$1\") AS ?nspace)} GROUP BY ?nspace ORDER BY DESC(?nsCount)", QueryType.LARGE
     ),
 
+    FIND_INSTANCE_NAMESPACES_FOR_CLASSES(
+            "SELECT ?classA ?nspace (COUNT(?subject) AS ?nsCount) WHERE { <valuesClause> ?subject <classificationProperty> ?classA. FILTER (isIRI(?subject)) BIND(REPLACE(STR(?subject), \"(.*[/#]).*\", \"$1\") AS ?nspace) } GROUP BY ?classA ?nspace", QueryType.LARGE
+    ),
+    FIND_INSTANCE_NAMESPACES_FOR_PROPERTIES_SUBJECTS(
+            "SELECT ?property ?nspace (COUNT(?subject) AS ?nsCount) WHERE { <valuesClause> ?subject ?property ?object . FILTER (isIRI(?subject)) BIND(REPLACE(STR(?subject), \"(.*[/#]).*\", \"$1\") AS ?nspace) } GROUP BY ?property ?nspace", QueryType.LARGE
+    ),
+    FIND_INSTANCE_NAMESPACES_FOR_PROPERTIES_OBJECTS(
+            "SELECT ?property ?nspace (COUNT(?object) AS ?nsCount) WHERE { <valuesClause> ?subject ?property ?object . FILTER (isIRI(?object)) BIND(REPLACE(STR(?object), \"(.*[/#]).*\", \"$1\") AS ?nspace) } GROUP BY ?property ?nspace", QueryType.LARGE
+    ),
+    FIND_INSTANCE_SAMPLE_FOR_CLASS(
+            "SELECT ?subject WHERE { ?subject <classificationProperty> <classA>. FILTER (isIRI(?subject)) } LIMIT <limit>", QueryType.LARGE
+    ),
+    FIND_INSTANCE_SAMPLE_FOR_PROPERTY_SUBJECTS(
+            "SELECT ?subject WHERE { ?subject <property> ?object . FILTER (isIRI(?subject)) } LIMIT <limit>", QueryType.LARGE
+    ),
+    FIND_INSTANCE_SAMPLE_FOR_PROPERTY_OBJECTS(
+            "SELECT ?object WHERE { ?subject <property> ?object . FILTER (isIRI(?object)) } LIMIT <limit>", QueryType.LARGE
+    ),
+
     ENDPOINT_HEALTH_CHECK(
            "SELECT * WHERE {?a ?b ?c} LIMIT 1", QueryType.SMALL
     ),
@@ -0,0 +1,322 @@
+package lv.lumii.obis.schema.services.extractor.v2;
+
+import lombok.extern.slf4j.Slf4j;
+import lv.lumii.obis.schema.services.ObjectConversionService;
+import lv.lumii.obis.schema.services.SparqlEndpointException;
+import lv.lumii.obis.schema.services.extractor.v2.dto.SchemaExtractorPropertyShard;
+import lv.lumii.obis.schema.services.extractor.v2.dto.SchemaExtractorPropertyShardResult;
+import lv.lumii.obis.schema.services.extractor.v2.dto.SchemaExtractorShardJob;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static lv.lumii.obis.schema.constants.SchemaConstants.GLOBAL_SHARDS_PATH;
+
+/**
+ * Property shards of coordinator extractions in a directory shared with the worker instances (request parameter propertyShards).
+ * Every coordinator extraction has the directory {shards directory}/{correlationId} with the files
+ * job.json (the state needed by the workers), shard-NNNN.json (shards waiting for a worker), shard-NNNN.claimed (shards in progress)
+ * and shard-NNNN.result.json (processed shards). A shard is claimed by renaming its file, so each shard is processed by one instance only.
+ * The claim file holds the claim id of its instance and is refreshed periodically while the shard is processed; a claim that is not refreshed
+ * is returned to the waiting shards, and then only the instance that holds the current claim may publish the result.
+ * The directory is set with the application property schema-extractor.shards.directory (default ./shards).
+ */
+@Slf4j
+@Service
+public class SchemaExtractorShardService {
+
+    private static final String JOB_FILE = "job.json";
+    private static final String SHARD_FILE_FORMAT = "shard-%04d.json";
+    private static final String CLAIMED_FILE_FORMAT = "shard-%04d.claimed";
+    private static final String RESULT_FILE_FORMAT = "shard-%04d.result.json";
+    private static final Pattern PENDING_SHARD_FILE = Pattern.compile("shard-(\\d+)\\.json");
+    private static final Pattern CLAIMED_SHARD_FILE = Pattern.compile("shard-(\\d+)\\.claimed");
+
+    // a claimed shard is returned to the waiting shards if its claim has not been refreshed for this time
+    private static final Duration STALE_CLAIM_TIME = Duration.ofMinutes(30);
+    private static final long CLAIM_REFRESH_INTERVAL_MINUTES = 1L;
+
+    @Autowired
+    private ObjectConversionService objectConversionService;
+
+    @Value("${schema-extractor.shards.directory:" + GLOBAL_SHARDS_PATH + "}")
+    private String shardsDirectory;
+
+    // shards claimed by this instance and not completed yet
+    private final Set<ClaimedShard> heldClaims = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService claimRefresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "property-shard-claims");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SchemaExtractorShardService() {
+        claimRefresher.scheduleWithFixedDelay(this::refreshClaims, CLAIM_REFRESH_INTERVAL_MINUTES, CLAIM_REFRESH_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Publishes the job of the coordinator extraction and its shards for the workers.
+     */
+    public void publish(@Nonnull String correlationId, @Nonnull SchemaExtractorShardJob job, @Nonnull List<SchemaExtractorPropertyShard> shards) {
+        Path directory = getDirectory(correlationId);
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new SparqlEndpointException("Cannot create the shards directory " + directory.toAbsolutePath(), e);
+        }
+        // the job is written first, so a worker that sees a shard can always read the job
+        write(directory.resolve(JOB_FILE), job);
+        for (SchemaExtractorPropertyShard shard : shards) {
+            write(directory.resolve(String.format(SHARD_FILE_FORMAT, shard.getShardIndex())), shard);
+        }
+        log.info(correlationId + String.format(" - published %d property shards in %s", shards.size(), directory.toAbsolutePath()));
+    }
+
+    /**
+     * Claims the next waiting shard of the given coordinator extraction.
+     *
+     * @return the claimed shard or null if no shard is waiting
+     */
+    @Nullable
+    public ClaimedShard claim(@Nonnull String correlationId) {
+        Path directory = getDirectory(correlationId);
+        for (int shardIndex : listShardIndexes(directory, PENDING_SHARD_FILE)) {
+            Path shardFile = directory.resolve(String.format(SHARD_FILE_FORMAT, shardIndex));
+            Path claimFile = directory.resolve(String.format(CLAIMED_FILE_FORMAT, shardIndex));
+            try {
+                Files.move(shardFile, claimFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // claimed by another instance
+                continue;
+            }
+            try {
+                SchemaExtractorPropertyShard shard = objectConversionService.readJsonFromFile(claimFile, SchemaExtractorPropertyShard.class);
+                shard.setClaimId(UUID.randomUUID().toString());
+                // rewriting the file also refreshes the claim
+                write(claimFile, shard);
+                ClaimedShard claimedShard = new ClaimedShard(correlationId, shard, claimFile);
+                heldClaims.add(claimedShard);
+                return claimedShard;
+            } catch (IOException | RuntimeException e) {
+                log.error(correlationId + " - cannot read the claimed property shard " + claimFile.toAbsolutePath() + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Claims a waiting shard of any coordinator extraction that uses the shards directory.
+     */
+    @Nullable
+    public ClaimedShard claimAny() {
+        Path root = Paths.get(shardsDirectory);
+        if (!Files.isDirectory(root)) {
+            return null;
+        }
+        List<Path> jobDirectories;
+        try (Stream<Path> files = Files.list(root)) {
+            jobDirectories = files.filter(file -> Files.isRegularFile(file.resolve(JOB_FILE))).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            log.error("Cannot read the shards directory " + root.toAbsolutePath() + ": " + e.getMessage());
+            return null;
+        }
+        for (Path jobDirectory : jobDirectories) {
+            ClaimedShard claimedShard = claim(jobDirectory.getFileName().toString());
+            if (claimedShard != null) {
+                return claimedShard;
+            }
+        }
+        return null;
+    }
+
+    @Nonnull
+    public SchemaExtractorShardJob readJob(@Nonnull String correlationId) {
+        Path jobFile = getDirectory(correlationId).resolve(JOB_FILE);
+        try {
+            return objectConversionService.readJsonFromFile(jobFile, SchemaExtractorShardJob.class);
+        } catch (IOException e) {
+            throw new SparqlEndpointException("Cannot read the property shard job " + jobFile.toAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Saves the result of the claimed shard for the coordinator. The result is dropped if the claim was meanwhile returned to the waiting shards
+     * and possibly taken by another instance.
+     */
+    public void complete(@Nonnull ClaimedShard claimedShard, @Nonnull SchemaExtractorPropertyShardResult result) {
+        try {
+            Path directory = getDirectory(claimedShard.correlationId);
+            if (!Files.isDirectory(directory)) {
+                // the coordinator extraction has already finished
+                return;
+            }
+            if (!isOwner(claimedShard)) {
+                log.warn(claimedShard.correlationId + String.format(" - the claim of the property shard %d was lost, its result is dropped", claimedShard.shard.getShardIndex()));
+                return;
+            }
+            write(directory.resolve(String.format(RESULT_FILE_FORMAT, claimedShard.shard.getShardIndex())), result);
+            deleteFile(claimedShard.claimFile);
+        } finally {
+            heldClaims.remove(claimedShard);
+        }
+    }
+
+    @Nullable
+    public SchemaExtractorPropertyShardResult readResult(@Nonnull String correlationId, int shardIndex) {
+        Path resultFile = getDirectory(correlationId).resolve(String.format(RESULT_FILE_FORMAT, shardIndex));
+        if (!Files.isRegularFile(resultFile)) {
+            return null;
+        }
+        try {
+            return objectConversionService.readJsonFromFile(resultFile, SchemaExtractorPropertyShardResult.class);
+        } catch (IOException e) {
+            log.error(correlationId + " - cannot read the property shard result " + resultFile.toAbsolutePath() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the shards of workers that stopped responding to the waiting shards.
+     */
+    public void releaseStaleClaims(@Nonnull String correlationId) {
+        Path directory = getDirectory(correlationId);
+        Instant staleBefore = Instant.now().minus(STALE_CLAIM_TIME);
+        for (int shardIndex : listShardIndexes(directory, CLAIMED_SHARD_FILE)) {
+            Path claimFile = directory.resolve(String.format(CLAIMED_FILE_FORMAT, shardIndex));
+            try {
+                if (Files.getLastModifiedTime(claimFile).toInstant().isBefore(staleBefore)) {
+                    Files.move(claimFile, directory.resolve(String.format(SHARD_FILE_FORMAT, shardIndex)), StandardCopyOption.ATOMIC_MOVE);
+                    log.warn(correlationId + String.format(" - the worker of the property shard %d does not respond, the shard is returned to the waiting shards", shardIndex));
+                }
+            } catch (IOException e) {
+                // the shard was completed in the meantime
+            }
+        }
+    }
+
+    public void removeJob(@Nonnull String correlationId) {
+        Path directory = getDirectory(correlationId);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(this::deleteFile);
+        } catch (IOException e) {
+            log.error(correlationId + " - cannot remove the property shards " + directory.toAbsolutePath());
+        }
+    }
+
+    private void refreshClaims() {
+        for (ClaimedShard claimedShard : heldClaims) {
+            if (!isOwner(claimedShard)) {
+                continue;
+            }
+            try {
+                Files.setLastModifiedTime(claimedShard.claimFile, FileTime.from(Instant.now()));
+            } catch (IOException e) {
+                log.warn(claimedShard.correlationId + " - cannot refresh the claim of the property shard " + claimedShard.shard.getShardIndex());
+            }
+        }
+    }
+
+    private boolean isOwner(@Nonnull ClaimedShard claimedShard) {
+        if (!Files.isRegularFile(claimedShard.claimFile)) {
+            return false;
+        }
+        try {
+            SchemaExtractorPropertyShard shard = objectConversionService.readJsonFromFile(claimedShard.claimFile, SchemaExtractorPropertyShard.class);
+            return Objects.equals(claimedShard.shard.getClaimId(), shard.getClaimId());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Nonnull
+    private List<Integer> listShardIndexes(@Nonnull Path directory, @Nonnull Pattern fileNamePattern) {
+        List<Integer> shardIndexes = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return shardIndexes;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = fileNamePattern.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    shardIndexes.add(Integer.parseInt(matcher.group(1)));
+                }
+            });
+        } catch (IOException e) {
+            log.error("Cannot read the property shards from " + directory.toAbsolutePath() + ": " + e.getMessage());
+        }
+        shardIndexes.sort(Comparator.naturalOrder());
+        return shardIndexes;
+    }
+
+    private void write(@Nonnull Path file, @Nonnull Object value) {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            objectConversionService.writeJsonToFile(value, tempFile);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            deleteFile(tempFile);
+            throw new SparqlEndpointException("Cannot save the property shard file " + file.toAbsolutePath(), e);
+        }
+    }
+
+    @Nonnull
+    private Path getDirectory(@Nonnull String correlationId) {
+        return Paths.get(shardsDirectory, correlationId);
+    }
+
+    private void deleteFile(@Nonnull Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.error("Cannot delete the property shard file " + file.toAbsolutePath());
+        }
+    }
+
+    /**
+     * Shard claimed by this instance, its claim is refreshed until the shard is completed.
+     */
+    public static class ClaimedShard {
+
+        private final String correlationId;
+        private final SchemaExtractorPropertyShard shard;
+        private final Path claimFile;
+
+        private ClaimedShard(@Nonnull String correlationId, @Nonnull SchemaExtractorPropertyShard shard, @Nonnull Path claimFile) {
+            this.correlationId = correlationId;
+            this.shard = shard;
+            this.claimFile = claimFile;
+        }
+
+        @Nonnull
+        public String getCorrelationId() {
+            return correlationId;
+        }
+
+        @Nonnull
+        public SchemaExtractorPropertyShard getShard() {
+            return shard;
+        }
+    }
+
+}
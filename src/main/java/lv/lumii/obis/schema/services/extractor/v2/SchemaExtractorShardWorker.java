@@ -0,0 +1,84 @@
+package lv.lumii.obis.schema.services.extractor.v2;
+
+import lombok.extern.slf4j.Slf4j;
+import lv.lumii.obis.schema.services.common.SparqlEndpointProcessor;
+import lv.lumii.obis.schema.services.extractor.v2.dto.SchemaExtractorPropertyShardResult;
+import lv.lumii.obis.schema.services.extractor.v2.dto.SchemaExtractorShardJob;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * Processes the property shards published by the coordinator extractions in the shared shards directory.
+ * Started only on the instances with the application property schema-extractor.shards.worker=true.
+ */
+@Slf4j
+@Service
+public class SchemaExtractorShardWorker {
+
+    private static final long POLLING_INTERVAL_MILLIS = 2000L;
+
+    @Autowired
+    private SchemaExtractorShardService shardService;
+
+    @Autowired
+    private SchemaExtractor schemaExtractor;
+
+    @Autowired
+    private SparqlEndpointProcessor sparqlEndpointProcessor;
+
+    @Value("${schema-extractor.shards.worker:false}")
+    private boolean enabled;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        Thread thread = new Thread(this::run, "property-shard-worker");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Property shard worker started");
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            SchemaExtractorShardService.ClaimedShard claimedShard = shardService.claimAny();
+            if (claimedShard == null) {
+                try {
+                    Thread.sleep(POLLING_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                continue;
+            }
+            String correlationId = claimedShard.getCorrelationId();
+            log.info(correlationId + String.format(" - processing the property shard %d", claimedShard.getShard().getShardIndex()));
+            SchemaExtractorPropertyShardResult result;
+            SchemaExtractorShardJob job = null;
+            try {
+                job = shardService.readJob(correlationId);
+                // the queries of the worker have their own statistics, also when the coordinator runs in the same instance
+                job.getRequest().setCorrelationId(String.format("%s-shard-%d", correlationId, claimedShard.getShard().getShardIndex()));
+                result = schemaExtractor.processPropertyShard(job, claimedShard.getShard());
+            } catch (RuntimeException e) {
+                // the coordinator processes the shard itself
+                result = new SchemaExtractorPropertyShardResult();
+                result.setShardIndex(claimedShard.getShard().getShardIndex());
+                result.setError(StringUtils.defaultIfEmpty(e.getMessage(), e.getClass().getName()));
+            }
+            try {
+                shardService.complete(claimedShard, result);
+            } catch (RuntimeException e) {
+                log.error(correlationId + " - cannot save the property shard result: " + e.getMessage());
+            }
+            if (job != null) {
+                sparqlEndpointProcessor.logStatistics(job.getRequest());
+            }
+        }
+    }
+
+}
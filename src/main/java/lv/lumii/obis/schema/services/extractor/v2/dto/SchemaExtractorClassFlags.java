@@ -0,0 +1,28 @@
+package lv.lumii.obis.schema.services.extractor.v2.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Quality flags of the outgoing and incoming properties of a class that are set while the properties are processed.
+ * The flags only go down (not set - 5 - 3), so the flags from several sources are merged by taking the lowest value.
+ */
+@Setter
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SchemaExtractorClassFlags {
+
+    private String className;
+    private Integer outgoingPropertiesOK;
+    private Integer incomingPropertiesOK;
+
+    public SchemaExtractorClassFlags() {
+    }
+
+    public SchemaExtractorClassFlags(String className, Integer outgoingPropertiesOK, Integer incomingPropertiesOK) {
+        this.className = className;
+        this.outgoingPropertiesOK = outgoingPropertiesOK;
+        this.incomingPropertiesOK = incomingPropertiesOK;
+    }
+}
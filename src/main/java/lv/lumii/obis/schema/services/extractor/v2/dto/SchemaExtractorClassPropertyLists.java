@@ -0,0 +1,31 @@
+package lv.lumii.obis.schema.services.extractor.v2.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+import lv.lumii.obis.schema.model.v2.TripleCount;
+
+import java.util.Map;
+
+/**
+ * Outgoing and incoming properties of a class determined before the properties are processed in parallel, passed to the shard workers.
+ * The full list flag is false if the properties were found with limits.
+ */
+@Setter
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SchemaExtractorClassPropertyLists {
+
+    private String className;
+    private Map<String, TripleCount> outgoingProperties;
+    private Boolean outgoingPropertiesFullList;
+    private Map<String, TripleCount> incomingProperties;
+    private Boolean incomingPropertiesFullList;
+
+    public SchemaExtractorClassPropertyLists() {
+    }
+
+    public SchemaExtractorClassPropertyLists(String className) {
+        this.className = className;
+    }
+}
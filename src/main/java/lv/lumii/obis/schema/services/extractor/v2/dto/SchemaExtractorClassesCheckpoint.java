@@ -0,0 +1,51 @@
+package lv.lumii.obis.schema.services.extractor.v2.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+import lv.lumii.obis.schema.model.v2.SchemaClass;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorClassNodeInfo;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorMessage;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State of the schema extraction after all classes, class intersections and superclasses are calculated.
+ */
+@Setter
+@Getter
+public class SchemaExtractorClassesCheckpoint {
+
+    private String endpointUrl;
+    private String graphName;
+
+    private List<SchemaClass> classes;
+    private List<SchemaExtractorClassNodeInfo> graphOfClasses;
+    private Boolean hasBlankNodeSubjects;
+    private List<SchemaExtractorMessage> messages;
+
+    @Nonnull
+    public List<SchemaClass> getClasses() {
+        if (classes == null) {
+            classes = new ArrayList<>();
+        }
+        return classes;
+    }
+
+    @Nonnull
+    public List<SchemaExtractorClassNodeInfo> getGraphOfClasses() {
+        if (graphOfClasses == null) {
+            graphOfClasses = new ArrayList<>();
+        }
+        return graphOfClasses;
+    }
+
+    @Nonnull
+    public List<SchemaExtractorMessage> getMessages() {
+        if (messages == null) {
+            messages = new ArrayList<>();
+        }
+        return messages;
+    }
+}
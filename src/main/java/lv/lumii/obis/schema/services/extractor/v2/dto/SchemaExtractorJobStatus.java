@@ -0,0 +1,34 @@
+package lv.lumii.obis.schema.services.extractor.v2.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Status of an extraction job. queuePosition is given for the queued jobs (1 - the next job to start),
+ * propertyIndex/propertyCount are given in the property phases,
+ * phaseRemainingSeconds is estimated from the time spent on the already started properties of the phase.
+ */
+@Setter
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SchemaExtractorJobStatus {
+
+    public enum State {queued, running, completed, failed, cancelled}
+
+    private String jobId;
+    private State state;
+    private String endpointUrl;
+    private Integer priority;
+    private Integer queuePosition;
+    private String phase;
+    private Integer propertyIndex;
+    private Integer propertyCount;
+    private Long queriesDone;
+    private Long phaseRemainingSeconds;
+    private String submitTime;
+    private String startTime;
+    private String endTime;
+    private String error;
+
+}
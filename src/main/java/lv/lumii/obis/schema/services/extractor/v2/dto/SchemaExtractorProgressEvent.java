@@ -0,0 +1,30 @@
+package lv.lumii.obis.schema.services.extractor.v2.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorMessage;
+
+/**
+ * Data of one progress event of an extraction. The event name tells which fields are set:
+ * phase - phase; property - phase, property, propertyIndex, propertyCount, queries, queryMillis, durationMillis;
+ * message - message; end - phase, error.
+ */
+@Setter
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SchemaExtractorProgressEvent {
+
+    private String correlationId;
+    private long timestamp = System.currentTimeMillis();
+    private String phase;
+    private String property;
+    private Integer propertyIndex;
+    private Integer propertyCount;
+    private Long queries;
+    private Long queryMillis;
+    private Long durationMillis;
+    private SchemaExtractorMessage message;
+    private String error;
+
+}
@@ -0,0 +1,45 @@
+package lv.lumii.obis.schema.services.extractor.v2.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorMessage;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorPropertyNodeInfo;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State of the schema extraction after the list of properties, the property level statistics and the property types are calculated.
+ * Properties are kept in the processing order.
+ */
+@Setter
+@Getter
+public class SchemaExtractorPropertiesCheckpoint {
+
+    private List<SchemaExtractorPropertyNodeInfo> properties;
+    private Map<String, Long> distinctSubjects;
+    private Map<String, Long> distinctObjects;
+    private Map<String, Long> blankNodeSubjects;
+    private Map<String, Long> blankNodeObjects;
+    private Boolean calculateBlankNodeObjects;
+    private Boolean hasBlankNodeObjects;
+    private List<SchemaExtractorMessage> messages;
+
+    @Nonnull
+    public List<SchemaExtractorPropertyNodeInfo> getProperties() {
+        if (properties == null) {
+            properties = new ArrayList<>();
+        }
+        return properties;
+    }
+
+    @Nonnull
+    public List<SchemaExtractorMessage> getMessages() {
+        if (messages == null) {
+            messages = new ArrayList<>();
+        }
+        return messages;
+    }
+}
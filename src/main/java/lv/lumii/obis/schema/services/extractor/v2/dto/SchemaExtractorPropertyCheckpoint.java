@@ -0,0 +1,47 @@
+package lv.lumii.obis.schema.services.extractor.v2.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorMessage;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorPropertyNodeInfo;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fully processed property together with the messages logged while processing it
+ * and the class flags that have changed since the previous saved property (classes.json is saved before the properties are processed).
+ */
+@Setter
+@Getter
+public class SchemaExtractorPropertyCheckpoint {
+
+    private SchemaExtractorPropertyNodeInfo property;
+    private List<SchemaExtractorMessage> messages;
+    private List<SchemaExtractorClassFlags> classFlags;
+
+    public SchemaExtractorPropertyCheckpoint() {
+    }
+
+    public SchemaExtractorPropertyCheckpoint(SchemaExtractorPropertyNodeInfo property, List<SchemaExtractorMessage> messages) {
+        this.property = property;
+        this.messages = messages;
+    }
+
+    @Nonnull
+    public List<SchemaExtractorMessage> getMessages() {
+        if (messages == null) {
+            messages = new ArrayList<>();
+        }
+        return messages;
+    }
+
+    @Nonnull
+    public List<SchemaExtractorClassFlags> getClassFlags() {
+        if (classFlags == null) {
+            classFlags = new ArrayList<>();
+        }
+        return classFlags;
+    }
+}
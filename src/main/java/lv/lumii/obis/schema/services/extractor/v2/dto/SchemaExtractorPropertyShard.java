@@ -0,0 +1,36 @@
+package lv.lumii.obis.schema.services.extractor.v2.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Properties of the coordinator extraction that are processed by one worker. claimId identifies the instance that has claimed the shard.
+ */
+@Setter
+@Getter
+public class SchemaExtractorPropertyShard {
+
+    private int shardIndex;
+    private List<String> propertyNames;
+    private String claimId;
+
+    public SchemaExtractorPropertyShard() {
+    }
+
+    public SchemaExtractorPropertyShard(int shardIndex, List<String> propertyNames) {
+        this.shardIndex = shardIndex;
+        this.propertyNames = propertyNames;
+    }
+
+    @Nonnull
+    public List<String> getPropertyNames() {
+        if (propertyNames == null) {
+            propertyNames = new ArrayList<>();
+        }
+        return propertyNames;
+    }
+}
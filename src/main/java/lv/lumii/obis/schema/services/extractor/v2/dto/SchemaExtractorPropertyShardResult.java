@@ -0,0 +1,38 @@
+package lv.lumii.obis.schema.services.extractor.v2.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Processed properties of one shard with their messages and the class flags set while processing them,
+ * or the error if the worker could not process the shard.
+ */
+@Setter
+@Getter
+public class SchemaExtractorPropertyShardResult {
+
+    private int shardIndex;
+    private List<SchemaExtractorPropertyCheckpoint> properties;
+    private List<SchemaExtractorClassFlags> classFlags;
+    private String error;
+
+    @Nonnull
+    public List<SchemaExtractorPropertyCheckpoint> getProperties() {
+        if (properties == null) {
+            properties = new ArrayList<>();
+        }
+        return properties;
+    }
+
+    @Nonnull
+    public List<SchemaExtractorClassFlags> getClassFlags() {
+        if (classFlags == null) {
+            classFlags = new ArrayList<>();
+        }
+        return classFlags;
+    }
+}
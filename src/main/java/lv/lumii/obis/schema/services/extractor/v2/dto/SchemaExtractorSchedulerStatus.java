@@ -0,0 +1,46 @@
+package lv.lumii.obis.schema.services.extractor.v2.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+import lv.lumii.obis.schema.services.common.SparqlEndpointBudget;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Running and queued extraction jobs (the queued jobs in the order they will be started) and the query budgets of the endpoints.
+ */
+@Setter
+@Getter
+public class SchemaExtractorSchedulerStatus {
+
+    private int maxConcurrentJobs;
+    private List<SchemaExtractorJobStatus> runningJobs;
+    private List<SchemaExtractorJobStatus> queuedJobs;
+    private List<SparqlEndpointBudget.EndpointStatus> endpoints;
+
+    @Nonnull
+    public List<SchemaExtractorJobStatus> getRunningJobs() {
+        if (runningJobs == null) {
+            runningJobs = new ArrayList<>();
+        }
+        return runningJobs;
+    }
+
+    @Nonnull
+    public List<SchemaExtractorJobStatus> getQueuedJobs() {
+        if (queuedJobs == null) {
+            queuedJobs = new ArrayList<>();
+        }
+        return queuedJobs;
+    }
+
+    @Nonnull
+    public List<SparqlEndpointBudget.EndpointStatus> getEndpoints() {
+        if (endpoints == null) {
+            endpoints = new ArrayList<>();
+        }
+        return endpoints;
+    }
+}
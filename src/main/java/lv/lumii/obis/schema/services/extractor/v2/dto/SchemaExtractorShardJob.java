@@ -0,0 +1,80 @@
+package lv.lumii.obis.schema.services.extractor.v2.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+import lv.lumii.obis.schema.model.v2.SchemaClass;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorClassNodeInfo;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorPropertyNodeInfo;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorRequestDto;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State of the coordinator extraction that the workers need to process the property shards:
+ * the request, the classes with their outgoing and incoming properties, and all properties with their types and property level statistics.
+ * The request fields that are not serialized with the request are stored separately.
+ */
+@Setter
+@Getter
+public class SchemaExtractorShardJob {
+
+    private SchemaExtractorRequestDto request;
+    private Map<String, String> queries;
+    private Boolean postMethod;
+    private String acceptHeaderForSparqlResults;
+    private List<SchemaClass> classes;
+    private List<SchemaExtractorClassPropertyLists> classPropertyLists;
+    private List<SchemaExtractorClassNodeInfo> graphOfClasses;
+    private Boolean hasBlankNodeSubjects;
+    private Boolean hasBlankNodeObjects;
+    private List<SchemaExtractorPropertyNodeInfo> properties;
+    private Map<String, Long> distinctSubjects;
+    private Map<String, Long> distinctObjects;
+    private Map<String, Long> blankNodeSubjects;
+    private Map<String, Long> blankNodeObjects;
+    private Boolean calculateBlankNodeObjects;
+
+    @Nonnull
+    public Map<String, String> getQueries() {
+        if (queries == null) {
+            queries = new HashMap<>();
+        }
+        return queries;
+    }
+
+    @Nonnull
+    public List<SchemaClass> getClasses() {
+        if (classes == null) {
+            classes = new ArrayList<>();
+        }
+        return classes;
+    }
+
+    @Nonnull
+    public List<SchemaExtractorClassPropertyLists> getClassPropertyLists() {
+        if (classPropertyLists == null) {
+            classPropertyLists = new ArrayList<>();
+        }
+        return classPropertyLists;
+    }
+
+    @Nonnull
+    public List<SchemaExtractorClassNodeInfo> getGraphOfClasses() {
+        if (graphOfClasses == null) {
+            graphOfClasses = new ArrayList<>();
+        }
+        return graphOfClasses;
+    }
+
+    @Nonnull
+    public List<SchemaExtractorPropertyNodeInfo> getProperties() {
+        if (properties == null) {
+            properties = new ArrayList<>();
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,177 @@
+package lv.lumii.obis.schema.services.common;
+
+import lv.lumii.obis.schema.services.common.dto.QueryResult;
+import lv.lumii.obis.schema.services.common.dto.SparqlEndpointConfig;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorRequestDto.ResultsParserMode;
+import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The rows read from the JSON and TSV responses must have the same values, kinds and data types as the rows read with Jena.
+ */
+public class SparqlResultsReaderTest {
+
+    private static final String JSON_MEDIA_TYPE = "application/sparql-results+json";
+    private static final String TSV_MEDIA_TYPE = "text/tab-separated-values; charset=utf-8";
+
+    private static final String XSD = "http://www.w3.org/2001/XMLSchema#";
+    private static final String RDF_LANG_STRING = "http://www.w3.org/1999/02/22-rdf-syntax-ns#langString";
+
+    // written with a separate backslash, so that javac does not treat it as a unicode escape of the source
+    private static final String ESCAPED_E_ACUTE = "\\" + "u00e9";
+
+    @Test
+    public void jsonStringEscapes() throws Exception {
+        List<QueryResult> rows = read(ResultsParserMode.json, 200, JSON_MEDIA_TYPE,
+                "{\"head\": {\"vars\": [\"o\"]}, \"results\": {\"bindings\": ["
+                        + "{\"o\": {\"type\": \"literal\", \"value\": \"a\\\"b\\\\c\\td\\n" + ESCAPED_E_ACUTE + "\"}}]}}");
+
+        assertEquals(1, rows.size());
+        assertEquals("a\"b\\c\td\n\u00e9", rows.get(0).getValue(0));
+        assertEquals(XSD + "string", rows.get(0).getDataType(0));
+    }
+
+    @Test
+    public void jsonResultsBeforeHead() throws Exception {
+        List<QueryResult> rows = read(ResultsParserMode.json, 200, JSON_MEDIA_TYPE,
+                "{\"results\": {\"bindings\": ["
+                        + "{\"s\": {\"type\": \"uri\", \"value\": \"http://example.org/a\"}, \"c\": {\"type\": \"literal\", \"value\": \"1\", \"datatype\": \"" + XSD + "integer\"}},"
+                        + "{\"s\": {\"type\": \"uri\", \"value\": \"http://example.org/b\"}}]},"
+                        + " \"head\": {\"vars\": [\"s\", \"c\"]}}");
+
+        assertEquals(2, rows.size());
+        assertEquals("http://example.org/a", rows.get(0).getValue("s"));
+        assertEquals(Long.valueOf(1L), rows.get(0).getLongValue("c"));
+        assertEquals("http://example.org/b", rows.get(1).getValue("s"));
+        assertEquals(QueryResult.KIND_UNBOUND, rows.get(1).getKind(1));
+    }
+
+    @Test
+    public void jsonBlankNodesAndLiterals() throws Exception {
+        List<QueryResult> rows = read(ResultsParserMode.json, 200, JSON_MEDIA_TYPE,
+                "{\"head\": {\"vars\": [\"b\", \"t\", \"l\", \"old\"]}, \"results\": {\"bindings\": [{"
+                        + "\"b\": {\"type\": \"bnode\", \"value\": \"b0\"},"
+                        + "\"t\": {\"type\": \"literal\", \"value\": \"2020-01-01\", \"datatype\": \"" + XSD + "date\"},"
+                        + "\"l\": {\"type\": \"literal\", \"value\": \"chat\", \"xml:lang\": \"fr\"},"
+                        + "\"old\": {\"type\": \"typed-literal\", \"value\": \"1.5\", \"datatype\": \"" + XSD + "decimal\"}}]}}");
+
+        assertEquals(1, rows.size());
+        QueryResult row = rows.get(0);
+        assertEquals(QueryResult.KIND_RESOURCE, row.getKind(0));
+        assertNull(row.getValue(0));
+        assertEquals(QueryResult.KIND_LITERAL, row.getKind(1));
+        assertEquals("2020-01-01", row.getValue(1));
+        assertEquals(XSD + "date", row.getDataType(1));
+        assertEquals("chat", row.getValue(2));
+        assertEquals(RDF_LANG_STRING, row.getDataType(2));
+        assertEquals("1.5", row.getValue(3));
+        assertEquals(XSD + "decimal", row.getDataType(3));
+    }
+
+    @Test
+    public void jsonEmptyResults() throws Exception {
+        SparqlResultRows rows = open(ResultsParserMode.json, 200, JSON_MEDIA_TYPE, "{\"head\": {\"vars\": [\"s\"]}, \"results\": {\"bindings\": []}}");
+
+        assertNotNull(rows);
+        assertEquals(0, rows.getColumns().indexOf("s"));
+        assertNull(rows.next());
+    }
+
+    @Test
+    public void tsvCrLfLineEnds() throws Exception {
+        List<QueryResult> rows = read(ResultsParserMode.tsv, 200, TSV_MEDIA_TYPE,
+                "?s\t?o\r\n<http://example.org/a>\t\"x\"@en\r\n_:b0\t42\r\n");
+
+        assertEquals(2, rows.size());
+        assertEquals("http://example.org/a", rows.get(0).getValue("s"));
+        assertEquals("x", rows.get(0).getValue("o"));
+        assertEquals(RDF_LANG_STRING, rows.get(0).getDataType(1));
+        assertEquals(QueryResult.KIND_RESOURCE, rows.get(1).getKind(0));
+        assertNull(rows.get(1).getValue(0));
+        assertEquals("42", rows.get(1).getValue("o"));
+        assertEquals(XSD + "integer", rows.get(1).getDataType(1));
+    }
+
+    @Test
+    public void tsvStringEscapes() throws Exception {
+        List<QueryResult> rows = read(ResultsParserMode.tsv, 200, TSV_MEDIA_TYPE,
+                "?o\n\"a\\tb\\\"c\\\\" + ESCAPED_E_ACUTE + "\"^^<" + XSD + "string>\n");
+
+        assertEquals(1, rows.size());
+        assertEquals("a\tb\"c\\\u00e9", rows.get(0).getValue(0));
+        assertEquals(XSD + "string", rows.get(0).getDataType(0));
+    }
+
+    @Test
+    public void tsvEmptyResults() throws Exception {
+        SparqlResultRows rows = open(ResultsParserMode.tsv, 200, TSV_MEDIA_TYPE, "?s\t?o\n");
+
+        assertNotNull(rows);
+        assertEquals(1, rows.getColumns().indexOf("o"));
+        assertNull(rows.next());
+    }
+
+    @Test
+    public void anySuccessStatusIsRead() throws Exception {
+        List<QueryResult> rows = read(ResultsParserMode.json, 203, JSON_MEDIA_TYPE,
+                "{\"head\": {\"vars\": [\"s\"]}, \"results\": {\"bindings\": [{\"s\": {\"type\": \"uri\", \"value\": \"http://example.org/a\"}}]}}");
+
+        assertEquals(1, rows.size());
+        assertEquals("http://example.org/a", rows.get(0).getValue("s"));
+    }
+
+    @Test(expected = QueryExceptionHTTP.class)
+    public void errorStatusIsReported() throws Exception {
+        open(ResultsParserMode.json, 500, "text/plain", "Query timeout");
+    }
+
+    @Nonnull
+    private static List<QueryResult> read(@Nonnull ResultsParserMode format, int statusCode, @Nonnull String contentType, @Nonnull String body) throws Exception {
+        List<QueryResult> rows = new ArrayList<>();
+        try (SparqlResultRows resultRows = open(format, statusCode, contentType, body)) {
+            assertNotNull(resultRows);
+            QueryResult row;
+            while ((row = resultRows.next()) != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SparqlResultRows open(@Nonnull ResultsParserMode format, int statusCode, @Nonnull String contentType, @Nonnull String body) throws Exception {
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(statusCode);
+        when(response.headers()).thenReturn(HttpHeaders.of(Map.of("Content-Type", Collections.singletonList(contentType)), (name, value) -> true));
+        when(response.body()).thenReturn(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        HttpClient httpClient = mock(HttpClient.class);
+        doReturn(response).when(httpClient).send(any(HttpRequest.class), any());
+
+        SparqlEndpointConfig config = new SparqlEndpointConfig("results-reader-test", "http://example.org/sparql", null, false, null);
+        config.setHttpClient(httpClient);
+        config.setResultsParser(format);
+        return new SparqlResultsReader().open(config, "SELECT * WHERE { ?s ?p ?o }", null);
+    }
+
+}
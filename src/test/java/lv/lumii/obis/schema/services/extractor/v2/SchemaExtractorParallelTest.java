@@ -0,0 +1,189 @@
+package lv.lumii.obis.schema.services.extractor.v2;
+
+import lv.lumii.obis.schema.model.v2.Schema;
+import lv.lumii.obis.schema.model.v2.SchemaClass;
+import lv.lumii.obis.schema.services.common.SparqlEndpointProcessor;
+import lv.lumii.obis.schema.services.common.SparqlQueryBuilder;
+import lv.lumii.obis.schema.services.common.dto.QueryResponse;
+import lv.lumii.obis.schema.services.common.dto.QueryResult;
+import lv.lumii.obis.schema.services.common.dto.QueryResultColumns;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorMessage;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorPropertyNodeInfo;
+import lv.lumii.obis.schema.services.extractor.dto.SchemaExtractorRequestDto;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+import static lv.lumii.obis.schema.constants.SchemaConstants.*;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The property sources found in parallel must be the same as in the sequential processing, whichever parallel task runs first.
+ * The endpoint fails the property source queries, so the sources and their triple counts come from the fallbacks
+ * that use the outgoing properties of the classes, determined by the first property that needs them.
+ */
+public class SchemaExtractorParallelTest {
+
+    private static final String NAMESPACE = "http://example.org/";
+    private static final int PROPERTY_COUNT = 24;
+    private static final int PARALLEL_RUNS = 5;
+
+    @Test
+    public void parallelPropertySourcesMatchSequential() {
+        String sequentialResult = findPropertySources(1);
+        for (int i = 0; i < PARALLEL_RUNS; i++) {
+            assertEquals(sequentialResult, findPropertySources(8));
+        }
+    }
+
+    @Nonnull
+    private String findPropertySources(int maxConcurrentQueries) {
+        SchemaExtractor extractor = new SchemaExtractor();
+        extractor.setSparqlEndpointProcessor(mockEndpoint());
+        extractor.setProgressEvents(mock(SchemaExtractorProgressEvents.class));
+        extractor.setLimitSelector(new SchemaExtractorLimitSelector());
+
+        SchemaExtractorRequestDto request = new SchemaExtractorRequestDto("parallel-test");
+        request.setMaxConcurrentQueries(maxConcurrentQueries);
+        request.setCrossCheckTargetClassesOnNonLiteralPropertyObjectCheckFailure(false);
+
+        Schema schema = new Schema();
+        for (String className : Arrays.asList("A", "B", "C", "D")) {
+            SchemaClass schemaClass = new SchemaClass();
+            schemaClass.setLocalName(className);
+            schemaClass.setNamespace(NAMESPACE);
+            schemaClass.setFullName(NAMESPACE + className);
+            schemaClass.setClassificationProperty(RDF_TYPE);
+            schemaClass.setIsLiteral(false);
+            schema.getClasses().add(schemaClass);
+        }
+        Map<String, SchemaExtractorPropertyNodeInfo> properties = new LinkedHashMap<>();
+        for (int i = 0; i < PROPERTY_COUNT; i++) {
+            SchemaExtractorPropertyNodeInfo property = new SchemaExtractorPropertyNodeInfo();
+            property.setPropertyName(NAMESPACE + "p" + i);
+            properties.put(property.getPropertyName(), property);
+        }
+
+        extractor.processProperties(properties, schema, request, (property, propertyInd) -> {
+            extractor.determinePropertySource(schema, property, properties, request);
+            extractor.determinePropertySourceTripleCount(schema, property, properties, request);
+        }, null, null, null, null);
+
+        StringBuilder result = new StringBuilder();
+        for (SchemaExtractorPropertyNodeInfo property : properties.values()) {
+            result.append(property.getPropertyName()).append(' ').append(property.getSourceClassesOK()).append(' ')
+                    .append(property.getSourceClasses().stream()
+                            .map(sourceClass -> sourceClass.getClassName() + "=" + sourceClass.getTripleCount() + "/" + sourceClass.getTripleCountBase())
+                            .collect(Collectors.joining(",")))
+                    .append('\n');
+        }
+        for (SchemaClass schemaClass : schema.getClasses()) {
+            result.append(schemaClass.getFullName()).append(' ').append(schemaClass.getOutgoingPropertiesOK()).append('\n');
+        }
+        for (SchemaExtractorMessage message : schema.getMessages()) {
+            result.append(message.getMessageLevel()).append(' ').append(message.getEntity()).append(' ').append(message.getQueryName()).append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * A - full list of outgoing properties, B - an empty full list, C - no list and the class check fails,
+     * D - a list found with limits and the class check for the other properties.
+     * The source triple count query fails for the properties that are not divisible by 3.
+     */
+    @Nonnull
+    private SparqlEndpointProcessor mockEndpoint() {
+        SparqlEndpointProcessor endpoint = mock(SparqlEndpointProcessor.class);
+        when(endpoint.read(any(SchemaExtractorRequestDto.class), any(SparqlQueryBuilder.class))).thenAnswer(invocation -> {
+            SparqlQueryBuilder queryBuilder = invocation.getArgument(1);
+            String className = getContextValue(queryBuilder, SPARQL_QUERY_BINDING_NAME_CLASS_SOURCE_FULL);
+            String propertyName = getContextValue(queryBuilder, SPARQL_QUERY_BINDING_NAME_PROPERTY_FULL);
+            switch (SchemaExtractorQueries.valueOf(queryBuilder.getQueryName())) {
+                case FIND_PROPERTY_SOURCES_WITHOUT_TRIPLE_COUNT:
+                case FIND_PROPERTY_SOURCE_TRIPLE_COUNT_WITH_LIMITS:
+                    return errorResponse();
+                case FIND_PROPERTY_SOURCE_TRIPLE_COUNT:
+                    return getPropertyIndex(propertyName) % 3 == 0 ? countResponse(getPropertyIndex(propertyName) + 100) : errorResponse();
+                case FIND_OUTGOING_PROPERTY_TRIPLE_COUNTS_FOR_CLASS:
+                    if ((NAMESPACE + "A").equals(className)) {
+                        return propertyCountsResponse(index -> index % 3 == 0);
+                    }
+                    return (NAMESPACE + "B").equals(className) ? propertyCountsResponse(index -> false) : errorResponse();
+                case FIND_OUTGOING_PROPERTY_TRIPLE_COUNTS_FOR_CLASS_WITH_LIMITS:
+                    return (NAMESPACE + "D").equals(className) ? propertyCountsResponse(index -> index % 4 == 0) : errorResponse();
+                case CHECK_CLASS_AS_PROPERTY_SOURCE:
+                    if ((NAMESPACE + "C").equals(className)) {
+                        return errorResponse();
+                    }
+                    return getPropertyIndex(propertyName) % 2 == 0 ? classResponse(className) : emptyResponse();
+                default:
+                    return emptyResponse();
+            }
+        });
+        return endpoint;
+    }
+
+    private static String getContextValue(@Nonnull SparqlQueryBuilder queryBuilder, @Nonnull String key) {
+        String value = queryBuilder.getContextMap().get(key);
+        return value != null ? value.replace("<", "").replace(">", "") : null;
+    }
+
+    private static int getPropertyIndex(@Nonnull String propertyName) {
+        return Integer.parseInt(propertyName.substring((NAMESPACE + "p").length()));
+    }
+
+    @Nonnull
+    private static QueryResponse propertyCountsResponse(@Nonnull IntPredicate hasProperty) {
+        QueryResultColumns columns = new QueryResultColumns(Arrays.asList(SPARQL_QUERY_BINDING_NAME_PROPERTY, SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT));
+        List<QueryResult> results = new ArrayList<>();
+        for (int i = 0; i < PROPERTY_COUNT; i++) {
+            if (hasProperty.test(i)) {
+                QueryResult queryResult = new QueryResult(columns);
+                queryResult.setResource(0, NAMESPACE + "p" + i);
+                queryResult.setLiteral(1, String.valueOf(i + 1), null);
+                results.add(queryResult);
+            }
+        }
+        return response(results);
+    }
+
+    @Nonnull
+    private static QueryResponse countResponse(long count) {
+        QueryResult queryResult = new QueryResult(new QueryResultColumns(Collections.singletonList(SPARQL_QUERY_BINDING_NAME_INSTANCES_COUNT)));
+        queryResult.setLiteral(0, String.valueOf(count), null);
+        return response(Collections.singletonList(queryResult));
+    }
+
+    @Nonnull
+    private static QueryResponse classResponse(@Nonnull String className) {
+        QueryResult queryResult = new QueryResult(new QueryResultColumns(Collections.singletonList(SPARQL_QUERY_BINDING_NAME_CLASS)));
+        queryResult.setResource(0, className);
+        return response(Collections.singletonList(queryResult));
+    }
+
+    @Nonnull
+    private static QueryResponse emptyResponse() {
+        return response(new ArrayList<>());
+    }
+
+    @Nonnull
+    private static QueryResponse response(@Nonnull List<QueryResult> results) {
+        QueryResponse queryResponse = new QueryResponse();
+        queryResponse.setResults(new ArrayList<>(results));
+        return queryResponse;
+    }
+
+    @Nonnull
+    private static QueryResponse errorResponse() {
+        QueryResponse queryResponse = new QueryResponse();
+        queryResponse.setHasErrors(true);
+        return queryResponse;
+    }
+
+}